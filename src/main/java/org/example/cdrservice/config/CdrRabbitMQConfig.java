@@ -1,13 +1,19 @@
 package org.example.cdrservice.config;
 
+import org.example.cdrservice.utils.CdrSharding;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 /**
  * Конфигурационный класс для RabbitMQ, связанный с обработкой CDR (Call Data Record).
@@ -26,6 +32,13 @@ public class CdrRabbitMQConfig {
     @Value("${const.rabbitmq.cdr.CDR_ROUTING_KEY}")
     private String CDR_ROUTING_KEY;
 
+    /**
+     * Количество шардов (очередей) CDR. При одном шарде используются основная очередь и основной ключ маршрутизации.
+     * Настраивается через свойство {@code const.rabbitmq.cdr.shard-count}.
+     */
+    @Value("${const.rabbitmq.cdr.shard-count:1}")
+    private int shardCount;
+
     @Value("${const.rabbitmq.dead-letter.DEAD_LETTER_EXCHANGE_POSTFIX}")
     private String DEAD_LETTER_EXCHANGE_POSTFIX;
 
@@ -105,4 +118,27 @@ public class CdrRabbitMQConfig {
                 .to(cdrExchange())
                 .with(CDR_ROUTING_KEY);
     }
+
+    /**
+     * Создает очереди шардов CDR и их binding с основным обменником CDR.
+     * Очередь шарда {@code i} называется {@code CDR_QUEUE_NAME.i} и получает сообщения с ключом
+     * маршрутизации {@code CDR_ROUTING_KEY.i}. При одном шарде дополнительные очереди не создаются.
+     *
+     * @return {@link Declarables} с очередями и binding шардов.
+     */
+    @Bean
+    public Declarables cdrShardDeclarables(){
+        List<Declarable> declarables = new ArrayList<>();
+        if (shardCount > 1) {
+            for (int shard = 0; shard < shardCount; shard++) {
+                Queue queue = new Queue(CdrSharding.queueName(CDR_QUEUE_NAME, shard, shardCount));
+                declarables.add(queue);
+                declarables.add(BindingBuilder
+                        .bind(queue)
+                        .to(cdrExchange())
+                        .with(CdrSharding.routingKey(CDR_ROUTING_KEY, shard, shardCount)));
+            }
+        }
+        return new Declarables(declarables);
+    }
 }
@@ -0,0 +1,37 @@
+package org.example.cdrservice.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Конфигурационный класс, включающий пакетную запись Hibernate.
+ * Вставки и обновления группируются по сущностям и отправляются в БД JDBC-пакетами,
+ * поэтому {@code saveAll} выполняется за один сетевой обмен вместо одного на строку.
+ */
+@Configuration
+public class JpaBatchingConfig {
+
+    /**
+     * Максимальное количество операторов в одном JDBC-пакете Hibernate.
+     * Настраивается через свойство {@code const.jpa.batch-size}.
+     */
+    @Value("${const.jpa.batch-size:50}")
+    private int batchSize;
+
+    /**
+     * Настраивает пакетную запись и упорядочивание операторов Hibernate.
+     *
+     * @return {@link HibernatePropertiesCustomizer} с настройками пакетной записи.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer() {
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.STATEMENT_BATCH_SIZE, batchSize);
+            hibernateProperties.put(AvailableSettings.ORDER_INSERTS, true);
+            hibernateProperties.put(AvailableSettings.ORDER_UPDATES, true);
+        };
+    }
+}
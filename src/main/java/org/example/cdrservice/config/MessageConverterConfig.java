@@ -1,15 +1,70 @@
 package org.example.cdrservice.config;
 
+import org.example.cdrservice.converters.CdrBinaryMessageConverter;
+import org.example.cdrservice.converters.CdrStreamingMessageWriter;
+import org.example.cdrservice.converters.CompressingMessageConverter;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+import org.springframework.util.MimeTypeUtils;
 
+/**
+ * Конфигурация преобразования пакетов CDR в сообщения RabbitMQ.
+ * <p>
+ * Формат отправляемых сообщений выбирается по типу содержимого из свойства
+ * {@code const.rabbitmq.cdr.content-type}: {@code application/json} (по умолчанию) или
+ * {@value CdrBinaryMessageConverter#CONTENT_TYPE}. Входящие сообщения преобразуются по их собственному
+ * заголовку {@code content_type}, поэтому оба формата читаются независимо от настройки.
+ * </p>
+ * <p>
+ * Тела сообщений не меньше {@code const.rabbitmq.cdr.compression.threshold} сжимаются алгоритмом
+ * {@code const.rabbitmq.cdr.compression.codec} (по умолчанию сжатие выключено).
+ * </p>
+ */
 @Configuration
 public class MessageConverterConfig {
+
+    @Value("${const.rabbitmq.cdr.content-type:" + MimeTypeUtils.APPLICATION_JSON_VALUE + "}")
+    private String contentType;
+
+    @Value("${const.rabbitmq.cdr.compression.codec:none}")
+    private CompressingMessageConverter.Codec compressionCodec;
+
+    @Value("${const.rabbitmq.cdr.compression.level:1}")
+    private int compressionLevel;
+
+    @Value("${const.rabbitmq.cdr.compression.threshold:64KB}")
+    private DataSize compressionThreshold;
+
+    @Bean
+    public CompressingMessageConverter cdrMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        Jackson2JsonMessageConverter jsonConverter = new Jackson2JsonMessageConverter(builder.build());
+        CdrBinaryMessageConverter binaryConverter = new CdrBinaryMessageConverter();
+
+        MessageConverter defaultConverter = switch (contentType) {
+            case MimeTypeUtils.APPLICATION_JSON_VALUE -> jsonConverter;
+            case CdrBinaryMessageConverter.CONTENT_TYPE -> binaryConverter;
+            default -> throw new IllegalStateException("Unsupported CDR content type: " + contentType);
+        };
+
+        ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(defaultConverter);
+        converter.addDelegate(MimeTypeUtils.APPLICATION_JSON_VALUE, jsonConverter);
+        converter.addDelegate(CdrBinaryMessageConverter.CONTENT_TYPE, binaryConverter);
+        return new CompressingMessageConverter(converter, compressionCodec, compressionLevel, (int) compressionThreshold.toBytes());
+    }
+
+    /**
+     * Формирует сообщения с пакетами CDR прямо из результата JDBC-запроса в том же формате и с тем же сжатием,
+     * что и {@link #cdrMessageConverter(Jackson2ObjectMapperBuilder)}.
+     */
     @Bean
-    public MessageConverter jsonMessageConverter(Jackson2ObjectMapperBuilder builder) {
-        return new Jackson2JsonMessageConverter(builder.build());
+    public CdrStreamingMessageWriter cdrStreamingMessageWriter(Jackson2ObjectMapperBuilder builder,
+                                                               CompressingMessageConverter cdrMessageConverter) {
+        return new CdrStreamingMessageWriter(contentType, builder.build(), cdrMessageConverter);
     }
 }
@@ -0,0 +1,61 @@
+package org.example.cdrservice.controllers;
+
+import org.example.cdrservice.dtos.DailyUsageDTO;
+import org.example.cdrservice.dtos.DailyUsageRebuildResult;
+import org.example.cdrservice.services.CdrDailyUsageService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * REST-контроллер суточной сводки использования абонентов.
+ */
+@RestController
+public class CdrDailyUsageController {
+
+    private final CdrDailyUsageService cdrDailyUsageService;
+
+    public CdrDailyUsageController(CdrDailyUsageService cdrDailyUsageService) {
+        this.cdrDailyUsageService = cdrDailyUsageService;
+    }
+
+    /**
+     * Возвращает количество и длительность звонков абонента по суткам и типам вызова.
+     *
+     * @param msisdn MSISDN обслуживаемого абонента.
+     * @param from Первые сутки периода (включительно).
+     * @param to Последние сутки периода (включительно).
+     * @return Строки сводки в порядке суток и типа вызова.
+     */
+    @GetMapping("/cdrs/daily-usage")
+    public List<DailyUsageDTO> findUsage(@RequestParam String msisdn,
+                                         @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                         @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return cdrDailyUsageService.findUsage(msisdn, from, to);
+    }
+
+    /**
+     * Пересчитывает сводку за период по сырым CDR.
+     *
+     * @param from Первые сутки периода (включительно).
+     * @param to Последние сутки периода (включительно).
+     * @return Итог пересчета.
+     */
+    @PostMapping("/admin/cdr/daily-usage/rebuild")
+    public DailyUsageRebuildResult rebuild(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return cdrDailyUsageService.rebuild(from, to);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
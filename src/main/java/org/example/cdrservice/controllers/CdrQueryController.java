@@ -0,0 +1,93 @@
+package org.example.cdrservice.controllers;
+
+import org.example.cdrservice.dtos.CdrQuery;
+import org.example.cdrservice.services.CdrQueryService;
+import org.example.cdrservice.services.CdrReportService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+
+/**
+ * REST-контроллер запросов CDR абонента за период и выгрузки отчетов об использовании.
+ */
+@RestController
+@RequestMapping("/cdrs")
+public class CdrQueryController {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    private static final MediaType APPLICATION_GZIP = MediaType.parseMediaType("application/gzip");
+
+    private final CdrQueryService cdrQueryService;
+
+    private final CdrReportService cdrReportService;
+
+    public CdrQueryController(CdrQueryService cdrQueryService, CdrReportService cdrReportService) {
+        this.cdrQueryService = cdrQueryService;
+        this.cdrReportService = cdrReportService;
+    }
+
+    /**
+     * Возвращает страницу CDR абонента за период в формате NDJSON в порядке времени начала звонка.
+     * Следующая страница запрашивается с {@code afterStartDateTime} и {@code afterId} последней CDR ответа;
+     * ответ короче {@code limit} строк - последняя страница.
+     *
+     * @param msisdn MSISDN обслуживаемого абонента.
+     * @param from Начало периода по времени начала звонка (включительно).
+     * @param to Конец периода по времени начала звонка (не включительно).
+     * @param afterStartDateTime Время начала последней CDR предыдущей страницы.
+     * @param afterId Идентификатор последней CDR предыдущей страницы.
+     * @param limit Максимальное количество CDR на странице; по умолчанию {@code const.query.default-limit}.
+     * @return Поток CDR, записываемый в ответ по мере чтения из БД.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> findCdrs(@RequestParam String msisdn,
+                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                          @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterStartDateTime,
+                                                          @RequestParam(required = false) Long afterId,
+                                                          @RequestParam(required = false) Integer limit) {
+        CdrQuery query = cdrQueryService.createQuery(msisdn, from, to, afterStartDateTime, afterId, limit);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(out -> cdrQueryService.streamNdjson(query, out));
+    }
+
+    /**
+     * Выгружает отчет об использовании (UDR) по всем CDR абонента за период в формате CSV.
+     * Отчет записывается в ответ по мере чтения из БД (chunked) и может быть сжат gzip.
+     *
+     * @param msisdn MSISDN обслуживаемого абонента.
+     * @param from Начало периода по времени начала звонка (включительно).
+     * @param to Конец периода по времени начала звонка (не включительно).
+     * @param gzip Сжимать ли отчет gzip ({@code .csv.gz}).
+     * @return Файл отчета, записываемый в ответ по мере чтения из БД.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCsv(@RequestParam String msisdn,
+                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                           @RequestParam(defaultValue = "false") boolean gzip) {
+        long servicedMsisdn = cdrReportService.validate(msisdn, from, to);
+        String filename = "udr-" + msisdn + "-" + from.toLocalDate() + "-" + to.toLocalDate() + (gzip ? ".csv.gz" : ".csv");
+        return ResponseEntity.ok()
+                .contentType(gzip ? APPLICATION_GZIP : TEXT_CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+                .body(out -> cdrReportService.exportCsv(servicedMsisdn, from, to, gzip, out));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.cdrservice.controllers;
+
+import org.example.cdrservice.dtos.DeadLetterReplayFilter;
+import org.example.cdrservice.dtos.DeadLetterReplayStatus;
+import org.example.cdrservice.services.DeadLetterReplayService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+
+/**
+ * Административный REST-контроллер повторной отправки CDR из очереди недоставленных сообщений.
+ */
+@RestController
+@RequestMapping("/admin/cdr/dead-letter/replay")
+public class DeadLetterReplayController {
+
+    private final DeadLetterReplayService deadLetterReplayService;
+
+    public DeadLetterReplayController(DeadLetterReplayService deadLetterReplayService) {
+        this.deadLetterReplayService = deadLetterReplayService;
+    }
+
+    /**
+     * Запускает повторную отправку CDR из очереди недоставленных сообщений.
+     *
+     * @param rate Максимальная скорость отправки в сообщениях в секунду; по умолчанию {@code const.replay.max-rate}.
+     * @param msisdn MSISDN обслуживаемого абонента, CDR которого отправляются.
+     * @param from Начало окна по времени начала звонка (включительно).
+     * @param to Конец окна по времени начала звонка (не включительно).
+     * @return Состояние запущенной повторной отправки со статусом 202.
+     */
+    @PostMapping
+    public ResponseEntity<DeadLetterReplayStatus> start(@RequestParam(required = false) Double rate,
+                                                        @RequestParam(required = false) String msisdn,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        DeadLetterReplayFilter filter = new DeadLetterReplayFilter(msisdn, from, to);
+        return ResponseEntity.accepted().body(deadLetterReplayService.start(rate, filter));
+    }
+
+    /**
+     * Возвращает состояние и прогресс последней повторной отправки.
+     */
+    @GetMapping
+    public DeadLetterReplayStatus status() {
+        return deadLetterReplayService.getStatus();
+    }
+
+    /**
+     * Останавливает повторную отправку перед следующей отправкой в основной обменник; прочитанные сообщения подтверждаются.
+     */
+    @DeleteMapping
+    public DeadLetterReplayStatus cancel() {
+        return deadLetterReplayService.cancel();
+    }
+
+    @ExceptionHandler(IllegalStateException.class)
+    public ResponseEntity<String> handleAlreadyRunning(IllegalStateException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleInvalidArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
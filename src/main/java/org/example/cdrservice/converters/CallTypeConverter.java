@@ -0,0 +1,47 @@
+package org.example.cdrservice.converters;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Преобразует тип вызова между двухсимвольным кодом в приложении ("01", "02")
+ * и числовым столбцом {@code SMALLINT} в БД.
+ */
+@Converter
+public class CallTypeConverter implements AttributeConverter<String, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(String callType) {
+        return (callType == null) ? null : toCode(callType);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Short code) {
+        return (code == null) ? null : fromCode(code);
+    }
+
+    /**
+     * Преобразует тип вызова в числовой код.
+     *
+     * @param callType Тип вызова, например "01".
+     * @return Числовой код типа вызова.
+     * @throws IllegalArgumentException если тип вызова не является числом.
+     */
+    public static short toCode(String callType) {
+        try {
+            return Short.parseShort(callType);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid call type: " + callType, e);
+        }
+    }
+
+    /**
+     * Преобразует числовой код в тип вызова, дополняя его нулем до двух знаков.
+     *
+     * @param code Числовой код типа вызова.
+     * @return Тип вызова, например "01".
+     */
+    public static String fromCode(short code) {
+        return (code < 10) ? "0" + code : Short.toString(code);
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.cdrservice.converters;
+
+import org.example.cdrservice.dtos.CdrDTO;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Конвертер сообщений RabbitMQ для пакетов CDR в компактном двоичном формате.
+ * <p>
+ * Формат версии 1 (все числа big-endian):
+ * </p>
+ * <pre>
+ * заголовок: версия (1 байт), количество записей (4 байта)
+ * запись:    тип вызова (1 байт), serviced MSISDN (8 байт), other MSISDN (8 байт),
+ *            начало звонка (8 байт), окончание звонка (8 байт)
+ * </pre>
+ * <p>
+ * MSISDN передаются числами, тип вызова - числовым кодом ("01" -> 1).
+ * Время передается в миллисекундах эпохи; {@link LocalDateTime} кодируется так, как если бы было задано в UTC,
+ * поэтому значение восстанавливается без изменений и без учета часового пояса.
+ * Запись занимает {@value #RECORD_SIZE} байт.
+ * </p>
+ */
+public class CdrBinaryMessageConverter extends AbstractMessageConverter {
+
+    /**
+     * Тип содержимого сообщений в двоичном формате.
+     */
+    public static final String CONTENT_TYPE = "application/x-cdr-batch";
+
+    /**
+     * Текущая версия формата.
+     */
+    public static final byte FORMAT_VERSION = 1;
+
+    /**
+     * Размер заголовка в байтах.
+     */
+    public static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+    /**
+     * Размер одной записи в байтах.
+     */
+    public static final int RECORD_SIZE = Byte.BYTES + 4 * Long.BYTES;
+
+    @Override
+    protected Message createMessage(Object object, MessageProperties messageProperties) {
+        List<CdrDTO> cdrs = asCdrList(object);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + cdrs.size() * RECORD_SIZE);
+        buffer.put(FORMAT_VERSION);
+        buffer.putInt(cdrs.size());
+        for (CdrDTO cdr : cdrs) {
+            buffer.put((byte) CallTypeConverter.toCode(cdr.callType()));
+            buffer.putLong(MsisdnConverter.toNumber(cdr.servicedMsisdn()));
+            buffer.putLong(MsisdnConverter.toNumber(cdr.otherMsisdn()));
+            buffer.putLong(toEpochMillis(cdr.startDateTime()));
+            buffer.putLong(toEpochMillis(cdr.finishDateTime()));
+        }
+
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setContentLength(buffer.capacity());
+        return new Message(buffer.array(), messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        ByteBuffer buffer = ByteBuffer.wrap(message.getBody());
+        try {
+            byte version = buffer.get();
+            if (version != FORMAT_VERSION) {
+                throw new MessageConversionException("Unsupported CDR batch format version: " + version);
+            }
+            int count = buffer.getInt();
+            if (count < 0 || buffer.remaining() != (long) count * RECORD_SIZE) {
+                throw new MessageConversionException("Corrupted CDR batch: " + count + " records in " + buffer.remaining() + " bytes");
+            }
+            List<CdrDTO> cdrs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                cdrs.add(new CdrDTO(
+                        CallTypeConverter.fromCode(buffer.get()),
+                        Long.toString(buffer.getLong()),
+                        Long.toString(buffer.getLong()),
+                        fromEpochMillis(buffer.getLong()),
+                        fromEpochMillis(buffer.getLong())
+                ));
+            }
+            return cdrs;
+        } catch (BufferUnderflowException e) {
+            throw new MessageConversionException("Truncated CDR batch", e);
+        }
+    }
+
+    private List<CdrDTO> asCdrList(Object object) {
+        if (!(object instanceof List<?> list)) {
+            throw new MessageConversionException("Expected a list of CdrDTO, got " + object.getClass().getName());
+        }
+        for (Object element : list) {
+            if (!(element instanceof CdrDTO)) {
+                throw new MessageConversionException("Expected a list of CdrDTO, got element " + element);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        List<CdrDTO> cdrs = (List<CdrDTO>) list;
+        return cdrs;
+    }
+
+    static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpochMillis(long epochMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000), (int) Math.floorMod(epochMillis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.cdrservice.converters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Записывает отчет об использовании (UDR) в формате CSV прямо из строк результата JDBC-запроса.
+ * <p>
+ * Строки записываются в буфер фиксированного размера, который сбрасывается в поток при заполнении:
+ * ни сущности, ни строки ({@link String}) на запись не создаются, поэтому память не зависит от количества строк.
+ * Все значения числовые или даты без разделителей CSV, поэтому экранирование не требуется.
+ * Время записывается в формате ISO {@code yyyy-MM-ddTHH:mm:ss[.SSS]}.
+ * </p>
+ * <pre>
+ * id,call_type,serviced_msisdn,other_msisdn,start_date_time,finish_date_time,duration_seconds
+ * </pre>
+ */
+public class CdrCsvWriter {
+
+    private static final byte[] HEADER = "id,call_type,serviced_msisdn,other_msisdn,start_date_time,finish_date_time,duration_seconds\n"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Максимальная длина одной строки CSV: 7 чисел до 20 знаков, 2 даты до 23 знаков и разделители.
+     */
+    private static final int MAX_ROW_LENGTH = 7 * 20 + 2 * 23 + 7;
+
+    private final OutputStream out;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private long rows;
+
+    /**
+     * @param out Поток, в который сбрасывается буфер; не закрывается.
+     * @param bufferSize Размер буфера в байтах.
+     */
+    public CdrCsvWriter(OutputStream out, int bufferSize) {
+        if (bufferSize < MAX_ROW_LENGTH) {
+            throw new IllegalArgumentException("Buffer size must be at least " + MAX_ROW_LENGTH + ": " + bufferSize);
+        }
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public void writeHeader() throws IOException {
+        ensureCapacity(HEADER.length);
+        System.arraycopy(HEADER, 0, buffer, position, HEADER.length);
+        position += HEADER.length;
+    }
+
+    /**
+     * Записывает строку CDR. Столбцы строки: 1 - {@code id}, 2 - {@code call_type}, 3 - {@code serviced_msisdn},
+     * 4 - {@code other_msisdn}, 5 - {@code start_date_time}, 6 - {@code finish_date_time}.
+     *
+     * @param rs Результат запроса, установленный на строку.
+     */
+    public void writeRow(ResultSet rs) throws SQLException, IOException {
+        ensureCapacity(MAX_ROW_LENGTH);
+        LocalDateTime start = rs.getObject(5, LocalDateTime.class);
+        LocalDateTime finish = rs.getObject(6, LocalDateTime.class);
+        writeLong(rs.getLong(1));
+        buffer[position++] = ',';
+        short callType = rs.getShort(2);
+        if (callType < 10) buffer[position++] = '0';
+        writeLong(callType);
+        buffer[position++] = ',';
+        writeLong(rs.getLong(3));
+        buffer[position++] = ',';
+        writeLong(rs.getLong(4));
+        buffer[position++] = ',';
+        writeDateTime(start);
+        buffer[position++] = ',';
+        writeDateTime(finish);
+        buffer[position++] = ',';
+        writeLong(Duration.between(start, finish).toSeconds());
+        buffer[position++] = '\n';
+        rows++;
+    }
+
+    /**
+     * Сбрасывает буфер в поток.
+     */
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    /**
+     * @return Количество записанных строк CDR.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (buffer.length - position < length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void writeLong(long value) {
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    private void writeDateTime(LocalDateTime dateTime) {
+        writePadded(dateTime.getYear(), 4);
+        buffer[position++] = '-';
+        writePadded(dateTime.getMonthValue(), 2);
+        buffer[position++] = '-';
+        writePadded(dateTime.getDayOfMonth(), 2);
+        buffer[position++] = 'T';
+        writePadded(dateTime.getHour(), 2);
+        buffer[position++] = ':';
+        writePadded(dateTime.getMinute(), 2);
+        buffer[position++] = ':';
+        writePadded(dateTime.getSecond(), 2);
+        int millis = dateTime.getNano() / 1_000_000;
+        if (millis != 0) {
+            buffer[position++] = '.';
+            writePadded(millis, 3);
+        }
+    }
+
+    private void writePadded(int value, int width) {
+        for (int i = position + width - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += width;
+    }
+}
@@ -0,0 +1,606 @@
+package org.example.cdrservice.converters;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.example.cdrservice.dtos.CdrDTO;
+import org.example.cdrservice.utils.CdrSharding;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
+import org.springframework.amqp.support.converter.Jackson2JavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Формирует сообщения RabbitMQ с пакетами CDR прямо из строк результата JDBC-запроса.
+ * <p>
+ * В отличие от пути через {@link org.springframework.amqp.support.converter.MessageConverter}, пакет не
+ * материализуется ни в виде сущностей, ни в виде списка DTO: каждая строка сразу записывается в переиспользуемый
+ * буфер потока, и на пакет выделяется лишь массив итогового тела сообщения.
+ * Значения столбцов записываются в буфер напрямую как в двоичном формате ({@value CdrBinaryMessageConverter#CONTENT_TYPE}),
+ * так и в JSON: имена полей заранее закодированы, а числа и время записываются цифрами без промежуточных строк.
+ * </p>
+ * <p>
+ * Прямая запись JSON повторяет формат {@link ObjectMapper} по умолчанию. При создании она сверяется с результатом
+ * переданного {@link ObjectMapper} на образцовых записях; если его настройки меняют формат (например, время записывается
+ * числом), каждая строка записывается потоковым генератором Jackson через кратковременный {@link CdrDTO}, чтобы результат
+ * совпадал с {@code Jackson2JsonMessageConverter}.
+ * </p>
+ * <p>
+ * Сообщения получаются такими же, как у конвертера сообщений CDR с тем же типом содержимого,
+ * и сжимаются по тем же правилам.
+ * </p>
+ */
+public class CdrStreamingMessageWriter {
+
+    private final String contentType;
+
+    private final ObjectMapper objectMapper;
+
+    private final ObjectWriter cdrWriter;
+
+    private final JavaType batchType;
+
+    private final Jackson2JavaTypeMapper jsonTypeMapper = new DefaultJackson2JavaTypeMapper();
+
+    private final CompressingMessageConverter compressingConverter;
+
+    /**
+     * Записывается ли JSON напрямую, без генератора Jackson.
+     */
+    private final boolean directJson;
+
+    /**
+     * Буферы тел сообщений по шардам. У каждого потока свои буферы, которые переиспользуются между пакетами.
+     */
+    private final ThreadLocal<ReusableBuffer[]> buffers = ThreadLocal.withInitial(() -> new ReusableBuffer[0]);
+
+    /**
+     * @param contentType Тип содержимого сообщений: {@code application/json} или {@value CdrBinaryMessageConverter#CONTENT_TYPE}.
+     * @param objectMapper {@link ObjectMapper} JSON-конвертера сообщений.
+     * @param compressingConverter Конвертер, по правилам которого сжимаются сообщения.
+     */
+    public CdrStreamingMessageWriter(String contentType, ObjectMapper objectMapper, CompressingMessageConverter compressingConverter) {
+        if (!MimeTypeUtils.APPLICATION_JSON_VALUE.equals(contentType) && !CdrBinaryMessageConverter.CONTENT_TYPE.equals(contentType)) {
+            throw new IllegalArgumentException("Unsupported CDR content type: " + contentType);
+        }
+        this.contentType = contentType;
+        this.objectMapper = objectMapper;
+        this.cdrWriter = objectMapper.writerFor(CdrDTO.class);
+        this.batchType = objectMapper.getTypeFactory().constructCollectionType(List.class, CdrDTO.class);
+        this.compressingConverter = compressingConverter;
+        this.directJson = directJsonMatchesObjectMapper();
+    }
+
+    /**
+     * Формирует сообщение из строк CDR.
+     * Источник строк должен передать обработчику строки со столбцами в порядке
+     * {@code call_type, serviced_msisdn, other_msisdn, start_date_time, finish_date_time}.
+     *
+     * @param rowSource Источник строк, например {@code handler -> cdrJdbcRepository.streamClaim(claimId, handler)}.
+     * @return Сообщение с пакетом CDR.
+     */
+    public Message write(Consumer<RowCallbackHandler> rowSource) {
+        return write(rowSource, 1)[0];
+    }
+
+    /**
+     * Формирует сообщения из строк CDR, распределяя строки по шардам {@link CdrSharding#shardOf(long, int)}
+     * по MSISDN обслуживаемого абонента. Порядок строк внутри шарда сохраняется.
+     *
+     * @param rowSource Источник строк с тем же порядком столбцов, что и у {@link #write(Consumer)}.
+     * @param shardCount Количество шардов.
+     * @return Сообщения по номерам шардов. Для шардов без строк элемент равен {@code null};
+     *         при одном шарде сообщение формируется всегда, даже пустое.
+     */
+    public Message[] write(Consumer<RowCallbackHandler> rowSource, int shardCount) {
+        return write(rowSource, shardCount, shard -> true);
+    }
+
+    /**
+     * Формирует сообщения только для выбранных шардов; строки остальных шардов пропускаются без кодирования.
+     * Используется, когда шарды пакета отправляются разными исполнителями.
+     *
+     * @param rowSource Источник строк с тем же порядком столбцов, что и у {@link #write(Consumer)}.
+     * @param shardCount Количество шардов.
+     * @param shardFilter Шарды, для которых формируются сообщения.
+     * @return Сообщения по номерам шардов. Для невыбранных шардов и шардов без строк элемент равен {@code null};
+     *         при одном шарде сообщение формируется всегда, если шард выбран, даже пустое.
+     */
+    public Message[] write(Consumer<RowCallbackHandler> rowSource, int shardCount, IntPredicate shardFilter) {
+        return encode(shardCount, shardFilter, encoders -> rowSource.accept(rs -> {
+            BatchEncoder encoder = encoders[shardOf(rs.getLong(2), shardCount)];
+            if (encoder != null) encoder.writeRow(rs);
+        }));
+    }
+
+    /**
+     * Формирует сообщения из уже разобранных CDR, например при повторной отправке сообщений из очереди
+     * недоставленных сообщений, распределяя записи по шардам так же, как {@link #write(Consumer, int)}.
+     *
+     * @param cdrs Записи CDR.
+     * @param shardCount Количество шардов.
+     * @return Сообщения по номерам шардов; для шардов без записей элемент равен {@code null}.
+     */
+    public Message[] writeCdrs(List<CdrDTO> cdrs, int shardCount) {
+        return writeCdrs(cdrs, shardCount, shard -> true);
+    }
+
+    /**
+     * Формирует сообщения из уже разобранных CDR только для выбранных шардов,
+     * как {@link #write(Consumer, int, IntPredicate)}.
+     *
+     * @param cdrs Записи CDR.
+     * @param shardCount Количество шардов.
+     * @param shardFilter Шарды, для которых формируются сообщения.
+     * @return Сообщения по номерам шардов; для невыбранных шардов и шардов без записей элемент равен {@code null}.
+     */
+    public Message[] writeCdrs(List<CdrDTO> cdrs, int shardCount, IntPredicate shardFilter) {
+        return encode(shardCount, shardFilter, encoders -> {
+            for (CdrDTO cdr : cdrs) {
+                BatchEncoder encoder = encoders[shardOf(MsisdnConverter.toNumber(cdr.servicedMsisdn()), shardCount)];
+                if (encoder != null) encoder.writeCdr(cdr);
+            }
+        });
+    }
+
+    private Message[] encode(int shardCount, IntPredicate shardFilter, EncoderFeed feed) {
+        ReusableBuffer[] shardBuffers = buffersFor(shardCount);
+        boolean binary = CdrBinaryMessageConverter.CONTENT_TYPE.equals(contentType);
+        BatchEncoder[] encoders = new BatchEncoder[shardCount];
+        try {
+            for (int shard = 0; shard < shardCount; shard++) {
+                if (!shardFilter.test(shard)) continue;
+                shardBuffers[shard].reset();
+                encoders[shard] = binary ? new BinaryEncoder(shardBuffers[shard])
+                        : directJson ? new DirectJsonEncoder(shardBuffers[shard]) : new JacksonJsonEncoder(shardBuffers[shard]);
+            }
+            feed.accept(encoders);
+            for (BatchEncoder encoder : encoders) {
+                if (encoder != null) encoder.finish();
+            }
+        } catch (IOException e) {
+            throw new MessageConversionException("Failed to write CDR batch", e);
+        } catch (UncheckedIOException e) {
+            throw new MessageConversionException("Failed to write CDR batch", e.getCause());
+        }
+
+        Message[] messages = new Message[shardCount];
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (encoders[shard] != null && (shardCount == 1 || encoders[shard].count > 0)) {
+                messages[shard] = toMessage(shardBuffers[shard].toByteArray(), binary);
+            }
+        }
+        return messages;
+    }
+
+    private Message toMessage(byte[] body, boolean binary) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(contentType);
+        if (!binary) {
+            messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+            jsonTypeMapper.fromJavaType(batchType, messageProperties);
+        }
+        messageProperties.setContentLength(body.length);
+        return compressingConverter.compress(new Message(body, messageProperties));
+    }
+
+    /**
+     * Сверяет прямую запись JSON с результатом {@link ObjectMapper} на образцовых записях,
+     * в том числе со временем без секунд и с долями секунды.
+     */
+    private boolean directJsonMatchesObjectMapper() {
+        List<CdrDTO> samples = List.of(
+                new CdrDTO("01", "79000000001", "79010000002",
+                        LocalDateTime.of(2025, 3, 30, 2, 30, 0, 250_000_000), LocalDateTime.of(2025, 3, 30, 2, 31)),
+                new CdrDTO("12", "79000000003", "79010000004",
+                        LocalDateTime.of(2025, 12, 31, 23, 59, 59, 123_456_789), LocalDateTime.of(2025, 12, 31, 23, 59, 59, 123_456_789)));
+        try {
+            ReusableBuffer buffer = new ReusableBuffer();
+            DirectJsonEncoder encoder = new DirectJsonEncoder(buffer);
+            for (CdrDTO sample : samples) {
+                encoder.writeCdr(sample);
+            }
+            encoder.finish();
+            return Arrays.equals(buffer.toByteArray(), objectMapper.writerFor(batchType).writeValueAsBytes(samples));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int shardOf(long servicedMsisdn, int shardCount) {
+        return (shardCount == 1) ? 0 : CdrSharding.shardOf(servicedMsisdn, shardCount);
+    }
+
+    private ReusableBuffer[] buffersFor(int shardCount) {
+        ReusableBuffer[] shardBuffers = buffers.get();
+        if (shardBuffers.length < shardCount) {
+            ReusableBuffer[] grown = Arrays.copyOf(shardBuffers, shardCount);
+            for (int shard = shardBuffers.length; shard < shardCount; shard++) {
+                grown[shard] = new ReusableBuffer();
+            }
+            buffers.set(grown);
+            shardBuffers = grown;
+        }
+        return shardBuffers;
+    }
+
+    @FunctionalInterface
+    private interface EncoderFeed {
+        void accept(BatchEncoder[] encoders) throws IOException;
+    }
+
+    /**
+     * Кодировщик пакета одного шарда.
+     */
+    private abstract static class BatchEncoder {
+
+        int count;
+
+        abstract void writeRow(ResultSet rs) throws SQLException;
+
+        abstract void writeCdr(CdrDTO cdr) throws IOException;
+
+        abstract void finish() throws IOException;
+    }
+
+    private static class BinaryEncoder extends BatchEncoder {
+
+        private final ReusableBuffer buffer;
+
+        BinaryEncoder(ReusableBuffer buffer) {
+            this.buffer = buffer;
+            buffer.write(CdrBinaryMessageConverter.FORMAT_VERSION);
+            buffer.writeInt(0);
+        }
+
+        @Override
+        void writeRow(ResultSet rs) throws SQLException {
+            buffer.write(rs.getShort(1));
+            buffer.writeLong(rs.getLong(2));
+            buffer.writeLong(rs.getLong(3));
+            buffer.writeLong(CdrBinaryMessageConverter.toEpochMillis(rs.getObject(4, LocalDateTime.class)));
+            buffer.writeLong(CdrBinaryMessageConverter.toEpochMillis(rs.getObject(5, LocalDateTime.class)));
+            count++;
+        }
+
+        @Override
+        void writeCdr(CdrDTO cdr) {
+            buffer.write(CallTypeConverter.toCode(cdr.callType()));
+            buffer.writeLong(MsisdnConverter.toNumber(cdr.servicedMsisdn()));
+            buffer.writeLong(MsisdnConverter.toNumber(cdr.otherMsisdn()));
+            buffer.writeLong(CdrBinaryMessageConverter.toEpochMillis(cdr.startDateTime()));
+            buffer.writeLong(CdrBinaryMessageConverter.toEpochMillis(cdr.finishDateTime()));
+            count++;
+        }
+
+        @Override
+        void finish() {
+            buffer.setInt(Byte.BYTES, count);
+        }
+    }
+
+    /**
+     * Записывает JSON в формате {@link ObjectMapper} по умолчанию прямо в буфер.
+     */
+    private static class DirectJsonEncoder extends BatchEncoder {
+
+        private static final byte[] CALL_TYPE = ascii("{\"callType\":");
+        private static final byte[] SERVICED_MSISDN = ascii(",\"servicedMsisdn\":");
+        private static final byte[] OTHER_MSISDN = ascii(",\"otherMsisdn\":");
+        private static final byte[] START_DATE_TIME = ascii(",\"startDateTime\":");
+        private static final byte[] FINISH_DATE_TIME = ascii(",\"finishDateTime\":");
+        private static final byte[] NULL = ascii("null");
+
+        private final ReusableBuffer buffer;
+
+        DirectJsonEncoder(ReusableBuffer buffer) {
+            this.buffer = buffer;
+            buffer.write('[');
+        }
+
+        @Override
+        void writeRow(ResultSet rs) throws SQLException {
+            startRecord();
+            buffer.write('"');
+            short callType = rs.getShort(1);
+            if (callType < 10) buffer.write('0');
+            buffer.writeDecimal(callType);
+            buffer.write('"');
+            buffer.write(SERVICED_MSISDN);
+            writeQuotedDecimal(rs.getLong(2));
+            buffer.write(OTHER_MSISDN);
+            writeQuotedDecimal(rs.getLong(3));
+            buffer.write(START_DATE_TIME);
+            writeDateTime(rs.getObject(4, LocalDateTime.class));
+            buffer.write(FINISH_DATE_TIME);
+            writeDateTime(rs.getObject(5, LocalDateTime.class));
+            buffer.write('}');
+        }
+
+        @Override
+        void writeCdr(CdrDTO cdr) {
+            startRecord();
+            writeString(cdr.callType());
+            buffer.write(SERVICED_MSISDN);
+            writeString(cdr.servicedMsisdn());
+            buffer.write(OTHER_MSISDN);
+            writeString(cdr.otherMsisdn());
+            buffer.write(START_DATE_TIME);
+            writeDateTime(cdr.startDateTime());
+            buffer.write(FINISH_DATE_TIME);
+            writeDateTime(cdr.finishDateTime());
+            buffer.write('}');
+        }
+
+        @Override
+        void finish() {
+            buffer.write(']');
+        }
+
+        private void startRecord() {
+            if (count++ > 0) buffer.write(',');
+            buffer.write(CALL_TYPE);
+        }
+
+        private void writeQuotedDecimal(long value) {
+            buffer.write('"');
+            buffer.writeDecimal(value);
+            buffer.write('"');
+        }
+
+        /**
+         * Записывает время в формате {@link DateTimeFormatter#ISO_LOCAL_DATE_TIME}: секунды всегда,
+         * доли секунды - без завершающих нулей.
+         */
+        private void writeDateTime(LocalDateTime value) {
+            if (value == null) {
+                buffer.write(NULL);
+                return;
+            }
+            if (value.getYear() < 0 || value.getYear() > 9999) {
+                writeString(value.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+                return;
+            }
+            buffer.write('"');
+            buffer.writeDigits(value.getYear(), 4);
+            buffer.write('-');
+            buffer.writeDigits(value.getMonthValue(), 2);
+            buffer.write('-');
+            buffer.writeDigits(value.getDayOfMonth(), 2);
+            buffer.write('T');
+            buffer.writeDigits(value.getHour(), 2);
+            buffer.write(':');
+            buffer.writeDigits(value.getMinute(), 2);
+            buffer.write(':');
+            buffer.writeDigits(value.getSecond(), 2);
+            int nano = value.getNano();
+            if (nano > 0) {
+                int width = 9;
+                while (nano % 10 == 0) {
+                    nano /= 10;
+                    width--;
+                }
+                buffer.write('.');
+                buffer.writeDigits(nano, width);
+            }
+            buffer.write('"');
+        }
+
+        /**
+         * Записывает строку в UTF-8, экранируя символы так же, как Jackson по умолчанию:
+         * управляющие символы и суррогатные пары записываются шестнадцатеричными escape-последовательностями Unicode.
+         */
+        private void writeString(String value) {
+            if (value == null) {
+                buffer.write(NULL);
+                return;
+            }
+            buffer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    buffer.write('\\');
+                    buffer.write(c);
+                } else if (c < 0x20) {
+                    writeControlCharacter(c);
+                } else if (c < 0x80) {
+                    buffer.write(c);
+                } else if (c < 0x800) {
+                    buffer.write(0xC0 | (c >> 6));
+                    buffer.write(0x80 | (c & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    writeUnicodeEscape(c);
+                } else {
+                    buffer.write(0xE0 | (c >> 12));
+                    buffer.write(0x80 | ((c >> 6) & 0x3F));
+                    buffer.write(0x80 | (c & 0x3F));
+                }
+            }
+            buffer.write('"');
+        }
+
+        private void writeControlCharacter(char c) {
+            switch (c) {
+                case '\b' -> writeShortEscape('b');
+                case '\t' -> writeShortEscape('t');
+                case '\n' -> writeShortEscape('n');
+                case '\f' -> writeShortEscape('f');
+                case '\r' -> writeShortEscape('r');
+                default -> writeUnicodeEscape(c);
+            }
+        }
+
+        private void writeShortEscape(char escape) {
+            buffer.write('\\');
+            buffer.write(escape);
+        }
+
+        private void writeUnicodeEscape(char c) {
+            buffer.write('\\');
+            buffer.write('u');
+            for (int shift = 12; shift >= 0; shift -= 4) {
+                buffer.write(Character.toUpperCase(Character.forDigit((c >> shift) & 0xF, 16)));
+            }
+        }
+
+        private static byte[] ascii(String value) {
+            return value.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Записывает JSON генератором Jackson, когда настройки {@link ObjectMapper} отличаются от прямой записи.
+     */
+    private class JacksonJsonEncoder extends BatchEncoder {
+
+        private final JsonGenerator generator;
+
+        JacksonJsonEncoder(ReusableBuffer buffer) throws IOException {
+            this.generator = objectMapper.createGenerator(buffer, JsonEncoding.UTF8);
+            generator.writeStartArray();
+        }
+
+        @Override
+        void writeRow(ResultSet rs) throws SQLException {
+            CdrDTO cdr = new CdrDTO(
+                    CallTypeConverter.fromCode(rs.getShort(1)),
+                    Long.toString(rs.getLong(2)),
+                    Long.toString(rs.getLong(3)),
+                    rs.getObject(4, LocalDateTime.class),
+                    rs.getObject(5, LocalDateTime.class)
+            );
+            try {
+                writeCdr(cdr);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void writeCdr(CdrDTO cdr) throws IOException {
+            cdrWriter.writeValue(generator, cdr);
+            count++;
+        }
+
+        @Override
+        void finish() throws IOException {
+            generator.writeEndArray();
+            generator.close();
+        }
+    }
+
+    /**
+     * Растущий байтовый буфер без синхронизации (буферы принадлежат одному потоку)
+     * с записью чисел big-endian и десятичных цифр и доступом к уже записанным байтам.
+     */
+    private static class ReusableBuffer extends OutputStream {
+
+        private byte[] buf = new byte[64 * 1024];
+
+        private int count;
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b) {
+            write(b, 0, b.length);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(count + Integer.BYTES);
+            setInt(count, value);
+            count += Integer.BYTES;
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void setInt(int position, int value) {
+            buf[position] = (byte) (value >>> 24);
+            buf[position + 1] = (byte) (value >>> 16);
+            buf[position + 2] = (byte) (value >>> 8);
+            buf[position + 3] = (byte) value;
+        }
+
+        /**
+         * Записывает десятичное представление числа, как {@link Long#toString(long)}, без создания строки.
+         */
+        void writeDecimal(long value) {
+            if (value < 0) {
+                if (value == Long.MIN_VALUE) {
+                    write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+                    return;
+                }
+                write('-');
+                value = -value;
+            }
+            int digits = 1;
+            for (long rest = value; rest >= 10; rest /= 10) {
+                digits++;
+            }
+            ensureCapacity(count + digits);
+            for (int position = count + digits - 1; position >= count; position--) {
+                buf[position] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            count += digits;
+        }
+
+        /**
+         * Записывает неотрицательное число ровно {@code width} цифрами с ведущими нулями.
+         */
+        void writeDigits(int value, int width) {
+            ensureCapacity(count + width);
+            for (int position = count + width - 1; position >= count; position--) {
+                buf[position] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            count += width;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+            }
+        }
+    }
+}
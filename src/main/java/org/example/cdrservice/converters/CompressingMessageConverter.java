@@ -0,0 +1,95 @@
+package org.example.cdrservice.converters;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.postprocessor.AbstractDeflaterPostProcessor;
+import org.springframework.amqp.support.postprocessor.DeflaterPostProcessor;
+import org.springframework.amqp.support.postprocessor.DelegatingDecompressingPostProcessor;
+import org.springframework.amqp.support.postprocessor.GZipPostProcessor;
+
+/**
+ * Конвертер сообщений, сжимающий тела сообщений другого конвертера.
+ * <p>
+ * Сообщение сжимается выбранным алгоритмом, только если его тело не меньше порога: небольшие пакеты
+ * почти не выигрывают от сжатия, но платят за него процессорным временем. Алгоритм записывается
+ * в заголовок {@code content_encoding}, по которому получатели определяют, что тело сжато.
+ * Входящие сообщения со сжатым телом ({@code gzip}, {@code deflate}, {@code zip}) распаковываются
+ * до передачи исходному конвертеру независимо от настроек сжатия.
+ * </p>
+ */
+public class CompressingMessageConverter implements MessageConverter {
+
+    /**
+     * Алгоритм сжатия.
+     */
+    public enum Codec {
+        /**
+         * Без сжатия.
+         */
+        NONE,
+        /**
+         * gzip: совместим с большинством получателей.
+         */
+        GZIP,
+        /**
+         * deflate (zlib): тот же алгоритм без заголовка и контрольной суммы gzip, немного компактнее и быстрее.
+         */
+        DEFLATE
+    }
+
+    private final MessageConverter delegate;
+
+    private final MessagePostProcessor compressor;
+
+    private final int thresholdBytes;
+
+    private final DelegatingDecompressingPostProcessor decompressor = new DelegatingDecompressingPostProcessor();
+
+    /**
+     * @param delegate Конвертер, формирующий и разбирающее несжатые тела сообщений.
+     * @param codec Алгоритм сжатия отправляемых сообщений.
+     * @param level Уровень сжатия от 1 (быстрее) до 9 (компактнее).
+     * @param thresholdBytes Минимальный размер тела сообщения в байтах, начиная с которого оно сжимается.
+     */
+    public CompressingMessageConverter(MessageConverter delegate, Codec codec, int level, int thresholdBytes) {
+        this.delegate = delegate;
+        this.thresholdBytes = thresholdBytes;
+        this.compressor = switch (codec) {
+            case NONE -> null;
+            case GZIP -> withLevel(new GZipPostProcessor(), level);
+            case DEFLATE -> withLevel(new DeflaterPostProcessor(), level);
+        };
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        return compress(delegate.toMessage(object, messageProperties));
+    }
+
+    /**
+     * Сжимает уже сформированное сообщение по тем же правилам, что и {@link #toMessage(Object, MessageProperties)}.
+     *
+     * @param message Несжатое сообщение.
+     * @return Сжатое сообщение или исходное, если сжатие выключено или тело меньше порога.
+     */
+    public Message compress(Message message) {
+        if (compressor == null || message.getBody().length < thresholdBytes) return message;
+
+        Message compressed = compressor.postProcessMessage(message);
+        compressed.getMessageProperties().setContentLength(compressed.getBody().length);
+        return compressed;
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        return delegate.fromMessage(decompressor.postProcessMessage(message));
+    }
+
+    private static MessagePostProcessor withLevel(AbstractDeflaterPostProcessor compressor, int level) {
+        compressor.setLevel(level);
+        return compressor;
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.cdrservice.converters;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import org.example.cdrservice.entitites.ConsumedStatus;
+
+/**
+ * Преобразует статус обработки CDR в числовой код {@link ConsumedStatus#getCode()} для столбца {@code SMALLINT}.
+ * В отличие от хранения порядкового номера, код не меняется при добавлении или перестановке констант.
+ */
+@Converter
+public class ConsumedStatusConverter implements AttributeConverter<ConsumedStatus, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(ConsumedStatus status) {
+        return (status == null) ? null : status.getCode();
+    }
+
+    @Override
+    public ConsumedStatus convertToEntityAttribute(Short code) {
+        return (code == null) ? null : ConsumedStatus.fromCode(code);
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.cdrservice.converters;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/**
+ * Преобразует MSISDN между строковым представлением в приложении и числовым столбцом {@code BIGINT} в БД.
+ * <p>
+ * MSISDN в формате E.164 состоит только из цифр, не начинается с нуля и не длиннее 15 знаков,
+ * поэтому без потерь помещается в {@code long}.
+ * </p>
+ */
+@Converter
+public class MsisdnConverter implements AttributeConverter<String, Long> {
+
+    @Override
+    public Long convertToDatabaseColumn(String msisdn) {
+        return (msisdn == null) ? null : toNumber(msisdn);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Long msisdn) {
+        return (msisdn == null) ? null : msisdn.toString();
+    }
+
+    /**
+     * Преобразует MSISDN в число.
+     *
+     * @param msisdn MSISDN в виде строки цифр.
+     * @return Числовое значение MSISDN.
+     * @throws IllegalArgumentException если строка не является MSISDN.
+     */
+    public static long toNumber(String msisdn) {
+        if (msisdn.isEmpty() || msisdn.length() > 15 || msisdn.charAt(0) == '0') {
+            throw new IllegalArgumentException("Invalid MSISDN: " + msisdn);
+        }
+        long number = 0;
+        for (int i = 0; i < msisdn.length(); i++) {
+            char digit = msisdn.charAt(i);
+            if (digit < '0' || digit > '9') throw new IllegalArgumentException("Invalid MSISDN: " + msisdn);
+            number = number * 10 + (digit - '0');
+        }
+        return number;
+    }
+}
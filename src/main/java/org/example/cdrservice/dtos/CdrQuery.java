@@ -0,0 +1,23 @@
+package org.example.cdrservice.dtos;
+
+import java.time.LocalDateTime;
+
+/**
+ * Проверенный запрос страницы CDR абонента за период.
+ *
+ * @param servicedMsisdn MSISDN обслуживаемого абонента.
+ * @param from Начало периода по времени начала звонка (включительно).
+ * @param to Конец периода по времени начала звонка (не включительно).
+ * @param afterStartDateTime Время начала последней CDR предыдущей страницы или {@code null} для первой страницы.
+ * @param afterId Идентификатор последней CDR предыдущей страницы.
+ * @param limit Максимальное количество CDR на странице.
+ */
+public record CdrQuery(
+        long servicedMsisdn,
+        LocalDateTime from,
+        LocalDateTime to,
+        LocalDateTime afterStartDateTime,
+        long afterId,
+        int limit
+) {
+}
@@ -0,0 +1,25 @@
+package org.example.cdrservice.dtos;
+
+import java.time.LocalDateTime;
+
+/**
+ * CDR в ответе REST API запроса CDR.
+ * В отличие от {@link CdrDTO} содержит идентификатор, по которому вместе со временем начала звонка
+ * запрашивается следующая страница.
+ *
+ * @param id Идентификатор записи CDR.
+ * @param callType Тип вызова (например, "01" для исходящего, "02" для входящего).
+ * @param servicedMsisdn MSISDN обслуживаемого абонента.
+ * @param otherMsisdn MSISDN другой стороны в вызове.
+ * @param startDateTime Дата и время начала вызова.
+ * @param finishDateTime Дата и время окончания вызова.
+ */
+public record CdrRecordDTO(
+        long id,
+        String callType,
+        String servicedMsisdn,
+        String otherMsisdn,
+        LocalDateTime startDateTime,
+        LocalDateTime finishDateTime
+) {
+}
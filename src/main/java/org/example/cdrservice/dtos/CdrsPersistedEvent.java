@@ -0,0 +1,12 @@
+package org.example.cdrservice.dtos;
+
+/**
+ * Событие сохранения новых CDR в БД.
+ * Публикуется генерацией в транзакции сохранения; отправка обрабатывает его после фиксации транзакции.
+ *
+ * @param count Количество сохраненных CDR.
+ */
+public record CdrsPersistedEvent(
+        int count
+) {
+}
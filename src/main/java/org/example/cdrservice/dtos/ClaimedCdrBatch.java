@@ -0,0 +1,52 @@
+package org.example.cdrservice.dtos;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Пакет CDR, захваченный экземпляром сервиса для публикации.
+ * Сами записи не загружаются: при публикации они читаются из БД потоком по идентификатору захвата.
+ *
+ * @param firstId Наименьший идентификатор CDR пакета; он же идентификатор захвата.
+ * @param lastId Наибольший идентификатор CDR пакета.
+ * @param size Количество CDR в пакете.
+ * @param oldestFinishDateTime Самое раннее время окончания звонка среди CDR пакета.
+ * @param ids Идентификаторы CDR пакета по возрастанию или {@code null}, если они не известны
+ *            (пакет перехвачен у другого экземпляра).
+ * @param confirmedShards Шарды, сообщения которых уже подтверждены брокером при прежних отправках пакета (бит i - шард i).
+ * @param confirmedShardCount Количество шардов, при котором подтверждены {@code confirmedShards}.
+ */
+public record ClaimedCdrBatch(
+        long firstId,
+        long lastId,
+        int size,
+        LocalDateTime oldestFinishDateTime,
+        List<Long> ids,
+        long confirmedShards,
+        int confirmedShardCount
+){
+
+    /**
+     * Создает описание пакета без списка идентификаторов.
+     */
+    public ClaimedCdrBatch(long firstId, long lastId, int size, LocalDateTime oldestFinishDateTime) {
+        this(firstId, lastId, size, oldestFinishDateTime, null);
+    }
+
+    /**
+     * Создает описание пакета, ни один шард которого еще не подтвержден.
+     */
+    public ClaimedCdrBatch(long firstId, long lastId, int size, LocalDateTime oldestFinishDateTime, List<Long> ids) {
+        this(firstId, lastId, size, oldestFinishDateTime, ids, 0, 0);
+    }
+
+    /**
+     * Возвращает шарды, сообщения которых уже подтверждены брокером, если с тех пор не изменилось количество шардов.
+     *
+     * @param shardCount Текущее количество шардов.
+     * @return Подтвержденные шарды (бит i - шард i) или 0, если подтверждения получены при другом количестве шардов.
+     */
+    public long confirmedShardsFor(int shardCount) {
+        return (confirmedShardCount == shardCount) ? confirmedShards : 0;
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.cdrservice.dtos;
+
+import java.time.LocalDate;
+
+/**
+ * Суточная сводка использования абонента по одному типу вызова.
+ *
+ * @param servicedMsisdn MSISDN обслуживаемого абонента.
+ * @param usageDate Сутки, в которые начались звонки.
+ * @param callType Тип вызова ("01" - исходящий, "02" - входящий).
+ * @param callCount Количество звонков.
+ * @param totalSeconds Суммарная длительность звонков в секундах.
+ */
+public record DailyUsageDTO(
+        String servicedMsisdn,
+        LocalDate usageDate,
+        String callType,
+        long callCount,
+        long totalSeconds
+) {
+}
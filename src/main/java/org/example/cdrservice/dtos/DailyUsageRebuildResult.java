@@ -0,0 +1,21 @@
+package org.example.cdrservice.dtos;
+
+import java.time.LocalDate;
+
+/**
+ * Итог пересчета суточной сводки использования по сырым CDR.
+ *
+ * @param from Первые пересчитанные сутки.
+ * @param to Сутки, следующие за последними пересчитанными.
+ * @param days Количество пересчитанных суток.
+ * @param rows Количество записанных строк сводки.
+ * @param elapsedMillis Длительность пересчета в миллисекундах.
+ */
+public record DailyUsageRebuildResult(
+        LocalDate from,
+        LocalDate to,
+        int days,
+        long rows,
+        long elapsedMillis
+) {
+}
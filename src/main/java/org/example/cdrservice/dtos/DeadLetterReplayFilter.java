@@ -0,0 +1,41 @@
+package org.example.cdrservice.dtos;
+
+import java.time.LocalDateTime;
+
+/**
+ * Фильтр CDR при повторной отправке из очереди недоставленных сообщений.
+ * Незаданные условия не ограничивают выборку.
+ *
+ * @param msisdn MSISDN обслуживаемого абонента или {@code null}.
+ * @param from Начало окна по времени начала звонка (включительно) или {@code null}.
+ * @param to Конец окна по времени начала звонка (не включительно) или {@code null}.
+ */
+public record DeadLetterReplayFilter(
+        String msisdn,
+        LocalDateTime from,
+        LocalDateTime to
+){
+    /**
+     * Фильтр, пропускающий все CDR.
+     */
+    public static final DeadLetterReplayFilter NONE = new DeadLetterReplayFilter(null, null, null);
+
+    /**
+     * @return {@code true}, если фильтр не задает ни одного условия.
+     */
+    public boolean isEmpty() {
+        return msisdn == null && from == null && to == null;
+    }
+
+    /**
+     * Проверяет, удовлетворяет ли CDR всем заданным условиям.
+     *
+     * @param cdr Проверяемая CDR.
+     * @return {@code true}, если CDR проходит фильтр.
+     */
+    public boolean matches(CdrDTO cdr) {
+        return (msisdn == null || msisdn.equals(cdr.servicedMsisdn()))
+                && (from == null || !cdr.startDateTime().isBefore(from))
+                && (to == null || cdr.startDateTime().isBefore(to));
+    }
+}
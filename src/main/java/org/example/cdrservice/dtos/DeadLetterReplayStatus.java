@@ -0,0 +1,49 @@
+package org.example.cdrservice.dtos;
+
+import java.time.LocalDateTime;
+
+/**
+ * Состояние повторной отправки CDR из очереди недоставленных сообщений.
+ *
+ * @param state Состояние повторной отправки.
+ * @param filter Фильтр CDR последнего запуска или {@code null}, если запусков не было.
+ * @param maxRate Максимальная скорость отправки в сообщениях в секунду.
+ * @param startedAt Время запуска или {@code null}.
+ * @param finishedAt Время завершения или {@code null}, если запуск не завершен.
+ * @param totalMessages Количество сообщений в очереди недоставленных сообщений на момент запуска.
+ * @param messagesRead Количество прочитанных из очереди сообщений.
+ * @param messagesReplayed Количество сообщений, отправленных в основной обменник CDR.
+ * @param cdrsReplayed Количество отправленных в основной обменник CDR.
+ * @param cdrsRetained Количество CDR, не прошедших фильтр и возвращенных в очередь недоставленных сообщений.
+ * @param messagesRetained Количество сообщений, возвращенных в очередь недоставленных сообщений без изменений,
+ *                         потому что их не удалось разобрать.
+ * @param error Описание ошибки для состояния {@link State#FAILED} или {@code null}.
+ */
+public record DeadLetterReplayStatus(
+        State state,
+        DeadLetterReplayFilter filter,
+        double maxRate,
+        LocalDateTime startedAt,
+        LocalDateTime finishedAt,
+        long totalMessages,
+        long messagesRead,
+        long messagesReplayed,
+        long cdrsReplayed,
+        long cdrsRetained,
+        long messagesRetained,
+        String error
+){
+    public enum State {
+        /**
+         * Повторная отправка еще не запускалась.
+         */
+        IDLE,
+        RUNNING,
+        /**
+         * Прочитаны все сообщения, находившиеся в очереди на момент запуска.
+         */
+        COMPLETED,
+        CANCELLED,
+        FAILED
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.cdrservice.dtos;
+
+import java.time.LocalDateTime;
+
+/**
+ * Проекция неопубликованной CDR, еще не захваченной для публикации.
+ * Используется, чтобы захватить пакет, не загружая сами записи.
+ */
+public interface UnclaimedCdr {
+
+    /**
+     * @return Идентификатор CDR.
+     */
+    Long getId();
+
+    /**
+     * @return Время окончания звонка.
+     */
+    LocalDateTime getFinishDateTime();
+}
@@ -5,6 +5,9 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.example.cdrservice.converters.CallTypeConverter;
+import org.example.cdrservice.converters.ConsumedStatusConverter;
+import org.example.cdrservice.converters.MsisdnConverter;
 
 import java.time.LocalDateTime;
 
@@ -15,6 +18,10 @@ import java.time.LocalDateTime;
  * такой как телефонный звонок. Включает тип вызова, участвующих абонентов,
  * время начала и окончания, а также статус обработки.
  * </p>
+ * <p>
+ * Тип вызова, MSISDN и статус хранятся в компактных числовых столбцах и преобразуются
+ * конвертерами из пакета {@code converters}, поэтому в приложении и в сообщениях их представление не меняется.
+ * </p>
  *
  * @author Сервис роуминговой агрегации
  * @since 1.0
@@ -27,31 +34,47 @@ import java.time.LocalDateTime;
 @Builder
 public class Cdr {
 
+    /**
+     * Имя последовательности, из которой выделяются идентификаторы CDR.
+     */
+    public static final String ID_SEQUENCE_NAME = "cdrs_seq";
+
+    /**
+     * Размер блока идентификаторов, выделяемого за одно обращение к последовательности.
+     * Должен совпадать с шагом последовательности {@code cdrs_seq}.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     /**
      * Уникальный идентификатор записи CDR.
      * <p>
-     * Автоматически генерируется базой данных при сохранении.
+     * Выделяется из последовательности {@code cdrs_seq} блоками по {@link #ID_ALLOCATION_SIZE}
+     * (оптимизатор pooled), что позволяет Hibernate объединять вставки в JDBC-пакеты.
      * </p>
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE_NAME)
+    @SequenceGenerator(name = ID_SEQUENCE_NAME, sequenceName = ID_SEQUENCE_NAME, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
 
     /**
      * Тип вызова.
      */
+    @Convert(converter = CallTypeConverter.class)
     @Column(name = "call_type", nullable = false)
     private String callType;
 
     /**
      * MSISDN (номер телефона) обслуживаемого абонента или абонента, которому выставляется счет за этот вызов.
      */
+    @Convert(converter = MsisdnConverter.class)
     @Column(name = "serviced_msisdn", nullable = false)
     private String servicedMsisdn;
 
     /**
      * MSISDN (номер телефона) другой стороны, участвующей в вызове.
      */
+    @Convert(converter = MsisdnConverter.class)
     @Column(name = "other_msisdn", nullable = false)
     private String otherMsisdn;
 
@@ -70,7 +93,7 @@ public class Cdr {
     /**
      * Статус обработки этой CDR (например, NEW, CONSUMED).
      */
-    @Enumerated(EnumType.STRING)
+    @Convert(converter = ConsumedStatusConverter.class)
     @Column(name = "consumed_status", nullable = false)
     private ConsumedStatus consumedStatus;
 
@@ -0,0 +1,77 @@
+package org.example.cdrservice.entitites;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Сущность, описывающая захват (claim) пакета CDR экземпляром сервиса для публикации.
+ * <p>
+ * Записи пакета ссылаются на захват столбцом {@code cdrs.publish_claim_id}. Захваченный пакет публикует только
+ * его владелец, пока не истекла аренда (lease). После успешной публикации захват удаляется. Если владелец не успел
+ * завершить публикацию (например, аварийно остановился), после истечения аренды пакет может захватить другой экземпляр.
+ * </p>
+ *
+ * @author Сервис роуминговой агрегации
+ * @since 1.0
+ */
+@Entity
+@Table(name = "cdr_publish_claims")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CdrPublishClaim {
+
+    /**
+     * Наименьший идентификатор CDR пакета. Пакеты не пересекаются, поэтому он же является ключом захвата.
+     */
+    @Id
+    @Column(name = "first_id")
+    private Long firstId;
+
+    /**
+     * Наибольший идентификатор CDR пакета. Между {@code firstId} и {@code lastId} могут быть записи других пакетов.
+     */
+    @Column(name = "last_id", nullable = false)
+    private Long lastId;
+
+    /**
+     * Количество CDR пакета.
+     */
+    @Column(name = "cdr_count", nullable = false)
+    private Integer cdrCount;
+
+    /**
+     * Самое раннее время окончания звонка среди CDR пакета.
+     */
+    @Column(name = "oldest_finish_date_time", nullable = false)
+    private LocalDateTime oldestFinishDateTime;
+
+    /**
+     * Шарды пакета, сообщения которых уже подтверждены брокером при прежних отправках (бит i - шард i).
+     */
+    @Column(name = "confirmed_shards", nullable = false)
+    private Long confirmedShards;
+
+    /**
+     * Количество шардов, при котором подтверждены шарды {@code confirmedShards}.
+     */
+    @Column(name = "confirmed_shard_count", nullable = false)
+    private Integer confirmedShardCount;
+
+    /**
+     * Идентификатор экземпляра сервиса, владеющего захватом.
+     */
+    @Column(name = "owner", nullable = false)
+    private String owner;
+
+    /**
+     * Момент (по часам БД), после которого аренда считается истекшей.
+     */
+    @Column(name = "lease_expires_at", nullable = false)
+    private LocalDateTime leaseExpiresAt;
+
+}
@@ -1,6 +1,34 @@
 package org.example.cdrservice.entitites;
 
+/**
+ * Статус обработки CDR.
+ * Хранится в БД числовым кодом {@link #getCode()}.
+ */
 public enum ConsumedStatus {
-    NEW,
-    CONSUMED
+    NEW((short) 0),
+    CONSUMED((short) 1);
+
+    private final short code;
+
+    ConsumedStatus(short code) {
+        this.code = code;
+    }
+
+    public short getCode() {
+        return code;
+    }
+
+    /**
+     * Возвращает статус по его числовому коду.
+     *
+     * @param code Числовой код статуса.
+     * @return Статус с указанным кодом.
+     * @throws IllegalArgumentException если статуса с таким кодом нет.
+     */
+    public static ConsumedStatus fromCode(short code) {
+        for (ConsumedStatus status : values()) {
+            if (status.code == code) return status;
+        }
+        throw new IllegalArgumentException("Unknown consumed status code: " + code);
+    }
 }
@@ -0,0 +1,97 @@
+package org.example.cdrservice.repositories;
+
+import org.example.cdrservice.converters.CallTypeConverter;
+import org.example.cdrservice.converters.MsisdnConverter;
+import org.example.cdrservice.dtos.DailyUsageDTO;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Репозиторий суточной сводки использования {@code cdr_daily_usage} через JDBC.
+ * Строка сводки - количество и суммарная длительность звонков абонента одного типа за сутки.
+ */
+@Repository
+public class CdrDailyUsageRepository {
+
+    private static final String ADD_USAGE_SQL = """
+            merge into cdr_daily_usage u
+            using (values (cast(? as bigint), cast(? as date), cast(? as smallint), cast(? as bigint), cast(? as bigint)))
+                as s(serviced_msisdn, usage_date, call_type, call_count, total_seconds)
+            on u.serviced_msisdn = s.serviced_msisdn and u.usage_date = s.usage_date and u.call_type = s.call_type
+            when matched then update set call_count = u.call_count + s.call_count, total_seconds = u.total_seconds + s.total_seconds
+            when not matched then insert (serviced_msisdn, usage_date, call_type, call_count, total_seconds)
+                values (s.serviced_msisdn, s.usage_date, s.call_type, s.call_count, s.total_seconds)
+            """;
+
+    private static final String SELECT_USAGE_SQL = """
+            select serviced_msisdn, usage_date, call_type, call_count, total_seconds
+            from cdr_daily_usage where serviced_msisdn = ? and usage_date >= ? and usage_date < ?
+            order by usage_date, call_type
+            """;
+
+    private static final String DELETE_DAY_SQL = "delete from cdr_daily_usage where usage_date = ?";
+
+    private static final String INSERT_DAY_SQL = """
+            insert into cdr_daily_usage (serviced_msisdn, usage_date, call_type, call_count, total_seconds)
+            select serviced_msisdn, ?, call_type, count(*), sum(datediff('MILLISECOND', start_date_time, finish_date_time) / 1000)
+            from cdrs where start_date_time >= ? and start_date_time < ?
+            group by serviced_msisdn, call_type
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public CdrDailyUsageRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Прибавляет к сводке количество и длительность звонков одним JDBC-пакетом.
+     * Отсутствующие строки сводки создаются.
+     *
+     * @param deltas Приращения сводки; строки обновляются в порядке списка.
+     */
+    public void addUsage(List<DailyUsageDTO> deltas) {
+        jdbcTemplate.batchUpdate(ADD_USAGE_SQL, deltas, deltas.size(), (ps, delta) -> {
+            ps.setLong(1, MsisdnConverter.toNumber(delta.servicedMsisdn()));
+            ps.setDate(2, Date.valueOf(delta.usageDate()));
+            ps.setShort(3, CallTypeConverter.toCode(delta.callType()));
+            ps.setLong(4, delta.callCount());
+            ps.setLong(5, delta.totalSeconds());
+        });
+    }
+
+    /**
+     * Возвращает сводку абонента за период по первичному ключу.
+     *
+     * @param servicedMsisdn MSISDN обслуживаемого абонента.
+     * @param from Первые сутки периода (включительно).
+     * @param to Сутки, следующие за последними сутками периода (не включительно).
+     * @return Строки сводки в порядке суток и типа вызова.
+     */
+    public List<DailyUsageDTO> findUsage(long servicedMsisdn, LocalDate from, LocalDate to) {
+        return jdbcTemplate.query(SELECT_USAGE_SQL, (rs, rowNum) -> new DailyUsageDTO(
+                Long.toString(rs.getLong(1)),
+                rs.getObject(2, LocalDate.class),
+                CallTypeConverter.fromCode(rs.getShort(3)),
+                rs.getLong(4),
+                rs.getLong(5)
+        ), servicedMsisdn, Date.valueOf(from), Date.valueOf(to));
+    }
+
+    /**
+     * Пересчитывает сводку за сутки по сырым CDR, начавшимся в эти сутки.
+     *
+     * @param day Сутки.
+     * @return Количество записанных строк сводки.
+     */
+    public int rebuildDay(LocalDate day) {
+        jdbcTemplate.update(DELETE_DAY_SQL, Date.valueOf(day));
+        return jdbcTemplate.update(INSERT_DAY_SQL, Date.valueOf(day),
+                Timestamp.valueOf(day.atStartOfDay()), Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+    }
+}
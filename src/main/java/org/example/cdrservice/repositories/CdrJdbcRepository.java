@@ -0,0 +1,188 @@
+package org.example.cdrservice.repositories;
+
+import org.example.cdrservice.converters.CallTypeConverter;
+import org.example.cdrservice.converters.MsisdnConverter;
+import jakarta.persistence.EntityManagerFactory;
+import org.example.cdrservice.entitites.Cdr;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Репозиторий для массовых операций с таблицей {@code cdrs} через JDBC.
+ * Используется там, где накладные расходы JPA (управляемые сущности, вставка по одной строке)
+ * неприемлемы, например при массовом заполнении БД историческими данными
+ * при публикации пакетов CDR прямо из результата запроса или при потоковой выдаче CDR через REST API.
+ */
+@Repository
+public class CdrJdbcRepository {
+
+    private static final String INSERT_CDR_SQL = """
+            insert into cdrs (id, call_type, serviced_msisdn, other_msisdn, start_date_time, finish_date_time, consumed_status)
+            values (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String SELECT_CLAIM_SQL = """
+            select call_type, serviced_msisdn, other_msisdn, start_date_time, finish_date_time
+            from cdrs where consumed_status = 0 and publish_claim_id = ? order by id
+            """;
+
+    private static final String SELECT_SUBSCRIBER_PAGE_SQL = """
+            select id, call_type, serviced_msisdn, other_msisdn, start_date_time, finish_date_time
+            from cdrs where serviced_msisdn = ? and start_date_time >= ? and start_date_time < ?
+            order by start_date_time, id limit ?
+            """;
+
+    private static final String SELECT_SUBSCRIBER_PAGE_AFTER_SQL = """
+            select id, call_type, serviced_msisdn, other_msisdn, start_date_time, finish_date_time
+            from cdrs where serviced_msisdn = ? and start_date_time >= ? and start_date_time < ?
+            and (start_date_time > ? or id > ?)
+            order by start_date_time, id limit ?
+            """;
+
+    private static final String SELECT_SUBSCRIBER_PERIOD_SQL = """
+            select id, call_type, serviced_msisdn, other_msisdn, start_date_time, finish_date_time
+            from cdrs where serviced_msisdn = ? and start_date_time >= ? and start_date_time < ?
+            order by start_date_time, id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Запрос очередного значения последовательности {@code cdrs_seq} на диалекте текущей СУБД.
+     */
+    private final String nextIdBlockSql;
+
+    public CdrJdbcRepository(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.nextIdBlockSql = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect().getSequenceSupport()
+                .getSequenceNextValString(Cdr.ID_SEQUENCE_NAME);
+    }
+
+    /**
+     * Вставляет записи CDR пакетами JDBC.
+     * Идентификаторы выделяются из последовательности {@code cdrs_seq} теми же блоками,
+     * что и у Hibernate, и записываются в переданные объекты.
+     *
+     * @param cdrs Записи для вставки.
+     * @param batchSize Максимальное количество строк в одном JDBC-пакете.
+     */
+    public void batchInsert(List<Cdr> cdrs, int batchSize) {
+        assignIds(cdrs);
+        insert(cdrs, batchSize);
+    }
+
+    /**
+     * Вставляет записи CDR с уже назначенными идентификаторами пакетами JDBC.
+     *
+     * @param cdrs Записи для вставки.
+     * @param batchSize Максимальное количество строк в одном JDBC-пакете.
+     */
+    public void insert(List<Cdr> cdrs, int batchSize) {
+        jdbcTemplate.batchUpdate(INSERT_CDR_SQL, cdrs, batchSize, (ps, cdr) -> {
+            ps.setLong(1, cdr.getId());
+            ps.setShort(2, CallTypeConverter.toCode(cdr.getCallType()));
+            ps.setLong(3, MsisdnConverter.toNumber(cdr.getServicedMsisdn()));
+            ps.setLong(4, MsisdnConverter.toNumber(cdr.getOtherMsisdn()));
+            ps.setTimestamp(5, Timestamp.valueOf(cdr.getStartDateTime()));
+            ps.setTimestamp(6, Timestamp.valueOf(cdr.getFinishDateTime()));
+            ps.setShort(7, cdr.getConsumedStatus().getCode());
+        });
+    }
+
+    /**
+     * Построчно передает CDR захваченного для публикации пакета обработчику, не создавая сущностей.
+     * Записи выбираются по идентификатору захвата, поэтому в пакет не попадают записи, зафиксированные
+     * внутри его диапазона идентификаторов после захвата.
+     * Столбцы строки: 1 - {@code call_type}, 2 - {@code serviced_msisdn}, 3 - {@code other_msisdn},
+     * 4 - {@code start_date_time}, 5 - {@code finish_date_time}.
+     *
+     * @param claimId Идентификатор захвата.
+     * @param rowHandler Обработчик, вызываемый для каждой строки в порядке возрастания {@code id}.
+     */
+    public void streamClaim(long claimId, RowCallbackHandler rowHandler) {
+        jdbcTemplate.query(SELECT_CLAIM_SQL, rowHandler, claimId);
+    }
+
+    /**
+     * Построчно передает обработчику страницу CDR абонента за период в порядке {@code (start_date_time, id)},
+     * читая только индекс {@code cdrs_serviced_msisdn_start_date_time_idx} и строки страницы.
+     * Следующая страница запрашивается с {@code afterStartDateTime} и {@code afterId} последней строки предыдущей.
+     * Столбцы строки: 1 - {@code id}, 2 - {@code call_type}, 3 - {@code serviced_msisdn}, 4 - {@code other_msisdn},
+     * 5 - {@code start_date_time}, 6 - {@code finish_date_time}.
+     *
+     * @param servicedMsisdn MSISDN обслуживаемого абонента.
+     * @param from Начало периода по времени начала звонка (включительно).
+     * @param to Конец периода по времени начала звонка (не включительно).
+     * @param afterStartDateTime Время начала последней CDR предыдущей страницы или {@code null} для первой страницы.
+     * @param afterId Идентификатор последней CDR предыдущей страницы; учитывается вместе с {@code afterStartDateTime}.
+     * @param limit Максимальное количество строк страницы.
+     * @param rowHandler Обработчик, вызываемый для каждой строки.
+     */
+    public void streamSubscriberPage(long servicedMsisdn, LocalDateTime from, LocalDateTime to,
+                                     LocalDateTime afterStartDateTime, long afterId, int limit,
+                                     RowCallbackHandler rowHandler) {
+        if (afterStartDateTime == null) {
+            jdbcTemplate.query(SELECT_SUBSCRIBER_PAGE_SQL, rowHandler,
+                    servicedMsisdn, Timestamp.valueOf(from), Timestamp.valueOf(to), limit);
+            return;
+        }
+        LocalDateTime lowerBound = afterStartDateTime.isAfter(from) ? afterStartDateTime : from;
+        jdbcTemplate.query(SELECT_SUBSCRIBER_PAGE_AFTER_SQL, rowHandler,
+                servicedMsisdn, Timestamp.valueOf(lowerBound), Timestamp.valueOf(to),
+                Timestamp.valueOf(afterStartDateTime), afterId, limit);
+    }
+
+    /**
+     * Построчно передает обработчику все CDR абонента за период в порядке {@code (start_date_time, id)}
+     * через однонаправленный курсор только для чтения, получая строки от БД порциями по {@code fetchSize}.
+     * Столбцы строки те же, что и у {@link #streamSubscriberPage}.
+     *
+     * @param servicedMsisdn MSISDN обслуживаемого абонента.
+     * @param from Начало периода по времени начала звонка (включительно).
+     * @param to Конец периода по времени начала звонка (не включительно).
+     * @param fetchSize Количество строк, получаемых от БД за одно обращение.
+     * @param rowHandler Обработчик, вызываемый для каждой строки.
+     */
+    public void streamSubscriberPeriod(long servicedMsisdn, LocalDateTime from, LocalDateTime to, int fetchSize,
+                                       RowCallbackHandler rowHandler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_SUBSCRIBER_PERIOD_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            statement.setLong(1, servicedMsisdn);
+            statement.setTimestamp(2, Timestamp.valueOf(from));
+            statement.setTimestamp(3, Timestamp.valueOf(to));
+            return statement;
+        }, rowHandler);
+    }
+
+    /**
+     * Назначает записям идентификаторы из последовательности {@code cdrs_seq}.
+     * Запрос к последовательности строится диалектом Hibernate, поэтому не зависит от СУБД.
+     * Как и оптимизатор pooled в Hibernate, трактует очередное значение последовательности
+     * как верхнюю границу блока из {@link Cdr#ID_ALLOCATION_SIZE} идентификаторов,
+     * поэтому блоки JDBC и JPA никогда не пересекаются.
+     *
+     * @param cdrs Записи, которым назначаются идентификаторы.
+     */
+    public void assignIds(List<Cdr> cdrs) {
+        long nextId = 0;
+        long blockEnd = -1;
+        for (Cdr cdr : cdrs) {
+            if (nextId > blockEnd) {
+                blockEnd = jdbcTemplate.queryForObject(nextIdBlockSql, Long.class);
+                nextId = blockEnd - Cdr.ID_ALLOCATION_SIZE + 1;
+            }
+            cdr.setId(nextId++);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.cdrservice.repositories;
+
+import org.example.cdrservice.entitites.CdrPublishClaim;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Репозиторий Spring Data JPA для сущностей {@link CdrPublishClaim}.
+ * Все сроки аренды вычисляются по часам БД, чтобы расхождение часов экземпляров не влияло на протокол захвата.
+ */
+public interface CdrPublishClaimRepository extends JpaRepository<CdrPublishClaim, Long> {
+
+    /**
+     * Находит и блокирует захват с истекшей арендой.
+     * Захваты, уже заблокированные другими экземплярами, пропускаются ({@code SKIP LOCKED}).
+     *
+     * @return Захват с истекшей арендой или {@link Optional#empty()}, если таких нет.
+     */
+    @Query(value = "select * from cdr_publish_claims where lease_expires_at < localtimestamp order by first_id limit 1 for update skip locked", nativeQuery = true)
+    Optional<CdrPublishClaim> lockFirstExpired();
+
+    /**
+     * Создает захват пакета CDR.
+     *
+     * @param firstId Наименьший идентификатор CDR пакета.
+     * @param lastId Наибольший идентификатор CDR пакета.
+     * @param cdrCount Количество CDR пакета.
+     * @param oldestFinishDateTime Самое раннее время окончания звонка среди CDR пакета.
+     * @param owner Идентификатор экземпляра-владельца.
+     * @param leaseSeconds Длительность аренды в секундах.
+     */
+    @Modifying
+    @Query(value = """
+            insert into cdr_publish_claims (first_id, last_id, cdr_count, oldest_finish_date_time, owner, lease_expires_at)
+            values (:firstId, :lastId, :cdrCount, :oldestFinishDateTime, :owner, dateadd(second, :leaseSeconds, localtimestamp))
+            """, nativeQuery = true)
+    void insertClaim(@Param("firstId") long firstId, @Param("lastId") long lastId, @Param("cdrCount") int cdrCount,
+                     @Param("oldestFinishDateTime") LocalDateTime oldestFinishDateTime,
+                     @Param("owner") String owner, @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * Передает захват новому владельцу и продлевает аренду.
+     *
+     * @param firstId Наименьший идентификатор CDR пакета.
+     * @param owner Идентификатор нового владельца.
+     * @param leaseSeconds Длительность аренды в секундах.
+     * @return Количество обновленных строк.
+     */
+    @Modifying
+    @Query(value = "update cdr_publish_claims set owner = :owner, lease_expires_at = dateadd(second, :leaseSeconds, localtimestamp) where first_id = :firstId", nativeQuery = true)
+    int takeOver(@Param("firstId") long firstId, @Param("owner") String owner, @Param("leaseSeconds") long leaseSeconds);
+
+    /**
+     * Немедленно завершает аренду захвата, чтобы пакет мог повторно захватить любой экземпляр.
+     *
+     * @param firstId Наименьший идентификатор CDR пакета.
+     * @param owner Идентификатор текущего владельца.
+     * @return Количество обновленных строк (0, если захват уже принадлежит другому экземпляру).
+     */
+    @Modifying
+    @Query(value = "update cdr_publish_claims set lease_expires_at = dateadd(second, -1, localtimestamp) where first_id = :firstId and owner = :owner", nativeQuery = true)
+    int expire(@Param("firstId") long firstId, @Param("owner") String owner);
+
+    /**
+     * Немедленно завершает аренду захвата и запоминает шарды пакета, сообщения которых уже подтверждены брокером,
+     * чтобы при повторной отправке пакета они были пропущены.
+     *
+     * @param firstId Наименьший идентификатор CDR пакета.
+     * @param owner Идентификатор текущего владельца.
+     * @param confirmedShards Подтвержденные шарды (бит i - шард i), включая подтвержденные при прежних отправках.
+     * @param shardCount Количество шардов, при котором шарды подтверждены.
+     * @return Количество обновленных строк (0, если захват уже принадлежит другому экземпляру).
+     */
+    @Modifying
+    @Query(value = """
+            update cdr_publish_claims set lease_expires_at = dateadd(second, -1, localtimestamp),
+                confirmed_shards = :confirmedShards, confirmed_shard_count = :shardCount
+            where first_id = :firstId and owner = :owner
+            """, nativeQuery = true)
+    int expireWithConfirmedShards(@Param("firstId") long firstId, @Param("owner") String owner,
+                                  @Param("confirmedShards") long confirmedShards, @Param("shardCount") int shardCount);
+
+    /**
+     * Удаляет захват после успешной публикации пакета.
+     *
+     * @param firstId Наименьший идентификатор CDR пакета.
+     * @param owner Идентификатор текущего владельца.
+     * @return Количество удаленных строк (0, если захват уже принадлежит другому экземпляру).
+     */
+    @Modifying
+    @Query(value = "delete from cdr_publish_claims where first_id = :firstId and owner = :owner", nativeQuery = true)
+    int deleteOwned(@Param("firstId") long firstId, @Param("owner") String owner);
+}
@@ -1,8 +1,9 @@
 package org.example.cdrservice.repositories;
 
+import org.example.cdrservice.dtos.UnclaimedCdr;
 import org.example.cdrservice.entitites.Cdr;
-import org.example.cdrservice.entitites.ConsumedStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -11,29 +12,55 @@ import java.util.List;
 /**
  * Репозиторий Spring Data JPA для сущностей {@link Cdr}.
  * Предоставляет CRUD-операции и пользовательские запросы для доступа к данным CDR.
+ * <p>
+ * Запросы исходящего буфера выполняются по индексу {@code cdrs_consumed_status_publish_claim_id_id_idx}
+ * и читают только неопубликованные записи, поэтому их стоимость не зависит от размера таблицы.
+ * </p>
  */
 public interface CdrRepository extends JpaRepository<Cdr,Long> {
 
     /**
-     * Извлекает ограниченное количество первых непотребленных CDR.
-     * Непотребленные записи - это те, у которых {@code consumed_status} равен 'NEW'.
-     * Записи обычно неявно упорядочены по времени их вставки или релевантной временной метке.
+     * Находит и блокирует первые по идентификатору неопубликованные CDR, еще не захваченные для публикации.
+     * Записи, уже заблокированные захватом другого экземпляра, пропускаются ({@code SKIP LOCKED}),
+     * а записи незавершенных транзакций не видны и будут выбраны после их фиксации.
      *
-     * @param limit Максимальное количество извлекаемых CDR.
-     * @return Список первых {@code limit} непотребленных сущностей {@link Cdr}.
+     * @param limit Максимальное количество CDR.
+     * @return Не более {@code limit} CDR в порядке возрастания идентификатора.
      */
-    @Query(value = "select * from cdrs where consumed_status='NEW' limit :limit",nativeQuery = true)
-    List<Cdr> findFirstNonConsumedRecords(@Param("limit") int limit);
+    @Query(value = """
+            select id, finish_date_time as finishDateTime from cdrs
+            where consumed_status = 0 and publish_claim_id is null
+            order by id limit :limit for update skip locked
+            """, nativeQuery = true)
+    List<UnclaimedCdr> lockUnclaimed(@Param("limit") int limit);
 
+    /**
+     * Отмечает CDR как захваченные для публикации.
+     *
+     * @param claimId Идентификатор захвата.
+     * @param ids Идентификаторы CDR, заблокированных {@link #lockUnclaimed(int)}.
+     * @return Количество обновленных записей.
+     */
+    @Modifying
+    @Query(value = "update cdrs set publish_claim_id = :claimId where id in (:ids)", nativeQuery = true)
+    int claim(@Param("claimId") long claimId, @Param("ids") List<Long> ids);
+
+    /**
+     * Считает неопубликованные CDR, еще не захваченные для публикации, но не более {@code limit}.
+     *
+     * @param limit Наибольшее возвращаемое значение.
+     * @return Количество незахваченных CDR, ограниченное {@code limit}.
+     */
+    @Query(value = "select count(*) from (select id from cdrs where consumed_status = 0 and publish_claim_id is null limit :limit)", nativeQuery = true)
+    long countUnclaimed(@Param("limit") long limit);
 
     /**
-     * Подсчитывает общее количество непотребленных CDR.
-     * Непотребленные записи - это те, у которых {@code consumed_status} равен 'NEW'.
+     * Помечает CDR захвата как потребленные и снимает с них захват одним оператором {@code UPDATE}.
      *
-     * @return Общее количество непотребленных CDR в виде {@link Integer}.
+     * @param claimId Идентификатор захвата.
+     * @return Количество обновленных записей.
      */
-    @Query(value = "select COUNT(*) from cdrs where consumed_status='NEW'",nativeQuery = true)
-    Integer findNumberOfNonConsumedRows();
-    //@Query("select * from Cdr c")
-    //void findFirst10SortedWithDateTime();
+    @Modifying
+    @Query(value = "update cdrs set consumed_status = 1, publish_claim_id = null where consumed_status = 0 and publish_claim_id = :claimId", nativeQuery = true)
+    int markClaimConsumed(@Param("claimId") long claimId);
 }
@@ -0,0 +1,72 @@
+package org.example.cdrservice.repositories;
+
+import org.example.cdrservice.converters.MsisdnConverter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.function.LongConsumer;
+
+/**
+ * Репозиторий для массовых операций с таблицей {@code subscribers} через JDBC.
+ * Используется для загрузки справочника абонентов и массового создания абонентов,
+ * когда создание сущности на каждого абонента неприемлемо.
+ */
+@Repository
+public class SubscriberJdbcRepository {
+
+    private static final String SELECT_MSISDNS_SQL = "select msisdn from subscribers order by id";
+
+    private static final String INSERT_SUBSCRIBER_SQL = "insert into subscribers (msisdn) values (?)";
+
+    private static final String SELECT_VERSION_SQL = "select count(*), coalesce(max(id), 0) from subscribers";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SubscriberJdbcRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Построчно передает MSISDN всех абонентов в порядке идентификаторов, не создавая сущностей.
+     *
+     * @param msisdnConsumer Получатель MSISDN в виде чисел.
+     */
+    public void streamMsisdns(LongConsumer msisdnConsumer) {
+        jdbcTemplate.query(SELECT_MSISDNS_SQL, rs -> {
+            msisdnConsumer.accept(MsisdnConverter.toNumber(rs.getString(1)));
+        });
+    }
+
+    /**
+     * Вставляет абонентов одним JDBC-пакетом.
+     *
+     * @param msisdns MSISDN абонентов.
+     * @param count Количество вставляемых абонентов с начала массива.
+     */
+    public void batchInsert(long[] msisdns, int count) {
+        jdbcTemplate.batchUpdate(INSERT_SUBSCRIBER_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ps.setString(1, Long.toString(msisdns[i]));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Возвращает версию набора абонентов: количество строк и наибольший идентификатор.
+     * Версия меняется при добавлении и удалении абонентов.
+     *
+     * @return Массив из количества абонентов и наибольшего идентификатора.
+     */
+    public long[] findVersion() {
+        return jdbcTemplate.queryForObject(SELECT_VERSION_SQL, (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)});
+    }
+}
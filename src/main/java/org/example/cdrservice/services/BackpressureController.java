@@ -0,0 +1,184 @@
+package org.example.cdrservice.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cdrservice.utils.CdrSharding;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.connection.ConnectionBlockedEvent;
+import org.springframework.amqp.rabbit.connection.ConnectionUnblockedEvent;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Properties;
+
+/**
+ * Контроллер обратного давления (backpressure) брокера.
+ * <p>
+ * Периодически опрашивает глубину и число потребителей очередей CDR через {@link AmqpAdmin#getQueueProperties(String)}
+ * и вычисляет допустимую долю скорости публикации от 0 (пауза) до 1 (полная скорость):
+ * </p>
+ * <ul>
+ *     <li>пока глубина очереди не больше {@code const.backpressure.low-watermark}, скорость не ограничивается;</li>
+ *     <li>между нижней и верхней границей скорость уменьшается линейно;</li>
+ *     <li>при глубине не меньше {@code const.backpressure.high-watermark}, а также если у очереди выше нижней
+ *     границы нет потребителей, публикация приостанавливается.</li>
+ * </ul>
+ * <p>
+ * При нескольких шардах учитывается самая загруженная очередь. Если брокер заблокировал соединение
+ * (flow control по памяти или диску), публикация приостанавливается до его разблокировки.
+ * Доля скорости используется и при отправке пакетов ({@link CdrConsumerService}), и при сохранении
+ * сгенерированных CDR ({@link CdrProducerService}), поэтому генерация замедляется вместе с публикацией.
+ * </p>
+ */
+@Slf4j
+@Service
+public class BackpressureController {
+
+    /**
+     * Включает ограничение скорости по состоянию очередей.
+     * Настраивается через свойство {@code const.backpressure.enabled}.
+     */
+    @Value("${const.backpressure.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Глубина очереди, до которой скорость публикации не ограничивается.
+     * Настраивается через свойство {@code const.backpressure.low-watermark}.
+     */
+    @Value("${const.backpressure.low-watermark:10000}")
+    private long lowWatermark;
+
+    /**
+     * Глубина очереди, начиная с которой публикация приостанавливается.
+     * Настраивается через свойство {@code const.backpressure.high-watermark}.
+     */
+    @Value("${const.backpressure.high-watermark:50000}")
+    private long highWatermark;
+
+    @Value("${const.rabbitmq.cdr.CDR_QUEUE_NAME}")
+    private String CDR_QUEUE_NAME;
+
+    @Value("${const.rabbitmq.cdr.shard-count:1}")
+    private int shardCount;
+
+    private final AmqpAdmin amqpAdmin;
+
+    /**
+     * Доля скорости публикации по последнему опросу очередей.
+     */
+    private volatile double queueRate = 1.0;
+
+    private volatile boolean brokerBlocked;
+
+    private volatile long queueDepth;
+
+    private volatile long consumerCount;
+
+    public BackpressureController(AmqpAdmin amqpAdmin, MeterRegistry meterRegistry) {
+        this.amqpAdmin = amqpAdmin;
+        Gauge.builder("cdr.backpressure.rate", this, BackpressureController::getPublishRate)
+                .description("Allowed share of the CDR publish rate, from 0 (paused) to 1 (full speed)")
+                .register(meterRegistry);
+        Gauge.builder("cdr.backpressure.queue.depth", this, BackpressureController::getQueueDepth)
+                .description("Depth of the most loaded CDR queue at the last sample")
+                .register(meterRegistry);
+        Gauge.builder("cdr.backpressure.consumers", this, BackpressureController::getConsumerCount)
+                .description("Number of consumers of the most loaded CDR queue at the last sample")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Опрашивает очереди CDR и пересчитывает долю скорости публикации.
+     * Этот метод запланирован для запуска с фиксированной скоростью, определенной {@code const.backpressure.sample-rate}.
+     * Если брокер недоступен или очередь еще не создана, сохраняется доля по предыдущему опросу.
+     */
+    @Scheduled(fixedRateString = "${const.backpressure.sample-rate:1000}")
+    public void sample() {
+        if (!enabled) return;
+        double rate = 1.0;
+        long depth = 0;
+        long consumers = 0;
+        for (int shard = 0; shard < shardCount; shard++) {
+            String queueName = CdrSharding.queueName(CDR_QUEUE_NAME, shard, shardCount);
+            Properties properties;
+            try {
+                properties = amqpAdmin.getQueueProperties(queueName);
+            } catch (AmqpException e) {
+                log.debug("Failed to sample depth of queue {}, keeping publish rate {}", queueName, queueRate, e);
+                return;
+            }
+            if (properties == null) return;
+
+            long messages = ((Number) properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT)).longValue();
+            long queueConsumers = ((Number) properties.get(RabbitAdmin.QUEUE_CONSUMER_COUNT)).longValue();
+            double shardRate = rateFor(messages, queueConsumers);
+            if (shard == 0 || shardRate < rate || (shardRate == rate && messages > depth)) {
+                rate = shardRate;
+                depth = messages;
+                consumers = queueConsumers;
+            }
+        }
+
+        if (rate == 0.0 && queueRate > 0.0) {
+            log.warn("CDR queue depth {} with {} consumers, pausing CDR publishing", depth, consumers);
+        } else if (rate < 1.0 && queueRate == 1.0) {
+            log.info("CDR queue depth {} with {} consumers, throttling CDR publishing to {}%", depth, consumers, Math.round(rate * 100));
+        } else if (rate == 1.0 && queueRate < 1.0) {
+            log.info("CDR queue depth {} with {} consumers, resuming CDR publishing at full rate", depth, consumers);
+        }
+        queueRate = rate;
+        queueDepth = depth;
+        consumerCount = consumers;
+    }
+
+    /**
+     * Приостанавливает публикацию, когда брокер блокирует соединение (flow control).
+     *
+     * @param event Событие блокировки соединения.
+     */
+    @EventListener
+    public void onConnectionBlocked(ConnectionBlockedEvent event) {
+        log.warn("RabbitMQ blocked the connection ({}), pausing CDR publishing", event.getReason());
+        brokerBlocked = true;
+    }
+
+    /**
+     * Возобновляет публикацию после разблокировки соединения брокером.
+     *
+     * @param event Событие разблокировки соединения.
+     */
+    @EventListener
+    public void onConnectionUnblocked(ConnectionUnblockedEvent event) {
+        log.info("RabbitMQ unblocked the connection, resuming CDR publishing");
+        brokerBlocked = false;
+    }
+
+    /**
+     * Возвращает допустимую долю скорости публикации.
+     *
+     * @return Значение от 0 (публикация приостановлена) до 1 (без ограничений).
+     */
+    public double getPublishRate() {
+        if (!enabled) return 1.0;
+        return brokerBlocked ? 0.0 : queueRate;
+    }
+
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getConsumerCount() {
+        return consumerCount;
+    }
+
+    private double rateFor(long depth, long consumers) {
+        if (depth <= lowWatermark) return 1.0;
+        if (depth >= highWatermark || consumers == 0) return 0.0;
+        return 1.0 - (double) (depth - lowWatermark) / (highWatermark - lowWatermark);
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.cdrservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сервис массового заполнения таблицы {@code cdrs} историческими CDR.
+ * <p>
+ * Записывает сгенерированные записи крупными JDBC-пакетами, минуя JPA,
+ * и публикует метрики количества записанных строк и скорости записи (строк в секунду).
+ * </p>
+ */
+@Service
+public class CdrBackfillService {
+
+    /**
+     * Включает режим массового заполнения исторических данных.
+     * Настраивается через свойство {@code const.backfill.enabled}.
+     */
+    @Value("${const.backfill.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * Количество строк в одном JDBC-пакете.
+     * Настраивается через свойство {@code const.backfill.batch-size}.
+     */
+    @Value("${const.backfill.batch-size:1000}")
+    private int batchSize;
+
+    /**
+     * Окно "живых" данных: CDR, завершившиеся позже чем за это время до запуска,
+     * не заполняются массово, а сохраняются в обычном темпе {@code const.scheduled.produce-cdr-rate}.
+     * Настраивается через свойство {@code const.backfill.live-window}.
+     */
+    @Value("${const.backfill.live-window:1h}")
+    private Duration liveWindow;
+
+    private final CdrJdbcRepository cdrJdbcRepository;
+
+    private final CdrDailyUsageService cdrDailyUsageService;
+
+    private final Counter backfilledRowsCounter;
+
+    /**
+     * Суммарное время записи в наносекундах, по которому считается скорость заполнения.
+     */
+    private final AtomicLong totalWriteNanos = new AtomicLong();
+
+    private final AtomicLong totalRows = new AtomicLong();
+
+    public CdrBackfillService(CdrJdbcRepository cdrJdbcRepository, CdrDailyUsageService cdrDailyUsageService,
+                              MeterRegistry meterRegistry) {
+        this.cdrJdbcRepository = cdrJdbcRepository;
+        this.cdrDailyUsageService = cdrDailyUsageService;
+        this.backfilledRowsCounter = Counter.builder("cdr.backfill.rows")
+                .description("Number of CDR rows written by bulk backfill")
+                .register(meterRegistry);
+        Gauge.builder("cdr.backfill.rows.per.second", this, CdrBackfillService::getRowsPerSecond)
+                .description("Average bulk backfill write rate")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Возвращает границу исторических данных: CDR, завершившиеся не позже нее, заполняются массово.
+     *
+     * @param startDateTime Момент запуска генерации.
+     * @return Граница исторических данных.
+     */
+    public LocalDateTime historicalBoundary(LocalDateTime startDateTime) {
+        return startDateTime.minus(liveWindow);
+    }
+
+    /**
+     * Записывает пакет CDR в БД одним JDBC-пакетом и обновляет метрики.
+     * В той же транзакции записи прибавляются к суточной сводке {@link CdrDailyUsageService}.
+     *
+     * @param cdrs Записи для записи.
+     */
+    @Transactional
+    public void backfill(List<Cdr> cdrs) {
+        if (cdrs.isEmpty()) return;
+        long startNanos = System.nanoTime();
+        cdrJdbcRepository.batchInsert(cdrs, batchSize);
+        cdrDailyUsageService.record(cdrs);
+        totalWriteNanos.addAndGet(System.nanoTime() - startNanos);
+        totalRows.addAndGet(cdrs.size());
+        backfilledRowsCounter.increment(cdrs.size());
+    }
+
+    /**
+     * Возвращает среднюю скорость массового заполнения.
+     *
+     * @return Количество строк в секунду или 0, если заполнение еще не выполнялось.
+     */
+    public double getRowsPerSecond() {
+        long nanos = totalWriteNanos.get();
+        return (nanos == 0) ? 0 : totalRows.get() * 1_000_000_000.0 / nanos;
+    }
+}
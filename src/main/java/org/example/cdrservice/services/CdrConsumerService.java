@@ -1,33 +1,113 @@
 package org.example.cdrservice.services;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.example.cdrservice.converters.CdrStreamingMessageWriter;
 import org.example.cdrservice.dtos.CdrDTO;
+import org.example.cdrservice.dtos.CdrsPersistedEvent;
+import org.example.cdrservice.dtos.ClaimedCdrBatch;
 import org.example.cdrservice.entitites.Cdr;
 import org.example.cdrservice.entitites.ConsumedStatus;
-import org.example.cdrservice.repositories.CdrRepository;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.example.cdrservice.utils.AdaptiveBatchSizer;
+import org.example.cdrservice.utils.CdrSharding;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntPredicate;
 
 /**
  * Сервис, отвечающий за потребление CDR из базы данных
  * и отправку их в очередь сообщений (RabbitMQ).
  * Периодически проверяет наличие новых CDR, обрабатывает их пакетами
- * и помечает как потребленные.
+ * и фиксирует их публикацию в исходящем буфере.
+ * <p>
+ * Пакет захватывается в исходящем буфере {@link CdrOutboxService} без загрузки записей, а тело сообщения формируется
+ * {@link CdrStreamingMessageWriter} прямо из строк JDBC-запроса по захвату, без сущностей и промежуточных списков.
+ * </p>
+ * <p>
+ * Если на фабрике соединений включены подтверждения публикации (publisher confirms),
+ * пакеты отправляются конвейером: одновременно ожидают подтверждения брокера до
+ * {@code const.publisher.confirm-window} пакетов, и публикация пакета фиксируется только после его подтверждения.
+ * </p>
+ * <p>
+ * Если {@code const.rabbitmq.cdr.shard-count} больше единицы, записи пакета распределяются по шардам
+ * {@link CdrSharding} по MSISDN обслуживаемого абонента, и для каждого непустого шарда отправляется
+ * отдельное сообщение с ключом маршрутизации {@code CDR_ROUTING_KEY.i}. Пакет считается опубликованным,
+ * только когда подтверждены сообщения всех его шардов. Если подтверждены не все шарды, подтвержденные запоминаются
+ * в захвате ({@link CdrOutboxService#release(ClaimedCdrBatch, long, int)}), и при повторной отправке пакета
+ * отправляются только остальные.
+ * </p>
+ * <p>
+ * Скорость отправки ограничивается {@link BackpressureController}: за каждый запуск накапливается кредит в долю окна,
+ * равную допустимой доле скорости, и каждый отправленный пакет расходует единицу кредита. Поэтому при росте очереди
+ * брокера отправка замедляется постепенно, а не останавливается сразу.
+ * </p>
+ * <p>
+ * При нескольких исполнителях ({@code const.publisher.workers}) шарды распределены между исполнителями:
+ * исполнитель {@code w} владеет шардами с {@code shard % workers == w}. Пакеты захватываются потоком запуска
+ * и передаются всем исполнителям-владельцам, а каждый из них кодирует и отправляет сообщения только своих шардов
+ * на собственном канале RabbitMQ в порядке захвата пакетов. Поэтому у каждого шарда ровно один канал отправки,
+ * и порядок записей абонента внутри шарда сохраняется, а кодирование и отправка разных шардов идут параллельно.
+ * Если шард один ({@code const.rabbitmq.cdr.shard-count} равен единице), пакеты целиком передаются исполнителям
+ * по очереди; тогда записи разных пакетов отправляются параллельно, и порядок записей абонента сохраняется только
+ * внутри пакета.
+ * </p>
+ * <p>
+ * Отправку выполняет отдельный поток, который будится событием {@link CdrsPersistedEvent} после фиксации
+ * новых CDR и освобождением места в окне подтверждений. Пока неопубликованные записи остаются, поток повторяет
+ * запуск с периодом {@code const.scheduled.consume-cdr-rate}, а без них БД опрашивается лишь раз
+ * в {@code const.publisher.wake-up.safety-net-interval} на случай записей, сохраненных другими экземплярами.
+ * Если пробуждение выключено ({@code const.publisher.wake-up.enabled}), отправка запускается по расписанию.
+ * </p>
+ * <p>
+ * В конвейерном режиме ({@link CdrPipelineService}) неполные пакеты отправляются без ожидания, а сообщения пакетов,
+ * все записи которых переданы через кольцевой буфер, формируются из памяти без запроса к БД.
+ * </p>
  */
 @Slf4j
 @Service
 public class CdrConsumerService {
 
     /**
-     * Количество записей CDR для извлечения и обработки в одном пакете.
-     * Настраивается через свойство {@code const.numberOfRecordsInCDR}.
+     * Максимальное время ожидания неполного пакета: если неопубликованные записи есть, но пакет текущего размера
+     * не набирается дольше этого времени, отправляется неполный пакет.
+     * Настраивается через свойство {@code const.publisher.batch.max-linger}.
      */
-    @Value("${const.numberOfRecordsInCDR}")
-    private int numberOfRecordsInCDR;
+    @Value("${const.publisher.batch.max-linger:5s}")
+    private Duration maxLinger;
 
     /**
      * Имя обменника RabbitMQ, в который будут отправляться CDR.
@@ -41,36 +121,697 @@ public class CdrConsumerService {
     @Value("${const.rabbitmq.cdr.CDR_ROUTING_KEY}")
     private String CDR_ROUTING_KEY;
 
+    /**
+     * Количество шардов (очередей) CDR.
+     * Настраивается через свойство {@code const.rabbitmq.cdr.shard-count}.
+     */
+    @Value("${const.rabbitmq.cdr.shard-count:1}")
+    private int shardCount;
+
+    /**
+     * Максимальное время ожидания подтверждения пакета брокером. Пакет без подтверждения отправляется повторно.
+     * Настраивается через свойство {@code const.publisher.confirm-timeout}.
+     */
+    @Value("${const.publisher.confirm-timeout:10s}")
+    private Duration confirmTimeout;
+
+    /**
+     * Включает запуск отправки по событиям сохранения CDR вместо опроса по расписанию.
+     * Настраивается через свойство {@code const.publisher.wake-up.enabled}.
+     */
+    @Value("${const.publisher.wake-up.enabled:true}")
+    private boolean wakeUpEnabled;
+
+    /**
+     * Максимальный интервал между запусками отправки при пробуждении по событиям, когда неопубликованных записей нет.
+     * Настраивается через свойство {@code const.publisher.wake-up.safety-net-interval}.
+     */
+    @Value("${const.publisher.wake-up.safety-net-interval:30s}")
+    private Duration safetyNetInterval;
 
-    private final CdrRepository cdrRepository;
+    /**
+     * Интервал между запусками отправки, пока неопубликованные записи остаются.
+     */
+    @Value("${const.scheduled.consume-cdr-rate}")
+    private long consumeRateMillis;
+
+    private final CdrOutboxService cdrOutboxService;
+    private final CdrJdbcRepository cdrJdbcRepository;
+    private final CdrStreamingMessageWriter cdrStreamingMessageWriter;
     private final RabbitTemplate rabbitTemplate;
 
-    public CdrConsumerService(CdrRepository cdrRepository, RabbitTemplate rabbitTemplate) {
-        this.cdrRepository = cdrRepository;
+    /**
+     * Окно пакетов, ожидающих подтверждения брокера: одно разрешение на каждый неподтвержденный пакет.
+     */
+    private final Semaphore inFlightWindow;
+
+    private final int confirmWindowSize;
+
+    private final Timer confirmLatencyTimer;
+
+    private final Timer cdrAgeTimer;
+
+    private final AdaptiveBatchSizer batchSizer;
+
+    private final BackpressureController backpressureController;
+
+    private final CdrPipelineService cdrPipelineService;
+
+    /**
+     * Записи, переданные конвейером, по идентификаторам. Пополняется и читается под монитором сервиса.
+     */
+    private final NavigableMap<Long, Cdr> pipelineCdrs = new ConcurrentSkipListMap<>();
+
+    /**
+     * Наименьший идентификатор начала пакета, захваченного в текущем запуске. Записи конвейера ниже него
+     * были зафиксированы до захвата, но не попали в пакеты этого экземпляра, то есть опубликованы или захвачены
+     * другими экземплярами, и удаляются после запуска; если это не так, запись просто будет прочитана из БД.
+     */
+    private final AtomicLong lowestClaimedFirstId = new AtomicLong(Long.MAX_VALUE);
+
+    private final int workerCount;
+
+    /**
+     * Очереди пакетов исполнителей отправки по номерам исполнителей или {@code null}, если пакеты отправляет
+     * поток запуска.
+     */
+    private final List<BlockingQueue<ShardTask>> workerQueues;
+
+    /**
+     * Потоки исполнителей отправки; запускаются при первой передаче пакета.
+     */
+    private final List<Thread> workerThreads = new ArrayList<>();
+
+    /**
+     * Исполнитель, которому будет передан следующий пакет при одном шарде. Изменяется под монитором сервиса.
+     */
+    private int nextWorker;
+
+    private final Counter pipelineBatchesCounter;
+
+    /**
+     * Поток отправки или {@code null}, если отправка запускается по расписанию.
+     */
+    private volatile Thread publisherThread;
+
+    /**
+     * Признак запроса на запуск отправки, поступившего, пока поток отправки был занят или не ожидал.
+     */
+    private final AtomicBoolean wakeUpRequested = new AtomicBoolean();
+
+    /**
+     * Накопленный кредит отправки в пакетах. Пополняется в каждом запуске на долю окна, разрешенную
+     * {@link BackpressureController}, и не превышает размер окна.
+     */
+    private double publishCredit;
+
+    /**
+     * Оценка количества незахваченных CDR на момент последнего запуска.
+     */
+    private volatile long backlog;
+
+    /**
+     * Момент ({@link System#nanoTime()}), с которого незахваченные записи ждут публикации,
+     * или {@code null}, если ожидающих записей нет.
+     */
+    private volatile Long backlogWaitingSince;
+
+    /**
+     * Поток, в котором обрабатываются подтверждения. Вынесен из потоков соединения RabbitMQ,
+     * чтобы запись в БД не задерживала прием следующих подтверждений.
+     */
+    private final ExecutorService confirmExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cdr-publish-confirms");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CdrConsumerService(CdrOutboxService cdrOutboxService,
+                              CdrJdbcRepository cdrJdbcRepository,
+                              CdrStreamingMessageWriter cdrStreamingMessageWriter,
+                              RabbitTemplate rabbitTemplate,
+                              MeterRegistry meterRegistry,
+                              BackpressureController backpressureController,
+                              CdrPipelineService cdrPipelineService,
+                              @Value("${const.publisher.confirm-window:4}") int confirmWindowSize,
+                              @Value("${const.publisher.workers:1}") int workerCount,
+                              @Value("${const.publisher.batch.min-size:${const.numberOfRecordsInCDR}}") int minBatchSize,
+                              @Value("${const.publisher.batch.max-size:1000}") int maxBatchSize,
+                              @Value("${const.publisher.batch.target-confirm-latency:50ms}") Duration targetConfirmLatency) {
+        this.cdrOutboxService = cdrOutboxService;
+        this.cdrJdbcRepository = cdrJdbcRepository;
+        this.cdrStreamingMessageWriter = cdrStreamingMessageWriter;
         this.rabbitTemplate = rabbitTemplate;
+        this.backpressureController = backpressureController;
+        this.cdrPipelineService = cdrPipelineService;
+        this.confirmWindowSize = confirmWindowSize;
+        this.workerCount = workerCount;
+        if (workerCount > 1) {
+            this.workerQueues = new ArrayList<>(workerCount);
+            for (int worker = 0; worker < workerCount; worker++) {
+                workerQueues.add(new LinkedBlockingQueue<>());
+            }
+        } else {
+            this.workerQueues = null;
+        }
+        this.inFlightWindow = new Semaphore(confirmWindowSize);
+        Gauge.builder("cdr.publish.in.flight", this, CdrConsumerService::getInFlightBatches)
+                .description("Number of CDR batches awaiting publisher confirm")
+                .register(meterRegistry);
+        Gauge.builder("cdr.publish.confirm.window", () -> confirmWindowSize)
+                .description("Maximum number of CDR batches awaiting publisher confirm")
+                .register(meterRegistry);
+        this.confirmLatencyTimer = Timer.builder("cdr.publish.confirm.latency")
+                .description("Time from sending a CDR batch to its publisher confirm")
+                .register(meterRegistry);
+        this.batchSizer = new AdaptiveBatchSizer(minBatchSize, maxBatchSize, targetConfirmLatency);
+        Gauge.builder("cdr.publish.batch.size", batchSizer, AdaptiveBatchSizer::getCurrentSize)
+                .description("Current adaptive CDR batch size")
+                .register(meterRegistry);
+        Gauge.builder("cdr.publish.backlog", this, CdrConsumerService::getBacklog)
+                .description("Estimated number of CDRs not yet claimed for publishing")
+                .register(meterRegistry);
+        this.cdrAgeTimer = Timer.builder("cdr.publish.cdr.age")
+                .description("Time from the end of the oldest call in a CDR batch to its publishing")
+                .register(meterRegistry);
+        this.pipelineBatchesCounter = Counter.builder("cdr.pipeline.batches")
+                .description("Number of CDR batches built from pipeline memory instead of a database query")
+                .register(meterRegistry);
     }
 
     /**
-     * Периодически потребляет данные CDR из базы данных и отправляет их в RabbitMQ.
+     * Запускает отправку по расписанию, если не запущен поток отправки, пробуждаемый событиями.
      * Этот метод запланирован для запуска с фиксированной скоростью, определенной {@code const.scheduled.consume-cdr-rate}.
+     */
+    @Scheduled(fixedRateString = "${const.scheduled.consume-cdr-rate}")
+    public void pollDataFromDB() {
+        if (publisherThread == null) consumeDataFromDB();
+    }
+
+    /**
+     * Потребляет данные CDR из базы данных и отправляет их в RabbitMQ.
+     * <p>
+     * Захватывает через {@link CdrOutboxService} пакеты CDR (в первую очередь пакеты с истекшей арендой,
+     * брошенные другими экземплярами), формирует из записей сообщения и отправляет их в RabbitMQ,
+     * пока в окне неподтвержденных пакетов есть место.
+     * Размер пакета пересчитывается {@link AdaptiveBatchSizer} в начале каждого запуска по очереди неопубликованных
+     * записей и задержке подтверждений. Неполный пакет отправляется, только если записи ждут публикации
+     * дольше {@code const.publisher.batch.max-linger}.
+     * Публикация пакета фиксируется (записи помечаются как {@link ConsumedStatus#CONSUMED})
+     * после положительного подтверждения брокером сообщений всех шардов пакета. При отрицательном подтверждении
+     * или возврате неотмаршрутизированного сообщения любого шарда, истечении {@code const.publisher.confirm-timeout} или ошибке отправки захват освобождается,
+     * и пакет будет отправлен повторно.
+     * </p>
+     * <p>
+     * Если подтверждения на фабрике соединений выключены, отправляется не более одного пакета за запуск,
+     * и его публикация фиксируется сразу после отправки.
+     * </p>
      * <p>
-     * Проверяет, достаточно ли непотребленных CDR (по крайней мере, {@code numberOfRecordsInCDR}).
-     * Если да, извлекает пакет CDR, преобразует их в DTO, отправляет в RabbitMQ,
-     * а затем обновляет их статус на {@link ConsumedStatus#CONSUMED} в базе данных.
+     * Количество отправляемых за запуск пакетов ограничено кредитом, который пополняется по доле скорости
+     * {@link BackpressureController#getPublishRate()}; при нулевой доле новые пакеты не отправляются.
      * </p>
      */
-    @Scheduled(fixedRateString = "${const.scheduled.consume-cdr-rate}")
-    public void consumeDataFromDB(){
-        if (cdrRepository.findNumberOfNonConsumedRows()<numberOfRecordsInCDR) return;
-        List<Cdr> consumedCdrs = cdrRepository.findFirstNonConsumedRecords(numberOfRecordsInCDR);
+    public synchronized void consumeDataFromDB(){
+        if (cdrPipelineService.isEnabled()) drainPipeline();
+        backlog = cdrOutboxService.estimateBacklog();
+        int batchSize = batchSizer.adjust(backlog);
+        long now = System.nanoTime();
+        if (backlog == 0) {
+            backlogWaitingSince = null;
+        } else if (backlogWaitingSince == null) {
+            backlogWaitingSince = now;
+        }
+        boolean flushPartial = cdrPipelineService.isEnabled()
+                || (backlogWaitingSince != null && now - backlogWaitingSince >= maxLinger.toNanos());
+
+        boolean publisherConfirms = rabbitTemplate.getConnectionFactory().isPublisherConfirms();
+        int maxBatchesPerRun = publisherConfirms ? confirmWindowSize : 1;
+        publishCredit = Math.min(publishCredit + backpressureController.getPublishRate() * maxBatchesPerRun, maxBatchesPerRun);
+
+        if (!publisherConfirms) {
+            if (publishCredit < 1) return;
+            claimAndSend(batchSize, flushPartial).ifPresent(batch -> {
+                publishCredit--;
+                completeAndLog(batch);
+            });
+            return;
+        }
+
+        AtomicInteger budget = new AtomicInteger((int) publishCredit);
+        try {
+            publishCredit -= (workerQueues == null)
+                    ? sendBatchesWithConfirm(budget, batchSize, flushPartial)
+                    : sendBatchesToShardOwners(budget, batchSize, flushPartial);
+        } finally {
+            long lowestClaimedId = lowestClaimedFirstId.getAndSet(Long.MAX_VALUE);
+            if (lowestClaimedId != Long.MAX_VALUE) pipelineCdrs.headMap(lowestClaimedId).clear();
+        }
+    }
+
+    /**
+     * Возвращает количество пакетов, ожидающих подтверждения брокера.
+     *
+     * @return Количество неподтвержденных пакетов.
+     */
+    public int getInFlightBatches() {
+        return confirmWindowSize - inFlightWindow.availablePermits();
+    }
+
+    /**
+     * Возвращает оценку количества незахваченных CDR на момент последнего запуска.
+     *
+     * @return Оценка количества незахваченных CDR.
+     */
+    public long getBacklog() {
+        return backlog;
+    }
 
-        List<CdrDTO> dtos = consumedCdrs.stream().map(CdrDTO::createFromEntity).toList();
-        rabbitTemplate.convertAndSend(CDR_EXCHANGE_NAME,CDR_ROUTING_KEY,dtos);
+    /**
+     * Возвращает текущий адаптивный размер пакета.
+     *
+     * @return Размер пакета.
+     */
+    public int getBatchSize() {
+        return batchSizer.getCurrentSize();
+    }
 
-        consumedCdrs.forEach(cdr -> {
-            log.info(String.valueOf(cdr));
-            cdr.setConsumedStatus(ConsumedStatus.CONSUMED);
-            cdrRepository.save(cdr);
+    /**
+     * Запрашивает запуск отправки после фиксации транзакции, в которой сохранены новые CDR.
+     * Вне транзакции запуск запрашивается сразу.
+     *
+     * @param event Событие сохранения CDR.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCdrsPersisted(CdrsPersistedEvent event) {
+        requestWakeUp();
+    }
+
+    /**
+     * Запускает поток отправки, пробуждаемый событиями, если пробуждение или конвейерный режим включены.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startPublisher() {
+        if (!wakeUpEnabled && !cdrPipelineService.isEnabled()) return;
+        Thread thread = new Thread(this::runPublisher, "cdr-publisher");
+        thread.setDaemon(true);
+        publisherThread = thread;
+        thread.start();
+    }
+
+    @PreDestroy
+    void shutdownConfirmExecutor() {
+        Thread thread = publisherThread;
+        if (thread != null) thread.interrupt();
+        workerThreads.forEach(Thread::interrupt);
+        confirmExecutor.shutdown();
+    }
+
+    /**
+     * Захватывает и отправляет пакеты с подтверждением, пока не исчерпан общий бюджет запуска,
+     * в окне неподтвержденных пакетов есть место и есть записи для нового пакета.
+     *
+     * @return Количество отправленных пакетов.
+     */
+    private int sendBatchesWithConfirm(AtomicInteger budget, int batchSize, boolean flushPartial) {
+        int sent = 0;
+        while (budget.getAndDecrement() > 0 && inFlightWindow.tryAcquire()) {
+            Optional<ClaimedCdrBatch> sentBatch;
+            try {
+                sentBatch = claimAndSendWithConfirm(batchSize, flushPartial);
+            } catch (RuntimeException e) {
+                inFlightWindow.release();
+                throw e;
+            }
+            if (sentBatch.isEmpty()) {
+                inFlightWindow.release();
+                budget.set(0);
+                break;
+            }
+            sent++;
+        }
+        return sent;
+    }
+
+    /**
+     * Захватывает пакеты и передает их исполнителям-владельцам шардов, пока не исчерпан бюджет запуска,
+     * в окне неподтвержденных пакетов есть место и есть записи для нового пакета. При одном шарде пакет целиком
+     * передается следующему по очереди исполнителю. Поток запуска не ждет отправки:
+     * публикация пакета фиксируется, когда подтверждены сообщения, отправленные всеми его владельцами.
+     *
+     * @return Количество переданных пакетов.
+     */
+    private int sendBatchesToShardOwners(AtomicInteger budget, int batchSize, boolean flushPartial) {
+        int owners = Math.min(workerCount, shardCount);
+        startWorkers((shardCount == 1) ? workerCount : owners);
+        int sent = 0;
+        while (budget.getAndDecrement() > 0 && inFlightWindow.tryAcquire()) {
+            Optional<ClaimedCdrBatch> claimedBatch;
+            try {
+                claimedBatch = claimNextBatch(batchSize, flushPartial);
+            } catch (RuntimeException e) {
+                inFlightWindow.release();
+                throw e;
+            }
+            if (claimedBatch.isEmpty()) {
+                inFlightWindow.release();
+                break;
+            }
+            ClaimedCdrBatch batch = claimedBatch.get();
+            List<CdrDTO> pipelineBatch = takePipelineCdrs(batch);
+            IntPredicate unconfirmed = unconfirmedShards(batch);
+            List<CompletableFuture<SentShards>> parts = new ArrayList<>(owners);
+            if (shardCount == 1) {
+                ShardTask task = new ShardTask(batch, pipelineBatch, unconfirmed, new CompletableFuture<>());
+                workerQueues.get(nextWorker).add(task);
+                nextWorker = (nextWorker + 1) % workerCount;
+                parts.add(task.sent());
+            } else {
+                for (int worker = 0; worker < owners; worker++) {
+                    int owner = worker;
+                    IntPredicate ownedShards = shard -> shard % owners == owner && unconfirmed.test(shard);
+                    ShardTask task = new ShardTask(batch, pipelineBatch, ownedShards, new CompletableFuture<>());
+                    workerQueues.get(worker).add(task);
+                    parts.add(task.sent());
+                }
+            }
+            awaitConfirms(batch, parts);
+            sent++;
+        }
+        return sent;
+    }
+
+    private Optional<ClaimedCdrBatch> claimAndSend(int batchSize, boolean flushPartial) {
+        Optional<ClaimedCdrBatch> claimedBatch = claimNextBatch(batchSize, flushPartial);
+        if (claimedBatch.isEmpty()) return Optional.empty();
+        ClaimedCdrBatch batch = claimedBatch.get();
+
+        try {
+            Message[] messages = toMessages(batch, unconfirmedShards(batch));
+            for (int shard = 0; shard < messages.length; shard++) {
+                if (messages[shard] == null) continue;
+                rabbitTemplate.send(CDR_EXCHANGE_NAME,CdrSharding.routingKey(CDR_ROUTING_KEY, shard, shardCount),messages[shard]);
+            }
+        } catch (AmqpException e) {
+            log.error("Failed to send batch of CDRs (ids {}..{}) to RabbitMQ, releasing claim", batch.firstId(), batch.lastId(), e);
+            cdrOutboxService.release(batch);
+            return Optional.empty();
+        }
+        return Optional.of(batch);
+    }
+
+    private Optional<ClaimedCdrBatch> claimAndSendWithConfirm(int batchSize, boolean flushPartial) {
+        Optional<ClaimedCdrBatch> claimedBatch = claimNextBatch(batchSize, flushPartial);
+        if (claimedBatch.isEmpty()) return Optional.empty();
+        ClaimedCdrBatch batch = claimedBatch.get();
+
+        SentShards sentShards;
+        try {
+            Message[] messages = toMessages(batch, unconfirmedShards(batch));
+            sentShards = sendMessages(rabbitTemplate, batch, messages);
+        } catch (AmqpException e) {
+            log.error("Failed to send batch of CDRs (ids {}..{}) to RabbitMQ, releasing claim", batch.firstId(), batch.lastId(), e);
+            cdrOutboxService.release(batch);
+            return Optional.empty();
+        }
+        awaitConfirms(batch, List.of(CompletableFuture.completedFuture(sentShards)));
+        return Optional.of(batch);
+    }
+
+    /**
+     * Отправляет сообщения шардов пакета с корреляцией для подтверждения.
+     *
+     * @param messages Сообщения по номерам шардов; {@code null} для шардов, которые не отправляются.
+     * @return Отправленные сообщения и момент начала отправки, с которого отсчитывается ожидание подтверждений.
+     */
+    private SentShards sendMessages(RabbitOperations operations, ClaimedCdrBatch batch, Message[] messages) {
+        List<SentShard> shards = new ArrayList<>();
+        long sentAtNanos = System.nanoTime();
+        for (int shard = 0; shard < messages.length; shard++) {
+            if (messages[shard] == null) continue;
+            CorrelationData correlationData = new CorrelationData(batch.firstId() + ".." + batch.lastId() + "#" + shard);
+            shards.add(new SentShard(shard, correlationData));
+            operations.send(CDR_EXCHANGE_NAME,CdrSharding.routingKey(CDR_ROUTING_KEY, shard, shardCount),messages[shard],correlationData);
+        }
+        return new SentShards(shards, sentAtNanos);
+    }
+
+    /**
+     * Дожидается отправки и подтверждения сообщений пакета и фиксирует его публикацию
+     * или освобождает захват, запоминая подтвержденные шарды, после чего освобождает место пакета в окне подтверждений.
+     *
+     * @param parts Сообщения пакета, отправленные исполнителями; каждая часть завершается с ошибкой, если ее отправка
+     *              не удалась. Ожидание подтверждений части отсчитывается от начала ее отправки, а не от захвата пакета.
+     */
+    private void awaitConfirms(ClaimedCdrBatch batch, List<CompletableFuture<SentShards>> parts) {
+        List<CompletableFuture<ShardConfirms>> confirms = parts.stream().map(this::awaitShardConfirms).toList();
+        CompletableFuture.allOf(confirms.toArray(CompletableFuture[]::new))
+                .whenCompleteAsync((ignored, error) -> {
+                    try {
+                        long latencyNanos = -1;
+                        long confirmedShards = batch.confirmedShardsFor(shardCount);
+                        String failure = null;
+                        for (CompletableFuture<ShardConfirms> part : confirms) {
+                            ShardConfirms partConfirms = part.join();
+                            latencyNanos = Math.max(latencyNanos, partConfirms.latencyNanos());
+                            confirmedShards |= partConfirms.confirmedShards();
+                            if (failure == null) failure = partConfirms.failure();
+                        }
+                        if (latencyNanos >= 0) {
+                            confirmLatencyTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+                            batchSizer.recordConfirmLatency(latencyNanos);
+                        }
+                        if (failure == null) {
+                            completeAndLog(batch);
+                        } else {
+                            log.warn("Batch of CDRs (ids {}..{}) was not confirmed by RabbitMQ ({}), releasing claim",
+                                    batch.firstId(), batch.lastId(), failure);
+                            cdrOutboxService.release(batch, confirmedShards, shardCount);
+                        }
+                    } catch (RuntimeException e) {
+                        log.error("Failed to record confirm of batch of CDRs (ids {}..{})", batch.firstId(), batch.lastId(), e);
+                    } finally {
+                        inFlightWindow.release();
+                        if (backlog > 0) requestWakeUp();
+                    }
+                }, confirmExecutor);
+    }
+
+    /**
+     * Дожидается подтверждений сообщений, отправленных одним исполнителем, не дольше {@code const.publisher.confirm-timeout}
+     * от начала их отправки.
+     *
+     * @return Подтверждения части пакета; не завершается с ошибкой.
+     */
+    private CompletableFuture<ShardConfirms> awaitShardConfirms(CompletableFuture<SentShards> sent) {
+        return sent.thenCompose(sentShards -> CompletableFuture.allOf(sentShards.shards().stream().map(shard -> shard.correlationData().getFuture()).toArray(CompletableFuture[]::new))
+                        .orTimeout(confirmTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                        .handle((ignored, error) -> collectConfirms(sentShards, error)))
+                .exceptionally(error -> new ShardConfirms(0, describeFailure(error), -1));
+    }
+
+    /**
+     * Собирает шарды, сообщения которых подтверждены брокером и не возвращены, и описание первой неудачи.
+     */
+    private static ShardConfirms collectConfirms(SentShards sentShards, Throwable error) {
+        long latencyNanos = System.nanoTime() - sentShards.sentAtNanos();
+        long confirmedShards = 0;
+        String failure = (error != null) ? describeFailure(error) : null;
+        for (SentShard sentShard : sentShards.shards()) {
+            CorrelationData correlationData = sentShard.correlationData();
+            CompletableFuture<CorrelationData.Confirm> future = correlationData.getFuture();
+            if (!future.isDone() || future.isCompletedExceptionally()) continue;
+            CorrelationData.Confirm confirm = future.join();
+            String shardFailure = null;
+            if (!confirm.isAck()) {
+                shardFailure = correlationData.getId() + " nack: " + confirm.getReason();
+            } else if (correlationData.getReturned() != null) {
+                shardFailure = correlationData.getId() + " returned: " + correlationData.getReturned().getReplyText();
+            }
+            if (shardFailure == null) {
+                confirmedShards |= CdrSharding.shardBit(sentShard.shard());
+            } else if (failure == null) {
+                failure = shardFailure;
+            }
+        }
+        return new ShardConfirms(confirmedShards, failure, latencyNanos);
+    }
+
+    /**
+     * Возвращает шарды пакета, сообщения которых еще не подтверждены брокером при прежних отправках.
+     */
+    private IntPredicate unconfirmedShards(ClaimedCdrBatch batch) {
+        long confirmedShards = batch.confirmedShardsFor(shardCount);
+        return shard -> (confirmedShards & CdrSharding.shardBit(shard)) == 0;
+    }
+
+    private Optional<ClaimedCdrBatch> claimNextBatch(int batchSize, boolean flushPartial) {
+        Optional<ClaimedCdrBatch> claimedBatch = cdrOutboxService.claimNextBatch(batchSize, flushPartial);
+        claimedBatch.ifPresent(batch -> {
+            backlogWaitingSince = null;
+            lowestClaimedFirstId.accumulateAndGet(batch.firstId(), Math::min);
+            Duration age = Duration.between(batch.oldestFinishDateTime(), LocalDateTime.now());
+            if (!age.isNegative()) cdrAgeTimer.record(age);
         });
+        return claimedBatch;
+    }
+
+    private void completeAndLog(ClaimedCdrBatch batch) {
+        cdrOutboxService.complete(batch);
+        log.info("Sent batch of {} CDRs (ids {}..{}) to RabbitMQ", batch.size(), batch.firstId(), batch.lastId());
+    }
+
+    private Message[] toMessages(ClaimedCdrBatch batch, IntPredicate shards) {
+        return toMessages(batch, takePipelineCdrs(batch), shards);
+    }
+
+    private Message[] toMessages(ClaimedCdrBatch batch, List<CdrDTO> pipelineBatch, IntPredicate shards) {
+        if (pipelineBatch != null) return cdrStreamingMessageWriter.writeCdrs(pipelineBatch, shardCount, shards);
+        return cdrStreamingMessageWriter.write(rows -> cdrJdbcRepository.streamClaim(batch.firstId(), rows), shardCount, shards);
+    }
+
+    /**
+     * Извлекает записи пакета, переданные конвейером.
+     *
+     * @return Записи пакета или {@code null}, если в памяти есть не все записи и пакет читается из БД.
+     */
+    private List<CdrDTO> takePipelineCdrs(ClaimedCdrBatch batch) {
+        if (batch.ids() == null || pipelineCdrs.isEmpty()) return null;
+        List<CdrDTO> cdrs = new ArrayList<>(batch.size());
+        for (Long id : batch.ids()) {
+            Cdr cdr = pipelineCdrs.get(id);
+            if (cdr == null) return null;
+            cdrs.add(CdrDTO.createFromEntity(cdr));
+        }
+        batch.ids().forEach(pipelineCdrs::remove);
+        pipelineBatchesCounter.increment();
+        return cdrs;
+    }
+
+    private void startWorkers(int count) {
+        for (int worker = workerThreads.size(); worker < count; worker++) {
+            int owner = worker;
+            Thread thread = new Thread(() -> runWorker(owner), "cdr-publisher-worker-" + (worker + 1));
+            thread.setDaemon(true);
+            workerThreads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Отправляет сообщения шардов из очереди пакетов исполнителя на одном канале RabbitMQ,
+     * пока поток не прерван. Если канал перестал работать, открывается новый.
+     */
+    private void runWorker(int worker) {
+        BlockingQueue<ShardTask> tasks = workerQueues.get(worker);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                rabbitTemplate.invoke(operations -> {
+                    ShardTask task;
+                    while ((task = nextTask(tasks)) != null) {
+                        sendShards(operations, task);
+                    }
+                    return null;
+                });
+            } catch (AmqpException e) {
+                log.warn("Publisher channel of worker {} failed, opening a new one", worker + 1, e);
+            }
+        }
+    }
+
+    private static ShardTask nextTask(BlockingQueue<ShardTask> tasks) {
+        try {
+            return tasks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void sendShards(RabbitOperations operations, ShardTask task) {
+        ClaimedCdrBatch batch = task.batch();
+        SentShards sentShards;
+        try {
+            sentShards = sendMessages(operations, batch, toMessages(batch, task.pipelineBatch(), task.shards()));
+        } catch (RuntimeException e) {
+            log.error("Failed to send batch of CDRs (ids {}..{}) to RabbitMQ", batch.firstId(), batch.lastId(), e);
+            task.sent().completeExceptionally(e);
+            if (e instanceof AmqpException) throw e;
+            return;
+        }
+        task.sent().complete(sentShards);
+    }
+
+    private void runPublisher() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                consumeDataFromDB();
+            } catch (RuntimeException e) {
+                log.error("Failed to publish CDRs", e);
+            }
+            Duration idleWait = (backlog > 0) ? Duration.ofMillis(consumeRateMillis) : safetyNetInterval;
+            if (!wakeUpRequested.getAndSet(false)) {
+                LockSupport.parkNanos(this, idleWait.toNanos());
+                wakeUpRequested.set(false);
+            }
+        }
+    }
+
+    private void requestWakeUp() {
+        Thread thread = publisherThread;
+        if (thread != null && wakeUpRequested.compareAndSet(false, true)) LockSupport.unpark(thread);
+    }
+
+    /**
+     * Переносит записи из кольцевого буфера конвейера. Если записей больше емкости буфера
+     * (их пакеты захвачены другими экземплярами), самые старые отбрасываются.
+     */
+    private void drainPipeline() {
+        cdrPipelineService.drainTo(cdr -> pipelineCdrs.put(cdr.getId(), cdr));
+        while (pipelineCdrs.size() > cdrPipelineService.getRingCapacity()) {
+            pipelineCdrs.pollFirstEntry();
+        }
+    }
+
+    /**
+     * Возвращает описание ошибки отправки или ожидания подтверждений.
+     */
+    private static String describeFailure(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        if (error instanceof AmqpException) return "not sent: " + error;
+        return "no confirm: " + error;
+    }
+
+    /**
+     * Пакет, переданный исполнителю для отправки сообщений выбранных шардов.
+     *
+     * @param pipelineBatch Записи пакета из памяти конвейера или {@code null}, если пакет читается из БД.
+     * @param shards Шарды, сообщения которых отправляет исполнитель.
+     * @param sent Отправленные сообщения; завершается с ошибкой, если отправка не удалась.
+     */
+    private record ShardTask(ClaimedCdrBatch batch, List<CdrDTO> pipelineBatch, IntPredicate shards, CompletableFuture<SentShards> sent) {
+    }
+
+    /**
+     * Сообщение шарда пакета, отправленное с корреляцией для подтверждения.
+     */
+    private record SentShard(int shard, CorrelationData correlationData) {
+    }
+
+    /**
+     * Сообщения, отправленные одним исполнителем.
+     *
+     * @param sentAtNanos Момент ({@link System#nanoTime()}) начала отправки.
+     */
+    private record SentShards(List<SentShard> shards, long sentAtNanos) {
+    }
+
+    /**
+     * Итог ожидания подтверждений сообщений, отправленных одним исполнителем.
+     *
+     * @param confirmedShards Шарды, сообщения которых подтверждены и не возвращены брокером (бит i - шард i).
+     * @param failure Описание первой неудачи или {@code null}, если подтверждены все сообщения.
+     * @param latencyNanos Время от начала отправки до получения подтверждений или -1, если отправка не удалась.
+     */
+    private record ShardConfirms(long confirmedShards, String failure, long latencyNanos) {
     }
 }
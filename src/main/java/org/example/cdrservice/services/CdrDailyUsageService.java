@@ -0,0 +1,183 @@
+package org.example.cdrservice.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.cdrservice.converters.MsisdnConverter;
+import org.example.cdrservice.dtos.DailyUsageDTO;
+import org.example.cdrservice.dtos.DailyUsageRebuildResult;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.repositories.CdrDailyUsageRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сервис суточной сводки использования абонентов {@code cdr_daily_usage}.
+ * <p>
+ * Каждый звонок лежит в пределах одних суток (см. {@code CdrProducerService.splitIfCrossesMidnight}),
+ * поэтому сводка поддерживается инкрементально: сохраняемые CDR агрегируются в памяти по абоненту, суткам
+ * и типу вызова и прибавляются к сводке в той же транзакции, в которой сохраняются сами записи.
+ * Запросы количества и длительности звонков абонента за период читают только сводку.
+ * </p>
+ * <p>
+ * Пересчет по сырым CDR выполняется параллельно, по одним суткам в отдельной транзакции на каждый поток.
+ * </p>
+ */
+@Slf4j
+@Service
+public class CdrDailyUsageService {
+
+    /**
+     * Включает инкрементальное обновление сводки при сохранении CDR.
+     * Настраивается через свойство {@code const.rollup.enabled}.
+     */
+    @Value("${const.rollup.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * Количество суток, пересчитываемых одновременно.
+     * Настраивается через свойство {@code const.rollup.rebuild-parallelism}.
+     */
+    @Value("${const.rollup.rebuild-parallelism:4}")
+    private int rebuildParallelism;
+
+    /**
+     * Максимальная длина периода одного запроса сводки или пересчета.
+     * Настраивается через свойство {@code const.rollup.max-period}.
+     */
+    @Value("${const.rollup.max-period:366d}")
+    private Duration maxPeriod;
+
+    private final CdrDailyUsageRepository cdrDailyUsageRepository;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public CdrDailyUsageService(CdrDailyUsageRepository cdrDailyUsageRepository, PlatformTransactionManager transactionManager) {
+        this.cdrDailyUsageRepository = cdrDailyUsageRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Прибавляет сохраняемые CDR к сводке.
+     * Выполняется в транзакции сохранения записей, поэтому сводка фиксируется и откатывается вместе с ними.
+     * Строки сводки обновляются в порядке первичного ключа, чтобы параллельные транзакции
+     * блокировали их в одном порядке.
+     *
+     * @param cdrs Сохраняемые записи.
+     */
+    @Transactional
+    public void record(List<Cdr> cdrs) {
+        if (!enabled || cdrs.isEmpty()) return;
+        TreeMap<UsageKey, long[]> usage = new TreeMap<>();
+        for (Cdr cdr : cdrs) {
+            long[] totals = usage.computeIfAbsent(new UsageKey(
+                    MsisdnConverter.toNumber(cdr.getServicedMsisdn()),
+                    cdr.getStartDateTime().toLocalDate(),
+                    cdr.getCallType()), key -> new long[2]);
+            totals[0]++;
+            totals[1] += Duration.between(cdr.getStartDateTime(), cdr.getFinishDateTime()).toSeconds();
+        }
+        List<DailyUsageDTO> deltas = new ArrayList<>(usage.size());
+        usage.forEach((key, totals) -> deltas.add(new DailyUsageDTO(
+                Long.toString(key.servicedMsisdn()), key.usageDate(), key.callType(), totals[0], totals[1])));
+        cdrDailyUsageRepository.addUsage(deltas);
+    }
+
+    /**
+     * Возвращает сводку абонента за период.
+     *
+     * @param msisdn MSISDN обслуживаемого абонента.
+     * @param from Первые сутки периода (включительно).
+     * @param to Последние сутки периода (включительно).
+     * @return Строки сводки в порядке суток и типа вызова; сутки без звонков пропускаются.
+     * @throws IllegalArgumentException если параметры некорректны.
+     */
+    public List<DailyUsageDTO> findUsage(String msisdn, LocalDate from, LocalDate to) {
+        validatePeriod(from, to);
+        return cdrDailyUsageRepository.findUsage(MsisdnConverter.toNumber(msisdn), from, to.plusDays(1));
+    }
+
+    /**
+     * Пересчитывает сводку за период по сырым CDR.
+     * Сутки пересчитываются параллельно в {@code const.rollup.rebuild-parallelism} потоков,
+     * каждые сутки - в отдельной транзакции. Пересчет суток, в которые продолжают сохраняться CDR,
+     * может разойтись с инкрементальным обновлением и должен быть повторен после их завершения.
+     *
+     * @param from Первые сутки периода (включительно).
+     * @param to Последние сутки периода (включительно).
+     * @return Итог пересчета.
+     * @throws IllegalArgumentException если параметры некорректны.
+     */
+    public DailyUsageRebuildResult rebuild(LocalDate from, LocalDate to) {
+        validatePeriod(from, to);
+        long startNanos = System.nanoTime();
+        int days = (int) ChronoUnit.DAYS.between(from, to) + 1;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(rebuildParallelism, days), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cdr-rollup-rebuild-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<CompletableFuture<Integer>> dayRebuilds = new ArrayList<>(days);
+            for (int day = 0; day < days; day++) {
+                LocalDate usageDate = from.plusDays(day);
+                dayRebuilds.add(CompletableFuture.supplyAsync(
+                        () -> transactionTemplate.execute(status -> cdrDailyUsageRepository.rebuildDay(usageDate)), executor));
+            }
+            long rows = 0;
+            for (CompletableFuture<Integer> dayRebuild : dayRebuilds) {
+                rows += dayRebuild.join();
+            }
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+            log.info("Rebuilt daily usage for {} days from {} to {}: {} rows in {} ms", days, from, to, rows, elapsedMillis);
+            return new DailyUsageRebuildResult(from, to.plusDays(1), days, rows, elapsedMillis);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void validatePeriod(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("Period start " + from + " must not be after its end " + to);
+        }
+        if (ChronoUnit.DAYS.between(from, to) + 1 > maxPeriod.toDays()) {
+            throw new IllegalArgumentException("Period from " + from + " to " + to + " is longer than " + maxPeriod.toDays() + " days");
+        }
+    }
+
+    /**
+     * Ключ строки сводки в порядке первичного ключа таблицы.
+     */
+    private record UsageKey(long servicedMsisdn, LocalDate usageDate, String callType) implements Comparable<UsageKey> {
+
+        @Override
+        public int compareTo(UsageKey other) {
+            int result = Long.compare(servicedMsisdn, other.servicedMsisdn);
+            if (result == 0) result = usageDate.compareTo(other.usageDate);
+            if (result == 0) result = callType.compareTo(other.callType);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.example.cdrservice.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.cdrservice.dtos.ClaimedCdrBatch;
+import org.example.cdrservice.dtos.UnclaimedCdr;
+import org.example.cdrservice.entitites.CdrPublishClaim;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.example.cdrservice.repositories.CdrPublishClaimRepository;
+import org.example.cdrservice.repositories.CdrRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Сервис исходящего буфера (outbox) CDR.
+ * <p>
+ * Неопубликованные CDR определяются по статусу {@link ConsumedStatus#NEW}: очередной пакет - это первые
+ * по идентификатору записи со статусом NEW, еще не захваченные для публикации. Отметки "опубликовано до такого-то
+ * идентификатора" нет, поэтому запись, зафиксированная позже записей с большими идентификаторами
+ * (параллельные транзакции сохранения, блоки идентификаторов разных экземпляров и JDBC-заполнения),
+ * просто попадет в один из следующих пакетов.
+ * </p>
+ * <p>
+ * Несколько экземпляров сервиса публикуют CDR параллельно по протоколу захвата: экземпляр блокирует записи пакета
+ * ({@code SELECT ... FOR UPDATE SKIP LOCKED}, записи чужих захватов пропускаются), отмечает в них идентификатор
+ * захвата и записывает захват с арендой в таблицу {@code cdr_publish_claims}, после чего публикует пакет
+ * без блокировок. После публикации записи помечаются как {@link ConsumedStatus#CONSUMED}, а захват удаляется.
+ * Захваты с истекшей арендой (экземпляр упал или не смог опубликовать пакет) в первую очередь перехватываются
+ * другими экземплярами.
+ * </p>
+ */
+@Slf4j
+@Service
+public class CdrOutboxService {
+
+    /**
+     * Наибольшее значение оценки количества незахваченных CDR: оценка читает индекс, и ее стоимость
+     * не должна расти вместе с очередью.
+     */
+    static final long BACKLOG_COUNT_LIMIT = 100_000;
+
+    /**
+     * Идентификатор этого экземпляра сервиса в протоколе захвата.
+     * Настраивается через свойство {@code const.outbox.owner-id}, по умолчанию случайный UUID.
+     */
+    @Value("${const.outbox.owner-id:${random.uuid}}")
+    private String ownerId;
+
+    /**
+     * Длительность аренды захваченного пакета. Должна с запасом превышать время публикации одного пакета.
+     * Настраивается через свойство {@code const.outbox.lease-duration}.
+     */
+    @Value("${const.outbox.lease-duration:30s}")
+    private Duration leaseDuration;
+
+    private final CdrRepository cdrRepository;
+    private final CdrPublishClaimRepository cdrPublishClaimRepository;
+
+    public CdrOutboxService(CdrRepository cdrRepository,
+                            CdrPublishClaimRepository cdrPublishClaimRepository) {
+        this.cdrRepository = cdrRepository;
+        this.cdrPublishClaimRepository = cdrPublishClaimRepository;
+    }
+
+    /**
+     * Захватывает следующий пакет CDR для публикации этим экземпляром.
+     * <p>
+     * Сначала перехватывается пакет с истекшей арендой, если такой есть; его описание и уже подтвержденные шарды
+     * берутся из захвата, и записи пакета не перечитываются. Иначе блокируются {@code batchSize}
+     * первых незахваченных записей со статусом NEW; если записей меньше, захватываются все имеющиеся записи,
+     * но только при {@code flushPartial}. Идентификатором захвата служит наименьший идентификатор записи пакета.
+     * </p>
+     *
+     * @param batchSize Размер захватываемого пакета.
+     * @param flushPartial Захватывать ли неполный пакет, если записей меньше {@code batchSize}.
+     * @return Захваченный пакет или {@link Optional#empty()}, если публиковать нечего.
+     */
+    @Transactional
+    public Optional<ClaimedCdrBatch> claimNextBatch(int batchSize, boolean flushPartial) {
+        Optional<CdrPublishClaim> expiredClaim = cdrPublishClaimRepository.lockFirstExpired();
+        if (expiredClaim.isPresent()) {
+            CdrPublishClaim claim = expiredClaim.get();
+            cdrPublishClaimRepository.takeOver(claim.getFirstId(), ownerId, leaseDuration.toSeconds());
+            log.warn("Took over expired batch of CDRs (ids {}..{}) from {}", claim.getFirstId(), claim.getLastId(), claim.getOwner());
+            return Optional.of(new ClaimedCdrBatch(claim.getFirstId(), claim.getLastId(), claim.getCdrCount(), claim.getOldestFinishDateTime(),
+                    null, claim.getConfirmedShards(), claim.getConfirmedShardCount()));
+        }
+
+        List<UnclaimedCdr> cdrs = cdrRepository.lockUnclaimed(batchSize);
+        if (cdrs.size() < (flushPartial ? 1 : batchSize)) return Optional.empty();
+
+        List<Long> ids = new ArrayList<>(cdrs.size());
+        LocalDateTime oldestFinishDateTime = null;
+        for (UnclaimedCdr cdr : cdrs) {
+            ids.add(cdr.getId());
+            if (oldestFinishDateTime == null || cdr.getFinishDateTime().isBefore(oldestFinishDateTime)) {
+                oldestFinishDateTime = cdr.getFinishDateTime();
+            }
+        }
+        long firstId = ids.get(0);
+        long lastId = ids.get(ids.size() - 1);
+        cdrRepository.claim(firstId, ids);
+        cdrPublishClaimRepository.insertClaim(firstId, lastId, ids.size(), oldestFinishDateTime, ownerId, leaseDuration.toSeconds());
+        return Optional.of(new ClaimedCdrBatch(firstId, lastId, ids.size(), oldestFinishDateTime, ids));
+    }
+
+    /**
+     * Оценивает количество неопубликованных CDR, еще не захваченных для публикации.
+     * Записи считаются по индексу статуса, но не более {@value #BACKLOG_COUNT_LIMIT}.
+     *
+     * @return Количество незахваченных CDR, ограниченное {@value #BACKLOG_COUNT_LIMIT}.
+     */
+    @Transactional(readOnly = true)
+    public long estimateBacklog() {
+        return cdrRepository.countUnclaimed(BACKLOG_COUNT_LIMIT);
+    }
+
+    /**
+     * Фиксирует успешную публикацию пакета: удаляет захват и помечает записи пакета как потребленные
+     * одним оператором {@code UPDATE}.
+     * Если аренда истекла и захват перехвачен другим экземпляром, записи не изменяются: пакет принадлежит
+     * новому владельцу, который завершит его сам после своей отправки.
+     *
+     * @param batch Опубликованный пакет.
+     */
+    @Transactional
+    public void complete(ClaimedCdrBatch batch) {
+        if (cdrPublishClaimRepository.deleteOwned(batch.firstId(), ownerId) == 0) {
+            log.warn("Lease on batch of CDRs (ids {}..{}) was lost before completion, leaving it to the new owner; the batch may be published twice",
+                    batch.firstId(), batch.lastId());
+            return;
+        }
+        cdrRepository.markClaimConsumed(batch.firstId());
+    }
+
+    /**
+     * Отказывается от захвата пакета, который не удалось опубликовать.
+     * Аренда завершается немедленно, и пакет будет повторно захвачен при следующем опросе любым экземпляром.
+     *
+     * @param batch Неопубликованный пакет.
+     */
+    @Transactional
+    public void release(ClaimedCdrBatch batch) {
+        cdrPublishClaimRepository.expire(batch.firstId(), ownerId);
+    }
+
+    /**
+     * Отказывается от захвата пакета, сообщения которого подтверждены брокером не для всех шардов.
+     * Подтвержденные шарды запоминаются в захвате, и при повторной отправке пакета отправляются только остальные.
+     *
+     * @param batch Не полностью опубликованный пакет.
+     * @param confirmedShards Подтвержденные шарды (бит i - шард i), включая подтвержденные при прежних отправках.
+     * @param shardCount Количество шардов, при котором шарды подтверждены.
+     */
+    @Transactional
+    public void release(ClaimedCdrBatch batch, long confirmedShards, int shardCount) {
+        cdrPublishClaimRepository.expireWithConfirmedShards(batch.firstId(), ownerId, confirmedShards, shardCount);
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.cdrservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.example.cdrservice.utils.BoundedRingBuffer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Конвейерный режим передачи CDR от генерации к публикации.
+ * <p>
+ * В конвейерном режиме ({@code const.pipeline.enabled}) сгенерированные CDR записываются в БД через JDBC
+ * и сразу после фиксации транзакции передаются публикации
+ * через ограниченный неблокирующий кольцевой буфер. Публикация формирует сообщения из переданных записей
+ * без повторного чтения из БД.
+ * </p>
+ * <p>
+ * БД остается единственным надежным хранилищем: какие записи опубликованы, по-прежнему определяет протокол захвата
+ * {@link CdrOutboxService}. Записи, не поместившиеся в буфер или потерянные при перезапуске, публикуются обычным
+ * чтением из БД.
+ * </p>
+ */
+@Service
+public class CdrPipelineService {
+
+    /**
+     * Включает конвейерный режим.
+     * Настраивается через свойство {@code const.pipeline.enabled}.
+     */
+    @Value("${const.pipeline.enabled:false}")
+    private boolean enabled;
+
+    private final CdrJdbcRepository cdrJdbcRepository;
+    private final BoundedRingBuffer<Cdr> ringBuffer;
+    private final Counter droppedCdrsCounter;
+
+    public CdrPipelineService(CdrJdbcRepository cdrJdbcRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${const.pipeline.ring-capacity:8192}") int ringCapacity) {
+        this.cdrJdbcRepository = cdrJdbcRepository;
+        this.ringBuffer = new BoundedRingBuffer<>(ringCapacity);
+        Gauge.builder("cdr.pipeline.ring.size", ringBuffer, BoundedRingBuffer::size)
+                .description("Number of persisted CDRs waiting in the pipeline ring buffer")
+                .register(meterRegistry);
+        this.droppedCdrsCounter = Counter.builder("cdr.pipeline.dropped")
+                .description("Number of persisted CDRs that did not fit into the pipeline ring buffer and are published from the database")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Записывает CDR в БД и после фиксации транзакции передает их публикации.
+     *
+     * @param cdrs Записи для сохранения.
+     */
+    @Transactional
+    public void persist(List<Cdr> cdrs) {
+        if (cdrs.isEmpty()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                handOff(cdrs);
+            }
+        });
+        cdrJdbcRepository.batchInsert(cdrs, cdrs.size());
+    }
+
+    /**
+     * Извлекает из буфера все переданные записи.
+     *
+     * @param consumer Получатель записей в порядке передачи.
+     */
+    public void drainTo(Consumer<Cdr> consumer) {
+        Cdr cdr;
+        while ((cdr = ringBuffer.poll()) != null) {
+            consumer.accept(cdr);
+        }
+    }
+
+    /**
+     * Возвращает емкость буфера.
+     *
+     * @return Максимальное количество записей в буфере.
+     */
+    public int getRingCapacity() {
+        return ringBuffer.capacity();
+    }
+
+    private void handOff(List<Cdr> cdrs) {
+        for (Cdr cdr : cdrs) {
+            if (!ringBuffer.offer(cdr)) droppedCdrsCounter.increment();
+        }
+    }
+}
@@ -2,26 +2,30 @@ package org.example.cdrservice.services;
 
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
+import org.example.cdrservice.dtos.CdrsPersistedEvent;
 import org.example.cdrservice.entitites.Cdr;
 import org.example.cdrservice.entitites.ConsumedStatus;
-import org.example.cdrservice.entitites.Subscriber;
 import org.example.cdrservice.repositories.CdrRepository;
+import org.example.cdrservice.utils.CallIntervalIndex;
+import org.example.cdrservice.utils.SubscriberDirectory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Сервис, отвечающий за генерацию CDR.
@@ -32,12 +36,41 @@ public class CdrProducerService {
 
     /**
      * Флаг, указывающий, завершена ли начальная генерация CDR и готовы ли данные к сохранению.
+     * В потоковом режиме устанавливается сразу при запуске.
      */
-    private boolean doReadyToPersist = false;
+    private volatile boolean doReadyToPersist = false;
+
+    /**
+     * Граница, до которой (включительно по времени окончания) CDR из очереди разрешено сохранять.
+     * В потоковом режиме сдвигается на конец каждого полностью сгенерированного временного среза,
+     * чтобы в БД не попадали записи раньше, чем сгенерированы все звонки, завершающиеся до них.
+     */
+    private volatile LocalDateTime releasedUntil = LocalDateTime.MAX;
+
+    /**
+     * Поток потоковой генерации, ожидающий сохранения выпущенного среза.
+     * Пробуждается из {@link #persistQueuedData()} после каждого сохраненного пакета.
+     */
+    private volatile Thread sliceDrainWaiter;
 
     @Value("${const.numberOfGenerationThreads}")
     private int numberOfGenerationThreads;
 
+    /**
+     * Включает потоковую генерацию исторических данных по временным срезам
+     * вместо генерации всего года до готовности приложения.
+     * Настраивается через свойство {@code const.generation.streaming}.
+     */
+    @Value("${const.generation.streaming:false}")
+    private boolean streamingGeneration;
+
+    /**
+     * Длительность одного временного среза потоковой генерации.
+     * Настраивается через свойство {@code const.generation.slice-duration}.
+     */
+    @Value("${const.generation.slice-duration:1d}")
+    private Duration sliceDuration;
+
     /**
      * Приоритетная очередь для хранения сгенерированных CDR перед их сохранением.
      * CDR упорядочены по времени их завершения.
@@ -45,25 +78,62 @@ public class CdrProducerService {
     private PriorityBlockingQueue<Cdr> generatedCdrsQueue = new PriorityBlockingQueue<>(8192,Comparator.comparing(Cdr::getFinishDateTime));
 
     /**
-     * Блокировка для обеспечения потокобезопасного доступа к {@code generatedCdrsQueue} и связанным операциям.
+     * Индекс занятости абонентов, по которому проверяются пересечения звонков.
+     * Пополняется синхронно с {@code generatedCdrsQueue} в {@link #addToDataSet(Cdr)}.
+     * Блокирует только полосы участников звонка, поэтому потоки генерации конкурируют
+     * лишь за звонки с общими абонентами.
      */
-    private final ReentrantLock lock = new ReentrantLock();
+    private final CallIntervalIndex callIntervalIndex = new CallIntervalIndex();
 
     private final CdrRepository cdrRepository;
     private final SubscriberService subscriberService;
-
-    public CdrProducerService(CdrRepository cdrRepository, SubscriberService subscriberService) {
+    private final CdrBackfillService cdrBackfillService;
+    private final BackpressureController backpressureController;
+    private final CdrPipelineService cdrPipelineService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CdrDailyUsageService cdrDailyUsageService;
+
+    public CdrProducerService(CdrRepository cdrRepository, SubscriberService subscriberService, CdrBackfillService cdrBackfillService,
+                              BackpressureController backpressureController, CdrPipelineService cdrPipelineService,
+                              ApplicationEventPublisher eventPublisher, CdrDailyUsageService cdrDailyUsageService) {
         this.cdrRepository = cdrRepository;
         this.subscriberService = subscriberService;
+        this.cdrBackfillService = cdrBackfillService;
+        this.backpressureController = backpressureController;
+        this.cdrPipelineService = cdrPipelineService;
+        this.eventPublisher = eventPublisher;
+        this.cdrDailyUsageService = cdrDailyUsageService;
     }
 
     /**
      * Инициализирует процесс генерации CDR при запуске приложения.
-     * Запускает несколько потоков для параллельной генерации CDR за последний год.
-     * Устанавливает {@code doReadyToPersist} в true после завершения начальной генерации.
+     * <p>
+     * В обычном режиме запускает несколько потоков для параллельной генерации CDR за последний год,
+     * дожидается их завершения и устанавливает {@code doReadyToPersist} в true.
+     * </p>
+     * <p>
+     * В потоковом режиме ({@code const.generation.streaming}) не блокирует запуск контекста:
+     * генерация по временным срезам выполняется в фоновом потоке, а сохранение разрешается сразу.
+     * </p>
+     * <p>
+     * Если включено массовое заполнение ({@code const.backfill.enabled}), исторические CDR
+     * записываются крупными JDBC-пакетами через {@link CdrBackfillService}, и только после этого
+     * включается обычное сохранение оставшихся "живых" CDR.
+     * </p>
      */
     @PostConstruct
     public void runInitialGeneration(){
+        LocalDateTime historicalBoundary = cdrBackfillService.historicalBoundary(LocalDateTime.now());
+
+        if (streamingGeneration) {
+            releasedUntil = LocalDateTime.MIN;
+            doReadyToPersist = !cdrBackfillService.isEnabled();
+            Thread generationThread = new Thread(() -> generateCdrForOneYearInSlices(historicalBoundary), "cdr-streaming-generation");
+            generationThread.setDaemon(true);
+            generationThread.start();
+            return;
+        }
+
         List<CompletableFuture<?>> futures = new ArrayList<>();
         for (int i = 0; i < numberOfGenerationThreads; i++) {
             futures.add(CompletableFuture.runAsync(this::generateCdrForOneYear));
@@ -71,10 +141,11 @@ public class CdrProducerService {
 
         CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
 
-        doReadyToPersist = true;
-
-
+        if (cdrBackfillService.isEnabled()) {
+            backfillReleasedCdrs(historicalBoundary);
+        }
 
+        doReadyToPersist = true;
     }
 
     /**
@@ -84,17 +155,100 @@ public class CdrProducerService {
      */
     public void generateCdrForOneYear(){
 
-        List<Subscriber> subscribers = subscriberService.findAll();
+        SubscriberDirectory subscribers = subscriberService.getDirectory();
 
         LocalDateTime startDateTime = LocalDateTime.now().minusYears(1);
         LocalDateTime endDateTime = LocalDateTime.now();
 
-        long startMillis = startDateTime.atZone(ZoneId.of("Europe/Moscow")).toInstant().toEpochMilli();
-        long endMillis = endDateTime.atZone(ZoneId.of("Europe/Moscow")).toInstant().toEpochMilli();
+        long startMillis = toEpochMillis(startDateTime);
+        long endMillis = toEpochMillis(endDateTime);
 
         int totalNumberOfCalls = ThreadLocalRandom.current().nextInt(1000,2001);
 
-        for (int i = 0; i < totalNumberOfCalls; i++) {
+        generateCalls(subscribers, startMillis, endMillis, endMillis, totalNumberOfCalls);
+    }
+
+    /**
+     * Генерирует записи CDR за последний год в хронологическом порядке по временным срезам.
+     * <p>
+     * Общее количество звонков такое же, как при обычной генерации (от 1000 до 2000 на поток),
+     * но оно распределяется по срезам пропорционально их длительности. Каждый срез генерируется
+     * {@code numberOfGenerationThreads} потоками; после этого граница {@code releasedUntil}
+     * сдвигается на конец среза, и записи среза передаются в {@link #persistQueuedData()}.
+     * Следующий срез начинается только после того, как предыдущий сохранен, поэтому в памяти
+     * одновременно находится не больше одного среза (и переходящие через его границу части звонков).
+     * </p>
+     * <p>
+     * Пока сохранение в обычном темпе не разрешено, срезы, завершившиеся до {@code historicalBoundary},
+     * записываются массово через {@link CdrBackfillService}.
+     * </p>
+     *
+     * @param historicalBoundary Граница исторических данных для массового заполнения.
+     */
+    public void generateCdrForOneYearInSlices(LocalDateTime historicalBoundary){
+        try {
+            SubscriberDirectory subscribers = subscriberService.getDirectory();
+
+            LocalDateTime endDateTime = LocalDateTime.now();
+            LocalDateTime startDateTime = endDateTime.minusYears(1);
+            long startMillis = toEpochMillis(startDateTime);
+            long endMillis = toEpochMillis(endDateTime);
+
+            int[] totalNumberOfCallsPerThread = new int[numberOfGenerationThreads];
+            for (int i = 0; i < numberOfGenerationThreads; i++) {
+                totalNumberOfCallsPerThread[i] = ThreadLocalRandom.current().nextInt(1000,2001);
+            }
+
+            LocalDateTime sliceStart = startDateTime;
+            while (sliceStart.isBefore(endDateTime)) {
+                LocalDateTime sliceEnd = sliceStart.plus(sliceDuration);
+                if (sliceEnd.isAfter(endDateTime)) sliceEnd = endDateTime;
+
+                long sliceStartMillis = toEpochMillis(sliceStart);
+                long sliceEndMillis = toEpochMillis(sliceEnd);
+                double sliceShare = (double) (sliceEndMillis - sliceStartMillis) / (endMillis - startMillis);
+
+                List<CompletableFuture<?>> futures = new ArrayList<>();
+                for (int i = 0; i < numberOfGenerationThreads; i++) {
+                    int numberOfCalls = randomRound(totalNumberOfCallsPerThread[i] * sliceShare);
+                    futures.add(CompletableFuture.runAsync(() ->
+                            generateCalls(subscribers, sliceStartMillis, sliceEndMillis, endMillis, numberOfCalls)));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+                callIntervalIndex.evictFinishedBefore(sliceStart);
+                releasedUntil = sliceEnd;
+                if (!doReadyToPersist) {
+                    backfillReleasedCdrs(historicalBoundary);
+                    if (!sliceEnd.isBefore(historicalBoundary)) doReadyToPersist = true;
+                }
+                awaitReleasedCdrsPersisted();
+
+                sliceStart = sliceEnd;
+            }
+            releasedUntil = LocalDateTime.MAX;
+            doReadyToPersist = true;
+            log.info("Streaming generation of CDRs for the last year finished");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Streaming generation of CDRs failed", e);
+        }
+    }
+
+    /**
+     * Генерирует заданное количество случайных звонков между абонентами и добавляет их в набор данных.
+     * Время начала звонка выбирается в диапазоне [{@code fromMillis}; {@code toMillis}),
+     * при этом звонок должен завершиться до {@code limitMillis}.
+     *
+     * @param subscribers Справочник абонентов, между которыми генерируются звонки.
+     * @param fromMillis Нижняя граница времени начала звонка (epoch millis).
+     * @param toMillis Верхняя граница времени начала звонка (epoch millis, не включительно).
+     * @param limitMillis Момент, до которого звонок должен завершиться (epoch millis).
+     * @param numberOfCalls Количество генерируемых звонков.
+     */
+    private void generateCalls(SubscriberDirectory subscribers, long fromMillis, long toMillis, long limitMillis, int numberOfCalls){
+        for (int i = 0; i < numberOfCalls; i++) {
 
             Cdr generatedCdr = new Cdr();
 
@@ -109,21 +263,24 @@ public class CdrProducerService {
                 randomCalledIndex = ThreadLocalRandom.current().nextInt(subscribers.size());
             }while (randomCalledIndex == randomCallerIndex);
 
-            Subscriber caller = subscribers.get(randomCallerIndex);
-            Subscriber called = subscribers.get(randomCalledIndex);
+            long caller = subscribers.msisdnAt(randomCallerIndex);
+            long called = subscribers.msisdnAt(randomCalledIndex);
 
 
             long durationMillis = ThreadLocalRandom.current().nextLong(1,5*60*60*1000);
 
-            long callStartMillis = ThreadLocalRandom.current().nextLong(startMillis,endMillis-durationMillis);//endMillis-durationMillis to make [l;r) maybe redo
+            long latestStartMillis = Math.min(toMillis, limitMillis - durationMillis);
+            if (latestStartMillis <= fromMillis) continue;
+
+            long callStartMillis = ThreadLocalRandom.current().nextLong(fromMillis,latestStartMillis);
             long callFinishMillis = callStartMillis + durationMillis;
 
             var callStartDateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(callStartMillis),ZoneId.of("Europe/Moscow"));
             var callFinishDateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(callFinishMillis),ZoneId.of("Europe/Moscow"));
 
             generatedCdr.setCallType(callType);
-            generatedCdr.setServicedMsisdn(caller.getMsisdn());
-            generatedCdr.setOtherMsisdn(called.getMsisdn());
+            generatedCdr.setServicedMsisdn(Long.toString(caller));
+            generatedCdr.setOtherMsisdn(Long.toString(called));
             generatedCdr.setStartDateTime(callStartDateTime);
             generatedCdr.setFinishDateTime(callFinishDateTime);
             generatedCdr.setConsumedStatus(ConsumedStatus.NEW);
@@ -132,28 +289,109 @@ public class CdrProducerService {
         }
     }
 
+    /**
+     * Ожидает, пока из очереди не будут сохранены все CDR, завершающиеся до {@code releasedUntil}.
+     * Поток не опрашивает очередь по таймеру, а засыпает до сигнала от {@link #persistQueuedData()}
+     * и проверяет очередь заново после каждого сохраненного пакета.
+     *
+     * @throws InterruptedException если поток генерации был прерван во время ожидания.
+     */
+    private void awaitReleasedCdrsPersisted() throws InterruptedException {
+        sliceDrainWaiter = Thread.currentThread();
+        try {
+            while (true) {
+                Cdr head = generatedCdrsQueue.peek();
+                if (head == null || head.getFinishDateTime().isAfter(releasedUntil)) return;
+                LockSupport.park(this);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            sliceDrainWaiter = null;
+        }
+    }
+
+    private void signalSliceDrainWaiter() {
+        Thread waiter = sliceDrainWaiter;
+        if (waiter != null) LockSupport.unpark(waiter);
+    }
+
+    /**
+     * Массово записывает в БД все выпущенные CDR, завершившиеся не позже {@code boundary},
+     * пакетами по {@code const.backfill.batch-size} записей.
+     *
+     * @param boundary Граница времени окончания записей для массового заполнения.
+     */
+    private void backfillReleasedCdrs(LocalDateTime boundary){
+        int batchSize = cdrBackfillService.getBatchSize();
+        long rows = 0;
+        List<Cdr> batch = new ArrayList<>(batchSize);
+        Cdr cdr;
+        while ((cdr = pollCdrFinishedBy(boundary)) != null) {
+            batch.add(cdr);
+            if (batch.size() == batchSize) {
+                cdrBackfillService.backfill(batch);
+                rows += batch.size();
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        cdrBackfillService.backfill(batch);
+        rows += batch.size();
+        if (rows > 0) {
+            log.info("Backfilled {} historical CDRs, average rate {} rows/sec", rows, Math.round(cdrBackfillService.getRowsPerSecond()));
+        }
+    }
+
+    /**
+     * Извлекает из очереди CDR с наименьшим временем окончания, если его уже разрешено сохранять.
+     *
+     * @return CDR для сохранения или {@code null}, если очередь пуста или ее голова еще не выпущена.
+     */
+    private Cdr pollReleasedCdr(){
+        return pollCdrFinishedBy(releasedUntil);
+    }
+
+    /**
+     * Извлекает из очереди CDR с наименьшим временем окончания, если оно не позже {@code boundary}
+     * и не позже {@code releasedUntil}.
+     *
+     * @param boundary Граница времени окончания извлекаемой записи.
+     * @return CDR или {@code null}, если очередь пуста или ее голова лежит за границей.
+     */
+    private Cdr pollCdrFinishedBy(LocalDateTime boundary){
+        Cdr head = generatedCdrsQueue.poll();
+        if (head != null && (head.getFinishDateTime().isAfter(boundary) || head.getFinishDateTime().isAfter(releasedUntil))) {
+            generatedCdrsQueue.add(head);
+            return null;
+        }
+        return head;
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime){
+        return dateTime.atZone(ZoneId.of("Europe/Moscow")).toInstant().toEpochMilli();
+    }
+
+    private static int randomRound(double value){
+        int floor = (int) value;
+        return (ThreadLocalRandom.current().nextDouble() < value - floor) ? floor + 1 : floor;
+    }
+
     /**
      * Добавляет сгенерированную CDR в набор данных после необходимой обработки.
-     * Этот метод гарантирует, что вызов разрешен для обоих участвующих абонентов,
+     * Этот метод атомарно резервирует вызов за обоими участвующими абонентами,
      * разделяет CDR, если он пересекает полночь, создает зеркальную CDR, а затем добавляет
      * все результирующие CDR (оригинальные, разделенные части и зеркальные) в {@code generatedCdrsQueue}.
-     * Эта операция потокобезопасна.
+     * Эта операция потокобезопасна: сериализуются только вызовы, у которых есть общий участник.
      *
      * @param cdr CDR для добавления в набор данных.
      */
     private void addToDataSet(Cdr cdr){
-        lock.lock();
-        try {
-            if (isCallAllowed(cdr.getServicedMsisdn(), cdr.getStartDateTime(), cdr.getFinishDateTime())
-                    && isCallAllowed(cdr.getOtherMsisdn(), cdr.getStartDateTime(), cdr.getFinishDateTime())) {
-                List<Cdr> splittedCdrs = splitIfCrossesMidnight(cdr);
-                List<Cdr> mirroredSplittedCdrs = makeMirrorCdrs(splittedCdrs);
-                generatedCdrsQueue.addAll(splittedCdrs);
-                generatedCdrsQueue.addAll(mirroredSplittedCdrs);
-            }
-        }finally {
-            lock.unlock();
+        if (!callIntervalIndex.tryReserve(cdr.getServicedMsisdn(), cdr.getOtherMsisdn(), cdr.getStartDateTime(), cdr.getFinishDateTime())) {
+            return;
         }
+        List<Cdr> splittedCdrs = splitIfCrossesMidnight(cdr);
+        List<Cdr> mirroredSplittedCdrs = makeMirrorCdrs(splittedCdrs);
+        generatedCdrsQueue.addAll(splittedCdrs);
+        generatedCdrsQueue.addAll(mirroredSplittedCdrs);
     }
 
     /**
@@ -180,30 +418,6 @@ public class CdrProducerService {
         return mirrorCdrs;
     }
 
-    /**
-     * Проверяет, разрешен ли вызов для данного номера телефона в указанном временном диапазоне.
-     * Вызов не разрешен, если абонент уже участвует в другом вызове,
-     * который пересекается с временным диапазоном нового вызова.
-     * Эта проверка учитывает CDR, находящиеся в данный момент в {@code generatedCdrsQueue}.
-     *
-     * @param phoneNumber MSISDN абонента.
-     * @param newStart Дата и время начала нового вызова.
-     * @param newFinish Дата и время окончания нового вызова.
-     * @return {@code true}, если вызов разрешен, {@code false} в противном случае.
-     */
-    private boolean isCallAllowed(String phoneNumber, LocalDateTime newStart, LocalDateTime newFinish){
-        List<Cdr> allCdrsFinishedAfterStartOfNew = generatedCdrsQueue.stream().dropWhile(cdr -> newStart.isAfter(cdr.getFinishDateTime())).toList();
-
-        for (Cdr existing: allCdrsFinishedAfterStartOfNew){
-            if ((Objects.equals(existing.getServicedMsisdn(), phoneNumber) || Objects.equals(existing.getOtherMsisdn(), phoneNumber)) &&
-                    !(newFinish.isBefore(existing.getStartDateTime()) || newStart.isAfter(existing.getFinishDateTime()))) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
     /**
      * Разделяет CDR на несколько CDR, если он пересекает одну или несколько полночей.
      * Каждая результирующая CDR будет содержаться в пределах одного дня.
@@ -253,21 +467,41 @@ public class CdrProducerService {
      * Периодически сохраняет пакет CDR из {@code generatedCdrsQueue} в базу данных.
      * Этот метод запланирован для запуска с фиксированной скоростью, определенной {@code const.scheduled.produce-cdr-rate}.
      * Он выполняется, только если {@code doReadyToPersist} равно true.
-     * Извлекает случайное количество CDR (до 5) из очереди и сохраняет их.
+     * Извлекает случайное количество CDR (до 5) из очереди и сохраняет их,
+     * не выходя за границу {@code releasedUntil}.
+     * Количество уменьшается пропорционально доле скорости {@link BackpressureController#getPublishRate()},
+     * чтобы при отставании потребителей брокера генерация замедлялась вместе с публикацией.
+     * В конвейерном режиме записи сохраняются через {@link CdrPipelineService} и сразу передаются публикации.
+     * В той же транзакции записи прибавляются к суточной сводке {@link CdrDailyUsageService}.
+     * После сохранения публикуется {@link CdrsPersistedEvent}, по которому отправка запускается без ожидания опроса,
+     * и пробуждается поток потоковой генерации, ожидающий сохранения выпущенного среза.
      */
     @Async
+    @Transactional
     @Scheduled(fixedRateString = "${const.scheduled.produce-cdr-rate}")
     public void persistQueuedData(){
         if (!doReadyToPersist) return;
-        var numberOfCdrs = ThreadLocalRandom.current().nextInt(1,5);
+        var numberOfCdrs = randomRound(ThreadLocalRandom.current().nextInt(1,5) * backpressureController.getPublishRate());
+        if (numberOfCdrs == 0) return;
         List<Cdr> cdrsToPersist = new ArrayList<>();
         for (int i = 0; i <numberOfCdrs ; i++) {
-            if (generatedCdrsQueue.isEmpty()) break;
-            cdrsToPersist.add(generatedCdrsQueue.poll());
+            Cdr cdr = pollReleasedCdr();
+            if (cdr == null) break;
+            cdrsToPersist.add(cdr);
         }
 
-        cdrRepository.saveAll(cdrsToPersist);
-
+        if (cdrsToPersist.isEmpty()) return;
 
+        try {
+            if (cdrPipelineService.isEnabled()) {
+                cdrPipelineService.persist(cdrsToPersist);
+            } else {
+                cdrRepository.saveAll(cdrsToPersist);
+            }
+            cdrDailyUsageService.record(cdrsToPersist);
+            eventPublisher.publishEvent(new CdrsPersistedEvent(cdrsToPersist.size()));
+        } finally {
+            signalSliceDrainWaiter();
+        }
     }
 }
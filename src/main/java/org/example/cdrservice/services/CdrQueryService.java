@@ -0,0 +1,111 @@
+package org.example.cdrservice.services;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.example.cdrservice.converters.CallTypeConverter;
+import org.example.cdrservice.converters.MsisdnConverter;
+import org.example.cdrservice.dtos.CdrQuery;
+import org.example.cdrservice.dtos.CdrRecordDTO;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+
+/**
+ * Сервис запросов CDR абонента за период.
+ * <p>
+ * CDR выбираются по индексу {@code (serviced_msisdn, start_date_time, id)} постранично по ключу
+ * (keyset pagination): следующая страница начинается после {@code (start_date_time, id)} последней CDR предыдущей,
+ * поэтому стоимость запроса не зависит ни от размера таблицы, ни от номера страницы.
+ * Строки результата записываются в ответ в формате NDJSON по мере чтения и не накапливаются в памяти.
+ * </p>
+ */
+@Service
+public class CdrQueryService {
+
+    private final CdrJdbcRepository cdrJdbcRepository;
+
+    private final ObjectWriter recordWriter;
+
+    private final int defaultLimit;
+
+    private final int maxLimit;
+
+    public CdrQueryService(CdrJdbcRepository cdrJdbcRepository,
+                           ObjectMapper objectMapper,
+                           @Value("${const.query.default-limit:1000}") int defaultLimit,
+                           @Value("${const.query.max-limit:100000}") int maxLimit) {
+        this.cdrJdbcRepository = cdrJdbcRepository;
+        this.recordWriter = objectMapper.writerFor(CdrRecordDTO.class);
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Проверяет параметры запроса.
+     *
+     * @param msisdn MSISDN обслуживаемого абонента.
+     * @param from Начало периода по времени начала звонка (включительно).
+     * @param to Конец периода по времени начала звонка (не включительно).
+     * @param afterStartDateTime Время начала последней CDR предыдущей страницы или {@code null} для первой страницы.
+     * @param afterId Идентификатор последней CDR предыдущей страницы; задается вместе с {@code afterStartDateTime}.
+     * @param limit Максимальное количество CDR на странице или {@code null} для {@code const.query.default-limit}.
+     * @return Проверенный запрос.
+     * @throws IllegalArgumentException если параметры некорректны.
+     */
+    public CdrQuery createQuery(String msisdn, LocalDateTime from, LocalDateTime to,
+                                LocalDateTime afterStartDateTime, Long afterId, Integer limit) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Period start " + from + " must be before its end " + to);
+        }
+        if ((afterStartDateTime == null) != (afterId == null)) {
+            throw new IllegalArgumentException("afterStartDateTime and afterId must be given together");
+        }
+        int pageLimit = (limit == null) ? defaultLimit : limit;
+        if (pageLimit < 1 || pageLimit > maxLimit) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxLimit + ": " + pageLimit);
+        }
+        return new CdrQuery(MsisdnConverter.toNumber(msisdn), from, to, afterStartDateTime,
+                (afterId == null) ? 0 : afterId, pageLimit);
+    }
+
+    /**
+     * Записывает страницу CDR в формате NDJSON: по одному JSON-объекту {@link CdrRecordDTO} в строке,
+     * в порядке времени начала звонка.
+     *
+     * @param query Проверенный запрос.
+     * @param out Поток ответа; не закрывается.
+     * @throws IOException при ошибке записи в поток.
+     */
+    public void streamNdjson(CdrQuery query, OutputStream out) throws IOException {
+        try (JsonGenerator generator = recordWriter.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            cdrJdbcRepository.streamSubscriberPage(query.servicedMsisdn(), query.from(), query.to(),
+                    query.afterStartDateTime(), query.afterId(), query.limit(), rs -> {
+                        CdrRecordDTO cdr = new CdrRecordDTO(
+                                rs.getLong(1),
+                                CallTypeConverter.fromCode(rs.getShort(2)),
+                                Long.toString(rs.getLong(3)),
+                                Long.toString(rs.getLong(4)),
+                                rs.getObject(5, LocalDateTime.class),
+                                rs.getObject(6, LocalDateTime.class)
+                        );
+                        try {
+                            recordWriter.writeValue(generator, cdr);
+                            generator.writeRaw('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package org.example.cdrservice.services;
+
+import org.example.cdrservice.converters.CdrCsvWriter;
+import org.example.cdrservice.converters.MsisdnConverter;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сервис выгрузки отчетов об использовании (UDR) абонента за период.
+ * <p>
+ * CDR читаются однонаправленным курсором по индексу {@code (serviced_msisdn, start_date_time, id)} и записываются
+ * {@link CdrCsvWriter} в буфер фиксированного размера, который сбрасывается в поток ответа (при необходимости через
+ * gzip). Записи не материализуются ни в виде сущностей, ни в виде списка, поэтому выгрузка миллионов строк
+ * занимает постоянный объем памяти.
+ * </p>
+ */
+@Service
+public class CdrReportService {
+
+    /**
+     * Количество строк, получаемых от БД за одно обращение курсора.
+     * Настраивается через свойство {@code const.export.fetch-size}.
+     */
+    @Value("${const.export.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * Размер буфера CSV (и буфера gzip).
+     * Настраивается через свойство {@code const.export.buffer-size}.
+     */
+    @Value("${const.export.buffer-size:64KB}")
+    private DataSize bufferSize;
+
+    private final CdrJdbcRepository cdrJdbcRepository;
+
+    public CdrReportService(CdrJdbcRepository cdrJdbcRepository) {
+        this.cdrJdbcRepository = cdrJdbcRepository;
+    }
+
+    /**
+     * Проверяет параметры выгрузки.
+     *
+     * @param msisdn MSISDN обслуживаемого абонента.
+     * @param from Начало периода по времени начала звонка (включительно).
+     * @param to Конец периода по времени начала звонка (не включительно).
+     * @return MSISDN обслуживаемого абонента в виде числа.
+     * @throws IllegalArgumentException если параметры некорректны.
+     */
+    public long validate(String msisdn, LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Period start " + from + " must be before its end " + to);
+        }
+        return MsisdnConverter.toNumber(msisdn);
+    }
+
+    /**
+     * Записывает в поток отчет CSV по всем CDR абонента за период в порядке времени начала звонка.
+     *
+     * @param servicedMsisdn MSISDN обслуживаемого абонента.
+     * @param from Начало периода по времени начала звонка (включительно).
+     * @param to Конец периода по времени начала звонка (не включительно).
+     * @param gzip Сжимать ли отчет gzip.
+     * @param out Поток ответа; не закрывается.
+     * @return Количество выгруженных CDR.
+     * @throws IOException при ошибке записи в поток.
+     */
+    public long exportCsv(long servicedMsisdn, LocalDateTime from, LocalDateTime to, boolean gzip, OutputStream out) throws IOException {
+        int size = (int) bufferSize.toBytes();
+        if (!gzip) return writeCsv(servicedMsisdn, from, to, out, size);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(nonClosing(out), size)) {
+            return writeCsv(servicedMsisdn, from, to, gzipOut, size);
+        }
+    }
+
+    private long writeCsv(long servicedMsisdn, LocalDateTime from, LocalDateTime to, OutputStream out, int size) throws IOException {
+        CdrCsvWriter writer = new CdrCsvWriter(out, size);
+        writer.writeHeader();
+        try {
+            cdrJdbcRepository.streamSubscriberPeriod(servicedMsisdn, from, to, fetchSize, rs -> {
+                try {
+                    writer.writeRow(rs);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        return writer.getRows();
+    }
+
+    private static OutputStream nonClosing(OutputStream out) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,482 @@
+package org.example.cdrservice.services;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cdrservice.converters.CdrStreamingMessageWriter;
+import org.example.cdrservice.converters.CompressingMessageConverter;
+import org.example.cdrservice.converters.MsisdnConverter;
+import org.example.cdrservice.dtos.CdrDTO;
+import org.example.cdrservice.dtos.DeadLetterReplayFilter;
+import org.example.cdrservice.dtos.DeadLetterReplayStatus;
+import org.example.cdrservice.utils.CdrSharding;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Сервис повторной отправки CDR из очереди недоставленных сообщений (DLQ) в основной обменник CDR.
+ * <p>
+ * Повторная отправка выполняется в фоновом потоке пакетами по {@code const.replay.batch-size} сообщений:
+ * сообщения пакета читаются из DLQ без автоматического подтверждения, CDR из них, прошедшие фильтр,
+ * отправляются в основной обменник (с распределением по шардам {@link CdrSharding}), а остальные CDR
+ * возвращаются в DLQ отдельным сообщением.
+ * </p>
+ * <p>
+ * Возврат оставшихся CDR в DLQ и подтверждение исходного сообщения выполняются как один шаг: оставшиеся CDR
+ * отправляются в DLQ только после того, как брокер подтвердил отправку CDR этого сообщения в основной обменник,
+ * а исходное сообщение подтверждается только после подтверждения возврата. Если брокер не подтвердил отправку
+ * в основной обменник или возврат в DLQ, исходное сообщение возвращается в DLQ целиком (оставшиеся CDR в этом случае
+ * в нее еще не попали), и повторная отправка завершается ошибкой. Поэтому CDR не теряются и не дублируются в DLQ,
+ * но при сбое могут быть повторно отправлены в основной обменник. Если все сообщения пакета обработаны успешно,
+ * пакет подтверждается в DLQ одной операцией.
+ * </p>
+ * <p>
+ * Скорость отправки в основной обменник ограничена заданным числом сообщений в секунду, умноженным на долю скорости
+ * {@link BackpressureController}, поэтому повторная отправка не перегружает тарификацию.
+ * Читаются только сообщения, находившиеся в DLQ на момент запуска, так что возвращенные в нее CDR
+ * повторно не обрабатываются.
+ * </p>
+ */
+@Slf4j
+@Service
+public class DeadLetterReplayService {
+
+    private static final long BACKPRESSURE_PAUSE_MILLIS = 100;
+
+    @Value("${const.rabbitmq.cdr.CDR_QUEUE_NAME}")
+    private String CDR_QUEUE_NAME;
+
+    @Value("${const.rabbitmq.cdr.CDR_EXCHANGE_NAME}")
+    private String CDR_EXCHANGE_NAME;
+
+    @Value("${const.rabbitmq.cdr.CDR_ROUTING_KEY}")
+    private String CDR_ROUTING_KEY;
+
+    @Value("${const.rabbitmq.dead-letter.DEAD_LETTER_EXCHANGE_POSTFIX}")
+    private String DEAD_LETTER_EXCHANGE_POSTFIX;
+
+    @Value("${const.rabbitmq.dead-letter.DEAD_LETTER_ROUTING_KEY_POSTFIX}")
+    private String DEAD_LETTER_ROUTING_KEY_POSTFIX;
+
+    @Value("${const.rabbitmq.dead-letter.DEAD_LETTER_QUEUE_POSTFIX}")
+    private String DEAD_LETTER_QUEUE_POSTFIX;
+
+    @Value("${const.rabbitmq.cdr.shard-count:1}")
+    private int shardCount;
+
+    /**
+     * Количество сообщений, читаемых из DLQ и подтверждаемых одной операцией.
+     * Настраивается через свойство {@code const.replay.batch-size}.
+     */
+    @Value("${const.replay.batch-size:500}")
+    private int batchSize;
+
+    /**
+     * Скорость отправки в сообщениях в секунду, если она не задана при запуске.
+     * Настраивается через свойство {@code const.replay.max-rate}.
+     */
+    @Value("${const.replay.max-rate:200}")
+    private double defaultMaxRate;
+
+    @Value("${const.publisher.confirm-timeout:10s}")
+    private Duration confirmTimeout;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final CompressingMessageConverter cdrMessageConverter;
+    private final CdrStreamingMessageWriter cdrStreamingMessageWriter;
+    private final BackpressureController backpressureController;
+
+    private final MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+
+    private final ExecutorService replayExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cdr-dead-letter-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile DeadLetterReplayStatus.State state = DeadLetterReplayStatus.State.IDLE;
+    private volatile boolean cancelRequested;
+    private volatile DeadLetterReplayFilter filter;
+    private volatile double maxRate;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+
+    /**
+     * Счетчики прогресса. Изменяются только потоком повторной отправки.
+     */
+    private volatile long totalMessages;
+    private volatile long messagesRead;
+    private volatile long messagesReplayed;
+    private volatile long cdrsReplayed;
+    private volatile long cdrsRetained;
+    private volatile long messagesRetained;
+
+    /**
+     * Момент ({@link System#nanoTime()}), раньше которого нельзя отправлять следующее сообщение.
+     */
+    private long nextSendAtNanos;
+
+    public DeadLetterReplayService(RabbitTemplate rabbitTemplate,
+                                   CompressingMessageConverter cdrMessageConverter,
+                                   CdrStreamingMessageWriter cdrStreamingMessageWriter,
+                                   BackpressureController backpressureController) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.cdrMessageConverter = cdrMessageConverter;
+        this.cdrStreamingMessageWriter = cdrStreamingMessageWriter;
+        this.backpressureController = backpressureController;
+    }
+
+    /**
+     * Запускает повторную отправку CDR из DLQ в фоновом потоке.
+     *
+     * @param rate Максимальная скорость отправки в сообщениях в секунду или {@code null} для {@code const.replay.max-rate}.
+     * @param filter Фильтр отправляемых CDR.
+     * @return Состояние запущенной повторной отправки.
+     * @throws IllegalStateException если повторная отправка уже выполняется.
+     * @throws IllegalArgumentException если скорость не положительна.
+     */
+    public synchronized DeadLetterReplayStatus start(Double rate, DeadLetterReplayFilter filter) {
+        if (state == DeadLetterReplayStatus.State.RUNNING) {
+            throw new IllegalStateException("Dead-letter replay is already running");
+        }
+        double effectiveRate = (rate == null) ? defaultMaxRate : rate;
+        if (effectiveRate <= 0) throw new IllegalArgumentException("Replay rate must be positive: " + effectiveRate);
+
+        this.filter = (filter == null) ? DeadLetterReplayFilter.NONE : filter;
+        this.maxRate = effectiveRate;
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+        error = null;
+        totalMessages = -1;
+        messagesRead = 0;
+        messagesReplayed = 0;
+        cdrsReplayed = 0;
+        cdrsRetained = 0;
+        messagesRetained = 0;
+        nextSendAtNanos = System.nanoTime();
+        cancelRequested = false;
+        state = DeadLetterReplayStatus.State.RUNNING;
+        log.info("Starting replay of CDR dead-letter queue at up to {} messages/s with filter {}", effectiveRate, filter);
+        replayExecutor.execute(this::replay);
+        return getStatus();
+    }
+
+    /**
+     * Запрашивает остановку повторной отправки. Новые сообщения в основной обменник больше не отправляются,
+     * в том числе если повторная отправка ожидает снятия обратного давления: неотправленные CDR текущего сообщения
+     * возвращаются в DLQ, а уже прочитанные сообщения подтверждаются как обычно.
+     *
+     * @return Текущее состояние повторной отправки.
+     */
+    public DeadLetterReplayStatus cancel() {
+        if (state == DeadLetterReplayStatus.State.RUNNING) cancelRequested = true;
+        return getStatus();
+    }
+
+    /**
+     * Возвращает состояние и прогресс последней повторной отправки.
+     *
+     * @return Состояние повторной отправки.
+     */
+    public DeadLetterReplayStatus getStatus() {
+        return new DeadLetterReplayStatus(state, filter, maxRate, startedAt, finishedAt, Math.max(totalMessages, 0),
+                messagesRead, messagesReplayed, cdrsReplayed, cdrsRetained, messagesRetained, error);
+    }
+
+    @PreDestroy
+    void shutdownReplayExecutor() {
+        cancelRequested = true;
+        replayExecutor.shutdownNow();
+    }
+
+    private void replay() {
+        try {
+            while (!cancelRequested && replayBatch()) {
+                log.debug("Replayed {} of {} dead-lettered CDR messages", messagesRead, totalMessages);
+            }
+            finish(cancelRequested ? DeadLetterReplayStatus.State.CANCELLED : DeadLetterReplayStatus.State.COMPLETED, null);
+        } catch (RuntimeException e) {
+            log.error("Replay of CDR dead-letter queue failed", e);
+            finish(DeadLetterReplayStatus.State.FAILED, e.toString());
+        }
+    }
+
+    private void finish(DeadLetterReplayStatus.State finalState, String failure) {
+        finishedAt = LocalDateTime.now();
+        error = failure;
+        state = finalState;
+        log.info("Replay of CDR dead-letter queue {}: read {} messages, replayed {} CDRs in {} messages, retained {} CDRs and {} messages",
+                finalState, messagesRead, cdrsReplayed, messagesReplayed, cdrsRetained, messagesRetained);
+    }
+
+    /**
+     * Повторно отправляет один пакет сообщений DLQ.
+     *
+     * @return {@code true}, если в DLQ могут остаться сообщения, находившиеся в ней на момент запуска.
+     */
+    private boolean replayBatch() {
+        String deadLetterQueue = CDR_QUEUE_NAME + DEAD_LETTER_QUEUE_POSTFIX;
+        Boolean hasMore = rabbitTemplate.execute(channel -> {
+            List<PendingDelivery> deliveries = new ArrayList<>();
+            try {
+                while (deliveries.size() < batchSize && (totalMessages < 0 || messagesRead < totalMessages) && !cancelRequested) {
+                    GetResponse response = channel.basicGet(deadLetterQueue, false);
+                    if (response == null) break;
+                    if (totalMessages < 0) totalMessages = response.getMessageCount() + 1L;
+                    messagesRead++;
+                    PendingDelivery delivery = new PendingDelivery(response.getEnvelope().getDeliveryTag());
+                    deliveries.add(delivery);
+                    replayMessage(toMessage(response), delivery);
+                }
+                if (deliveries.isEmpty()) return false;
+
+                String failure = settle(channel, deliveries);
+                if (failure != null) {
+                    throw new AmqpException("Replayed CDR messages were not confirmed by RabbitMQ (" + failure + ")");
+                }
+            } catch (Exception e) {
+                for (PendingDelivery delivery : deliveries) {
+                    if (delivery.settled) continue;
+                    if (delivery.deadLetterConfirm != null) {
+                        channel.basicAck(delivery.deliveryTag, false);
+                    } else {
+                        channel.basicNack(delivery.deliveryTag, false, true);
+                    }
+                }
+                throw e;
+            }
+            return deliveries.size() == batchSize && messagesRead < totalMessages;
+        });
+        return Boolean.TRUE.equals(hasMore);
+    }
+
+    /**
+     * Отправляет CDR сообщения, прошедшие фильтр, в основной обменник и подготавливает к возврату в DLQ остальные.
+     * Если повторная отправка остановлена, неотправленные шарды сообщения тоже возвращаются в DLQ.
+     */
+    private void replayMessage(Message message, PendingDelivery delivery) throws InterruptedException {
+        List<CdrDTO> cdrs;
+        try {
+            cdrs = decode(message);
+        } catch (MessageConversionException e) {
+            log.warn("Failed to decode dead-lettered CDR message, returning it to the dead-letter queue", e);
+            delivery.deadLetter = message;
+            messagesRetained++;
+            return;
+        }
+
+        List<CdrDTO> matched = new ArrayList<>(cdrs.size());
+        List<CdrDTO> retained = new ArrayList<>();
+        for (CdrDTO cdr : cdrs) {
+            (filter.matches(cdr) ? matched : retained).add(cdr);
+        }
+
+        if (!matched.isEmpty()) {
+            Message[] messages = cdrStreamingMessageWriter.writeCdrs(matched, shardCount);
+            for (int shard = 0; shard < messages.length; shard++) {
+                if (messages[shard] == null) continue;
+                if (!pace()) {
+                    moveUnsentShards(matched, retained, shard);
+                    break;
+                }
+                delivery.replayConfirms.add(publish(CDR_EXCHANGE_NAME, CdrSharding.routingKey(CDR_ROUTING_KEY, shard, shardCount), messages[shard]));
+                messagesReplayed++;
+            }
+            cdrsReplayed += matched.size();
+        }
+        if (!retained.isEmpty()) {
+            delivery.deadLetter = cdrStreamingMessageWriter.writeCdrs(retained, 1)[0];
+            cdrsRetained += retained.size();
+        }
+    }
+
+    /**
+     * Подтверждает или возвращает в DLQ прочитанные сообщения пакета.
+     * Сначала ожидаются подтверждения отправок в основной обменник: сообщение, отправка которого не подтверждена,
+     * возвращается в DLQ, а для остальных в DLQ отправляются оставшиеся CDR. Затем ожидаются подтверждения возврата,
+     * и исходное сообщение подтверждается, только если возврат подтвержден.
+     *
+     * @return Описание первой неудачи или {@code null}, если все сообщения пакета подтверждены.
+     */
+    private String settle(Channel channel, List<PendingDelivery> deliveries) throws IOException, InterruptedException {
+        String failure = null;
+        long deadline = System.nanoTime() + confirmTimeout.toNanos();
+        for (PendingDelivery delivery : deliveries) {
+            String replayFailure = awaitConfirms(delivery.replayConfirms, deadline);
+            if (replayFailure != null) {
+                channel.basicNack(delivery.deliveryTag, false, true);
+                delivery.settled = true;
+                if (failure == null) failure = replayFailure;
+            } else if (delivery.deadLetter != null) {
+                delivery.deadLetterConfirm = publish(CDR_EXCHANGE_NAME + DEAD_LETTER_EXCHANGE_POSTFIX,
+                        CDR_ROUTING_KEY + DEAD_LETTER_ROUTING_KEY_POSTFIX, delivery.deadLetter);
+            }
+        }
+
+        deadline = System.nanoTime() + confirmTimeout.toNanos();
+        List<PendingDelivery> confirmed = new ArrayList<>(deliveries.size());
+        for (PendingDelivery delivery : deliveries) {
+            if (delivery.settled) continue;
+            String deadLetterFailure = (delivery.deadLetterConfirm == null) ? null
+                    : awaitConfirms(List.of(delivery.deadLetterConfirm), deadline);
+            if (deadLetterFailure != null) {
+                channel.basicNack(delivery.deliveryTag, false, true);
+                delivery.settled = true;
+                if (failure == null) failure = deadLetterFailure;
+            } else {
+                confirmed.add(delivery);
+            }
+        }
+
+        if (failure == null) {
+            channel.basicAck(deliveries.get(deliveries.size() - 1).deliveryTag, true);
+        } else {
+            for (PendingDelivery delivery : confirmed) {
+                channel.basicAck(delivery.deliveryTag, false);
+            }
+        }
+        confirmed.forEach(delivery -> delivery.settled = true);
+        return failure;
+    }
+
+    private List<CdrDTO> decode(Message message) {
+        Object payload;
+        try {
+            payload = cdrMessageConverter.fromMessage(message);
+        } catch (RuntimeException e) {
+            throw (e instanceof MessageConversionException conversionException) ? conversionException
+                    : new MessageConversionException("Failed to decode CDR batch", e);
+        }
+        if (!(payload instanceof List<?> list) || !list.stream().allMatch(CdrDTO.class::isInstance)) {
+            throw new MessageConversionException("Message is not a CDR batch: " + message.getMessageProperties());
+        }
+        List<CdrDTO> cdrs = new ArrayList<>(list.size());
+        list.forEach(cdr -> cdrs.add((CdrDTO) cdr));
+        return cdrs;
+    }
+
+    /**
+     * Переносит в оставшиеся CDR записи шардов, начиная с {@code firstUnsentShard}, которые не были отправлены.
+     */
+    private void moveUnsentShards(List<CdrDTO> matched, List<CdrDTO> retained, int firstUnsentShard) {
+        for (Iterator<CdrDTO> iterator = matched.iterator(); iterator.hasNext(); ) {
+            CdrDTO cdr = iterator.next();
+            if (shardOf(cdr) >= firstUnsentShard) {
+                retained.add(cdr);
+                iterator.remove();
+            }
+        }
+    }
+
+    private int shardOf(CdrDTO cdr) {
+        return (shardCount == 1) ? 0 : CdrSharding.shardOf(MsisdnConverter.toNumber(cdr.servicedMsisdn()), shardCount);
+    }
+
+    private CorrelationData publish(String exchange, String routingKey, Message message) {
+        CorrelationData correlationData = new CorrelationData();
+        rabbitTemplate.send(exchange, routingKey, message, correlationData);
+        return correlationData;
+    }
+
+    /**
+     * Ожидает подтверждения отправленных сообщений до общего для пакета момента {@code deadline}.
+     *
+     * @return Описание первой неудачи или {@code null}, если все сообщения подтверждены
+     *         (или подтверждения на фабрике соединений выключены).
+     */
+    private String awaitConfirms(List<CorrelationData> confirms, long deadline) throws InterruptedException {
+        if (confirms.isEmpty() || !rabbitTemplate.getConnectionFactory().isPublisherConfirms()) return null;
+        for (CorrelationData correlationData : confirms) {
+            CorrelationData.Confirm confirm;
+            try {
+                confirm = correlationData.getFuture().get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                return "no confirm: " + e;
+            }
+            if (!confirm.isAck()) return "nack: " + confirm.getReason();
+            if (correlationData.getReturned() != null) return "returned: " + correlationData.getReturned().getReplyText();
+        }
+        return null;
+    }
+
+    /**
+     * Выдерживает интервал между отправками по заданной скорости и доле скорости обратного давления.
+     * Пока публикация приостановлена обратным давлением, ожидает ее возобновления.
+     *
+     * @return {@code false}, если во время ожидания запрошена остановка и отправлять сообщение нельзя.
+     */
+    private boolean pace() throws InterruptedException {
+        double share;
+        while ((share = backpressureController.getPublishRate()) <= 0) {
+            if (cancelRequested) return false;
+            Thread.sleep(BACKPRESSURE_PAUSE_MILLIS);
+        }
+        long now = System.nanoTime();
+        if (nextSendAtNanos > now) TimeUnit.NANOSECONDS.sleep(nextSendAtNanos - now);
+        if (cancelRequested) return false;
+        nextSendAtNanos = Math.max(nextSendAtNanos, now) + (long) (TimeUnit.SECONDS.toNanos(1) / (maxRate * share));
+        return true;
+    }
+
+    private Message toMessage(GetResponse response) {
+        MessageProperties messageProperties = messagePropertiesConverter.toMessageProperties(
+                response.getProps(), response.getEnvelope(), StandardCharsets.UTF_8.name());
+        messageProperties.setMessageCount(response.getMessageCount());
+        return new Message(response.getBody(), messageProperties);
+    }
+
+    /**
+     * Прочитанное из DLQ сообщение, ожидающее подтверждения или возврата в DLQ.
+     */
+    private static class PendingDelivery {
+
+        private final long deliveryTag;
+
+        /**
+         * Подтверждения отправок CDR сообщения в основной обменник.
+         */
+        private final List<CorrelationData> replayConfirms = new ArrayList<>();
+
+        /**
+         * Сообщение с оставшимися CDR (или исходное неразбираемое сообщение) для возврата в DLQ.
+         */
+        private Message deadLetter;
+
+        /**
+         * Подтверждение возврата в DLQ; задано, только если возврат уже отправлен.
+         */
+        private CorrelationData deadLetterConfirm;
+
+        /**
+         * Подтверждено ли сообщение в DLQ или возвращено в нее.
+         */
+        private boolean settled;
+
+        PendingDelivery(long deliveryTag) {
+            this.deliveryTag = deliveryTag;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.cdrservice.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.cdrservice.repositories.SubscriberJdbcRepository;
+import org.example.cdrservice.utils.SubscriberDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigInteger;
+import java.util.SplittableRandom;
+
+/**
+ * Сервис создания синтетической базы абонентов для нагрузочного тестирования.
+ * <p>
+ * Если включен режим {@code const.population.enabled}, при запуске (перед загрузкой справочника
+ * {@link SubscriberService}) дополняет таблицу {@code subscribers} до {@code const.population.size} абонентов.
+ * MSISDN создаются в формате российских мобильных номеров {@code 7 DEF XXXXXXX} с кодами DEF
+ * от {@code const.population.def-code-from} до {@code const.population.def-code-to}.
+ * </p>
+ * <p>
+ * Номера не хранятся в множестве для проверки уникальности: {@code i}-й номер получается из {@code i}
+ * биекцией {@code (b + a * i) mod N} на пространстве из {@code N} номеров выбранных кодов, где {@code a}
+ * взаимно просто с {@code N}, поэтому номера не повторяются и рассыпаны по всем кодам. Уже существующие номера
+ * пропускаются по {@link SubscriberDirectory}. Абоненты записываются JDBC-пакетами
+ * по {@code const.population.batch-size} строк.
+ * </p>
+ */
+@Slf4j
+@Service
+public class SubscriberPopulationService {
+
+    private static final long SUBSCRIBER_NUMBERS_PER_DEF_CODE = 10_000_000L;
+
+    private static final long COUNTRY_CODE_BASE = 7L * 1000 * SUBSCRIBER_NUMBERS_PER_DEF_CODE;
+
+    /**
+     * Включает создание синтетической базы абонентов при запуске.
+     * Настраивается через свойство {@code const.population.enabled}.
+     */
+    @Value("${const.population.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * Требуемое общее количество абонентов.
+     * Настраивается через свойство {@code const.population.size}.
+     */
+    @Value("${const.population.size:1000000}")
+    private int size;
+
+    /**
+     * Первый код DEF создаваемых номеров.
+     * Настраивается через свойство {@code const.population.def-code-from}.
+     */
+    @Value("${const.population.def-code-from:900}")
+    private int defCodeFrom;
+
+    /**
+     * Последний код DEF создаваемых номеров (включительно).
+     * Настраивается через свойство {@code const.population.def-code-to}.
+     */
+    @Value("${const.population.def-code-to:999}")
+    private int defCodeTo;
+
+    /**
+     * Количество строк в одном JDBC-пакете.
+     * Настраивается через свойство {@code const.population.batch-size}.
+     */
+    @Value("${const.population.batch-size:10000}")
+    private int batchSize;
+
+    /**
+     * Начальное значение генератора номеров; при одном значении создаются одни и те же номера.
+     * Настраивается через свойство {@code const.population.seed}.
+     */
+    @Value("${const.population.seed:42}")
+    private long seed;
+
+    private final SubscriberJdbcRepository subscriberJdbcRepository;
+
+    public SubscriberPopulationService(SubscriberJdbcRepository subscriberJdbcRepository) {
+        this.subscriberJdbcRepository = subscriberJdbcRepository;
+    }
+
+    /**
+     * Создает синтетическую базу абонентов, если режим включен.
+     * Вызывается {@link SubscriberService} при запуске перед загрузкой справочника.
+     */
+    public void populateIfEnabled() {
+        if (enabled) populate();
+    }
+
+    /**
+     * Дополняет таблицу {@code subscribers} до {@code const.population.size} абонентов.
+     * Если абонентов уже не меньше, ничего не делает.
+     *
+     * @return Количество созданных абонентов.
+     * @throws IllegalStateException если в выбранных кодах DEF не хватает свободных номеров.
+     */
+    public int populate() {
+        if (defCodeFrom < 900 || defCodeTo > 999 || defCodeFrom > defCodeTo) {
+            throw new IllegalStateException("Invalid DEF code range " + defCodeFrom + ".." + defCodeTo);
+        }
+        long startNanos = System.nanoTime();
+        SubscriberDirectory.Builder existingBuilder = new SubscriberDirectory.Builder((int) subscriberJdbcRepository.findVersion()[0]);
+        subscriberJdbcRepository.streamMsisdns(existingBuilder::add);
+        SubscriberDirectory existing = existingBuilder.build();
+        int missing = size - existing.size();
+        if (missing <= 0) return 0;
+
+        long numberSpace = (defCodeTo - defCodeFrom + 1) * SUBSCRIBER_NUMBERS_PER_DEF_CODE;
+        long firstMsisdn = COUNTRY_CODE_BASE + defCodeFrom * SUBSCRIBER_NUMBERS_PER_DEF_CODE;
+        SplittableRandom random = new SplittableRandom(seed);
+        long multiplier;
+        do {
+            multiplier = random.nextLong(1, numberSpace);
+        } while (!BigInteger.valueOf(multiplier).gcd(BigInteger.valueOf(numberSpace)).equals(BigInteger.ONE));
+        long number = random.nextLong(numberSpace);
+
+        long[] batch = new long[batchSize];
+        int batchCount = 0;
+        int created = 0;
+        for (long i = 0; i < numberSpace && created < missing; i++, number = (number + multiplier) % numberSpace) {
+            long msisdn = firstMsisdn + number;
+            if (existing.contains(msisdn)) continue;
+            batch[batchCount++] = msisdn;
+            created++;
+            if (batchCount == batchSize) {
+                subscriberJdbcRepository.batchInsert(batch, batchCount);
+                batchCount = 0;
+            }
+        }
+        if (batchCount > 0) subscriberJdbcRepository.batchInsert(batch, batchCount);
+        if (created < missing) {
+            throw new IllegalStateException("Only " + created + " of " + missing + " subscriber numbers are free in DEF codes "
+                    + defCodeFrom + ".." + defCodeTo);
+        }
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        log.info("Created {} synthetic subscribers in DEF codes {}..{} in {} ms ({} rows/sec)", created, defCodeFrom, defCodeTo,
+                elapsedMillis, Math.round(created * 1000.0 / Math.max(1, elapsedMillis)));
+        return created;
+    }
+}
@@ -1,27 +1,112 @@
 package org.example.cdrservice.services;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.example.cdrservice.converters.MsisdnConverter;
 import org.example.cdrservice.entitites.Subscriber;
+import org.example.cdrservice.repositories.SubscriberJdbcRepository;
 import org.example.cdrservice.repositories.SubscriberRepository;
+import org.example.cdrservice.utils.SubscriberDirectory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Сервисный слой для управления сущностями {@link Subscriber}.
  * Предоставляет методы для доступа к данным абонентов из репозитория.
+ * <p>
+ * Для генерации и проверки MSISDN сервис держит в памяти {@link SubscriberDirectory}. Справочник загружается
+ * при запуске (после создания синтетических абонентов {@link SubscriberPopulationService}), перезагружается
+ * по расписанию {@code const.subscribers.refresh-rate}, если набор абонентов изменился, и по вызову
+ * {@link #refresh()}. Новый справочник строится целиком и заменяет старый одной записью ссылки, поэтому читатели всегда видят согласованный справочник без блокировок и обращений к БД.
+ * </p>
  */
+@Slf4j
 @Service
 public class SubscriberService {
 
     private final SubscriberRepository subscriberRepository;
 
-    public SubscriberService(SubscriberRepository subscriberRepository) {
+    private final SubscriberJdbcRepository subscriberJdbcRepository;
+
+    private final SubscriberPopulationService subscriberPopulationService;
+
+    private volatile SubscriberDirectory directory = SubscriberDirectory.empty();
+
+    /**
+     * Версия набора абонентов, по которой построен текущий справочник.
+     */
+    private volatile long[] directoryVersion = new long[0];
+
+    public SubscriberService(SubscriberRepository subscriberRepository, SubscriberJdbcRepository subscriberJdbcRepository,
+                             SubscriberPopulationService subscriberPopulationService, MeterRegistry meterRegistry) {
         this.subscriberRepository = subscriberRepository;
+        this.subscriberJdbcRepository = subscriberJdbcRepository;
+        this.subscriberPopulationService = subscriberPopulationService;
+        Gauge.builder("subscribers.directory.size", this, service -> service.getDirectory().size())
+                .description("Number of subscribers in the in-memory subscriber directory")
+                .register(meterRegistry);
     }
 
     public List<Subscriber> findAll(){
         return subscriberRepository.findAll();
     }
 
+    /**
+     * Возвращает текущий справочник абонентов.
+     * Справочник неизменяем; для согласованной работы с ним его следует получить один раз и использовать дальше.
+     *
+     * @return Справочник абонентов.
+     */
+    public SubscriberDirectory getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Проверяет по справочнику, является ли номер абонентом.
+     *
+     * @param msisdn MSISDN.
+     * @return {@code true}, если номер есть в справочнике.
+     * @throws IllegalArgumentException если строка не является MSISDN.
+     */
+    public boolean isSubscriber(String msisdn) {
+        return directory.contains(MsisdnConverter.toNumber(msisdn));
+    }
+
+    /**
+     * Загружает справочник при запуске, предварительно создав синтетических абонентов, если этот режим включен.
+     */
+    @PostConstruct
+    public void loadDirectory() {
+        subscriberPopulationService.populateIfEnabled();
+        refresh();
+    }
 
+    /**
+     * Перезагружает справочник, если набор абонентов изменился с последней загрузки.
+     * Этот метод запланирован для запуска с фиксированной задержкой, определенной {@code const.subscribers.refresh-rate}.
+     */
+    @Scheduled(fixedDelayString = "${const.subscribers.refresh-rate:60000}", initialDelayString = "${const.subscribers.refresh-rate:60000}")
+    public void refreshIfChanged() {
+        if (!Arrays.equals(subscriberJdbcRepository.findVersion(), directoryVersion)) {
+            refresh();
+        }
+    }
+
+    /**
+     * Загружает абонентов из БД в новый справочник и заменяет им текущий.
+     * Вызывается после массового изменения набора абонентов.
+     */
+    public synchronized void refresh() {
+        long[] version = subscriberJdbcRepository.findVersion();
+        SubscriberDirectory.Builder builder = new SubscriberDirectory.Builder((int) version[0]);
+        subscriberJdbcRepository.streamMsisdns(builder::add);
+        directory = builder.build();
+        directoryVersion = version;
+        log.info("Loaded {} subscribers into the subscriber directory", directory.size());
+    }
 }
@@ -0,0 +1,89 @@
+package org.example.cdrservice.utils;
+
+import java.time.Duration;
+
+/**
+ * Адаптивный размер пакета публикации.
+ * <p>
+ * Размер меняется в пределах [{@code minSize}; {@code maxSize}] по очереди неопубликованных записей
+ * и задержке подтверждения брокера:
+ * </p>
+ * <ul>
+ *     <li>размер удваивается, если очередь вмещает хотя бы два пакета текущего размера, а брокер подтверждает
+ *     пакеты быстрее целевой задержки, т.е. успевает за более крупными пакетами;</li>
+ *     <li>размер уменьшается вдвое, если брокер подтверждает пакеты медленнее целевой задержки или очередь
+ *     меньше половины пакета, т.е. пакет текущего размера пришлось бы долго набирать.</li>
+ * </ul>
+ * <p>
+ * Задержка подтверждения сглаживается экспоненциальным скользящим средним. Если подтверждения не поступают
+ * (например, они выключены), размер зависит только от очереди.
+ * Класс потокобезопасен.
+ * </p>
+ */
+public class AdaptiveBatchSizer {
+
+    /**
+     * Вес нового измерения в скользящем среднем задержки подтверждения.
+     */
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final int minSize;
+
+    private final int maxSize;
+
+    private final long targetLatencyNanos;
+
+    private volatile int currentSize;
+
+    /**
+     * Сглаженная задержка подтверждения в наносекундах; отрицательна, пока не было ни одного измерения.
+     */
+    private volatile double smoothedLatencyNanos = -1;
+
+    /**
+     * @param minSize Минимальный размер пакета; с него начинается адаптация.
+     * @param maxSize Максимальный размер пакета; если он меньше минимального, используется минимальный.
+     * @param targetLatency Целевая задержка подтверждения пакета брокером.
+     */
+    public AdaptiveBatchSizer(int minSize, int maxSize, Duration targetLatency) {
+        if (minSize < 1) throw new IllegalArgumentException("Minimum batch size must be positive: " + minSize);
+        this.minSize = minSize;
+        this.maxSize = Math.max(minSize, maxSize);
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.currentSize = minSize;
+    }
+
+    /**
+     * @return Текущий размер пакета.
+     */
+    public int getCurrentSize() {
+        return currentSize;
+    }
+
+    /**
+     * Учитывает задержку подтверждения очередного пакета.
+     *
+     * @param latencyNanos Время от отправки пакета до его подтверждения в наносекундах.
+     */
+    public synchronized void recordConfirmLatency(long latencyNanos) {
+        double previous = smoothedLatencyNanos;
+        smoothedLatencyNanos = (previous < 0) ? latencyNanos : previous + LATENCY_SMOOTHING * (latencyNanos - previous);
+    }
+
+    /**
+     * Пересчитывает размер пакета по текущей очереди неопубликованных записей.
+     *
+     * @param backlog Количество неопубликованных записей.
+     * @return Новый размер пакета.
+     */
+    public synchronized int adjust(long backlog) {
+        double latency = smoothedLatencyNanos;
+        boolean brokerIsFast = latency < 0 || latency <= targetLatencyNanos;
+        if (brokerIsFast && backlog >= 2L * currentSize) {
+            currentSize = (int) Math.min(maxSize, 2L * currentSize);
+        } else if (!brokerIsFast || backlog < currentSize / 2) {
+            currentSize = Math.max(minSize, currentSize / 2);
+        }
+        return currentSize;
+    }
+}
@@ -0,0 +1,116 @@
+package org.example.cdrservice.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченный неблокирующий кольцевой буфер (очередь FIFO) для нескольких писателей и читателей.
+ * <p>
+ * Реализует алгоритм bounded MPMC queue Д. Вьюкова: у каждой ячейки есть номер последовательности,
+ * по которому писатель определяет, что ячейка свободна, а читатель - что она заполнена. Позиции записи и чтения
+ * сдвигаются операцией compare-and-set, поэтому ни запись, ни чтение не берут блокировок и не выделяют память.
+ * </p>
+ *
+ * @param <T> Тип элементов.
+ */
+public class BoundedRingBuffer<T> {
+
+    private final int mask;
+
+    private final AtomicReferenceArray<T> elements;
+
+    /**
+     * Номера последовательности ячеек: равен позиции записи, если ячейка свободна для нее,
+     * и позиции записи плюс один, если ячейка заполнена.
+     */
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong writePosition = new AtomicLong();
+
+    private final AtomicLong readPosition = new AtomicLong();
+
+    /**
+     * @param capacity Емкость буфера; округляется вверх до степени двойки.
+     */
+    public BoundedRingBuffer(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Добавляет элемент в конец буфера, если в нем есть место.
+     *
+     * @param element Добавляемый элемент.
+     * @return {@code false}, если буфер заполнен.
+     */
+    public boolean offer(T element) {
+        long position = writePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (writePosition.compareAndSet(position, position + 1)) {
+                    elements.set(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = writePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = writePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Извлекает элемент из начала буфера.
+     *
+     * @return Элемент или {@code null}, если буфер пуст.
+     */
+    public T poll() {
+        long position = readPosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (readPosition.compareAndSet(position, position + 1)) {
+                    T element = elements.get(index);
+                    elements.set(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = readPosition.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = readPosition.get();
+            }
+        }
+    }
+
+    /**
+     * Возвращает количество элементов в буфере. Значение приблизительное, если буфер одновременно изменяется.
+     *
+     * @return Количество элементов.
+     */
+    public int size() {
+        long size = writePosition.get() - readPosition.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
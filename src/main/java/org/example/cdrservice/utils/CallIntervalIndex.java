@@ -0,0 +1,192 @@
+package org.example.cdrservice.utils;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Индекс занятости абонентов, построенный по MSISDN.
+ * <p>
+ * Для каждого абонента хранит отсортированные по времени начала интервалы звонков,
+ * в которых он уже участвует. Так как интервалы одного абонента никогда не пересекаются,
+ * упорядоченность по началу означает и упорядоченность по окончанию, поэтому для проверки
+ * пересечения достаточно одного ближайшего интервала, найденного за логарифмическое время.
+ * </p>
+ * <p>
+ * Индекс потокобезопасен. Интервалы абонента изменяются только под блокировкой его полосы
+ * (lock striping), поэтому сериализуются лишь звонки, у которых есть общий участник
+ * (или участники, попавшие в одну полосу).
+ * </p>
+ */
+public class CallIntervalIndex {
+
+    /**
+     * Количество полос блокировок по умолчанию.
+     */
+    public static final int DEFAULT_STRIPES = 256;
+
+    /**
+     * Интервалы звонков по абонентам: MSISDN -> (время начала -> время окончания).
+     * Каждый вложенный {@link TreeMap} читается и изменяется только под блокировкой полосы абонента.
+     */
+    private final Map<String, NavigableMap<LocalDateTime, LocalDateTime>> intervalsByMsisdn = new ConcurrentHashMap<>();
+
+    /**
+     * Блокировки полос. Абонент попадает в полосу по хешу своего MSISDN.
+     */
+    private final ReentrantLock[] stripes;
+
+    public CallIntervalIndex() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param numberOfStripes Количество полос блокировок; округляется вверх до степени двойки.
+     */
+    public CallIntervalIndex(int numberOfStripes) {
+        int size = (numberOfStripes <= 1) ? 1 : Integer.highestOneBit(numberOfStripes - 1) << 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Проверяет, свободен ли абонент в указанном временном диапазоне.
+     * Границы интервалов включительные: звонок, начинающийся в момент окончания
+     * другого звонка этого же абонента, считается пересекающимся.
+     * Проверка и последующая регистрация звонка не атомарны, поэтому метод доступен только тестам;
+     * генерация резервирует звонки через {@link #tryReserve}.
+     *
+     * @param msisdn MSISDN абонента.
+     * @param start Дата и время начала проверяемого звонка.
+     * @param finish Дата и время окончания проверяемого звонка.
+     * @return {@code true}, если абонент не участвует в звонках, пересекающихся с диапазоном.
+     */
+    boolean isFree(String msisdn, LocalDateTime start, LocalDateTime finish) {
+        ReentrantLock lock = stripeFor(msisdn);
+        lock.lock();
+        try {
+            return isFreeUnderLock(msisdn, start, finish);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Атомарно резервирует звонок за обоими участниками.
+     * Звонок регистрируется, только если оба абонента свободны во всем диапазоне;
+     * иначе индекс не изменяется.
+     * Блокировки полос берутся в порядке возрастания номера полосы, что исключает взаимные блокировки.
+     *
+     * @param callerMsisdn MSISDN первого участника.
+     * @param calledMsisdn MSISDN второго участника.
+     * @param start Дата и время начала звонка.
+     * @param finish Дата и время окончания звонка.
+     * @return {@code true}, если звонок зарезервирован, {@code false}, если один из участников занят.
+     */
+    public boolean tryReserve(String callerMsisdn, String calledMsisdn, LocalDateTime start, LocalDateTime finish) {
+        int callerStripe = stripeIndex(callerMsisdn);
+        int calledStripe = stripeIndex(calledMsisdn);
+        ReentrantLock first = stripes[Math.min(callerStripe, calledStripe)];
+        ReentrantLock second = stripes[Math.max(callerStripe, calledStripe)];
+
+        first.lock();
+        second.lock();
+        try {
+            if (!isFreeUnderLock(callerMsisdn, start, finish) || !isFreeUnderLock(calledMsisdn, start, finish)) {
+                return false;
+            }
+            addUnderLock(callerMsisdn, start, finish);
+            addUnderLock(calledMsisdn, start, finish);
+            return true;
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+    }
+
+    /**
+     * Регистрирует звонок абонента в индексе без проверки пересечений.
+     * Используется тестами для подготовки индекса; генерация резервирует звонки через {@link #tryReserve}.
+     *
+     * @param msisdn MSISDN абонента.
+     * @param start Дата и время начала звонка.
+     * @param finish Дата и время окончания звонка.
+     */
+    void add(String msisdn, LocalDateTime start, LocalDateTime finish) {
+        ReentrantLock lock = stripeFor(msisdn);
+        lock.lock();
+        try {
+            addUnderLock(msisdn, start, finish);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Удаляет из индекса интервалы, завершившиеся до указанного момента.
+     * Используется, когда новые звонки гарантированно начинаются не раньше {@code moment}
+     * и поэтому не могут пересечься с удаляемыми интервалами.
+     *
+     * @param moment Момент, интервалы с окончанием строго раньше которого удаляются.
+     */
+    public void evictFinishedBefore(LocalDateTime moment) {
+        for (Map.Entry<String, NavigableMap<LocalDateTime, LocalDateTime>> entry : intervalsByMsisdn.entrySet()) {
+            ReentrantLock lock = stripeFor(entry.getKey());
+            lock.lock();
+            try {
+                NavigableMap<LocalDateTime, LocalDateTime> intervals = entry.getValue();
+                while (!intervals.isEmpty() && intervals.firstEntry().getValue().isBefore(moment)) {
+                    intervals.pollFirstEntry();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Возвращает количество зарегистрированных в индексе интервалов.
+     * Значение приблизительное, если индекс одновременно изменяется.
+     *
+     * @return Общее число интервалов по всем абонентам.
+     */
+    public int size() {
+        int size = 0;
+        for (Map.Entry<String, NavigableMap<LocalDateTime, LocalDateTime>> entry : intervalsByMsisdn.entrySet()) {
+            ReentrantLock lock = stripeFor(entry.getKey());
+            lock.lock();
+            try {
+                size += entry.getValue().size();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private boolean isFreeUnderLock(String msisdn, LocalDateTime start, LocalDateTime finish) {
+        NavigableMap<LocalDateTime, LocalDateTime> intervals = intervalsByMsisdn.get(msisdn);
+        if (intervals == null) return true;
+
+        Map.Entry<LocalDateTime, LocalDateTime> latestStartedBeforeFinish = intervals.floorEntry(finish);
+        return latestStartedBeforeFinish == null || latestStartedBeforeFinish.getValue().isBefore(start);
+    }
+
+    private void addUnderLock(String msisdn, LocalDateTime start, LocalDateTime finish) {
+        intervalsByMsisdn.computeIfAbsent(msisdn, key -> new TreeMap<>()).put(start, finish);
+    }
+
+    private ReentrantLock stripeFor(String msisdn) {
+        return stripes[stripeIndex(msisdn)];
+    }
+
+    private int stripeIndex(String msisdn) {
+        int hash = msisdn.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,86 @@
+package org.example.cdrservice.utils;
+
+/**
+ * Распределение CDR по шардам (очередям RabbitMQ) по MSISDN обслуживаемого абонента.
+ * <p>
+ * Шард вычисляется согласованным хешированием Jump Consistent Hash (Lamping, Veach) от перемешанного
+ * числового MSISDN. Все записи абонента всегда попадают в один шард, поэтому их порядок сохраняется
+ * внутри шарда. При изменении числа шардов с {@code n} на {@code m} в другой шард переходит минимально
+ * возможная доля абонентов: {@code |m - n| / max(n, m)}, а при увеличении числа шардов абоненты переходят
+ * только в новые шарды.
+ * </p>
+ */
+public final class CdrSharding {
+
+    private CdrSharding() {
+    }
+
+    /**
+     * Возвращает шард абонента.
+     *
+     * @param msisdn Числовой MSISDN обслуживаемого абонента.
+     * @param shardCount Количество шардов.
+     * @return Номер шарда от 0 до {@code shardCount - 1}.
+     */
+    public static int shardOf(long msisdn, int shardCount) {
+        if (shardCount < 1) throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        return jumpConsistentHash(mix(msisdn), shardCount);
+    }
+
+    /**
+     * Возвращает ключ маршрутизации шарда.
+     *
+     * @param routingKey Базовый ключ маршрутизации CDR.
+     * @param shard Номер шарда.
+     * @param shardCount Количество шардов; при одном шарде используется базовый ключ.
+     * @return Ключ маршрутизации шарда.
+     */
+    public static String routingKey(String routingKey, int shard, int shardCount) {
+        return (shardCount == 1) ? routingKey : routingKey + "." + shard;
+    }
+
+    /**
+     * Возвращает имя очереди шарда.
+     *
+     * @param queueName Базовое имя очереди CDR.
+     * @param shard Номер шарда.
+     * @param shardCount Количество шардов; при одном шарде используется базовое имя.
+     * @return Имя очереди шарда.
+     */
+    public static String queueName(String queueName, int shard, int shardCount) {
+        return (shardCount == 1) ? queueName : queueName + "." + shard;
+    }
+
+    /**
+     * Возвращает бит шарда в наборе шардов, хранящемся в {@code long}.
+     *
+     * @param shard Номер шарда.
+     * @return Бит шарда или 0 для шардов с номером {@value Long#SIZE} и больше: они в набор не попадают.
+     */
+    public static long shardBit(int shard) {
+        return (shard < Long.SIZE) ? 1L << shard : 0;
+    }
+
+    private static int jumpConsistentHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    /**
+     * Перемешивает биты ключа (финализатор MurmurHash3), чтобы близкие номера распределялись равномерно.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
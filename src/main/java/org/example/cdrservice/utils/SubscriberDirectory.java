@@ -0,0 +1,175 @@
+package org.example.cdrservice.utils;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемый справочник абонентов в памяти.
+ * <p>
+ * MSISDN абонентов хранятся в массиве {@code long[]} по номерам ячеек (в порядке загрузки),
+ * а индекс MSISDN -> ячейка построен как хеш-таблица с открытой адресацией и линейным пробированием
+ * в массиве {@code int[]}. Ни сущностей, ни строк, ни упакованных чисел на абонента не создается:
+ * справочник занимает около 8 байт на MSISDN и от 5 до 11 байт на индекс, поэтому миллионы абонентов
+ * помещаются в несколько десятков мегабайт.
+ * </p>
+ * <p>
+ * Справочник не изменяется после построения, поэтому читается из любого числа потоков без синхронизации.
+ * Новые данные загружаются в новый справочник, которым заменяется старый.
+ * </p>
+ */
+public final class SubscriberDirectory {
+
+    private static final SubscriberDirectory EMPTY = new SubscriberDirectory(new long[0]);
+
+    private final long[] msisdns;
+
+    /**
+     * Хеш-таблица индекса: номер ячейки абонента плюс один; 0 - свободная позиция.
+     */
+    private final int[] table;
+
+    private final int mask;
+
+    private SubscriberDirectory(long[] msisdns) {
+        this.msisdns = msisdns;
+        int capacity = Integer.highestOneBit(Math.max(2, msisdns.length + msisdns.length / 3) * 2 - 1);
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int slot = 0; slot < msisdns.length; slot++) {
+            int position = positionOf(msisdns[slot]);
+            if (position >= 0) {
+                throw new IllegalArgumentException("Duplicate MSISDN: " + msisdns[slot]);
+            }
+            table[-position - 1] = slot + 1;
+        }
+    }
+
+    /**
+     * Возвращает пустой справочник.
+     *
+     * @return Справочник без абонентов.
+     */
+    public static SubscriberDirectory empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Строит справочник по MSISDN абонентов.
+     *
+     * @param msisdns MSISDN абонентов в порядке ячеек; массив копируется.
+     * @return Справочник.
+     * @throws IllegalArgumentException если MSISDN повторяются.
+     */
+    public static SubscriberDirectory of(long... msisdns) {
+        return new SubscriberDirectory(msisdns.clone());
+    }
+
+    /**
+     * Возвращает количество абонентов.
+     *
+     * @return Количество абонентов.
+     */
+    public int size() {
+        return msisdns.length;
+    }
+
+    /**
+     * Возвращает MSISDN абонента в ячейке.
+     *
+     * @param slot Номер ячейки от 0 до {@link #size()} (не включительно).
+     * @return MSISDN абонента.
+     */
+    public long msisdnAt(int slot) {
+        return msisdns[slot];
+    }
+
+    /**
+     * Находит ячейку абонента по MSISDN.
+     *
+     * @param msisdn MSISDN абонента.
+     * @return Номер ячейки или -1, если абонента нет в справочнике.
+     */
+    public int slotOf(long msisdn) {
+        int position = positionOf(msisdn);
+        return (position >= 0) ? table[position] - 1 : -1;
+    }
+
+    /**
+     * Проверяет, есть ли абонент в справочнике.
+     *
+     * @param msisdn MSISDN абонента.
+     * @return {@code true}, если абонент есть в справочнике.
+     */
+    public boolean contains(long msisdn) {
+        return positionOf(msisdn) >= 0;
+    }
+
+    /**
+     * Ищет MSISDN в хеш-таблице.
+     *
+     * @return Позиция MSISDN в таблице или {@code -(позиция свободного места) - 1}, если его нет.
+     */
+    private int positionOf(long msisdn) {
+        int position = hash(msisdn) & mask;
+        while (true) {
+            int entry = table[position];
+            if (entry == 0) return -position - 1;
+            if (msisdns[entry - 1] == msisdn) return position;
+            position = (position + 1) & mask;
+        }
+    }
+
+    /**
+     * Перемешивает биты MSISDN (финализатор MurmurHash3), чтобы последовательные номера
+     * равномерно распределялись по таблице.
+     */
+    private static int hash(long msisdn) {
+        long h = msisdn;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Накапливает MSISDN для построения справочника без промежуточных коллекций.
+     */
+    public static final class Builder {
+
+        private long[] msisdns;
+
+        private int size;
+
+        /**
+         * @param expectedSize Ожидаемое количество абонентов.
+         */
+        public Builder(int expectedSize) {
+            this.msisdns = new long[Math.max(16, expectedSize)];
+        }
+
+        /**
+         * Добавляет абонента в следующую ячейку.
+         *
+         * @param msisdn MSISDN абонента.
+         * @return Этот построитель.
+         */
+        public Builder add(long msisdn) {
+            if (size == msisdns.length) {
+                msisdns = Arrays.copyOf(msisdns, size + (size >> 1));
+            }
+            msisdns[size++] = msisdn;
+            return this;
+        }
+
+        /**
+         * Строит справочник из добавленных абонентов.
+         *
+         * @return Справочник.
+         * @throws IllegalArgumentException если MSISDN повторяются.
+         */
+        public SubscriberDirectory build() {
+            return (size == 0) ? EMPTY : new SubscriberDirectory(Arrays.copyOf(msisdns, size));
+        }
+    }
+}
@@ -0,0 +1,8 @@
+--liquibase formatted sql
+--changeset is6769:0004-create-sequence-for-cdrs
+create sequence if not exists cdrs_seq start with 50 increment by 50;
+
+--значение последовательности - верхняя граница блока из 50 идентификаторов (оптимизатор pooled),
+--поэтому первый блок начинается сразу за уже выданными идентификаторами
+alter sequence cdrs_seq restart with (select (coalesce(max(id), 0) + 49) / 50 * 50 + 50 from cdrs);
+alter table cdrs alter column id drop identity;
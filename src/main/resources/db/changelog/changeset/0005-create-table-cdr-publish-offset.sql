@@ -0,0 +1,8 @@
+--liquibase formatted sql
+--changeset is6769:0005-create-table-cdr-publish-offset
+create table if not exists cdr_publish_offset(
+    id                  int      PRIMARY KEY,
+    last_published_id   bigint   not null
+);
+
+insert into cdr_publish_offset (id, last_published_id) values (1, 0);
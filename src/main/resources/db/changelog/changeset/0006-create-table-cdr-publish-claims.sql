@@ -0,0 +1,10 @@
+--liquibase formatted sql
+--changeset is6769:0006-create-table-cdr-publish-claims
+create table if not exists cdr_publish_claims(
+    first_id            bigint         PRIMARY KEY,
+    last_id             bigint         not null,
+    owner               varchar(200)   not null,
+    lease_expires_at    timestamp      not null
+);
+
+create index if not exists cdr_publish_claims_lease_expires_at_idx on cdr_publish_claims(lease_expires_at);
@@ -0,0 +1,16 @@
+--liquibase formatted sql
+--changeset is6769:0007-compact-cdrs-columns
+
+--MSISDN и тип вызова состоят только из цифр и переводятся в числа неявным приведением
+alter table cdrs alter column serviced_msisdn set data type bigint;
+alter table cdrs alter column other_msisdn set data type bigint;
+alter table cdrs alter column call_type set data type smallint;
+alter table cdrs alter column start_date_time set data type timestamp;
+alter table cdrs alter column finish_date_time set data type timestamp;
+
+--статус хранится кодом: 0 - NEW, 1 - CONSUMED
+alter table cdrs add column consumed_status_code smallint;
+update cdrs set consumed_status_code = case consumed_status when 'CONSUMED' then 1 else 0 end;
+alter table cdrs drop column consumed_status;
+alter table cdrs rename column consumed_status_code to consumed_status;
+alter table cdrs alter column consumed_status set not null;
@@ -0,0 +1,5 @@
+--liquibase formatted sql
+--changeset is6769:0008-create-index-cdrs-serviced-msisdn-start-date-time
+
+--индекс запросов CDR абонента за период; id замыкает ключ для постраничного чтения по (start_date_time, id)
+create index if not exists cdrs_serviced_msisdn_start_date_time_idx on cdrs(serviced_msisdn, start_date_time, id);
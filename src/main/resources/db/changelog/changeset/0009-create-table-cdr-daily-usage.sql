@@ -0,0 +1,23 @@
+--liquibase formatted sql
+--changeset is6769:0009-create-table-cdr-daily-usage
+create table if not exists cdr_daily_usage(
+    serviced_msisdn     bigint         not null,
+    usage_date          date           not null,
+    call_type           smallint       not null,
+    call_count          bigint         not null,
+    total_seconds       bigint         not null,
+    primary key (serviced_msisdn, usage_date, call_type)
+);
+
+--индекс пересчета сводки по дням
+create index if not exists cdrs_start_date_time_idx on cdrs(start_date_time);
+
+--индекс удаления сводки за сутки при пересчете: usage_date не первый столбец первичного ключа
+create index if not exists cdr_daily_usage_usage_date_idx on cdr_daily_usage(usage_date);
+
+--сводка по уже сохраненным CDR; каждая CDR целиком лежит в одних сутках (splitIfCrossesMidnight)
+insert into cdr_daily_usage (serviced_msisdn, usage_date, call_type, call_count, total_seconds)
+select serviced_msisdn, cast(start_date_time as date), call_type, count(*),
+       sum(datediff('MILLISECOND', start_date_time, finish_date_time) / 1000)
+from cdrs
+group by serviced_msisdn, cast(start_date_time as date), call_type;
@@ -0,0 +1,15 @@
+--liquibase formatted sql
+--changeset is6769:0010-claim-cdrs-by-status
+
+--неопубликованные записи выбираются по статусу, а захват отмечается в самой записи
+alter table cdrs add column if not exists publish_claim_id bigint;
+
+--записи действующих захватов диапазонов привязываются к своим захватам
+update cdrs c set publish_claim_id = (select p.first_id from cdr_publish_claims p where c.id between p.first_id and p.last_id)
+where c.consumed_status = 0 and exists (select 1 from cdr_publish_claims p where c.id between p.first_id and p.last_id);
+
+--отметка публикации больше не используется; записи NEW ниже нее (зафиксированные позже отметки
+--или опубликованные при выключенном mark-consumed) будут опубликованы по статусу
+drop table if exists cdr_publish_offset;
+
+create index if not exists cdrs_consumed_status_publish_claim_id_id_idx on cdrs(consumed_status, publish_claim_id, id);
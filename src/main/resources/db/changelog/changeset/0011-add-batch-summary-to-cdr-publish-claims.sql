@@ -0,0 +1,13 @@
+--liquibase formatted sql
+--changeset is6769:0011-add-batch-summary-to-cdr-publish-claims
+
+--сводка пакета хранится в захвате, чтобы перехват брошенного пакета не перечитывал его записи
+alter table cdr_publish_claims add column if not exists cdr_count int;
+alter table cdr_publish_claims add column if not exists oldest_finish_date_time timestamp;
+
+update cdr_publish_claims p set
+    cdr_count = (select count(*) from cdrs c where c.consumed_status = 0 and c.publish_claim_id = p.first_id),
+    oldest_finish_date_time = coalesce((select min(c.finish_date_time) from cdrs c where c.consumed_status = 0 and c.publish_claim_id = p.first_id), localtimestamp);
+
+alter table cdr_publish_claims alter column cdr_count set not null;
+alter table cdr_publish_claims alter column oldest_finish_date_time set not null;
@@ -0,0 +1,7 @@
+--liquibase formatted sql
+--changeset is6769:0012-add-confirmed-shards-to-cdr-publish-claims
+
+--шарды пакета, сообщения которых уже подтверждены брокером (бит i - шард i), и количество шардов, при котором
+--они подтверждены; при повторной отправке освобожденного пакета эти шарды пропускаются
+alter table cdr_publish_claims add column if not exists confirmed_shards bigint default 0 not null;
+alter table cdr_publish_claims add column if not exists confirmed_shard_count int default 0 not null;
@@ -6,12 +6,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(MockitoExtension.class)
 public class CdrRabbitMQConfigTest {
@@ -34,6 +38,7 @@ public class CdrRabbitMQConfigTest {
         ReflectionTestUtils.setField(rabbitMQConfig, "DEAD_LETTER_EXCHANGE_POSTFIX", deadLetterExchangePostfix);
         ReflectionTestUtils.setField(rabbitMQConfig, "DEAD_LETTER_ROUTING_KEY_POSTFIX", deadLetterRoutingKeyPostfix);
         ReflectionTestUtils.setField(rabbitMQConfig, "DEAD_LETTER_QUEUE_POSTFIX", deadLetterQueuePostfix);
+        ReflectionTestUtils.setField(rabbitMQConfig, "shardCount", 1);
     }
 
     @Test
@@ -87,4 +92,28 @@ public class CdrRabbitMQConfigTest {
         assertEquals(queueName + deadLetterQueuePostfix, binding.getDestination());
         assertEquals(exchangeName + deadLetterExchangePostfix, binding.getExchange());
     }
+
+    @Test
+    void cdrShardDeclarables_withSingleShard_shouldBeEmpty() {
+        Declarables declarables = rabbitMQConfig.cdrShardDeclarables();
+
+        assertTrue(declarables.getDeclarables().isEmpty());
+    }
+
+    @Test
+    void cdrShardDeclarables_withSeveralShards_shouldCreateQueueAndBindingPerShard() {
+        ReflectionTestUtils.setField(rabbitMQConfig, "shardCount", 3);
+
+        Declarables declarables = rabbitMQConfig.cdrShardDeclarables();
+
+        List<Queue> queues = declarables.getDeclarablesByType(Queue.class);
+        List<Binding> bindings = declarables.getDeclarablesByType(Binding.class);
+        assertEquals(List.of(queueName + ".0", queueName + ".1", queueName + ".2"), queues.stream().map(Queue::getName).toList());
+        assertEquals(3, bindings.size());
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(exchangeName, bindings.get(shard).getExchange());
+            assertEquals(queueName + "." + shard, bindings.get(shard).getDestination());
+            assertEquals(routingKey + "." + shard, bindings.get(shard).getRoutingKey());
+        }
+    }
 }
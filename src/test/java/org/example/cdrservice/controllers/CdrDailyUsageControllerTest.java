@@ -0,0 +1,91 @@
+package org.example.cdrservice.controllers;
+
+import org.example.cdrservice.dtos.DailyUsageDTO;
+import org.example.cdrservice.dtos.DailyUsageRebuildResult;
+import org.example.cdrservice.services.CdrDailyUsageService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Тестовый класс для {@link CdrDailyUsageController}.
+ */
+@WebMvcTest(controllers = CdrDailyUsageController.class, properties = "spring.cloud.config.enabled=false")
+class CdrDailyUsageControllerTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private CdrDailyUsageService cdrDailyUsageService;
+
+    /**
+     * Тестирует запрос сводки абонента за период.
+     * Ожидается, что даты разбираются в формате ISO, а строки сводки возвращаются в JSON.
+     */
+    @Test
+    @DisplayName("GET должен возвращать суточную сводку абонента")
+    void findUsage_shouldReturnDailyUsage() throws Exception {
+        when(cdrDailyUsageService.findUsage("79000000001", DAY, DAY.plusDays(6)))
+                .thenReturn(List.of(new DailyUsageDTO("79000000001", DAY, "02", 3, 420)));
+
+        mockMvc.perform(get("/cdrs/daily-usage")
+                        .param("msisdn", "79000000001")
+                        .param("from", "2025-03-01")
+                        .param("to", "2025-03-07"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].usageDate").value("2025-03-01"))
+                .andExpect(jsonPath("$[0].callType").value("02"))
+                .andExpect(jsonPath("$[0].callCount").value(3))
+                .andExpect(jsonPath("$[0].totalSeconds").value(420));
+    }
+
+    /**
+     * Тестирует запуск пересчета сводки.
+     * Ожидается, что возвращается итог пересчета.
+     */
+    @Test
+    @DisplayName("POST должен пересчитывать сводку и возвращать итог")
+    void rebuild_shouldReturnResult() throws Exception {
+        when(cdrDailyUsageService.rebuild(DAY, DAY.plusDays(1)))
+                .thenReturn(new DailyUsageRebuildResult(DAY, DAY.plusDays(2), 2, 17, 5));
+
+        mockMvc.perform(post("/admin/cdr/daily-usage/rebuild")
+                        .param("from", "2025-03-01")
+                        .param("to", "2025-03-02"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.days").value(2))
+                .andExpect(jsonPath("$.rows").value(17));
+    }
+
+    /**
+     * Тестирует отклонение некорректного периода.
+     * Ожидается ответ 400.
+     */
+    @Test
+    @DisplayName("GET должен возвращать 400 для некорректного периода")
+    void findUsage_withInvalidPeriod_shouldReturnBadRequest() throws Exception {
+        when(cdrDailyUsageService.findUsage("79000000001", DAY.plusDays(1), DAY))
+                .thenThrow(new IllegalArgumentException("Period start 2025-03-02 must not be after its end 2025-03-01"));
+
+        mockMvc.perform(get("/cdrs/daily-usage")
+                        .param("msisdn", "79000000001")
+                        .param("from", "2025-03-02")
+                        .param("to", "2025-03-01"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.cdrservice.controllers;
+
+import org.example.cdrservice.dtos.CdrQuery;
+import org.example.cdrservice.services.CdrQueryService;
+import org.example.cdrservice.services.CdrReportService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Тестовый класс для {@link CdrQueryController}.
+ */
+@WebMvcTest(controllers = CdrQueryController.class, properties = "spring.cloud.config.enabled=false")
+class CdrQueryControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private CdrQueryService cdrQueryService;
+
+    @MockitoBean
+    private CdrReportService cdrReportService;
+
+    /**
+     * Тестирует потоковую выдачу страницы CDR.
+     * Ожидается, что параметры запроса передаются сервису, а строки NDJSON записываются в ответ.
+     */
+    @Test
+    @DisplayName("GET должен передавать параметры сервису и возвращать CDR в формате NDJSON")
+    void findCdrs_shouldStreamNdjson() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2025, 3, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2025, 3, 2, 0, 0);
+        LocalDateTime after = LocalDateTime.of(2025, 3, 1, 10, 0);
+        CdrQuery query = new CdrQuery(79000000001L, from, to, after, 42, 100);
+        when(cdrQueryService.createQuery("79000000001", from, to, after, 42L, 100)).thenReturn(query);
+        String body = "{\"id\":43}\n{\"id\":44}\n";
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write(body.getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(cdrQueryService).streamNdjson(eq(query), any());
+
+        MvcResult result = mockMvc.perform(get("/cdrs")
+                        .param("msisdn", "79000000001")
+                        .param("from", "2025-03-01T00:00:00")
+                        .param("to", "2025-03-02T00:00:00")
+                        .param("afterStartDateTime", "2025-03-01T10:00:00")
+                        .param("afterId", "42")
+                        .param("limit", "100"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(body));
+    }
+
+    /**
+     * Тестирует запрос с некорректными параметрами.
+     * Ожидается ответ со статусом 400.
+     */
+    @Test
+    @DisplayName("GET должен возвращать 400 при некорректных параметрах")
+    void findCdrs_withInvalidParameters_shouldReturnBadRequest() throws Exception {
+        when(cdrQueryService.createQuery(any(), any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalArgumentException("limit must be between 1 and 100000: 0"));
+
+        mockMvc.perform(get("/cdrs")
+                        .param("msisdn", "79000000001")
+                        .param("from", "2025-03-01T00:00:00")
+                        .param("to", "2025-03-02T00:00:00")
+                        .param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Тестирует выгрузку отчета в формате CSV со сжатием.
+     * Ожидается, что отчет записывается в ответ как файл {@code .csv.gz} с типом {@code application/gzip}.
+     */
+    @Test
+    @DisplayName("GET /export должен выгружать отчет CSV файлом со сжатием gzip")
+    void exportCsv_withGzip_shouldStreamAttachment() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2025, 3, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2025, 4, 1, 0, 0);
+        when(cdrReportService.validate("79000000001", from, to)).thenReturn(79000000001L);
+        byte[] report = {31, -117, 8, 0};
+        doAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(4).write(report);
+            return 1L;
+        }).when(cdrReportService).exportCsv(eq(79000000001L), eq(from), eq(to), anyBoolean(), any());
+
+        MvcResult result = mockMvc.perform(get("/cdrs/export")
+                        .param("msisdn", "79000000001")
+                        .param("from", "2025-03-01T00:00:00")
+                        .param("to", "2025-04-01T00:00:00")
+                        .param("gzip", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/gzip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"udr-79000000001-2025-03-01-2025-04-01.csv.gz\""))
+                .andExpect(content().bytes(report));
+        verify(cdrReportService).exportCsv(eq(79000000001L), eq(from), eq(to), eq(true), any());
+    }
+}
@@ -0,0 +1,71 @@
+package org.example.cdrservice.controllers;
+
+import org.example.cdrservice.dtos.DeadLetterReplayFilter;
+import org.example.cdrservice.dtos.DeadLetterReplayStatus;
+import org.example.cdrservice.services.DeadLetterReplayService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Тестовый класс для {@link DeadLetterReplayController}.
+ */
+@WebMvcTest(controllers = DeadLetterReplayController.class, properties = "spring.cloud.config.enabled=false")
+class DeadLetterReplayControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private DeadLetterReplayService deadLetterReplayService;
+
+    /**
+     * Тестирует запуск повторной отправки с фильтром.
+     * Ожидается, что параметры запроса будут переданы сервису, а ответ вернет состояние со статусом 202.
+     */
+    @Test
+    @DisplayName("POST должен запускать повторную отправку с фильтром и возвращать 202")
+    void start_shouldPassFilterAndReturnAccepted() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2025, 3, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2025, 3, 2, 0, 0);
+        DeadLetterReplayFilter filter = new DeadLetterReplayFilter("79000000001", from, to);
+        when(deadLetterReplayService.start(50.0, filter)).thenReturn(new DeadLetterReplayStatus(
+                DeadLetterReplayStatus.State.RUNNING, filter, 50.0, LocalDateTime.now(), null, 0, 0, 0, 0, 0, 0, null));
+
+        mockMvc.perform(post("/admin/cdr/dead-letter/replay")
+                        .param("rate", "50")
+                        .param("msisdn", "79000000001")
+                        .param("from", "2025-03-01T00:00:00")
+                        .param("to", "2025-03-02T00:00:00"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.state").value("RUNNING"))
+                .andExpect(jsonPath("$.filter.msisdn").value("79000000001"));
+
+        verify(deadLetterReplayService).start(50.0, filter);
+    }
+
+    /**
+     * Тестирует повторный запуск во время выполнения.
+     * Ожидается ответ со статусом 409.
+     */
+    @Test
+    @DisplayName("POST должен возвращать 409, если повторная отправка уже выполняется")
+    void start_whenAlreadyRunning_shouldReturnConflict() throws Exception {
+        when(deadLetterReplayService.start(any(), any())).thenThrow(new IllegalStateException("Dead-letter replay is already running"));
+
+        mockMvc.perform(post("/admin/cdr/dead-letter/replay"))
+                .andExpect(status().isConflict());
+    }
+}
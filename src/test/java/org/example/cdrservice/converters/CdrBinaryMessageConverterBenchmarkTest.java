@@ -0,0 +1,109 @@
+package org.example.cdrservice.converters;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.cdrservice.dtos.CdrDTO;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Сравнение двоичного формата {@link CdrBinaryMessageConverter} с JSON ({@link Jackson2JsonMessageConverter}):
+ * размер сообщения на одну CDR и время преобразования пакета в сообщение и обратно.
+ * <p>
+ * Пакеты по 1000 записей преобразуются сначала без замера для прогрева JIT, затем с замером; выводится лучший результат из нескольких повторов.
+ * JSON читается в {@code List<CdrDTO>} тем же {@link ObjectMapper}, как это делает типизированный потребитель.
+ * Запускается только с {@code -Dbenchmark=true}, например
+ * {@code mvn test -Dtest=CdrBinaryMessageConverterBenchmarkTest -Dbenchmark=true}.
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CdrBinaryMessageConverterBenchmarkTest {
+
+    private static final int BATCH_SIZE = 1_000;
+    private static final int WARMUP_BATCHES = 2_000;
+    private static final int MEASURED_BATCHES = 2_000;
+    private static final int ROUNDS = 5;
+
+    private static final TypeReference<List<CdrDTO>> CDR_LIST = new TypeReference<>() {
+    };
+
+    /**
+     * Замеряет размер и скорость обоих форматов.
+     * Ожидается, что двоичный формат в несколько раз компактнее и быстрее JSON.
+     */
+    @Test
+    @DisplayName("Размер и скорость двоичного формата и JSON")
+    void binaryVsJson_sizeAndThroughput() {
+        List<CdrDTO> cdrs = createTestCdrs(BATCH_SIZE);
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        Jackson2JsonMessageConverter jsonConverter = new Jackson2JsonMessageConverter(objectMapper);
+        CdrBinaryMessageConverter binaryConverter = new CdrBinaryMessageConverter();
+
+        measure("json", cdrs, () -> jsonConverter.toMessage(cdrs, new MessageProperties()), message -> {
+            try {
+                return objectMapper.readValue(message.getBody(), CDR_LIST);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        measure("binary", cdrs, () -> binaryConverter.toMessage(cdrs, new MessageProperties()),
+                message -> (List<?>) binaryConverter.fromMessage(message));
+    }
+
+    private void measure(String format, List<CdrDTO> cdrs, Supplier<Message> serializer, Function<Message, List<?>> deserializer) {
+        Message message = serializer.get();
+        assertThat(deserializer.apply(message)).isEqualTo(cdrs);
+
+        for (int i = 0; i < WARMUP_BATCHES; i++) {
+            deserializer.apply(serializer.get());
+        }
+        long bestSerializeNanos = Long.MAX_VALUE;
+        long bestDeserializeNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_BATCHES; i++) {
+                serializer.get();
+            }
+            bestSerializeNanos = Math.min(bestSerializeNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < MEASURED_BATCHES; i++) {
+                deserializer.apply(message);
+            }
+            bestDeserializeNanos = Math.min(bestDeserializeNanos, System.nanoTime() - start);
+        }
+
+        long measuredCdrs = (long) MEASURED_BATCHES * cdrs.size();
+        System.out.printf("%-6s %6.1f bytes/CDR, serialize %,6.0f ns/CDR (%,11.0f CDR/s), deserialize %,6.0f ns/CDR (%,11.0f CDR/s)%n",
+                format, (double) message.getBody().length / cdrs.size(),
+                (double) bestSerializeNanos / measuredCdrs, measuredCdrs * 1e9 / bestSerializeNanos,
+                (double) bestDeserializeNanos / measuredCdrs, measuredCdrs * 1e9 / bestDeserializeNanos);
+    }
+
+    private List<CdrDTO> createTestCdrs(int count) {
+        LocalDateTime start = LocalDateTime.of(2025, 3, 30, 2, 30, 15);
+        return IntStream.range(0, count)
+                .mapToObj(i -> new CdrDTO(
+                        (i % 2 == 0) ? "01" : "02",
+                        Long.toString(79_000_000_000L + i * 7919L % 1_000_000),
+                        Long.toString(79_000_000_000L + i * 104_729L % 1_000_000),
+                        start.plusSeconds(i * 37L),
+                        start.plusSeconds(i * 37L + 30 + i % 600)))
+                .toList();
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.cdrservice.converters;
+
+import org.example.cdrservice.dtos.CdrDTO;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тестовый класс для {@link CdrBinaryMessageConverter}.
+ */
+class CdrBinaryMessageConverterTest {
+
+    private final CdrBinaryMessageConverter converter = new CdrBinaryMessageConverter();
+
+    /**
+     * Тестирует, что пакет CDR после преобразования в сообщение и обратно не изменяется,
+     * включая миллисекунды времени звонка, а сообщение существенно меньше JSON-представления.
+     */
+    @Test
+    @DisplayName("Двоичный формат должен восстанавливать пакет без изменений и быть компактнее JSON")
+    void toMessageAndBack_shouldRestoreBatchAndBeSmallerThanJson() {
+        List<CdrDTO> cdrs = createTestCdrs(100);
+
+        Message message = converter.toMessage(cdrs, new MessageProperties());
+
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(CdrBinaryMessageConverter.CONTENT_TYPE);
+        assertThat(message.getBody()).hasSize(CdrBinaryMessageConverter.HEADER_SIZE + 100 * CdrBinaryMessageConverter.RECORD_SIZE);
+        assertThat(converter.fromMessage(message)).isEqualTo(cdrs);
+
+        Message jsonMessage = new Jackson2JsonMessageConverter(Jackson2ObjectMapperBuilder.json().build())
+                .toMessage(cdrs, new MessageProperties());
+        assertThat(message.getBody().length * 3).isLessThan(jsonMessage.getBody().length);
+    }
+
+    /**
+     * Тестирует отклонение сообщений неизвестной версии формата и обрезанных сообщений.
+     */
+    @Test
+    @DisplayName("fromMessage должен отклонять неизвестную версию формата и обрезанные сообщения")
+    void fromMessage_shouldRejectUnknownVersionAndTruncatedBody() {
+        byte[] body = converter.toMessage(createTestCdrs(2), new MessageProperties()).getBody();
+
+        byte[] unknownVersion = body.clone();
+        unknownVersion[0] = 2;
+        assertThatThrownBy(() -> converter.fromMessage(new Message(unknownVersion, new MessageProperties())))
+                .isInstanceOf(MessageConversionException.class);
+
+        byte[] truncated = Arrays.copyOf(body, body.length - 1);
+        assertThatThrownBy(() -> converter.fromMessage(new Message(truncated, new MessageProperties())))
+                .isInstanceOf(MessageConversionException.class);
+    }
+
+    private List<CdrDTO> createTestCdrs(int count) {
+        LocalDateTime start = LocalDateTime.of(2025, 3, 30, 2, 30, 15, 123_000_000);
+        return IntStream.range(0, count)
+                .mapToObj(i -> new CdrDTO(
+                        (i % 2 == 0) ? "01" : "02",
+                        "7900000000" + (i % 10),
+                        "7901000000" + (i % 10),
+                        start.plusMinutes(i),
+                        start.plusMinutes(i).plusSeconds(95)))
+                .toList();
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.cdrservice.converters;
+
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тестовый класс для конвертеров компактных столбцов таблицы {@code cdrs}.
+ */
+class CdrConvertersTest {
+
+    /**
+     * Тестирует, что значения после записи в числовые столбцы и чтения обратно не изменяются,
+     * включая ведущий ноль типа вызова.
+     */
+    @Test
+    @DisplayName("Конвертеры должны сохранять представление значений при обратном преобразовании")
+    void converters_shouldRoundTripValues() {
+        MsisdnConverter msisdnConverter = new MsisdnConverter();
+        CallTypeConverter callTypeConverter = new CallTypeConverter();
+        ConsumedStatusConverter consumedStatusConverter = new ConsumedStatusConverter();
+
+        assertThat(msisdnConverter.convertToDatabaseColumn("79000000001")).isEqualTo(79000000001L);
+        assertThat(msisdnConverter.convertToEntityAttribute(79000000001L)).isEqualTo("79000000001");
+
+        assertThat(callTypeConverter.convertToDatabaseColumn("01")).isEqualTo((short) 1);
+        assertThat(callTypeConverter.convertToEntityAttribute((short) 1)).isEqualTo("01");
+        assertThat(callTypeConverter.convertToEntityAttribute((short) 2)).isEqualTo("02");
+
+        for (ConsumedStatus status : ConsumedStatus.values()) {
+            assertThat(consumedStatusConverter.convertToEntityAttribute(consumedStatusConverter.convertToDatabaseColumn(status)))
+                    .isEqualTo(status);
+        }
+    }
+
+    /**
+     * Тестирует отклонение строк, которые нельзя сохранить числом без потери представления.
+     */
+    @Test
+    @DisplayName("MsisdnConverter должен отклонять нецифровые MSISDN и MSISDN с ведущим нулем")
+    void msisdnConverter_shouldRejectInvalidMsisdn() {
+        MsisdnConverter msisdnConverter = new MsisdnConverter();
+
+        assertThatThrownBy(() -> msisdnConverter.convertToDatabaseColumn("+79000000001")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> msisdnConverter.convertToDatabaseColumn("089000000001")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> msisdnConverter.convertToDatabaseColumn("")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
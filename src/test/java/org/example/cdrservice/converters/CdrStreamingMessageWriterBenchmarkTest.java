@@ -0,0 +1,135 @@
+package org.example.cdrservice.converters;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.persistence.EntityManager;
+import org.example.cdrservice.dtos.CdrDTO;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.example.cdrservice.repositories.CdrRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Замер выделения памяти в куче на один пакет при формировании сообщения прежним способом
+ * (управляемые сущности {@link Cdr} -> {@link CdrDTO} -> {@link Jackson2JsonMessageConverter})
+ * и {@link CdrStreamingMessageWriter} прямо из строк запроса.
+ * <p>
+ * Выделенная потоком память считывается {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}
+ * до и после формирования пакетов после прогрева JIT. Как и в прежней транзакции публикации, контекст
+ * персистентности после каждого пакета сбрасывается с проверкой изменений и очищается.
+ * Запускается только с {@code -Dbenchmark=true}, например
+ * {@code mvn test -Dtest=CdrStreamingMessageWriterBenchmarkTest -Dbenchmark=true}.
+ * </p>
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import(CdrJdbcRepository.class)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CdrStreamingMessageWriterBenchmarkTest {
+
+    private static final int BATCH_SIZE = 1_000;
+    private static final int WARMUP_BATCHES = 300;
+    private static final int MEASURED_BATCHES = 300;
+
+    /**
+     * Как и {@code ObjectMapper} Spring Boot, записывает время строками ISO-8601.
+     */
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+
+    private final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    @Autowired
+    private CdrRepository cdrRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    /**
+     * Замеряет выделение памяти и время формирования пакета для каждого способа.
+     * Ожидается, что потоковое формирование выделяет в несколько раз меньше памяти, чем прежний способ:
+     * остаются только тело сообщения и значения строк, которые создает драйвер JDBC.
+     */
+    @Test
+    @DisplayName("Выделение памяти на пакет прежним и потоковым способами")
+    void allocationPerBatch_entityPathVsStreamingWriter() {
+        List<Cdr> cdrs = createTestCdrs(BATCH_SIZE);
+        cdrJdbcRepository.batchInsert(cdrs, BATCH_SIZE);
+        long firstId = cdrs.get(0).getId();
+        long lastId = cdrs.get(cdrs.size() - 1).getId();
+        cdrRepository.claim(firstId, cdrs.stream().map(Cdr::getId).toList());
+        Jackson2JsonMessageConverter jsonConverter = new Jackson2JsonMessageConverter(objectMapper);
+        CompressingMessageConverter noCompression = new CompressingMessageConverter(jsonConverter, CompressingMessageConverter.Codec.NONE, 1, 0);
+        CdrStreamingMessageWriter jsonWriter = new CdrStreamingMessageWriter(MimeTypeUtils.APPLICATION_JSON_VALUE, objectMapper, noCompression);
+        CdrStreamingMessageWriter binaryWriter = new CdrStreamingMessageWriter(CdrBinaryMessageConverter.CONTENT_TYPE, objectMapper, noCompression);
+
+        Supplier<Message> entityPath = () -> {
+            List<Cdr> entities = entityManager.createQuery("select c from Cdr c where c.id between :firstId and :lastId order by c.id", Cdr.class)
+                    .setParameter("firstId", firstId)
+                    .setParameter("lastId", lastId)
+                    .getResultList();
+            Message message = jsonConverter.toMessage(entities.stream().map(CdrDTO::createFromEntity).toList(), new MessageProperties());
+            entityManager.flush();
+            entityManager.clear();
+            return message;
+        };
+        byte[] expectedJson = entityPath.get().getBody();
+        assertThat(jsonWriter.write(rows -> cdrJdbcRepository.streamClaim(firstId, rows)).getBody()).isEqualTo(expectedJson);
+
+        measure("entity -> dto -> jackson", entityPath);
+        measure("streaming writer, json", () -> jsonWriter.write(rows -> cdrJdbcRepository.streamClaim(firstId, rows)));
+        measure("streaming writer, binary", () -> binaryWriter.write(rows -> cdrJdbcRepository.streamClaim(firstId, rows)));
+    }
+
+    private void measure(String path, Supplier<Message> batchWriter) {
+        for (int i = 0; i < WARMUP_BATCHES; i++) {
+            batchWriter.get();
+        }
+        long threadId = Thread.currentThread().getId();
+        long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        long bodyBytes = 0;
+        for (int i = 0; i < MEASURED_BATCHES; i++) {
+            bodyBytes += batchWriter.get().getBody().length;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes;
+        System.out.printf("%-26s %,10.0f bytes allocated/batch (%,6.0f per CDR, body %,7d bytes), %,7.2f ms/batch%n",
+                path, (double) allocatedBytes / MEASURED_BATCHES, (double) allocatedBytes / MEASURED_BATCHES / BATCH_SIZE,
+                bodyBytes / MEASURED_BATCHES, elapsedNanos / 1e6 / MEASURED_BATCHES);
+    }
+
+    private List<Cdr> createTestCdrs(int count) {
+        LocalDateTime start = LocalDateTime.of(2025, 3, 30, 2, 30, 15);
+        return IntStream.range(0, count)
+                .mapToObj(i -> Cdr.builder()
+                        .callType((i % 2 == 0) ? "01" : "02")
+                        .servicedMsisdn(Long.toString(79_000_000_000L + i * 7919L % 1_000_000))
+                        .otherMsisdn(Long.toString(79_000_000_000L + i * 104_729L % 1_000_000))
+                        .startDateTime(start.plusSeconds(i * 37L))
+                        .finishDateTime(start.plusSeconds(i * 37L + 30 + i % 600))
+                        .consumedStatus(ConsumedStatus.NEW)
+                        .build())
+                .toList();
+    }
+}
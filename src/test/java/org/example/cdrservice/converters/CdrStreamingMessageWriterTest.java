@@ -0,0 +1,201 @@
+package org.example.cdrservice.converters;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.example.cdrservice.dtos.CdrDTO;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.example.cdrservice.repositories.CdrRepository;
+import org.example.cdrservice.utils.CdrSharding;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link CdrStreamingMessageWriter}.
+ * Выполняется на встроенной БД H2 со схемой, созданной миграциями Liquibase, и сравнивает сообщения,
+ * сформированные из строк запроса, с сообщениями конвертеров для тех же CDR.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import(CdrJdbcRepository.class)
+class CdrStreamingMessageWriterTest {
+
+    /**
+     * Как и {@code ObjectMapper} Spring Boot, записывает время строками ISO-8601.
+     */
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+
+    @Autowired
+    private CdrRepository cdrRepository;
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    private List<CdrDTO> expectedDtos;
+
+    private List<Long> ids;
+
+    private long claimId;
+
+    @BeforeEach
+    void setUp() {
+        List<Cdr> cdrs = cdrRepository.saveAllAndFlush(createTestCdrs(20));
+        expectedDtos = cdrs.stream().map(CdrDTO::createFromEntity).toList();
+        ids = cdrs.stream().map(Cdr::getId).toList();
+        claimId = ids.get(0);
+        cdrRepository.claim(claimId, ids);
+    }
+
+    /**
+     * Тестирует формирование JSON-сообщения.
+     * Ожидается, что тело совпадет побайтно с телом {@link Jackson2JsonMessageConverter} для того же пакета.
+     */
+    @Test
+    @DisplayName("JSON-сообщение должно совпадать с результатом Jackson2JsonMessageConverter")
+    void write_json_shouldMatchJacksonConverter() {
+        CdrStreamingMessageWriter writer = new CdrStreamingMessageWriter(MimeTypeUtils.APPLICATION_JSON_VALUE, objectMapper, noCompression());
+
+        Message message = writer.write(rows -> cdrJdbcRepository.streamClaim(claimId, rows));
+
+        Message expected = new Jackson2JsonMessageConverter(objectMapper).toMessage(expectedDtos, new MessageProperties());
+        assertThat(message.getBody()).isEqualTo(expected.getBody());
+        assertThat(message.getMessageProperties().getContentType()).isEqualTo(MimeTypeUtils.APPLICATION_JSON_VALUE);
+    }
+
+    /**
+     * Тестирует формирование JSON-сообщения из готовых CDR со строками, требующими экранирования, и пустыми полями.
+     * Ожидается, что тело совпадет побайтно с телом {@link Jackson2JsonMessageConverter} для того же пакета.
+     */
+    @Test
+    @DisplayName("JSON-сообщение из готовых CDR должно совпадать с результатом Jackson2JsonMessageConverter")
+    void writeCdrs_json_shouldMatchJacksonConverter() {
+        CdrStreamingMessageWriter writer = new CdrStreamingMessageWriter(MimeTypeUtils.APPLICATION_JSON_VALUE, objectMapper, noCompression());
+        List<CdrDTO> cdrs = List.of(
+                new CdrDTO("0\"\\\n\u0001", "79000000000", "звонок \uD83D\uDCDE", LocalDateTime.of(2025, 3, 30, 2, 30, 0, 1_000), null),
+                new CdrDTO(null, "79000000001", "79010000001", LocalDateTime.of(2025, 3, 30, 2, 30), LocalDateTime.of(2025, 3, 30, 2, 31, 5)));
+
+        Message[] messages = writer.writeCdrs(cdrs, 1);
+
+        Message expected = new Jackson2JsonMessageConverter(objectMapper).toMessage(cdrs, new MessageProperties());
+        assertThat(messages[0].getBody()).isEqualTo(expected.getBody());
+    }
+
+    /**
+     * Тестирует формирование JSON-сообщения с настройками {@link ObjectMapper}, меняющими формат времени.
+     * Ожидается, что тело совпадет побайтно с телом {@link Jackson2JsonMessageConverter} с теми же настройками.
+     */
+    @Test
+    @DisplayName("JSON-сообщение должно учитывать настройки ObjectMapper")
+    void write_json_withCustomObjectMapper_shouldMatchJacksonConverter() {
+        ObjectMapper timestampsMapper = Jackson2ObjectMapperBuilder.json().featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).build();
+        CdrStreamingMessageWriter writer = new CdrStreamingMessageWriter(MimeTypeUtils.APPLICATION_JSON_VALUE, timestampsMapper, noCompression());
+
+        Message message = writer.write(rows -> cdrJdbcRepository.streamClaim(claimId, rows));
+
+        Message expected = new Jackson2JsonMessageConverter(timestampsMapper).toMessage(expectedDtos, new MessageProperties());
+        assertThat(message.getBody()).isEqualTo(expected.getBody());
+    }
+
+    /**
+     * Тестирует формирование двоичного сообщения и повторное использование буфера.
+     * Ожидается, что каждое сообщение разбирается {@link CdrBinaryMessageConverter} в исходный пакет,
+     * а меньший второй пакет не содержит остатков первого.
+     */
+    @Test
+    @DisplayName("Двоичное сообщение должно разбираться CdrBinaryMessageConverter в исходный пакет")
+    void write_binary_shouldBeReadableByBinaryConverter() {
+        CdrStreamingMessageWriter writer = new CdrStreamingMessageWriter(CdrBinaryMessageConverter.CONTENT_TYPE, objectMapper, noCompression());
+        CdrBinaryMessageConverter binaryConverter = new CdrBinaryMessageConverter();
+
+        Message fullBatch = writer.write(rows -> cdrJdbcRepository.streamClaim(claimId, rows));
+        cdrRepository.claim(claimId + ids.size(), ids.subList(1, ids.size()));
+        Message firstCdr = writer.write(rows -> cdrJdbcRepository.streamClaim(claimId, rows));
+
+        assertThat(binaryConverter.fromMessage(fullBatch)).isEqualTo(expectedDtos);
+        assertThat(binaryConverter.fromMessage(firstCdr)).isEqualTo(expectedDtos.subList(0, 1));
+    }
+
+    /**
+     * Тестирует распределение записей пакета по шардам.
+     * Ожидается, что каждая запись попадет в сообщение шарда своего обслуживаемого абонента с сохранением порядка,
+     * а для шардов без записей сообщения не сформируются.
+     */
+    @Test
+    @DisplayName("write по шардам должен распределять записи по MSISDN обслуживаемого абонента с сохранением порядка")
+    void write_sharded_shouldSplitRowsByServicedMsisdn() {
+        CdrStreamingMessageWriter writer = new CdrStreamingMessageWriter(CdrBinaryMessageConverter.CONTENT_TYPE, objectMapper, noCompression());
+        CdrBinaryMessageConverter binaryConverter = new CdrBinaryMessageConverter();
+        int shardCount = 16;
+
+        Message[] messages = writer.write(rows -> cdrJdbcRepository.streamClaim(claimId, rows), shardCount);
+
+        assertThat(messages).hasSize(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            List<CdrDTO> expectedShard = new ArrayList<>();
+            for (CdrDTO dto : expectedDtos) {
+                if (CdrSharding.shardOf(Long.parseLong(dto.servicedMsisdn()), shardCount) == shard) expectedShard.add(dto);
+            }
+            if (expectedShard.isEmpty()) {
+                assertThat(messages[shard]).isNull();
+            } else {
+                assertThat(binaryConverter.fromMessage(messages[shard])).isEqualTo(expectedShard);
+            }
+        }
+    }
+
+    /**
+     * Тестирует формирование сообщений только для выбранных шардов.
+     * Ожидается, что сообщения выбранных шардов совпадут с сообщениями без фильтра, а для остальных шардов не сформируются.
+     */
+    @Test
+    @DisplayName("write с фильтром шардов должен формировать сообщения только выбранных шардов")
+    void write_withShardFilter_shouldEncodeOnlySelectedShards() {
+        CdrStreamingMessageWriter writer = new CdrStreamingMessageWriter(CdrBinaryMessageConverter.CONTENT_TYPE, objectMapper, noCompression());
+        int shardCount = 4;
+
+        Message[] allShards = writer.write(rows -> cdrJdbcRepository.streamClaim(claimId, rows), shardCount);
+        Message[] evenShards = writer.write(rows -> cdrJdbcRepository.streamClaim(claimId, rows), shardCount, shard -> shard % 2 == 0);
+
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (shard % 2 == 0 && allShards[shard] != null) {
+                assertThat(evenShards[shard].getBody()).isEqualTo(allShards[shard].getBody());
+            } else {
+                assertThat(evenShards[shard]).isNull();
+            }
+        }
+    }
+
+    private CompressingMessageConverter noCompression() {
+        return new CompressingMessageConverter(new Jackson2JsonMessageConverter(objectMapper), CompressingMessageConverter.Codec.NONE, 1, 0);
+    }
+
+    private List<Cdr> createTestCdrs(int count) {
+        LocalDateTime start = LocalDateTime.of(2025, 3, 30, 2, 30, 0, 250_000_000);
+        return IntStream.range(0, count)
+                .mapToObj(i -> Cdr.builder()
+                        .callType((i % 2 == 0) ? "01" : "02")
+                        .servicedMsisdn("7900000000" + (i % 10))
+                        .otherMsisdn("7901000000" + (i % 10))
+                        .startDateTime(start.plusMinutes(i))
+                        .finishDateTime(start.plusMinutes(i).plusSeconds(95))
+                        .consumedStatus(ConsumedStatus.NEW)
+                        .build())
+                .toList();
+    }
+}
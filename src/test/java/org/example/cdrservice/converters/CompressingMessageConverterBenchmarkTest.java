@@ -0,0 +1,117 @@
+package org.example.cdrservice.converters;
+
+import org.example.cdrservice.dtos.CdrDTO;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.amqp.support.postprocessor.DelegatingDecompressingPostProcessor;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Замер сжатия пакетов CDR {@link CompressingMessageConverter}: экономия трафика брокера против затрат процессора.
+ * <p>
+ * Для пакетов из 1000 CDR в JSON и в двоичном формате и для алгоритмов gzip и deflate с уровнями 1 и 6 выводятся
+ * степень сжатия, сэкономленные байты на CDR, процессорное время сжатия и распаковки одного пакета
+ * ({@link ThreadMXBean#getCurrentThreadCpuTime()}) и скорость сжатия по объему исходных данных.
+ * Запускается только с {@code -Dbenchmark=true}, например
+ * {@code mvn test -Dtest=CompressingMessageConverterBenchmarkTest -Dbenchmark=true}.
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CompressingMessageConverterBenchmarkTest {
+
+    private static final int BATCH_SIZE = 1_000;
+    private static final int WARMUP_MESSAGES = 500;
+    private static final int MEASURED_MESSAGES = 1_000;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final DelegatingDecompressingPostProcessor decompressor = new DelegatingDecompressingPostProcessor();
+
+    /**
+     * Замеряет степень и стоимость сжатия для каждого формата, алгоритма и уровня.
+     * Ожидается, что JSON сжимается в несколько раз уже на уровне 1, а уровень 6 дает немного лучшее сжатие
+     * заметно дороже.
+     */
+    @Test
+    @DisplayName("Экономия трафика и затраты процессора при сжатии пакетов CDR")
+    void compressionRatioAndCpuCost_byCodecAndLevel() {
+        List<CdrDTO> cdrs = createTestCdrs(BATCH_SIZE);
+        measureFormat("json", new Jackson2JsonMessageConverter(Jackson2ObjectMapperBuilder.json().build()), cdrs);
+        measureFormat("binary", new CdrBinaryMessageConverter(), cdrs);
+    }
+
+    private void measureFormat(String format, MessageConverter delegate, List<CdrDTO> cdrs) {
+        Message original = delegate.toMessage(cdrs, new MessageProperties());
+        for (CompressingMessageConverter.Codec codec : List.of(CompressingMessageConverter.Codec.GZIP, CompressingMessageConverter.Codec.DEFLATE)) {
+            for (int level : new int[]{1, 6}) {
+                measure(format, delegate, original, cdrs, codec, level);
+            }
+        }
+    }
+
+    private void measure(String format, MessageConverter delegate, Message original, List<CdrDTO> cdrs,
+                         CompressingMessageConverter.Codec codec, int level) {
+        CompressingMessageConverter converter = new CompressingMessageConverter(delegate, codec, level, 0);
+        Message compressed = converter.compress(copyOf(original));
+        assertThat(converter.fromMessage(copyOf(compressed))).isEqualTo(delegate.fromMessage(original));
+
+        for (int i = 0; i < WARMUP_MESSAGES; i++) {
+            decompressor.postProcessMessage(converter.compress(copyOf(original)));
+        }
+        long startCpuNanos = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURED_MESSAGES; i++) {
+            converter.compress(copyOf(original));
+        }
+        long compressCpuNanos = threadMXBean.getCurrentThreadCpuTime() - startCpuNanos;
+        startCpuNanos = threadMXBean.getCurrentThreadCpuTime();
+        for (int i = 0; i < MEASURED_MESSAGES; i++) {
+            decompressor.postProcessMessage(copyOf(compressed));
+        }
+        long decompressCpuNanos = threadMXBean.getCurrentThreadCpuTime() - startCpuNanos;
+
+        int originalBytes = original.getBody().length;
+        int compressedBytes = compressed.getBody().length;
+        System.out.printf("%-6s %-7s level %d: %,7d -> %,6d bytes (x%4.1f, %5.1f bytes/CDR saved), "
+                        + "compress %,5.0f us CPU/msg (%,5.0f MB/s), decompress %,4.0f us CPU/msg%n",
+                format, codec.name().toLowerCase(), level, originalBytes, compressedBytes,
+                (double) originalBytes / compressedBytes, (double) (originalBytes - compressedBytes) / cdrs.size(),
+                compressCpuNanos / 1e3 / MEASURED_MESSAGES, (double) originalBytes * MEASURED_MESSAGES / compressCpuNanos * 1e3,
+                decompressCpuNanos / 1e3 / MEASURED_MESSAGES);
+    }
+
+    /**
+     * Копирует сообщение, так как постпроцессоры сжатия изменяют свойства исходного сообщения.
+     */
+    private static Message copyOf(Message message) {
+        MessageProperties source = message.getMessageProperties();
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType(source.getContentType());
+        properties.setContentEncoding(source.getContentEncoding());
+        return new Message(message.getBody(), properties);
+    }
+
+    private List<CdrDTO> createTestCdrs(int count) {
+        LocalDateTime start = LocalDateTime.of(2025, 3, 30, 2, 30, 15);
+        return IntStream.range(0, count)
+                .mapToObj(i -> new CdrDTO(
+                        (i % 2 == 0) ? "01" : "02",
+                        Long.toString(79_000_000_000L + i * 7919L % 1_000_000),
+                        Long.toString(79_000_000_000L + i * 104_729L % 1_000_000),
+                        start.plusSeconds(i * 37L),
+                        start.plusSeconds(i * 37L + 30 + i % 600)))
+                .toList();
+    }
+}
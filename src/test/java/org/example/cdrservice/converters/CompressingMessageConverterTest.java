@@ -0,0 +1,73 @@
+package org.example.cdrservice.converters;
+
+import org.example.cdrservice.dtos.CdrDTO;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link CompressingMessageConverter}.
+ */
+class CompressingMessageConverterTest {
+
+    private final MessageConverter jsonConverter = new Jackson2JsonMessageConverter(Jackson2ObjectMapperBuilder.json().build());
+
+    /**
+     * Тестирует сжатие пакета, превышающего порог, каждым из алгоритмов.
+     * Ожидается, что сообщение станет меньше, алгоритм будет добавлен в начало заголовка {@code content_encoding}
+     * (перед кодировкой, которую записывает JSON-конвертер), и сообщение будет восстановлено без изменений.
+     */
+    @Test
+    @DisplayName("Должен сжимать сообщения не меньше порога и восстанавливать их без изменений")
+    void toMessage_aboveThreshold_shouldCompressAndRoundTrip() {
+        List<CdrDTO> cdrs = createTestCdrs(1000);
+        int uncompressedSize = jsonConverter.toMessage(cdrs, new MessageProperties()).getBody().length;
+
+        for (CompressingMessageConverter.Codec codec : List.of(CompressingMessageConverter.Codec.GZIP, CompressingMessageConverter.Codec.DEFLATE)) {
+            CompressingMessageConverter converter = new CompressingMessageConverter(jsonConverter, codec, 1, 1024);
+
+            Message message = converter.toMessage(cdrs, new MessageProperties());
+
+            assertThat(message.getMessageProperties().getContentEncoding()).startsWith(codec.name().toLowerCase() + ", ");
+            assertThat(message.getBody().length * 4).isLessThan(uncompressedSize);
+            assertThat(converter.fromMessage(message)).isEqualTo(jsonConverter.fromMessage(jsonConverter.toMessage(cdrs, new MessageProperties())));
+        }
+    }
+
+    /**
+     * Тестирует, что сообщения меньше порога отправляются без сжатия.
+     */
+    @Test
+    @DisplayName("Не должен сжимать сообщения меньше порога")
+    void toMessage_belowThreshold_shouldNotCompress() {
+        List<CdrDTO> cdrs = createTestCdrs(2);
+        CompressingMessageConverter converter = new CompressingMessageConverter(jsonConverter, CompressingMessageConverter.Codec.GZIP, 1, 64 * 1024);
+
+        Message message = converter.toMessage(cdrs, new MessageProperties());
+
+        assertThat(message.getMessageProperties().getContentEncoding()).doesNotContain("gzip");
+        assertThat(message.getBody()).isEqualTo(jsonConverter.toMessage(cdrs, new MessageProperties()).getBody());
+    }
+
+    private List<CdrDTO> createTestCdrs(int count) {
+        LocalDateTime start = LocalDateTime.of(2025, 3, 30, 2, 30, 15);
+        return IntStream.range(0, count)
+                .mapToObj(i -> new CdrDTO(
+                        (i % 2 == 0) ? "01" : "02",
+                        "7900000000" + (i % 10),
+                        "7901000000" + (i % 10),
+                        start.plusMinutes(i),
+                        start.plusMinutes(i).plusSeconds(95)))
+                .toList();
+    }
+}
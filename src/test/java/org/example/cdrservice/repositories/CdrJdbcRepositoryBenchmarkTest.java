@@ -0,0 +1,95 @@
+package org.example.cdrservice.repositories;
+
+import org.example.cdrservice.config.JpaBatchingConfig;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Замер скорости вставки CDR в зависимости от размера JDBC-пакета.
+ * <p>
+ * Сравнивает вставку по одной строке через JPA (каждая запись в своей транзакции, как до перехода
+ * на последовательность) с пакетной вставкой {@code saveAll} и {@link CdrJdbcRepository#batchInsert}
+ * при размерах пакета 1, 50 и 1000. Встроенная H2 не тратит время на сетевой обмен, поэтому на внешней БД
+ * разница между вставкой по одной строке и пакетами будет больше.
+ * Запускается только с {@code -Dbenchmark=true}, например
+ * {@code mvn test -Dtest=CdrJdbcRepositoryBenchmarkTest -Dbenchmark=true}.
+ * </p>
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import({CdrJdbcRepository.class, JpaBatchingConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CdrJdbcRepositoryBenchmarkTest {
+
+    private static final int ROWS = 20_000;
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    @Autowired
+    private CdrRepository cdrRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("truncate table cdrs");
+    }
+
+    /**
+     * Замеряет количество вставок в секунду для каждого способа вставки.
+     * Ожидается, что пакетная вставка быстрее вставки по одной строке и ускоряется с ростом пакета.
+     */
+    @Test
+    @DisplayName("Скорость вставки CDR по одной строке и пакетами")
+    void insertThroughput_byBatchSize() {
+        measure("jpa save per row", cdrs -> cdrs.forEach(cdrRepository::save));
+        measure("jpa saveAll (const.jpa.batch-size=50)", cdrRepository::saveAllAndFlush);
+        for (int batchSize : new int[]{1, 50, 1000}) {
+            measure("jdbc batchInsert batch=" + batchSize, cdrs -> cdrJdbcRepository.batchInsert(cdrs, batchSize));
+        }
+    }
+
+    private void measure(String name, Consumer<List<Cdr>> insert) {
+        insert.accept(createTestCdrs(ROWS / 10));
+        List<Cdr> cdrs = createTestCdrs(ROWS);
+        long startNanos = System.nanoTime();
+        insert.accept(cdrs);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.printf("%-40s %,10.0f inserts/s%n", name, ROWS * 1e9 / elapsedNanos);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from cdrs", Integer.class)).isEqualTo(ROWS + ROWS / 10);
+        jdbcTemplate.update("truncate table cdrs");
+    }
+
+    private List<Cdr> createTestCdrs(int count) {
+        LocalDateTime now = LocalDateTime.now();
+        return IntStream.range(0, count)
+                .mapToObj(i -> Cdr.builder()
+                        .callType("01")
+                        .servicedMsisdn("79000000001")
+                        .otherMsisdn("79000000002")
+                        .startDateTime(now.minusMinutes(i + 5))
+                        .finishDateTime(now.minusMinutes(i))
+                        .consumedStatus(ConsumedStatus.NEW)
+                        .build())
+                .toList();
+    }
+}
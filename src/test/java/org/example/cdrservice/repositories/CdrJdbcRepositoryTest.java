@@ -0,0 +1,68 @@
+package org.example.cdrservice.repositories;
+
+import org.example.cdrservice.config.JpaBatchingConfig;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link CdrJdbcRepository}.
+ * Выполняется на встроенной БД H2 со схемой, созданной миграциями Liquibase.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import({CdrJdbcRepository.class, JpaBatchingConfig.class})
+class CdrJdbcRepositoryTest {
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    @Autowired
+    private CdrRepository cdrRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Тестирует совместное выделение идентификаторов через JPA и JDBC.
+     * Блоки идентификаторов, выделенные из {@code cdrs_seq} обоими способами, не должны пересекаться.
+     */
+    @Test
+    @DisplayName("batchInsert и saveAll должны выделять непересекающиеся идентификаторы")
+    void batchInsertAndSaveAll_shouldAllocateDisjointIds() {
+        cdrRepository.saveAllAndFlush(createTestCdrs(3));
+        cdrJdbcRepository.batchInsert(createTestCdrs(120), 50);
+        cdrRepository.saveAllAndFlush(createTestCdrs(60));
+        cdrJdbcRepository.batchInsert(createTestCdrs(3), 50);
+
+        Integer rows = jdbcTemplate.queryForObject("select count(*) from cdrs", Integer.class);
+        Integer distinctIds = jdbcTemplate.queryForObject("select count(distinct id) from cdrs", Integer.class);
+
+        assertThat(rows).isEqualTo(186);
+        assertThat(distinctIds).isEqualTo(186);
+    }
+
+    private List<Cdr> createTestCdrs(int count) {
+        LocalDateTime now = LocalDateTime.now();
+        return IntStream.range(0, count)
+                .mapToObj(i -> Cdr.builder()
+                        .callType("01")
+                        .servicedMsisdn("79000000001")
+                        .otherMsisdn("79000000002")
+                        .startDateTime(now.minusMinutes(i + 5))
+                        .finishDateTime(now.minusMinutes(i))
+                        .consumedStatus(ConsumedStatus.NEW)
+                        .build())
+                .toList();
+    }
+}
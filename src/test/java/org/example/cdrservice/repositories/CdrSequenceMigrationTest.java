@@ -0,0 +1,50 @@
+package org.example.cdrservice.repositories;
+
+import liquibase.Liquibase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для миграции {@code 0004-create-sequence-for-cdrs}.
+ * Миграции применяются к отдельной встроенной БД H2, в которой до перехода на последовательность
+ * уже есть записи CDR с идентификаторами из автоинкремента.
+ */
+class CdrSequenceMigrationTest {
+
+    private static final String CHANGELOG = "db/changelog/db.changelog-master.yaml";
+
+    /**
+     * Тестирует, что последовательность {@code cdrs_seq} начинается за уже выданными идентификаторами.
+     * Ожидается, что первый блок оптимизатора pooled (значение последовательности минус 49) больше
+     * наибольшего существующего идентификатора и не выходит за него дальше, чем на один блок.
+     */
+    @Test
+    @DisplayName("Последовательность cdrs_seq должна начинаться за существующими идентификаторами")
+    void migration_onNonEmptyCdrs_shouldStartSequenceAboveExistingIds() throws Exception {
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource("jdbc:h2:mem:cdr-sequence-migration", "sa", "", true);
+        try {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            Liquibase liquibase = new Liquibase(CHANGELOG, new ClassLoaderResourceAccessor(), new JdbcConnection(dataSource.getConnection()));
+            liquibase.update(3, "");
+            jdbcTemplate.update("""
+                    insert into cdrs (call_type, serviced_msisdn, other_msisdn, start_date_time, finish_date_time, consumed_status)
+                    select '01', '79000000001', '79000000002', timestamp '2025-01-01 00:00:00', timestamp '2025-01-01 00:01:00', 'NEW'
+                    from system_range(1, 137)
+                    """);
+
+            liquibase.update("");
+
+            Long nextBlockEnd = jdbcTemplate.queryForObject("select next value for cdrs_seq", Long.class);
+            assertThat(nextBlockEnd - 49).isGreaterThan(137L);
+            assertThat(nextBlockEnd).isEqualTo(200L);
+        } finally {
+            dataSource.destroy();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.cdrservice.repositories;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Сравнение размера и скорости чтения таблицы CDR в прежней (строковые столбцы {@code varchar(200)})
+ * и компактной (MSISDN - {@code bigint}, тип вызова и статус - {@code smallint}) схемах.
+ * <p>
+ * Обе таблицы заполняются одинаковыми {@code benchmark.rows} строками (по умолчанию 1 000 000) для 100 000 абонентов
+ * и получают индекс {@code (serviced_msisdn, start_date_time, id)}, как у {@code cdrs}. Замеряются размер таблицы
+ * и индекса, время полного просмотра таблицы и время выборки звонков абонентов по индексу.
+ * Каждая схема замеряется в отдельной файловой БД H2 в {@code target}: размер таблицы и индекса определяется
+ * по размеру файла БД, сжатого при закрытии ({@code shutdown compact}), до и после создания индекса.
+ * Повторное использование результатов запросов отключено, чтобы каждый просмотр действительно читал таблицу.
+ * Запускается только с {@code -Dbenchmark=true}, например
+ * {@code mvn test -Dtest=CdrStorageLayoutBenchmarkTest -Dbenchmark=true -Dbenchmark.rows=10000000 -DargLine=-Xmx8g}.
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CdrStorageLayoutBenchmarkTest {
+
+    private static final long SUBSCRIBERS = 100_000;
+    private static final long FIRST_MSISDN = 79_000_000_000L;
+    private static final int SCANS = 5;
+    private static final int LOOKUPS = 2_000;
+
+    /**
+     * Замеряет размер и скорость чтения обеих схем.
+     * Ожидается, что компактная схема меньше и читается быстрее.
+     */
+    @Test
+    @DisplayName("Размер и скорость чтения прежней и компактной схем таблицы CDR")
+    void sizeAndScanSpeed_byLayout() throws IOException {
+        long rows = Long.getLong("benchmark.rows", 1_000_000L);
+        measure("varchar", rows, """
+                create table cdrs_varchar_layout(
+                    id bigint primary key,
+                    call_type varchar(200) not null,
+                    serviced_msisdn varchar(200) not null,
+                    other_msisdn varchar(200) not null,
+                    start_date_time datetime not null,
+                    finish_date_time datetime not null,
+                    consumed_status varchar(200) not null)
+                """, """
+                insert into cdrs_varchar_layout
+                select x, '0' || (1 + mod(x, 2)), cast(%1$d + mod(x, %2$d) as varchar), cast(%1$d + mod(x * 7, %2$d) as varchar),
+                       dateadd('SECOND', x, timestamp '2025-01-01 00:00:00'), dateadd('SECOND', x + 60, timestamp '2025-01-01 00:00:00'),
+                       'CONSUMED'
+                from system_range(1, %3$d)
+                """, "'01'", "cast(? as varchar)");
+        measure("compact", rows, """
+                create table cdrs_compact_layout(
+                    id bigint primary key,
+                    call_type smallint not null,
+                    serviced_msisdn bigint not null,
+                    other_msisdn bigint not null,
+                    start_date_time timestamp not null,
+                    finish_date_time timestamp not null,
+                    consumed_status smallint not null)
+                """, """
+                insert into cdrs_compact_layout
+                select x, 1 + mod(x, 2), %1$d + mod(x, %2$d), %1$d + mod(x * 7, %2$d),
+                       dateadd('SECOND', x, timestamp '2025-01-01 00:00:00'), dateadd('SECOND', x + 60, timestamp '2025-01-01 00:00:00'),
+                       1
+                from system_range(1, %3$d)
+                """, "1", "?");
+    }
+
+    private void measure(String layout, long rows, String createSql, String insertSql, String callType, String msisdnParameter)
+            throws IOException {
+        String table = "cdrs_" + layout + "_layout";
+        Path databaseFile = Path.of("target", table + ".mv.db");
+        Files.deleteIfExists(databaseFile);
+        String url = "jdbc:h2:file:./target/" + table + ";OPTIMIZE_REUSE_RESULTS=FALSE";
+
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource(url, "sa", "", true);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute(createSql);
+        long loadStart = System.nanoTime();
+        jdbcTemplate.update(insertSql.formatted(FIRST_MSISDN, SUBSCRIBERS, rows));
+        long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart);
+        long tableBytes = closeCompacted(dataSource, databaseFile);
+
+        dataSource = new SingleConnectionDataSource(url, "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create index " + table + "_idx on " + table + "(serviced_msisdn, start_date_time, id)");
+        long indexBytes = closeCompacted(dataSource, databaseFile) - tableBytes;
+
+        dataSource = new SingleConnectionDataSource(url, "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        try {
+            String scanSql = "select count(*) from " + table + " where call_type = " + callType + " and other_msisdn <> serviced_msisdn";
+            long bestScanNanos = Long.MAX_VALUE;
+            for (int i = 0; i < SCANS; i++) {
+                long start = System.nanoTime();
+                Long matched = jdbcTemplate.queryForObject(scanSql, Long.class);
+                bestScanNanos = Math.min(bestScanNanos, System.nanoTime() - start);
+                assertThat(matched).isPositive();
+            }
+
+            String lookupSql = "select count(*) from " + table + " where serviced_msisdn = " + msisdnParameter;
+            long lookupStart = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                jdbcTemplate.queryForObject(lookupSql, Long.class, FIRST_MSISDN + (i * 7919L) % SUBSCRIBERS);
+            }
+            long lookupNanos = System.nanoTime() - lookupStart;
+
+            System.out.printf("%-8s %,d rows (loaded in %,d ms): table %,.1f MB (%.1f B/row), index %,.1f MB (%.1f B/row), "
+                            + "full scan %,.1f ms (%,.0f rows/s), index lookup %.3f ms%n",
+                    layout, rows, loadMillis, tableBytes / 1e6, (double) tableBytes / rows, indexBytes / 1e6, (double) indexBytes / rows,
+                    bestScanNanos / 1e6, rows * 1e9 / bestScanNanos, lookupNanos / 1e6 / LOOKUPS);
+        } finally {
+            jdbcTemplate.execute("shutdown");
+            dataSource.destroy();
+            Files.deleteIfExists(databaseFile);
+            Files.deleteIfExists(Path.of("target", table + ".trace.db"));
+        }
+    }
+
+    /**
+     * Закрывает БД со сжатием файла и возвращает его размер.
+     */
+    private static long closeCompacted(SingleConnectionDataSource dataSource, Path databaseFile) throws IOException {
+        new JdbcTemplate(dataSource).execute("shutdown compact");
+        dataSource.destroy();
+        return Files.size(databaseFile);
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.cdrservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionBlockedEvent;
+import org.springframework.amqp.rabbit.connection.ConnectionUnblockedEvent;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тестовый класс для {@link BackpressureController}.
+ * Проверяет вычисление доли скорости публикации по глубине очередей CDR и блокировкам соединения брокером.
+ */
+@ExtendWith(MockitoExtension.class)
+class BackpressureControllerTest {
+
+    @Mock
+    private AmqpAdmin amqpAdmin;
+
+    private BackpressureController backpressureController;
+
+    @BeforeEach
+    void setUp() {
+        backpressureController = new BackpressureController(amqpAdmin, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(backpressureController, "enabled", true);
+        ReflectionTestUtils.setField(backpressureController, "lowWatermark", 1000L);
+        ReflectionTestUtils.setField(backpressureController, "highWatermark", 5000L);
+        ReflectionTestUtils.setField(backpressureController, "CDR_QUEUE_NAME", "cdr.queue");
+        ReflectionTestUtils.setField(backpressureController, "shardCount", 1);
+    }
+
+    /**
+     * Тестирует изменение доли скорости при росте очереди.
+     * Ожидается полная скорость до нижней границы, линейное снижение между границами
+     * и пауза на верхней границе.
+     */
+    @Test
+    @DisplayName("sample должен линейно снижать скорость между нижней и верхней границей глубины очереди")
+    void sample_shouldDegradeRateLinearlyBetweenWatermarks() {
+        when(amqpAdmin.getQueueProperties("cdr.queue")).thenReturn(
+                queueProperties(500, 2), queueProperties(2000, 2), queueProperties(4000, 2), queueProperties(6000, 2));
+
+        backpressureController.sample();
+        assertThat(backpressureController.getPublishRate()).isEqualTo(1.0);
+        backpressureController.sample();
+        assertThat(backpressureController.getPublishRate()).isEqualTo(0.75);
+        backpressureController.sample();
+        assertThat(backpressureController.getPublishRate()).isEqualTo(0.25);
+        backpressureController.sample();
+        assertThat(backpressureController.getPublishRate()).isZero();
+        assertThat(backpressureController.getQueueDepth()).isEqualTo(6000);
+    }
+
+    /**
+     * Тестирует приостановку при отсутствии потребителей и учет самой загруженной очереди шардов.
+     */
+    @Test
+    @DisplayName("sample должен учитывать самый загруженный шард и приостанавливать очередь без потребителей")
+    void sample_shouldUseMostLoadedShardAndPauseWithoutConsumers() {
+        ReflectionTestUtils.setField(backpressureController, "shardCount", 2);
+        when(amqpAdmin.getQueueProperties("cdr.queue.0")).thenReturn(queueProperties(100, 1), queueProperties(2000, 0));
+        when(amqpAdmin.getQueueProperties("cdr.queue.1")).thenReturn(queueProperties(3000, 1), queueProperties(100, 1));
+
+        backpressureController.sample();
+        assertThat(backpressureController.getPublishRate()).isEqualTo(0.5);
+        assertThat(backpressureController.getQueueDepth()).isEqualTo(3000);
+
+        backpressureController.sample();
+        assertThat(backpressureController.getPublishRate()).isZero();
+        assertThat(backpressureController.getConsumerCount()).isZero();
+    }
+
+    /**
+     * Тестирует реакцию на недоступность брокера и блокировку соединения.
+     * Ожидается, что при ошибке опроса сохраняется прежняя доля, а блокировка соединения приостанавливает
+     * публикацию до разблокировки.
+     */
+    @Test
+    @DisplayName("Должен сохранять долю при ошибке опроса и приостанавливать публикацию при блокировке соединения")
+    void shouldKeepRateOnSampleFailureAndPauseWhileBlocked() {
+        when(amqpAdmin.getQueueProperties("cdr.queue"))
+                .thenReturn(queueProperties(3000, 1))
+                .thenThrow(new AmqpConnectException(new RuntimeException("connection refused")));
+
+        backpressureController.sample();
+        backpressureController.sample();
+        assertThat(backpressureController.getPublishRate()).isEqualTo(0.5);
+
+        backpressureController.onConnectionBlocked(new ConnectionBlockedEvent(mock(Connection.class), "low on memory"));
+        assertThat(backpressureController.getPublishRate()).isZero();
+        backpressureController.onConnectionUnblocked(new ConnectionUnblockedEvent(mock(Connection.class)));
+        assertThat(backpressureController.getPublishRate()).isEqualTo(0.5);
+    }
+
+    private Properties queueProperties(int messageCount, int consumerCount) {
+        Properties properties = new Properties();
+        properties.put(RabbitAdmin.QUEUE_MESSAGE_COUNT, messageCount);
+        properties.put(RabbitAdmin.QUEUE_CONSUMER_COUNT, consumerCount);
+        return properties;
+    }
+}
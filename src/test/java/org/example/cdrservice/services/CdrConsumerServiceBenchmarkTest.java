@@ -0,0 +1,139 @@
+package org.example.cdrservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cdrservice.converters.CdrStreamingMessageWriter;
+import org.example.cdrservice.dtos.ClaimedCdrBatch;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Замер пропускной способности {@link CdrConsumerService} в зависимости от количества исполнителей отправки.
+ * <p>
+ * Пакеты распределяются по {@value #SHARD_COUNT} шардам, которые делят между собой исполнители.
+ * Формирование сообщений (пропорционально доле шардов исполнителя) и запись в канал имитируются работой процессора
+ * и ожиданием фиксированной длительности, а брокер подтверждает сообщения сразу. Запускается только с {@code -Dbenchmark=true}, например
+ * {@code mvn test -Dtest=CdrConsumerServiceBenchmarkTest -Dbenchmark=true}.
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CdrConsumerServiceBenchmarkTest {
+
+    private static final int TOTAL_BATCHES = 2_000;
+    private static final int BATCH_SIZE = 100;
+    private static final int CONFIRM_WINDOW = 32;
+    private static final int SHARD_COUNT = 8;
+    private static final long ENCODE_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long SEND_NANOS_PER_MESSAGE = TimeUnit.MICROSECONDS.toNanos(40);
+
+    private final Message message = new Message(new byte[]{1, 2, 3}, new MessageProperties());
+
+    /**
+     * Замеряет количество отправленных пакетов в секунду при 1, 2, 4 и 8 исполнителях.
+     * Ожидается, что все пакеты фиксируются ровно один раз, а пропускная способность растет с числом исполнителей.
+     */
+    @Test
+    @DisplayName("Пропускная способность отправки при разном количестве исполнителей")
+    void publishThroughput_byWorkerCount() {
+        Map<Integer, Double> batchesPerSecond = new LinkedHashMap<>();
+        for (int workers : new int[]{1, 2, 4, 8}) {
+            batchesPerSecond.put(workers, measure(workers));
+        }
+
+        batchesPerSecond.forEach((workers, rate) ->
+                System.out.printf("workers=%d: %.0f batches/s (%.0f CDR/s)%n", workers, rate, rate * BATCH_SIZE));
+        assertThat(batchesPerSecond.get(4)).isGreaterThan(batchesPerSecond.get(1));
+    }
+
+    @SuppressWarnings("unchecked")
+    private double measure(int workers) {
+        CdrOutboxService cdrOutboxService = mock(CdrOutboxService.class);
+        CdrStreamingMessageWriter cdrStreamingMessageWriter = mock(CdrStreamingMessageWriter.class);
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        BackpressureController backpressureController = mock(BackpressureController.class);
+        CdrPipelineService cdrPipelineService = mock(CdrPipelineService.class);
+
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        when(backpressureController.getPublishRate()).thenReturn(1.0);
+        AtomicLong nextId = new AtomicLong(1);
+        AtomicInteger completed = new AtomicInteger();
+        long lastId = (long) TOTAL_BATCHES * BATCH_SIZE;
+        when(cdrOutboxService.estimateBacklog()).thenAnswer(invocation -> Math.max(0, lastId + 1 - nextId.get()));
+        when(cdrOutboxService.claimNextBatch(anyInt(), anyBoolean())).thenAnswer(invocation -> {
+            long firstId = nextId.getAndAdd(BATCH_SIZE);
+            if (firstId > lastId) return Optional.empty();
+            return Optional.of(new ClaimedCdrBatch(firstId, firstId + BATCH_SIZE - 1, BATCH_SIZE, LocalDateTime.now()));
+        });
+        doAnswer(invocation -> completed.incrementAndGet()).when(cdrOutboxService).complete(any());
+        when(cdrStreamingMessageWriter.write(any(), eq(SHARD_COUNT), any(IntPredicate.class))).thenAnswer(invocation -> {
+            IntPredicate shardFilter = invocation.getArgument(2);
+            Message[] messages = IntStream.range(0, SHARD_COUNT).mapToObj(shard -> shardFilter.test(shard) ? message : null).toArray(Message[]::new);
+            long ownedShards = Arrays.stream(messages).filter(Objects::nonNull).count();
+            long deadline = System.nanoTime() + ENCODE_NANOS * ownedShards / SHARD_COUNT;
+            while (System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            return messages;
+        });
+        when(rabbitTemplate.invoke(any(RabbitOperations.OperationsCallback.class))).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<Object>>getArgument(0).doInRabbit(rabbitTemplate));
+        doAnswer(invocation -> {
+            LockSupport.parkNanos(SEND_NANOS_PER_MESSAGE);
+            invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+
+        CdrConsumerService service = new CdrConsumerService(cdrOutboxService, mock(CdrJdbcRepository.class), cdrStreamingMessageWriter,
+                rabbitTemplate, new SimpleMeterRegistry(), backpressureController, cdrPipelineService,
+                CONFIRM_WINDOW, workers, BATCH_SIZE, BATCH_SIZE, Duration.ofMillis(50));
+        ReflectionTestUtils.setField(service, "maxLinger", Duration.ZERO);
+        ReflectionTestUtils.setField(service, "CDR_EXCHANGE_NAME", "cdr.direct");
+        ReflectionTestUtils.setField(service, "CDR_ROUTING_KEY", "cdr.created");
+        ReflectionTestUtils.setField(service, "shardCount", SHARD_COUNT);
+        ReflectionTestUtils.setField(service, "confirmTimeout", Duration.ofSeconds(10));
+
+        try {
+            long startNanos = System.nanoTime();
+            while (completed.get() < TOTAL_BATCHES) {
+                service.consumeDataFromDB();
+            }
+            long elapsedNanos = System.nanoTime() - startNanos;
+            assertThat(completed.get()).isEqualTo(TOTAL_BATCHES);
+            return TOTAL_BATCHES * 1_000_000_000.0 / elapsedNanos;
+        } finally {
+            service.shutdownConfirmExecutor();
+        }
+    }
+}
@@ -1,119 +1,485 @@
 package org.example.cdrservice.services;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cdrservice.converters.CdrStreamingMessageWriter;
 import org.example.cdrservice.dtos.CdrDTO;
+import org.example.cdrservice.dtos.CdrsPersistedEvent;
+import org.example.cdrservice.dtos.ClaimedCdrBatch;
 import org.example.cdrservice.entitites.Cdr;
 import org.example.cdrservice.entitites.ConsumedStatus;
-import org.example.cdrservice.repositories.CdrRepository;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.AmqpConnectException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
  * Тестовый класс для {@link CdrConsumerService}.
- * Проверяет логику потребления CDR из репозитория и отправки их в RabbitMQ.
+ * Проверяет логику захвата пакетов CDR в исходящем буфере и отправки их в RabbitMQ.
  */
 @ExtendWith(MockitoExtension.class)
 class CdrConsumerServiceTest {
 
     @Mock
-    private CdrRepository cdrRepository;
+    private CdrOutboxService cdrOutboxService;
+
+    @Mock
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    @Mock
+    private CdrStreamingMessageWriter cdrStreamingMessageWriter;
 
     @Mock
     private RabbitTemplate rabbitTemplate;
 
-    @InjectMocks
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    @Mock
+    private BackpressureController backpressureController;
+
+    @Mock
+    private CdrPipelineService cdrPipelineService;
+
     private CdrConsumerService cdrConsumerService;
 
-    private List<Cdr> testCdrs;
+    private final Message message = new Message(new byte[]{1, 2, 3}, new MessageProperties());
 
     @BeforeEach
     void setUp() {
-        testCdrs = createTestCdrs();
+        cdrConsumerService = new CdrConsumerService(cdrOutboxService, cdrJdbcRepository, cdrStreamingMessageWriter,
+                rabbitTemplate, new SimpleMeterRegistry(), backpressureController, cdrPipelineService, 2, 1, 5, 1000, Duration.ofMillis(50));
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        when(backpressureController.getPublishRate()).thenReturn(1.0);
 
-        ReflectionTestUtils.setField(cdrConsumerService, "numberOfRecordsInCDR", 5);
+        ReflectionTestUtils.setField(cdrConsumerService, "maxLinger", Duration.ofHours(1));
         ReflectionTestUtils.setField(cdrConsumerService, "CDR_EXCHANGE_NAME", "cdr.direct");
         ReflectionTestUtils.setField(cdrConsumerService, "CDR_ROUTING_KEY", "cdr.created");
+        ReflectionTestUtils.setField(cdrConsumerService, "shardCount", 1);
+        ReflectionTestUtils.setField(cdrConsumerService, "confirmTimeout", Duration.ofSeconds(10));
     }
 
     /**
-     * Тестирует сценарий, когда в базе данных недостаточно непотребленных записей.
-     * Ожидается, что сервис не будет пытаться извлечь или отправить CDR.
+     * Тестирует сценарий, когда в базе данных недостаточно неопубликованных записей.
+     * Ожидается, что сервис не будет отправлять CDR и фиксировать публикацию.
      */
     @Test
     @DisplayName("Не должен обрабатывать, если недостаточно непотребленных записей")
     void consumeDataFromDB_withInsufficientRecords_shouldNotProcess() {
-        when(cdrRepository.findNumberOfNonConsumedRows()).thenReturn(3);
+        when(cdrOutboxService.claimNextBatch(5, false)).thenReturn(Optional.empty());
 
         cdrConsumerService.consumeDataFromDB();
 
-        verify(cdrRepository, never()).findFirstNonConsumedRecords(anyInt());
-        verify(rabbitTemplate, never()).convertAndSend(anyString(), anyString(), any(Object.class));
+        verify(rabbitTemplate, never()).send(anyString(), anyString(), any(Message.class));
+        verify(cdrOutboxService, never()).complete(any());
     }
 
     /**
-     * Тестирует сценарий, когда в базе данных достаточно непотребленных записей.
-     * Ожидается, что сервис извлечет CDR, отправит их в RabbitMQ и обновит их статус.
+     * Тестирует отправку неполного пакета.
+     * Ожидается, что если неопубликованные записи ждут дольше {@code const.publisher.batch.max-linger},
+     * сервис захватит и отправит неполный пакет.
+     */
+    @Test
+    @DisplayName("Должен отправлять неполный пакет, если записи ждут дольше максимального времени ожидания")
+    void consumeDataFromDB_withExpiredLinger_shouldFlushPartialBatch() {
+        ReflectionTestUtils.setField(cdrConsumerService, "maxLinger", Duration.ZERO);
+        ClaimedCdrBatch batch = new ClaimedCdrBatch(1, 3, 3, LocalDateTime.now());
+        when(cdrOutboxService.estimateBacklog()).thenReturn(3L);
+        when(cdrOutboxService.claimNextBatch(5, true)).thenReturn(Optional.of(batch));
+        when(cdrStreamingMessageWriter.write(any(), eq(1), any(IntPredicate.class))).thenReturn(new Message[]{message});
+
+        cdrConsumerService.consumeDataFromDB();
+
+        verify(rabbitTemplate).send("cdr.direct", "cdr.created", message);
+        verify(cdrOutboxService).complete(batch);
+    }
+
+    /**
+     * Тестирует сценарий, когда в базе данных достаточно неопубликованных записей.
+     * Ожидается, что сервис захватит пакет CDR, сформирует сообщение из строк его диапазона,
+     * отправит его в RabbitMQ и зафиксирует публикацию.
      */
     @Test
     @DisplayName("Должен обрабатывать и отправлять в RabbitMQ при наличии достаточного количества записей")
+    @SuppressWarnings("unchecked")
     void consumeDataFromDB_withSufficientRecords_shouldProcessAndSendToRabbit() {
-        when(cdrRepository.findNumberOfNonConsumedRows()).thenReturn(10);
-        when(cdrRepository.findFirstNonConsumedRecords(anyInt())).thenReturn(testCdrs);
+        ClaimedCdrBatch batch = new ClaimedCdrBatch(1, 5, 5, LocalDateTime.now());
+        when(cdrOutboxService.claimNextBatch(5, false)).thenReturn(Optional.of(batch));
+        when(cdrStreamingMessageWriter.write(any(), eq(1), any(IntPredicate.class))).thenReturn(new Message[]{message});
 
         cdrConsumerService.consumeDataFromDB();
 
-        ArgumentCaptor<Object> dtoListCaptor = ArgumentCaptor.forClass(Object.class);
-        verify(rabbitTemplate).convertAndSend(eq("cdr.direct"), eq("cdr.created"), dtoListCaptor.capture());
+        verify(rabbitTemplate).send("cdr.direct", "cdr.created", message);
+        verify(cdrOutboxService).complete(batch);
 
-        List<CdrDTO> sentDtos = (List<CdrDTO>) dtoListCaptor.getValue();
-        assertThat(sentDtos)
-                .hasSize(testCdrs.size())
-                .allMatch(dto -> dto.servicedMsisdn() != null && dto.otherMsisdn() != null);
+        ArgumentCaptor<Consumer<RowCallbackHandler>> rowSourceCaptor = ArgumentCaptor.forClass(Consumer.class);
+        verify(cdrStreamingMessageWriter).write(rowSourceCaptor.capture(), eq(1), any(IntPredicate.class));
+        RowCallbackHandler rowHandler = rs -> { };
+        rowSourceCaptor.getValue().accept(rowHandler);
+        verify(cdrJdbcRepository).streamClaim(1, rowHandler);
+    }
 
-        ArgumentCaptor<Cdr> cdrCaptor = ArgumentCaptor.forClass(Cdr.class);
-        verify(cdrRepository, times(testCdrs.size())).save(cdrCaptor.capture());
+    /**
+     * Тестирует сценарий, когда RabbitMQ недоступен.
+     * Ожидается, что сервис освободит захват пакета и не будет фиксировать его публикацию.
+     */
+    @Test
+    @DisplayName("Должен освобождать захват пакета, если отправка в RabbitMQ не удалась")
+    void consumeDataFromDB_whenSendFails_shouldReleaseClaim() {
+        ClaimedCdrBatch batch = new ClaimedCdrBatch(1, 5, 5, LocalDateTime.now());
+        when(cdrOutboxService.claimNextBatch(5, false)).thenReturn(Optional.of(batch));
+        when(cdrStreamingMessageWriter.write(any(), eq(1), any(IntPredicate.class))).thenReturn(new Message[]{message});
+        doThrow(new AmqpConnectException(new RuntimeException("connection refused")))
+                .when(rabbitTemplate).send(anyString(), anyString(), any(Message.class));
+
+        cdrConsumerService.consumeDataFromDB();
 
-        assertThat(cdrCaptor.getAllValues())
-                .hasSize(testCdrs.size())
-                .allMatch(cdr -> cdr.getConsumedStatus() == ConsumedStatus.CONSUMED);
+        verify(cdrOutboxService).release(batch);
+        verify(cdrOutboxService, never()).complete(any());
     }
 
     /**
-     * Вспомогательный метод для создания списка тестовых CDR.
-     * @return Список объектов {@link Cdr} для тестирования.
+     * Тестирует конвейерную отправку с подтверждениями публикации.
+     * Ожидается, что сервис отправит столько пакетов, сколько помещается в окно, зафиксирует публикацию
+     * только подтвержденного пакета и освободит захват пакета, отклоненного брокером.
      */
-    private List<Cdr> createTestCdrs() {
-        List<Cdr> cdrs = new ArrayList<>();
-        LocalDateTime now = LocalDateTime.now();
+    @Test
+    @DisplayName("Должен фиксировать публикацию пакета только после подтверждения брокера")
+    void consumeDataFromDB_withPublisherConfirms_shouldCompleteOnlyAckedBatches() {
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        ClaimedCdrBatch firstBatch = new ClaimedCdrBatch(1, 5, 5, LocalDateTime.now());
+        ClaimedCdrBatch secondBatch = new ClaimedCdrBatch(6, 10, 5, LocalDateTime.now());
+        when(cdrOutboxService.claimNextBatch(5, false)).thenReturn(Optional.of(firstBatch), Optional.of(secondBatch));
+        when(cdrStreamingMessageWriter.write(any(), eq(1), any(IntPredicate.class))).thenReturn(new Message[]{message});
+
+        cdrConsumerService.consumeDataFromDB();
+
+        ArgumentCaptor<CorrelationData> correlationCaptor = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, times(2)).send(eq("cdr.direct"), eq("cdr.created"), eq(message), correlationCaptor.capture());
+        assertThat(cdrConsumerService.getInFlightBatches()).isEqualTo(2);
+        verify(cdrOutboxService, never()).complete(any());
+
+        cdrConsumerService.consumeDataFromDB();
+        verify(cdrOutboxService, times(2)).claimNextBatch(5, false);
+
+        correlationCaptor.getAllValues().get(0).getFuture().complete(new CorrelationData.Confirm(true, null));
+        correlationCaptor.getAllValues().get(1).getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+
+        verify(cdrOutboxService, timeout(1000)).complete(firstBatch);
+        verify(cdrOutboxService, timeout(1000)).release(secondBatch, 0L, 1);
+        verify(cdrOutboxService, never()).release(eq(firstBatch), anyLong(), anyInt());
+        verify(cdrOutboxService, never()).complete(secondBatch);
+    }
+
+    /**
+     * Тестирует отправку пакета, записи которого распределены по нескольким шардам.
+     * Ожидается, что сообщения непустых шардов будут отправлены с ключами маршрутизации шардов,
+     * а пакет будет освобожден, если хотя бы один шард отклонен брокером, даже когда остальные подтверждены;
+     * подтвержденные шарды при этом запоминаются в захвате.
+     */
+    @Test
+    @DisplayName("Должен фиксировать публикацию шардированного пакета только после подтверждения всех шардов")
+    void consumeDataFromDB_withShards_shouldCompleteOnlyWhenAllShardsAcked() {
+        ReflectionTestUtils.setField(cdrConsumerService, "shardCount", 3);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        ClaimedCdrBatch firstBatch = new ClaimedCdrBatch(1, 5, 5, LocalDateTime.now());
+        ClaimedCdrBatch secondBatch = new ClaimedCdrBatch(6, 10, 5, LocalDateTime.now());
+        when(cdrOutboxService.claimNextBatch(5, false)).thenReturn(Optional.of(firstBatch), Optional.of(secondBatch));
+        Message secondShardMessage = new Message(new byte[]{4, 5}, new MessageProperties());
+        when(cdrStreamingMessageWriter.write(any(), eq(3), any(IntPredicate.class))).thenReturn(new Message[]{message, null, secondShardMessage});
+
+        cdrConsumerService.consumeDataFromDB();
+
+        ArgumentCaptor<CorrelationData> firstShardCaptor = ArgumentCaptor.forClass(CorrelationData.class);
+        ArgumentCaptor<CorrelationData> thirdShardCaptor = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate, times(2)).send(eq("cdr.direct"), eq("cdr.created.0"), eq(message), firstShardCaptor.capture());
+        verify(rabbitTemplate, times(2)).send(eq("cdr.direct"), eq("cdr.created.2"), eq(secondShardMessage), thirdShardCaptor.capture());
+        verify(rabbitTemplate, never()).send(anyString(), eq("cdr.created.1"), any(Message.class), any(CorrelationData.class));
+
+        firstShardCaptor.getAllValues().get(0).getFuture().complete(new CorrelationData.Confirm(true, null));
+        firstShardCaptor.getAllValues().get(1).getFuture().complete(new CorrelationData.Confirm(true, null));
+        thirdShardCaptor.getAllValues().get(1).getFuture().complete(new CorrelationData.Confirm(false, "nack"));
+        verify(cdrOutboxService, timeout(1000)).release(secondBatch, 1L, 3);
+        verify(cdrOutboxService, never()).complete(firstBatch);
+
+        thirdShardCaptor.getAllValues().get(0).getFuture().complete(new CorrelationData.Confirm(true, null));
+        verify(cdrOutboxService, timeout(1000)).complete(firstBatch);
+        verify(cdrOutboxService, never()).complete(secondBatch);
+    }
+
+    /**
+     * Тестирует повторную отправку освобожденного шардированного пакета.
+     * Ожидается, что сообщения шардов, подтвержденных при прежней отправке с тем же количеством шардов,
+     * не формируются и не отправляются повторно, а пакет фиксируется после подтверждения остальных шардов.
+     */
+    @Test
+    @DisplayName("Должен повторно отправлять только неподтвержденные шарды пакета")
+    void consumeDataFromDB_withPartiallyConfirmedBatch_shouldResendOnlyUnconfirmedShards() {
+        ReflectionTestUtils.setField(cdrConsumerService, "shardCount", 3);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        ClaimedCdrBatch batch = new ClaimedCdrBatch(1, 5, 5, LocalDateTime.now(), null, 0b101, 3);
+        when(cdrOutboxService.claimNextBatch(5, false)).thenReturn(Optional.of(batch), Optional.empty());
+        when(cdrStreamingMessageWriter.write(any(), eq(3), any(IntPredicate.class))).thenAnswer(invocation -> {
+            IntPredicate shardFilter = invocation.getArgument(2);
+            return IntStream.range(0, 3).mapToObj(shard -> shardFilter.test(shard) ? message : null).toArray(Message[]::new);
+        });
+
+        cdrConsumerService.consumeDataFromDB();
+
+        ArgumentCaptor<CorrelationData> correlationCaptor = ArgumentCaptor.forClass(CorrelationData.class);
+        verify(rabbitTemplate).send(eq("cdr.direct"), eq("cdr.created.1"), eq(message), correlationCaptor.capture());
+        verify(rabbitTemplate, never()).send(anyString(), eq("cdr.created.0"), any(Message.class), any(CorrelationData.class));
+        verify(rabbitTemplate, never()).send(anyString(), eq("cdr.created.2"), any(Message.class), any(CorrelationData.class));
+
+        correlationCaptor.getValue().getFuture().complete(new CorrelationData.Confirm(true, null));
+        verify(cdrOutboxService, timeout(1000)).complete(batch);
+    }
+
+    /**
+     * Тестирует ограничение скорости отправки по сигналу обратного давления.
+     * Ожидается, что при нулевой доле скорости пакеты не захватываются, а при половинной доле
+     * за запуск отправляется половина окна неподтвержденных пакетов.
+     */
+    @Test
+    @DisplayName("Должен замедлять отправку пропорционально доле скорости обратного давления")
+    void consumeDataFromDB_withBackpressure_shouldThrottleBatches() {
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        when(backpressureController.getPublishRate()).thenReturn(0.0);
+
+        cdrConsumerService.consumeDataFromDB();
+
+        verify(cdrOutboxService, never()).claimNextBatch(anyInt(), anyBoolean());
+
+        ClaimedCdrBatch batch = new ClaimedCdrBatch(1, 5, 5, LocalDateTime.now());
+        when(backpressureController.getPublishRate()).thenReturn(0.5);
+        when(cdrOutboxService.claimNextBatch(5, false)).thenReturn(Optional.of(batch));
+        when(cdrStreamingMessageWriter.write(any(), eq(1), any(IntPredicate.class))).thenReturn(new Message[]{message});
 
-        for (int i = 1; i <= 5; i++) {
-            cdrs.add(Cdr.builder()
-                    .id((long) i)
-                    .callType(i % 2 == 0 ? "01" : "02")
-                    .servicedMsisdn("7900000000" + i)
-                    .otherMsisdn("7900000001" + i)
-                    .startDateTime(now.minusHours(i))
-                    .finishDateTime(now.minusHours(i).plusMinutes(5))
+        cdrConsumerService.consumeDataFromDB();
+
+        verify(cdrOutboxService, times(1)).claimNextBatch(5, false);
+        assertThat(cdrConsumerService.getInFlightBatches()).isEqualTo(1);
+    }
+
+    /**
+     * Тестирует формирование пакета из записей, переданных конвейером.
+     * Ожидается, что пакет, все записи которого есть в памяти, отправляется без чтения из БД.
+     */
+    @Test
+    @DisplayName("Должен формировать пакет из записей конвейера без запроса к БД")
+    @SuppressWarnings("unchecked")
+    void consumeDataFromDB_withPipelineCdrs_shouldSkipDatabaseRead() {
+        when(cdrPipelineService.isEnabled()).thenReturn(true);
+        when(cdrPipelineService.getRingCapacity()).thenReturn(16);
+        LocalDateTime now = LocalDateTime.now();
+        doAnswer(invocation -> {
+            Consumer<Cdr> consumer = invocation.getArgument(0);
+            LongStream.rangeClosed(1, 3).forEach(id -> consumer.accept(Cdr.builder()
+                    .id(id)
+                    .callType("01")
+                    .servicedMsisdn("79000000001")
+                    .otherMsisdn("79000000002")
+                    .startDateTime(now.minusMinutes(5))
+                    .finishDateTime(now)
                     .consumedStatus(ConsumedStatus.NEW)
-                    .build());
+                    .build()));
+            return null;
+        }).when(cdrPipelineService).drainTo(any());
+        ClaimedCdrBatch batch = new ClaimedCdrBatch(1, 3, 3, now, List.of(1L, 2L, 3L));
+        when(cdrOutboxService.estimateBacklog()).thenReturn(3L);
+        when(cdrOutboxService.claimNextBatch(5, true)).thenReturn(Optional.of(batch));
+        when(cdrStreamingMessageWriter.writeCdrs(anyList(), eq(1), any(IntPredicate.class))).thenReturn(new Message[]{message});
+
+        cdrConsumerService.consumeDataFromDB();
+
+        ArgumentCaptor<List<CdrDTO>> cdrsCaptor = ArgumentCaptor.forClass(List.class);
+        verify(cdrStreamingMessageWriter).writeCdrs(cdrsCaptor.capture(), eq(1), any(IntPredicate.class));
+        assertThat(cdrsCaptor.getValue()).hasSize(3);
+        verify(cdrStreamingMessageWriter, never()).write(any(), anyInt(), any(IntPredicate.class));
+        verify(rabbitTemplate).send("cdr.direct", "cdr.created", message);
+        verify(cdrOutboxService).complete(batch);
+    }
+
+    /**
+     * Тестирует запуск отправки по событию сохранения CDR.
+     * Ожидается, что поток отправки выполняет запуск сразу после события, а запуск по расписанию пропускается.
+     */
+    @Test
+    @DisplayName("Должен запускать отправку по событию сохранения CDR вместо опроса по расписанию")
+    void onCdrsPersisted_shouldWakeUpPublisher() {
+        ReflectionTestUtils.setField(cdrConsumerService, "wakeUpEnabled", true);
+        ReflectionTestUtils.setField(cdrConsumerService, "safetyNetInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(cdrConsumerService, "consumeRateMillis", Duration.ofHours(1).toMillis());
+        when(cdrOutboxService.claimNextBatch(5, false)).thenReturn(Optional.empty());
+
+        cdrConsumerService.startPublisher();
+        try {
+            verify(cdrOutboxService, timeout(1000)).estimateBacklog();
+            cdrConsumerService.pollDataFromDB();
+            verify(cdrOutboxService, after(200).times(1)).estimateBacklog();
+
+            cdrConsumerService.onCdrsPersisted(new CdrsPersistedEvent(3));
+
+            verify(cdrOutboxService, timeout(1000).times(2)).estimateBacklog();
+        } finally {
+            cdrConsumerService.shutdownConfirmExecutor();
+        }
+    }
+
+    /**
+     * Тестирует параллельную отправку несколькими исполнителями.
+     * Ожидается, что шарды распределены между исполнителями: сообщения каждого шарда отправляются
+     * одним исполнителем на его собственном канале в порядке захвата пакетов, а каждый пакет фиксируется ровно один раз.
+     */
+    @Test
+    @DisplayName("Должен отправлять сообщения каждого шарда одним исполнителем в порядке захвата пакетов")
+    void consumeDataFromDB_withWorkers_shouldSendEachShardFromOneWorkerInClaimOrder() {
+        CdrConsumerService parallelService = createParallelService(2, Duration.ofSeconds(10));
+        Map<String, List<String>> sendersByRoutingKey = new ConcurrentHashMap<>();
+        Map<String, List<String>> batchesByRoutingKey = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            String routingKey = invocation.getArgument(1);
+            CorrelationData correlationData = invocation.getArgument(3);
+            sendersByRoutingKey.computeIfAbsent(routingKey, key -> new CopyOnWriteArrayList<>()).add(Thread.currentThread().getName());
+            batchesByRoutingKey.computeIfAbsent(routingKey, key -> new CopyOnWriteArrayList<>()).add(correlationData.getId().split("#")[0]);
+            correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(eq("cdr.direct"), anyString(), eq(message), any(CorrelationData.class));
+
+        try {
+            parallelService.consumeDataFromDB();
+
+            ArgumentCaptor<ClaimedCdrBatch> completedCaptor = ArgumentCaptor.forClass(ClaimedCdrBatch.class);
+            verify(cdrOutboxService, timeout(1000).times(4)).complete(completedCaptor.capture());
+            assertThat(completedCaptor.getAllValues()).extracting(ClaimedCdrBatch::firstId).containsExactlyInAnyOrder(1L, 6L, 11L, 16L);
+            verify(rabbitTemplate, times(2)).invoke(any(RabbitOperations.OperationsCallback.class));
+
+            assertThat(batchesByRoutingKey).containsOnlyKeys("cdr.created.0", "cdr.created.1");
+            batchesByRoutingKey.values().forEach(batches -> assertThat(batches).containsExactly("1..5", "6..10", "11..15", "16..20"));
+            assertThat(sendersByRoutingKey.get("cdr.created.0")).hasSize(4).containsOnly("cdr-publisher-worker-1");
+            assertThat(sendersByRoutingKey.get("cdr.created.1")).hasSize(4).containsOnly("cdr-publisher-worker-2");
+        } finally {
+            parallelService.shutdownConfirmExecutor();
         }
+    }
+
+    /**
+     * Тестирует параллельную отправку несколькими исполнителями при одном шарде.
+     * Ожидается, что пакеты целиком передаются исполнителям по очереди, так что отправляют оба исполнителя,
+     * а ожидание подтверждения отсчитывается от отправки пакета: пакеты, ждавшие в очереди исполнителя дольше
+     * {@code const.publisher.confirm-timeout}, фиксируются, а не освобождаются.
+     */
+    @Test
+    @DisplayName("Должен распределять пакеты между исполнителями при одном шарде и отсчитывать ожидание подтверждения от отправки")
+    void consumeDataFromDB_withWorkersAndSingleShard_shouldDistributeBatchesAcrossWorkers() {
+        CdrConsumerService parallelService = createParallelService(1, Duration.ofMillis(200));
+        Map<String, List<String>> batchesBySender = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            CorrelationData correlationData = invocation.getArgument(3);
+            batchesBySender.computeIfAbsent(Thread.currentThread().getName(), key -> new CopyOnWriteArrayList<>()).add(correlationData.getId());
+            Thread.sleep(300);
+            correlationData.getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(eq("cdr.direct"), eq("cdr.created"), eq(message), any(CorrelationData.class));
+
+        try {
+            parallelService.consumeDataFromDB();
 
-        return cdrs;
+            verify(cdrOutboxService, timeout(3000).times(4)).complete(any());
+            verify(cdrOutboxService, never()).release(any(), anyLong(), anyInt());
+            assertThat(batchesBySender).containsOnlyKeys("cdr-publisher-worker-1", "cdr-publisher-worker-2");
+            assertThat(batchesBySender.get("cdr-publisher-worker-1")).containsExactly("1..5#0", "11..15#0");
+            assertThat(batchesBySender.get("cdr-publisher-worker-2")).containsExactly("6..10#0", "16..20#0");
+        } finally {
+            parallelService.shutdownConfirmExecutor();
+        }
+    }
+
+    /**
+     * Тестирует ошибку отправки у одного из исполнителей.
+     * Ожидается, что захват пакета освобождается с шардами, подтвержденными другими исполнителями,
+     * чтобы при повторной отправке они были пропущены.
+     */
+    @Test
+    @DisplayName("Должен запоминать шарды, подтвержденные другими исполнителями, при ошибке отправки одного из них")
+    void consumeDataFromDB_whenOneWorkerFails_shouldReleaseWithConfirmedShardsOfOtherWorkers() {
+        CdrConsumerService parallelService = createParallelService(2, Duration.ofSeconds(10));
+        doAnswer(invocation -> {
+            invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(true, null));
+            return null;
+        }).when(rabbitTemplate).send(eq("cdr.direct"), eq("cdr.created.0"), eq(message), any(CorrelationData.class));
+        doThrow(new AmqpConnectException(new RuntimeException("connection reset")))
+                .when(rabbitTemplate).send(eq("cdr.direct"), eq("cdr.created.1"), eq(message), any(CorrelationData.class));
+
+        try {
+            parallelService.consumeDataFromDB();
+
+            ArgumentCaptor<ClaimedCdrBatch> releasedCaptor = ArgumentCaptor.forClass(ClaimedCdrBatch.class);
+            verify(cdrOutboxService, timeout(1000).times(4)).release(releasedCaptor.capture(), eq(1L), eq(2));
+            assertThat(releasedCaptor.getAllValues()).extracting(ClaimedCdrBatch::firstId).containsExactlyInAnyOrder(1L, 6L, 11L, 16L);
+            verify(cdrOutboxService, never()).complete(any());
+        } finally {
+            parallelService.shutdownConfirmExecutor();
+        }
+    }
+
+    /**
+     * Создает сервис с двумя исполнителями и окном из четырех пакетов, который захватывает пакеты 1..5, 6..10, 11..15
+     * и 16..20 и формирует сообщение для каждого выбранного шарда.
+     */
+    private CdrConsumerService createParallelService(int shardCount, Duration confirmTimeout) {
+        CdrConsumerService parallelService = new CdrConsumerService(cdrOutboxService, cdrJdbcRepository, cdrStreamingMessageWriter,
+                rabbitTemplate, new SimpleMeterRegistry(), backpressureController, cdrPipelineService, 4, 2, 5, 1000, Duration.ofMillis(50));
+        ReflectionTestUtils.setField(parallelService, "maxLinger", Duration.ofHours(1));
+        ReflectionTestUtils.setField(parallelService, "CDR_EXCHANGE_NAME", "cdr.direct");
+        ReflectionTestUtils.setField(parallelService, "CDR_ROUTING_KEY", "cdr.created");
+        ReflectionTestUtils.setField(parallelService, "shardCount", shardCount);
+        ReflectionTestUtils.setField(parallelService, "confirmTimeout", confirmTimeout);
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        AtomicLong nextId = new AtomicLong(1);
+        when(cdrOutboxService.claimNextBatch(5, false)).thenAnswer(invocation -> {
+            long firstId = nextId.getAndAdd(5);
+            return (firstId > 20) ? Optional.empty() : Optional.of(new ClaimedCdrBatch(firstId, firstId + 4, 5, LocalDateTime.now()));
+        });
+        when(cdrStreamingMessageWriter.write(any(), eq(shardCount), any(IntPredicate.class))).thenAnswer(invocation -> {
+            IntPredicate shardFilter = invocation.getArgument(2);
+            return IntStream.range(0, shardCount).mapToObj(shard -> shardFilter.test(shard) ? message : null).toArray(Message[]::new);
+        });
+        when(rabbitTemplate.invoke(any(RabbitOperations.OperationsCallback.class))).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<Object>>getArgument(0).doInRabbit(rabbitTemplate));
+        return parallelService;
     }
 }
@@ -0,0 +1,152 @@
+package org.example.cdrservice.services;
+
+import org.example.cdrservice.dtos.DailyUsageDTO;
+import org.example.cdrservice.dtos.DailyUsageRebuildResult;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.example.cdrservice.repositories.CdrDailyUsageRepository;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тестовый класс для {@link CdrDailyUsageService}.
+ * Выполняется на встроенной БД H2 со схемой, созданной миграциями Liquibase.
+ * Пересчет выполняется в транзакциях других потоков, поэтому тесты работают без общей тестовой транзакции.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import({CdrDailyUsageService.class, CdrDailyUsageRepository.class, CdrJdbcRepository.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CdrDailyUsageServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 1);
+
+    @Autowired
+    private CdrDailyUsageService cdrDailyUsageService;
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from cdr_daily_usage");
+        jdbcTemplate.update("delete from cdrs");
+    }
+
+    /**
+     * Тестирует инкрементальное обновление сводки двумя пакетами CDR.
+     * Ожидается, что второй пакет прибавляется к строкам первого, длительность каждого звонка
+     * округляется вниз до секунд, а сводка абонента возвращается в порядке суток и типа вызова.
+     */
+    @Test
+    @DisplayName("record должен прибавлять пакеты CDR к суточной сводке")
+    void record_shouldAddBatchesToDailyUsage() {
+        persist(List.of(
+                createCdr("01", "79000000001", DAY.atTime(10, 0), 60_500),
+                createCdr("02", "79000000001", DAY.atTime(11, 0), 30_000),
+                createCdr("01", "79000000002", DAY.atTime(12, 0), 45_000)));
+        persist(List.of(
+                createCdr("01", "79000000001", DAY.atTime(23, 59, 0, 600_000_000), 59_399),
+                createCdr("01", "79000000001", DAY.plusDays(1).atTime(0, 0), 10_000)));
+
+        List<DailyUsageDTO> usage = cdrDailyUsageService.findUsage("79000000001", DAY, DAY.plusDays(1));
+
+        assertThat(usage).containsExactly(
+                new DailyUsageDTO("79000000001", DAY, "01", 2, 119),
+                new DailyUsageDTO("79000000001", DAY, "02", 1, 30),
+                new DailyUsageDTO("79000000001", DAY.plusDays(1), "01", 1, 10));
+        assertThat(cdrDailyUsageService.findUsage("79000000001", DAY.plusDays(2), DAY.plusDays(3))).isEmpty();
+    }
+
+    /**
+     * Тестирует параллельный пересчет сводки по сырым CDR.
+     * Ожидается, что искаженные и пропавшие строки восстанавливаются и сводка совпадает
+     * с инкрементально обновленной.
+     */
+    @Test
+    @DisplayName("rebuild должен пересчитывать сводку по сырым CDR так же, как инкрементальное обновление")
+    void rebuild_shouldMatchIncrementalUsage() {
+        List<Cdr> cdrs = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String msisdn = "7900000000" + (i % 3 + 1);
+            cdrs.add(createCdr((i % 2 == 0) ? "01" : "02", msisdn, DAY.atStartOfDay().plusMinutes(37L * i).plusNanos(i * 1_000_000L), 1000L * i + i));
+        }
+        persist(cdrs.subList(0, 120));
+        persist(cdrs.subList(120, 200));
+        List<List<DailyUsageDTO>> expected = new ArrayList<>();
+        for (int subscriber = 1; subscriber <= 3; subscriber++) {
+            expected.add(cdrDailyUsageService.findUsage("7900000000" + subscriber, DAY, DAY.plusDays(10)));
+        }
+        jdbcTemplate.update("update cdr_daily_usage set total_seconds = 0 where usage_date = ?", DAY);
+        jdbcTemplate.update("delete from cdr_daily_usage where usage_date = ?", DAY.plusDays(2));
+
+        DailyUsageRebuildResult result = cdrDailyUsageService.rebuild(DAY, DAY.plusDays(10));
+
+        assertThat(result.days()).isEqualTo(11);
+        assertThat(result.rows()).isEqualTo(jdbcTemplate.queryForObject("select count(*) from cdr_daily_usage", Long.class));
+        for (int subscriber = 1; subscriber <= 3; subscriber++) {
+            assertThat(cdrDailyUsageService.findUsage("7900000000" + subscriber, DAY, DAY.plusDays(10)))
+                    .isNotEmpty()
+                    .isEqualTo(expected.get(subscriber - 1));
+        }
+    }
+
+    /**
+     * Тестирует план удаления сводки за сутки при пересчете.
+     * Ожидается, что H2 находит строки суток по индексу, а не просмотром всей сводки.
+     */
+    @Test
+    @DisplayName("Удаление сводки за сутки должно использовать индекс по суткам")
+    void deleteDayQuery_shouldUseUsageDateIndex() {
+        String plan = jdbcTemplate.queryForObject("explain delete from cdr_daily_usage where usage_date = date '2025-03-01'", String.class);
+
+        assertThat(plan).contains("CDR_DAILY_USAGE_USAGE_DATE_IDX");
+    }
+
+    /**
+     * Тестирует проверку периода.
+     * Ожидается, что период с началом позже конца отклоняется.
+     */
+    @Test
+    @DisplayName("Должен отклонять период с началом позже конца")
+    void findUsage_withInvertedPeriod_shouldThrow() {
+        assertThatThrownBy(() -> cdrDailyUsageService.findUsage("79000000001", DAY.plusDays(1), DAY))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cdrDailyUsageService.rebuild(DAY, DAY.plusYears(2)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void persist(List<Cdr> cdrs) {
+        cdrJdbcRepository.batchInsert(cdrs, 100);
+        cdrDailyUsageService.record(cdrs);
+    }
+
+    private Cdr createCdr(String callType, String servicedMsisdn, LocalDateTime start, long durationMillis) {
+        return Cdr.builder()
+                .callType(callType)
+                .servicedMsisdn(servicedMsisdn)
+                .otherMsisdn("79000000009")
+                .startDateTime(start)
+                .finishDateTime(start.plusNanos(durationMillis * 1_000_000))
+                .consumedStatus(ConsumedStatus.NEW)
+                .build();
+    }
+}
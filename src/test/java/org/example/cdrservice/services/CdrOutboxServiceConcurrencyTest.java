@@ -0,0 +1,261 @@
+package org.example.cdrservice.services;
+
+import org.example.cdrservice.dtos.ClaimedCdrBatch;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.example.cdrservice.repositories.CdrPublishClaimRepository;
+import org.example.cdrservice.repositories.CdrRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для протокола захвата пакетов {@link CdrOutboxService}
+ * при одновременной работе нескольких экземпляров сервиса с одной БД.
+ * Каждый "экземпляр" - отдельный объект {@link CdrOutboxService} со своим идентификатором владельца,
+ * вызываемый в собственных транзакциях из отдельного потока.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import(CdrJdbcRepository.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CdrOutboxServiceConcurrencyTest {
+
+    private static final int TOTAL_CDRS = 60;
+    private static final int BATCH_SIZE = 5;
+    private static final int INSTANCES = 3;
+    private static final int INSERTERS = 3;
+    private static final int INSERT_ROUNDS = 20;
+
+    @Autowired
+    private CdrRepository cdrRepository;
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    @Autowired
+    private CdrPublishClaimRepository cdrPublishClaimRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from cdr_publish_claims");
+        jdbcTemplate.update("delete from cdrs");
+    }
+
+    /**
+     * Тестирует одновременную публикацию несколькими экземплярами, один из которых "падает",
+     * захватив пакет и не завершив его публикацию.
+     * Ожидается, что брошенный пакет будет перехвачен после истечения аренды,
+     * и каждая CDR будет опубликована ровно один раз.
+     */
+    @Test
+    @DisplayName("Каждая CDR должна публиковаться ровно один раз при нескольких экземплярах и падении одного из них")
+    void concurrentInstances_shouldPublishEveryCdrExactlyOnce() throws Exception {
+        List<Long> ids = cdrRepository.saveAllAndFlush(createTestCdrs(TOTAL_CDRS)).stream().map(Cdr::getId).toList();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        CdrOutboxService crashedInstance = createInstance("crashed", Duration.ofSeconds(1));
+        ClaimedCdrBatch abandonedBatch = transactionTemplate.execute(status -> crashedInstance.claimNextBatch(BATCH_SIZE, false)).orElseThrow();
+        List<Long> abandonedIds = claimedIds(abandonedBatch);
+
+        Map<Long, AtomicInteger> publications = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(INSTANCES);
+        try {
+            List<Future<Object>> futures = IntStream.range(0, INSTANCES)
+                    .mapToObj(i -> executor.submit(() -> {
+                        CdrOutboxService instance = createInstance("instance-" + i, Duration.ofSeconds(30));
+                        long deadline = System.currentTimeMillis() + 20_000;
+                        while (publications.size() < TOTAL_CDRS && System.currentTimeMillis() < deadline) {
+                            Optional<ClaimedCdrBatch> batch = transactionTemplate.execute(status -> instance.claimNextBatch(BATCH_SIZE, false));
+                            if (batch.isEmpty()) {
+                                Thread.sleep(50);
+                                continue;
+                            }
+                            claimedIds(batch.get()).forEach(cdrId -> publications.computeIfAbsent(cdrId, id -> new AtomicInteger()).incrementAndGet());
+                            transactionTemplate.executeWithoutResult(status -> instance.complete(batch.get()));
+                        }
+                        return null;
+                    }))
+                    .toList();
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(publications.keySet()).containsExactlyInAnyOrderElementsOf(ids);
+        assertThat(publications.values()).allMatch(count -> count.get() == 1);
+        assertThat(abandonedIds).hasSize(BATCH_SIZE).allMatch(publications::containsKey);
+        assertThat(cdrPublishClaimRepository.count()).isZero();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from cdrs where consumed_status = 1", Integer.class)).isEqualTo(TOTAL_CDRS);
+    }
+
+    /**
+     * Тестирует публикацию записей, которые сохраняются несколькими транзакциями через JPA и JDBC
+     * одновременно с захватом пакетов несколькими экземплярами. Одна из транзакций выделяет идентификаторы
+     * раньше остальных, а фиксируется только после публикации записи с большим идентификатором.
+     * Ожидается, что каждая сохраненная CDR, включая зафиксированные позже, будет опубликована ровно один раз.
+     */
+    @Test
+    @DisplayName("Каждая CDR должна публиковаться ровно один раз при сохранении одновременно с захватом")
+    void concurrentInsertsAndClaims_shouldPublishEveryCdrExactlyOnce() throws Exception {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Set<Long> insertedIds = ConcurrentHashMap.newKeySet();
+        Map<Long, AtomicInteger> publications = new ConcurrentHashMap<>();
+        List<Cdr> lateCdrs = createTestCdrs(BATCH_SIZE);
+        AtomicLong lateLastId = new AtomicLong(Long.MAX_VALUE);
+        CountDownLatch lateIdsAllocated = new CountDownLatch(1);
+        CountDownLatch higherIdPublished = new CountDownLatch(1);
+        AtomicBoolean insertsFinished = new AtomicBoolean();
+
+        ExecutorService executor = Executors.newFixedThreadPool(1 + INSERTERS + INSTANCES);
+        try {
+            List<Future<Object>> inserts = new ArrayList<>();
+            inserts.add(executor.submit(() -> {
+                transactionTemplate.executeWithoutResult(status -> {
+                    cdrJdbcRepository.batchInsert(lateCdrs, lateCdrs.size());
+                    lateLastId.set(lateCdrs.get(lateCdrs.size() - 1).getId());
+                    lateIdsAllocated.countDown();
+                    await(higherIdPublished);
+                });
+                lateCdrs.forEach(cdr -> insertedIds.add(cdr.getId()));
+                return null;
+            }));
+            for (int i = 0; i < INSERTERS; i++) {
+                boolean useJpa = (i % 2 == 0);
+                inserts.add(executor.submit(() -> {
+                    await(lateIdsAllocated);
+                    for (int round = 0; round < INSERT_ROUNDS; round++) {
+                        List<Cdr> cdrs = createTestCdrs(ThreadLocalRandom.current().nextInt(1, 8));
+                        transactionTemplate.executeWithoutResult(status -> {
+                            if (useJpa) {
+                                cdrRepository.saveAllAndFlush(cdrs);
+                            } else {
+                                cdrJdbcRepository.batchInsert(cdrs, cdrs.size());
+                            }
+                            sleep(ThreadLocalRandom.current().nextInt(10));
+                        });
+                        cdrs.forEach(cdr -> insertedIds.add(cdr.getId()));
+                    }
+                    return null;
+                }));
+            }
+
+            List<Future<Object>> claims = IntStream.range(0, INSTANCES)
+                    .mapToObj(i -> executor.submit(() -> {
+                        CdrOutboxService instance = createInstance("instance-" + i, Duration.ofSeconds(30));
+                        long deadline = System.currentTimeMillis() + 20_000;
+                        while (!(insertsFinished.get() && publications.size() >= insertedIds.size()) && System.currentTimeMillis() < deadline) {
+                            Optional<ClaimedCdrBatch> batch = transactionTemplate.execute(status -> instance.claimNextBatch(BATCH_SIZE, true));
+                            if (batch.isEmpty()) {
+                                Thread.sleep(10);
+                                continue;
+                            }
+                            for (long cdrId : claimedIds(batch.get())) {
+                                publications.computeIfAbsent(cdrId, id -> new AtomicInteger()).incrementAndGet();
+                                if (cdrId > lateLastId.get()) higherIdPublished.countDown();
+                            }
+                            transactionTemplate.executeWithoutResult(status -> instance.complete(batch.get()));
+                        }
+                        return null;
+                    }))
+                    .toList();
+
+            for (Future<Object> future : inserts) {
+                future.get();
+            }
+            insertsFinished.set(true);
+            for (Future<Object> future : claims) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(publications.keySet()).containsExactlyInAnyOrderElementsOf(insertedIds);
+        assertThat(publications.values()).allMatch(count -> count.get() == 1);
+        assertThat(lateCdrs).extracting(Cdr::getId).allMatch(publications::containsKey);
+        assertThat(cdrPublishClaimRepository.count()).isZero();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from cdrs where consumed_status = 1", Integer.class)).isEqualTo(insertedIds.size());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("Timed out waiting for " + latch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<Long> claimedIds(ClaimedCdrBatch batch) {
+        return jdbcTemplate.queryForList("select id from cdrs where publish_claim_id = ?", Long.class, batch.firstId());
+    }
+
+    private CdrOutboxService createInstance(String ownerId, Duration leaseDuration) {
+        CdrOutboxService instance = new CdrOutboxService(cdrRepository, cdrPublishClaimRepository);
+        ReflectionTestUtils.setField(instance, "ownerId", ownerId);
+        ReflectionTestUtils.setField(instance, "leaseDuration", leaseDuration);
+        return instance;
+    }
+
+    private List<Cdr> createTestCdrs(int count) {
+        LocalDateTime now = LocalDateTime.now();
+        return IntStream.range(0, count)
+                .mapToObj(i -> Cdr.builder()
+                        .callType("01")
+                        .servicedMsisdn("79000000001")
+                        .otherMsisdn("79000000002")
+                        .startDateTime(now.minusMinutes(i + 5))
+                        .finishDateTime(now.minusMinutes(i))
+                        .consumedStatus(ConsumedStatus.NEW)
+                        .build())
+                .toList();
+    }
+}
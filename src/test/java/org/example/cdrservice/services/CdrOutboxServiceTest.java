@@ -0,0 +1,180 @@
+package org.example.cdrservice.services;
+
+import org.example.cdrservice.dtos.ClaimedCdrBatch;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.example.cdrservice.repositories.CdrPublishClaimRepository;
+import org.example.cdrservice.repositories.CdrRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link CdrOutboxService}.
+ * Выполняется на встроенной БД H2 со схемой, созданной миграциями Liquibase.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import({CdrOutboxService.class, CdrJdbcRepository.class})
+class CdrOutboxServiceTest {
+
+    @Autowired
+    private CdrOutboxService cdrOutboxService;
+
+    @Autowired
+    private CdrRepository cdrRepository;
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    @Autowired
+    private CdrPublishClaimRepository cdrPublishClaimRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Тестирует последовательный захват пакетов неопубликованных записей.
+     * Ожидается, что каждый следующий пакет начинается с первой незахваченной записи,
+     * неполный пакет захватывается только по запросу, а завершенный пакет освобождает захват и помечается как потребленный.
+     */
+    @Test
+    @DisplayName("claimNextBatch должен захватывать первые незахваченные неопубликованные записи")
+    void claimNextBatch_shouldClaimFirstUnclaimedCdrs() {
+        List<Long> ids = cdrRepository.saveAllAndFlush(createTestCdrs(10)).stream().map(Cdr::getId).sorted().toList();
+
+        ClaimedCdrBatch firstBatch = cdrOutboxService.claimNextBatch(4, false).orElseThrow();
+        assertBatch(firstBatch, ids.subList(0, 4));
+
+        ClaimedCdrBatch secondBatch = cdrOutboxService.claimNextBatch(4, false).orElseThrow();
+        assertBatch(secondBatch, ids.subList(4, 8));
+
+        assertThat(cdrOutboxService.claimNextBatch(4, false)).isEmpty();
+        assertThat(cdrPublishClaimRepository.count()).isEqualTo(2);
+        assertThat(cdrOutboxService.estimateBacklog()).isEqualTo(2);
+
+        ClaimedCdrBatch partialBatch = cdrOutboxService.claimNextBatch(4, true).orElseThrow();
+        assertBatch(partialBatch, ids.subList(8, 10));
+        assertThat(cdrOutboxService.claimNextBatch(4, true)).isEmpty();
+
+        cdrOutboxService.complete(firstBatch);
+
+        assertThat(cdrPublishClaimRepository.findAll()).extracting("firstId").containsExactlyInAnyOrder(secondBatch.firstId(), partialBatch.firstId());
+        assertThat(jdbcTemplate.queryForList("select id from cdrs where consumed_status = 1", Long.class))
+                .containsExactlyInAnyOrderElementsOf(ids.subList(0, 4));
+    }
+
+    /**
+     * Тестирует запись, зафиксированную после публикации записей с большими идентификаторами.
+     * Ожидается, что она будет захвачена следующим пакетом, а не пропущена.
+     */
+    @Test
+    @DisplayName("claimNextBatch должен захватывать запись, зафиксированную позже записей с большими идентификаторами")
+    void claimNextBatch_shouldClaimLateCommittedCdr() {
+        List<Cdr> cdrs = createTestCdrs(6);
+        for (int i = 0; i < cdrs.size(); i++) {
+            cdrs.get(i).setId(1_000_000L + i);
+        }
+        cdrJdbcRepository.insert(cdrs.subList(1, 6), 5);
+
+        ClaimedCdrBatch publishedBatch = cdrOutboxService.claimNextBatch(5, false).orElseThrow();
+        cdrOutboxService.complete(publishedBatch);
+        cdrJdbcRepository.insert(cdrs.subList(0, 1), 1);
+
+        ClaimedCdrBatch lateBatch = cdrOutboxService.claimNextBatch(5, true).orElseThrow();
+        assertBatch(lateBatch, List.of(1_000_000L));
+        assertThat(lateBatch.firstId()).isLessThan(publishedBatch.lastId());
+    }
+
+    /**
+     * Тестирует освобождение захвата после неудачной публикации.
+     * Ожидается, что освобожденный пакет будет захвачен повторно раньше новых записей и с теми же записями.
+     */
+    @Test
+    @DisplayName("claimNextBatch должен повторно захватывать освобожденный пакет")
+    void claimNextBatch_shouldReclaimReleasedBatch() {
+        List<Long> ids = cdrRepository.saveAllAndFlush(createTestCdrs(10)).stream().map(Cdr::getId).sorted().toList();
+
+        ClaimedCdrBatch batch = cdrOutboxService.claimNextBatch(5, false).orElseThrow();
+        cdrOutboxService.release(batch);
+
+        Optional<ClaimedCdrBatch> reclaimed = cdrOutboxService.claimNextBatch(5, false);
+        assertThat(reclaimed).isPresent();
+        assertThat(reclaimed.get().firstId()).isEqualTo(ids.get(0));
+        assertThat(reclaimed.get().lastId()).isEqualTo(ids.get(4));
+        assertThat(reclaimed.get().size()).isEqualTo(5);
+        assertThat(cdrOutboxService.estimateBacklog()).isEqualTo(5);
+    }
+
+    /**
+     * Тестирует освобождение захвата пакета, подтвержденного брокером не для всех шардов.
+     * Ожидается, что повторно захваченный пакет несет подтвержденные шарды, а при другом количестве шардов
+     * они не учитываются.
+     */
+    @Test
+    @DisplayName("claimNextBatch должен возвращать шарды, подтвержденные до освобождения пакета")
+    void claimNextBatch_afterPartialConfirm_shouldCarryConfirmedShards() {
+        cdrRepository.saveAllAndFlush(createTestCdrs(5));
+
+        ClaimedCdrBatch batch = cdrOutboxService.claimNextBatch(5, false).orElseThrow();
+        assertThat(batch.confirmedShardsFor(3)).isZero();
+        cdrOutboxService.release(batch, 0b101, 3);
+
+        ClaimedCdrBatch reclaimed = cdrOutboxService.claimNextBatch(5, false).orElseThrow();
+        assertThat(reclaimed.firstId()).isEqualTo(batch.firstId());
+        assertThat(reclaimed.confirmedShardsFor(3)).isEqualTo(0b101);
+        assertThat(reclaimed.confirmedShardsFor(4)).isZero();
+    }
+
+    /**
+     * Тестирует завершение пакета, аренду которого перехватил другой экземпляр.
+     * Ожидается, что прежний владелец не пометит записи как потребленные и не удалит чужой захват.
+     */
+    @Test
+    @DisplayName("complete не должен изменять пакет, захват которого перехвачен другим экземпляром")
+    void complete_afterLeaseTakenOver_shouldLeaveBatchToNewOwner() {
+        List<Long> ids = cdrRepository.saveAllAndFlush(createTestCdrs(5)).stream().map(Cdr::getId).sorted().toList();
+        ClaimedCdrBatch batch = cdrOutboxService.claimNextBatch(5, false).orElseThrow();
+        jdbcTemplate.update("update cdr_publish_claims set owner = 'other-instance' where first_id = ?", batch.firstId());
+
+        cdrOutboxService.complete(batch);
+
+        assertThat(cdrPublishClaimRepository.count()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForList("select id from cdrs where consumed_status = 0 and publish_claim_id = ?", Long.class, batch.firstId()))
+                .containsExactlyElementsOf(ids);
+    }
+
+    private void assertBatch(ClaimedCdrBatch batch, List<Long> ids) {
+        assertThat(batch.ids()).containsExactlyElementsOf(ids);
+        assertThat(batch.firstId()).isEqualTo(ids.get(0));
+        assertThat(batch.lastId()).isEqualTo(ids.get(ids.size() - 1));
+        assertThat(batch.size()).isEqualTo(ids.size());
+        assertThat(batch.oldestFinishDateTime()).isNotNull();
+        assertThat(jdbcTemplate.queryForList("select id from cdrs where publish_claim_id = ?", Long.class, batch.firstId()))
+                .containsExactlyInAnyOrderElementsOf(ids);
+    }
+
+    private List<Cdr> createTestCdrs(int count) {
+        LocalDateTime now = LocalDateTime.now();
+        return IntStream.range(0, count)
+                .mapToObj(i -> Cdr.builder()
+                        .callType("01")
+                        .servicedMsisdn("79000000001")
+                        .otherMsisdn("79000000002")
+                        .startDateTime(now.minusMinutes(i + 5))
+                        .finishDateTime(now.minusMinutes(i))
+                        .consumedStatus(ConsumedStatus.NEW)
+                        .build())
+                .toList();
+    }
+}
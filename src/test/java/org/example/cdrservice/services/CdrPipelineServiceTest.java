@@ -0,0 +1,105 @@
+package org.example.cdrservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link CdrPipelineService}.
+ * Выполняется на встроенной БД H2 в собственных транзакциях, чтобы проверить поведение после их фиксации и отката.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import({CdrPipelineService.class, CdrJdbcRepository.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class CdrPipelineServiceTest {
+
+    @Autowired
+    private CdrPipelineService cdrPipelineService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        cdrPipelineService.drainTo(cdr -> { });
+        jdbcTemplate.update("delete from cdrs");
+    }
+
+    /**
+     * Тестирует передачу записей после фиксации транзакции.
+     * Ожидается, что до фиксации записи не передаются, а после фиксации они есть в БД и в буфере.
+     */
+    @Test
+    @DisplayName("Должен передавать записи в буфер только после фиксации")
+    void persist_shouldHandOffCdrsAfterCommit() {
+        List<Cdr> cdrs = createTestCdrs(3);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            cdrPipelineService.persist(cdrs);
+
+            assertThat(cdrs).allMatch(cdr -> cdr.getId() != null);
+            assertThat(pipelineCdrs()).isEmpty();
+        });
+
+        assertThat(pipelineCdrs()).extracting(Cdr::getId).containsExactlyElementsOf(cdrs.stream().map(Cdr::getId).toList());
+        assertThat(jdbcTemplate.queryForObject("select count(*) from cdrs", Long.class)).isEqualTo(3);
+    }
+
+    /**
+     * Тестирует откат транзакции.
+     * Ожидается, что записи не передаются в буфер и не остаются в БД.
+     */
+    @Test
+    @DisplayName("Не должен передавать записи при откате транзакции")
+    void persist_withRollback_shouldNotHandOffCdrs() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            cdrPipelineService.persist(createTestCdrs(3));
+            status.setRollbackOnly();
+        });
+
+        assertThat(pipelineCdrs()).isEmpty();
+        assertThat(jdbcTemplate.queryForObject("select count(*) from cdrs", Long.class)).isZero();
+    }
+
+    private List<Cdr> pipelineCdrs() {
+        List<Cdr> cdrs = new ArrayList<>();
+        cdrPipelineService.drainTo(cdrs::add);
+        return cdrs;
+    }
+
+    private List<Cdr> createTestCdrs(int count) {
+        LocalDateTime now = LocalDateTime.now();
+        return IntStream.range(0, count)
+                .mapToObj(i -> Cdr.builder()
+                        .callType("01")
+                        .servicedMsisdn("79000000001")
+                        .otherMsisdn("79000000002")
+                        .startDateTime(now.minusMinutes(i + 5))
+                        .finishDateTime(now.minusMinutes(i))
+                        .consumedStatus(ConsumedStatus.NEW)
+                        .build())
+                .toList();
+    }
+}
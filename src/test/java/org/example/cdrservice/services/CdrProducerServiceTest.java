@@ -1,9 +1,11 @@
 package org.example.cdrservice.services;
 
+import org.example.cdrservice.dtos.CdrsPersistedEvent;
 import org.example.cdrservice.entitites.Cdr;
 import org.example.cdrservice.entitites.ConsumedStatus;
-import org.example.cdrservice.entitites.Subscriber;
 import org.example.cdrservice.repositories.CdrRepository;
+import org.example.cdrservice.utils.SubscriberDirectory;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,9 +14,11 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.lang.reflect.Method;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -22,8 +26,14 @@ import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.tuple;
@@ -43,12 +53,32 @@ class CdrProducerServiceTest {
     @Mock
     private SubscriberService subscriberService;
 
+    @Mock
+    private CdrBackfillService cdrBackfillService;
+
+    @Mock
+    private BackpressureController backpressureController;
+
+    @Mock
+    private CdrPipelineService cdrPipelineService;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CdrDailyUsageService cdrDailyUsageService;
+
     @InjectMocks
     private CdrProducerService cdrProducerService;
 
     @Captor
     private ArgumentCaptor<List<Cdr>> cdrListCaptor;
 
+    @BeforeEach
+    void setUp() {
+        lenient().when(backpressureController.getPublishRate()).thenReturn(1.0);
+    }
+
     /**
      * Тестирует корректность разделения CDR, пересекающих полночь, методом {@code splitIfCrossesMidnight}.
      * Ожидается, что CDR будет разделен на две части: до полуночи и после.
@@ -185,73 +215,95 @@ class CdrProducerServiceTest {
     }
 
     /**
-     * Тестирует обнаружение пересекающихся вызовов для одного и того же абонента методом {@code isCallAllowed}.
-     * Проверяет различные сценарии пересечения и отсутствия пересечения вызовов.
+     * Тестирует обнаружение пересекающихся вызовов для одного и того же абонента методом {@code addToDataSet}.
+     * Проверяет различные сценарии пересечения и отсутствия пересечения вызовов:
+     * пересекающиеся вызовы не должны попадать в очередь, непересекающиеся - должны.
      * @throws Exception если возникает ошибка при вызове приватного метода через рефлексию.
      */
     @Test
-    @DisplayName("isCallAllowed должен обнаруживать пересекающиеся вызовы для одного абонента")
-    void isCallAllowed_shouldDetectOverlappingCalls() throws Exception {
+    @DisplayName("addToDataSet должен отклонять пересекающиеся вызовы для одного абонента")
+    void addToDataSet_shouldRejectOverlappingCalls() throws Exception {
         PriorityBlockingQueue<Cdr> testQueue = new PriorityBlockingQueue<>(10,
                 Comparator.comparing(Cdr::getFinishDateTime));
-
-        LocalDateTime existingStart = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 0));
-        LocalDateTime existingEnd = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 30));
-        Cdr existingCdr = Cdr.builder()
-                .callType("01")
-                .servicedMsisdn("79000000001")
-                .otherMsisdn("79000000002")
-                .startDateTime(existingStart)
-                .finishDateTime(existingEnd)
-                .consumedStatus(ConsumedStatus.NEW)
-                .build();
-        testQueue.add(existingCdr);
-
         ReflectionTestUtils.setField(cdrProducerService, "generatedCdrsQueue", testQueue);
 
-        Method isCallAllowedMethod = CdrProducerService.class.getDeclaredMethod(
-                "isCallAllowed", String.class, LocalDateTime.class, LocalDateTime.class);
-        isCallAllowedMethod.setAccessible(true);
-
-        LocalDateTime newStart1 = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 15));
-        LocalDateTime newEnd1 = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 20));
-        Boolean result1 = (Boolean) isCallAllowedMethod.invoke(
-                cdrProducerService, "79000000001", newStart1, newEnd1);
+        LocalDate today = LocalDate.now();
+        boolean existing = addCall("79000000001", "79000000002", LocalDateTime.of(today, LocalTime.of(10, 0)), LocalDateTime.of(today, LocalTime.of(10, 30)));
 
-        LocalDateTime newStart2 = LocalDateTime.of(LocalDate.now(), LocalTime.of(9, 45));
-        LocalDateTime newEnd2 = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 15));
-        Boolean result2 = (Boolean) isCallAllowedMethod.invoke(
-                cdrProducerService, "79000000001", newStart2, newEnd2);
+        boolean result1 = addCall("79000000001", "79000000011", LocalDateTime.of(today, LocalTime.of(10, 15)), LocalDateTime.of(today, LocalTime.of(10, 20)));
+        boolean result2 = addCall("79000000001", "79000000012", LocalDateTime.of(today, LocalTime.of(9, 45)), LocalDateTime.of(today, LocalTime.of(10, 15)));
+        boolean result3 = addCall("79000000013", "79000000001", LocalDateTime.of(today, LocalTime.of(10, 15)), LocalDateTime.of(today, LocalTime.of(10, 45)));
+        boolean result4 = addCall("79000000001", "79000000014", LocalDateTime.of(today, LocalTime.of(9, 0)), LocalDateTime.of(today, LocalTime.of(9, 30)));
+        boolean result5 = addCall("79000000001", "79000000015", LocalDateTime.of(today, LocalTime.of(11, 0)), LocalDateTime.of(today, LocalTime.of(11, 30)));
+        boolean result6 = addCall("79000000003", "79000000016", LocalDateTime.of(today, LocalTime.of(10, 15)), LocalDateTime.of(today, LocalTime.of(10, 20)));
 
-        LocalDateTime newStart3 = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 15));
-        LocalDateTime newEnd3 = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 45));
-        Boolean result3 = (Boolean) isCallAllowedMethod.invoke(
-                cdrProducerService, "79000000001", newStart3, newEnd3);
+        assertThat(existing).isTrue();
+        assertThat(result1).isFalse();
+        assertThat(result2).isFalse();
+        assertThat(result3).isFalse();
+        assertThat(result4).isTrue();
+        assertThat(result5).isTrue();
+        assertThat(result6).isTrue();
+        assertThat(testQueue).hasSize(8);
+    }
 
-        LocalDateTime newStart4 = LocalDateTime.of(LocalDate.now(), LocalTime.of(9, 0));
-        LocalDateTime newEnd4 = LocalDateTime.of(LocalDate.now(), LocalTime.of(9, 30));
-        Boolean result4 = (Boolean) isCallAllowedMethod.invoke(
-                cdrProducerService, "79000000001", newStart4, newEnd4);
+    /**
+     * Стресс-тест конкурентного добавления звонков.
+     * Несколько потоков одновременно генерируют звонки между небольшим числом абонентов;
+     * ни у одного абонента в результате не должно оказаться пересекающихся звонков.
+     */
+    @Test
+    @DisplayName("Параллельная генерация не должна создавать пересекающиеся вызовы у абонента")
+    void concurrentGeneration_shouldNeverProduceOverlappingCalls() {
+        when(subscriberService.getDirectory()).thenReturn(SubscriberDirectory.of(
+                LongStream.rangeClosed(1, 6).map(i -> 79000000000L + i).toArray()));
 
+        PriorityBlockingQueue<Cdr> cdrQueue = new PriorityBlockingQueue<>(10000,
+                Comparator.comparing(Cdr::getFinishDateTime));
+        ReflectionTestUtils.setField(cdrProducerService, "generatedCdrsQueue", cdrQueue);
 
-        LocalDateTime newStart5 = LocalDateTime.of(LocalDate.now(), LocalTime.of(11, 0));
-        LocalDateTime newEnd5 = LocalDateTime.of(LocalDate.now(), LocalTime.of(11, 30));
-        Boolean result5 = (Boolean) isCallAllowedMethod.invoke(
-                cdrProducerService, "79000000001", newStart5, newEnd5);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<Void>> futures = IntStream.range(0, 8)
+                    .mapToObj(i -> CompletableFuture.runAsync(cdrProducerService::generateCdrForOneYear, executor))
+                    .toList();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+        }
 
+        assertThat(cdrQueue).isNotEmpty();
+        Map<String, List<Cdr>> cdrsBySubscriber = cdrQueue.stream()
+                .collect(Collectors.groupingBy(Cdr::getServicedMsisdn));
+        cdrsBySubscriber.values().forEach(cdrs -> {
+            List<Cdr> sorted = cdrs.stream().sorted(Comparator.comparing(Cdr::getStartDateTime)).toList();
+            for (int i = 1; i < sorted.size(); i++) {
+                assertThat(sorted.get(i).getStartDateTime()).isAfter(sorted.get(i - 1).getFinishDateTime());
+            }
+        });
+    }
 
-        LocalDateTime newStart6 = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 15));
-        LocalDateTime newEnd6 = LocalDateTime.of(LocalDate.now(), LocalTime.of(10, 20));
-        Boolean result6 = (Boolean) isCallAllowedMethod.invoke(
-                cdrProducerService, "79000000003", newStart6, newEnd6);
+    /**
+     * Вспомогательный метод, добавляющий звонок через {@code addToDataSet}.
+     * @return {@code true}, если звонок был принят в очередь.
+     * @throws Exception если возникает ошибка при вызове приватного метода через рефлексию.
+     */
+    private boolean addCall(String servicedMsisdn, String otherMsisdn, LocalDateTime start, LocalDateTime finish) throws Exception {
+        PriorityBlockingQueue<Cdr> queue = (PriorityBlockingQueue<Cdr>) ReflectionTestUtils.getField(cdrProducerService, "generatedCdrsQueue");
+        int sizeBefore = queue.size();
 
+        Method addToDataSetMethod = CdrProducerService.class.getDeclaredMethod("addToDataSet", Cdr.class);
+        addToDataSetMethod.setAccessible(true);
+        addToDataSetMethod.invoke(cdrProducerService, Cdr.builder()
+                .callType("01")
+                .servicedMsisdn(servicedMsisdn)
+                .otherMsisdn(otherMsisdn)
+                .startDateTime(start)
+                .finishDateTime(finish)
+                .consumedStatus(ConsumedStatus.NEW)
+                .build());
 
-        assertThat(result1).isFalse();
-        assertThat(result2).isFalse();
-        assertThat(result3).isFalse();
-        assertThat(result4).isTrue();
-        assertThat(result5).isTrue();
-        assertThat(result6).isTrue();
+        return queue.size() > sizeBefore;
     }
 
     /**
@@ -262,11 +314,7 @@ class CdrProducerServiceTest {
     @Test
     @DisplayName("generateCdrForOneYear должен создавать CDR, помещать их в очередь и разрешать сохранение")
     void generateCdrForOneYear_shouldCreateCdrsForOneYear() {
-        Subscriber subscriber1 = new Subscriber(1L, "79001111111");
-        Subscriber subscriber2 = new Subscriber(2L, "79002222222");
-        List<Subscriber> subscribers = Arrays.asList(subscriber1, subscriber2);
-
-        when(subscriberService.findAll()).thenReturn(subscribers);
+        when(subscriberService.getDirectory()).thenReturn(SubscriberDirectory.of(79001111111L, 79002222222L));
 
         PriorityBlockingQueue<Cdr> cdrQueue = new PriorityBlockingQueue<>(10000,
             Comparator.comparing(Cdr::getFinishDateTime));
@@ -283,6 +331,8 @@ class CdrProducerServiceTest {
         cdrProducerService.persistQueuedData();
         
         verify(cdrRepository, atLeastOnce()).saveAll(cdrListCaptor.capture());
+        verify(cdrDailyUsageService).record(cdrListCaptor.getValue());
+        verify(eventPublisher).publishEvent(new CdrsPersistedEvent(cdrListCaptor.getValue().size()));
         
         List<Cdr> allSavedCdrs = cdrListCaptor.getAllValues().stream()
                 .flatMap(List::stream)
@@ -323,4 +373,136 @@ class CdrProducerServiceTest {
             assertThat(cdr.getServicedMsisdn()).isNotEqualTo(cdr.getOtherMsisdn());
         });
     }
+
+    /**
+     * Тестирует потоковую генерацию по временным срезам.
+     * Пока генерация идет в отдельном потоке, записи сохраняются через {@code persistQueuedData};
+     * ожидается, что они попадут в БД в хронологическом порядке по времени окончания.
+     * @throws InterruptedException если ожидание потока генерации было прервано.
+     */
+    @Test
+    @DisplayName("generateCdrForOneYearInSlices должен передавать срезы на сохранение в хронологическом порядке")
+    void generateCdrForOneYearInSlices_shouldPersistSlicesInChronologicalOrder() throws InterruptedException {
+        when(subscriberService.getDirectory()).thenReturn(SubscriberDirectory.of(
+                LongStream.rangeClosed(1, 10).map(i -> 79000000010L + i).toArray()));
+
+        ReflectionTestUtils.setField(cdrProducerService, "numberOfGenerationThreads", 2);
+        ReflectionTestUtils.setField(cdrProducerService, "sliceDuration", Duration.ofDays(30));
+        ReflectionTestUtils.setField(cdrProducerService, "releasedUntil", LocalDateTime.MIN);
+        ReflectionTestUtils.setField(cdrProducerService, "doReadyToPersist", true);
+
+        PriorityBlockingQueue<Cdr> cdrQueue = (PriorityBlockingQueue<Cdr>) ReflectionTestUtils.getField(cdrProducerService, "generatedCdrsQueue");
+        Thread generationThread = new Thread(() -> cdrProducerService.generateCdrForOneYearInSlices(LocalDateTime.MIN));
+        generationThread.start();
+        while (generationThread.isAlive() || !cdrQueue.isEmpty()) {
+            cdrProducerService.persistQueuedData();
+            Thread.sleep(1);
+        }
+        generationThread.join();
+
+        verify(cdrRepository, atLeastOnce()).saveAll(cdrListCaptor.capture());
+        List<Cdr> allSavedCdrs = cdrListCaptor.getAllValues().stream()
+                .flatMap(List::stream)
+                .toList();
+
+        assertThat(allSavedCdrs).isNotEmpty();
+        assertThat(allSavedCdrs).extracting(Cdr::getFinishDateTime).isSorted();
+        assertThat(allSavedCdrs.get(0).getStartDateTime()).isBefore(LocalDateTime.now().minusDays(300));
+    }
+
+    /**
+     * Тестирует, что {@code persistQueuedData} не сохраняет записи, завершающиеся позже границы {@code releasedUntil}.
+     */
+    @Test
+    @DisplayName("persistQueuedData не должен сохранять CDR за границей releasedUntil")
+    void persistQueuedData_shouldNotPersistCdrsAfterReleaseBoundary() {
+        LocalDateTime boundary = LocalDateTime.of(LocalDate.now(), LocalTime.NOON);
+        PriorityBlockingQueue<Cdr> cdrQueue = new PriorityBlockingQueue<>(10,
+                Comparator.comparing(Cdr::getFinishDateTime));
+        cdrQueue.add(Cdr.builder().callType("01").servicedMsisdn("79000000001").otherMsisdn("79000000002")
+                .startDateTime(boundary.minusHours(2)).finishDateTime(boundary.minusHours(1))
+                .consumedStatus(ConsumedStatus.NEW).build());
+        cdrQueue.add(Cdr.builder().callType("01").servicedMsisdn("79000000001").otherMsisdn("79000000002")
+                .startDateTime(boundary.plusHours(1)).finishDateTime(boundary.plusHours(2))
+                .consumedStatus(ConsumedStatus.NEW).build());
+
+        ReflectionTestUtils.setField(cdrProducerService, "generatedCdrsQueue", cdrQueue);
+        ReflectionTestUtils.setField(cdrProducerService, "releasedUntil", boundary);
+        ReflectionTestUtils.setField(cdrProducerService, "doReadyToPersist", true);
+
+        for (int i = 0; i < 10; i++) {
+            cdrProducerService.persistQueuedData();
+        }
+
+        verify(cdrRepository, atLeastOnce()).saveAll(cdrListCaptor.capture());
+        assertThat(cdrListCaptor.getAllValues().stream().flatMap(List::stream))
+                .extracting(Cdr::getFinishDateTime)
+                .containsExactly(boundary.minusHours(1));
+        assertThat(cdrQueue).hasSize(1);
+    }
+
+    /**
+     * Тестирует ожидание сохранения выпущенного среза методом {@code awaitReleasedCdrsPersisted}.
+     * Ожидается, что поток генерации не опрашивает очередь по таймеру, а ждет без ограничения по времени
+     * и продолжает работу сразу после того, как {@code persistQueuedData} сохранит последнюю выпущенную запись.
+     * @throws Exception если ожидание потока генерации было прервано.
+     */
+    @Test
+    @DisplayName("awaitReleasedCdrsPersisted должен пробуждаться по сигналу persistQueuedData")
+    void awaitReleasedCdrsPersisted_shouldWakeUpWhenFlushDrainsSlice() throws Exception {
+        LocalDateTime boundary = LocalDateTime.of(LocalDate.now(), LocalTime.NOON);
+        PriorityBlockingQueue<Cdr> cdrQueue = new PriorityBlockingQueue<>(10,
+                Comparator.comparing(Cdr::getFinishDateTime));
+        cdrQueue.add(Cdr.builder().callType("01").servicedMsisdn("79000000001").otherMsisdn("79000000002")
+                .startDateTime(boundary.minusHours(2)).finishDateTime(boundary.minusHours(1))
+                .consumedStatus(ConsumedStatus.NEW).build());
+        ReflectionTestUtils.setField(cdrProducerService, "generatedCdrsQueue", cdrQueue);
+        ReflectionTestUtils.setField(cdrProducerService, "releasedUntil", boundary);
+        ReflectionTestUtils.setField(cdrProducerService, "doReadyToPersist", true);
+
+        Thread generationThread = new Thread(() -> ReflectionTestUtils.invokeMethod(cdrProducerService, "awaitReleasedCdrsPersisted"));
+        generationThread.start();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (generationThread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(generationThread.getState()).isEqualTo(Thread.State.WAITING);
+        cdrProducerService.persistQueuedData();
+        generationThread.join(Duration.ofSeconds(5).toMillis());
+
+        assertThat(generationThread.isAlive()).isFalse();
+        assertThat(cdrQueue).isEmpty();
+    }
+
+    /**
+     * Тестирует массовое заполнение исторических данных методом {@code backfillReleasedCdrs}.
+     * Ожидается, что все CDR, завершившиеся до границы, будут переданы в {@link CdrBackfillService}
+     * пакетами не больше заданного размера, а более поздние останутся в очереди для сохранения в обычном темпе.
+     * @throws Exception если возникает ошибка при вызове приватного метода через рефлексию.
+     */
+    @Test
+    @DisplayName("backfillReleasedCdrs должен массово записывать только исторические CDR")
+    void backfillReleasedCdrs_shouldBackfillOnlyHistoricalCdrs() throws Exception {
+        when(subscriberService.getDirectory()).thenReturn(SubscriberDirectory.of(79001111111L, 79002222222L));
+        when(cdrBackfillService.getBatchSize()).thenReturn(100);
+
+        PriorityBlockingQueue<Cdr> cdrQueue = new PriorityBlockingQueue<>(10000,
+                Comparator.comparing(Cdr::getFinishDateTime));
+        ReflectionTestUtils.setField(cdrProducerService, "generatedCdrsQueue", cdrQueue);
+        cdrProducerService.generateCdrForOneYear();
+        int generatedSize = cdrQueue.size();
+
+        LocalDateTime boundary = LocalDateTime.now().minusDays(30);
+        Method backfillMethod = CdrProducerService.class.getDeclaredMethod("backfillReleasedCdrs", LocalDateTime.class);
+        backfillMethod.setAccessible(true);
+        backfillMethod.invoke(cdrProducerService, boundary);
+
+        verify(cdrBackfillService, atLeastOnce()).backfill(cdrListCaptor.capture());
+        assertThat(cdrListCaptor.getAllValues()).allMatch(batch -> batch.size() <= 100);
+        List<Cdr> backfilledCdrs = cdrListCaptor.getAllValues().stream().flatMap(List::stream).toList();
+
+        assertThat(backfilledCdrs).isNotEmpty().allMatch(cdr -> !cdr.getFinishDateTime().isAfter(boundary));
+        assertThat(cdrQueue).allMatch(cdr -> cdr.getFinishDateTime().isAfter(boundary));
+        assertThat(backfilledCdrs.size() + cdrQueue.size()).isEqualTo(generatedSize);
+    }
 }
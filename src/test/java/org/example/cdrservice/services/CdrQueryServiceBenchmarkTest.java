@@ -0,0 +1,108 @@
+package org.example.cdrservice.services;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Замер задержки запроса страницы CDR абонента за период на большой таблице.
+ * <p>
+ * Таблица заполняется {@code benchmark.rows} строками (по умолчанию 10 000 000) для 100 000 абонентов за год,
+ * затем измеряется время выдачи страниц по 100 CDR за случайный месяц случайного абонента.
+ * Запускается только с {@code -Dbenchmark=true}, например
+ * {@code mvn test -Dtest=CdrQueryServiceBenchmarkTest -Dbenchmark=true -DargLine=-Xmx8g}.
+ * </p>
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import(CdrJdbcRepository.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CdrQueryServiceBenchmarkTest {
+
+    private static final long SUBSCRIBERS = 100_000;
+    private static final long FIRST_MSISDN = 79_000_000_000L;
+    private static final LocalDateTime YEAR_START = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final int QUERIES = 2_000;
+    private static final int PAGE_SIZE = 100;
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("truncate table cdrs");
+    }
+
+    /**
+     * Замеряет задержку выдачи страницы CDR абонента за месяц.
+     * Ожидается, что задержка не зависит от размера таблицы и остается в пределах миллисекунд.
+     */
+    @Test
+    @DisplayName("Задержка запроса страницы CDR абонента на большой таблице")
+    void subscriberPageLatency() throws IOException {
+        long rows = Long.getLong("benchmark.rows", 10_000_000L);
+        long secondsPerRow = Math.max(1, 365L * 24 * 3600 * SUBSCRIBERS / rows);
+        long loadStart = System.nanoTime();
+        jdbcTemplate.update("""
+                insert into cdrs (id, call_type, serviced_msisdn, other_msisdn, start_date_time, finish_date_time, consumed_status)
+                select x, 1 + mod(x, 2), %1$d + mod(x, %2$d), %1$d + mod(x * 7, %2$d),
+                       dateadd('SECOND', (x / %2$d) * %3$d, timestamp '%4$s'), dateadd('SECOND', (x / %2$d) * %3$d + 60, timestamp '%4$s'), 1
+                from system_range(1, %5$d)
+                """.formatted(FIRST_MSISDN, SUBSCRIBERS, secondsPerRow, YEAR_START.toString().replace('T', ' '), rows));
+        System.out.printf("loaded %d rows in %d s%n", rows, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - loadStart));
+
+        CdrQueryService cdrQueryService = new CdrQueryService(cdrJdbcRepository, JsonMapper.builder().findAndAddModules().build(), PAGE_SIZE, PAGE_SIZE);
+        CountingOutputStream out = new CountingOutputStream();
+        long[] latencies = new long[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String msisdn = Long.toString(FIRST_MSISDN + ThreadLocalRandom.current().nextLong(SUBSCRIBERS));
+            LocalDateTime from = YEAR_START.plusMonths(ThreadLocalRandom.current().nextInt(11));
+            long start = System.nanoTime();
+            cdrQueryService.streamNdjson(cdrQueryService.createQuery(msisdn, from, from.plusMonths(1), null, null, null), out);
+            latencies[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%d rows, %d queries: p50=%.2f ms, p99=%.2f ms, max=%.2f ms, %d lines%n", rows, QUERIES,
+                latencies[QUERIES / 2] / 1e6, latencies[QUERIES * 99 / 100] / 1e6, latencies[QUERIES - 1] / 1e6, out.lines);
+        assertThat(out.lines).isPositive();
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        long lines;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') lines++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') lines++;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.cdrservice.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.example.cdrservice.dtos.CdrQuery;
+import org.example.cdrservice.dtos.CdrRecordDTO;
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тестовый класс для {@link CdrQueryService}.
+ * Выполняется на встроенной БД H2 со схемой, созданной миграциями Liquibase.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import(CdrJdbcRepository.class)
+class CdrQueryServiceTest {
+
+    private static final LocalDateTime DAY_START = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    private CdrQueryService cdrQueryService;
+
+    @BeforeEach
+    void setUp() {
+        cdrQueryService = new CdrQueryService(cdrJdbcRepository, objectMapper, 3, 10);
+    }
+
+    /**
+     * Тестирует постраничное чтение CDR абонента за период.
+     * Ожидается, что страницы по ключу {@code (start_date_time, id)} без пропусков и повторов возвращают
+     * CDR только этого абонента и периода, включая звонки с одинаковым временем начала на границе страниц.
+     */
+    @Test
+    @DisplayName("Должен возвращать CDR абонента за период страницами по ключу без пропусков и повторов")
+    void streamNdjson_shouldPageThroughSubscriberPeriod() throws IOException {
+        List<Cdr> cdrs = new ArrayList<>();
+        IntStream.range(0, 4).forEach(i -> cdrs.add(createCdr("79000000001", DAY_START.plusHours(1))));
+        IntStream.range(0, 3).forEach(i -> cdrs.add(createCdr("79000000001", DAY_START.plusHours(2 + i))));
+        cdrs.add(createCdr("79000000001", DAY_START.minusHours(1)));
+        cdrs.add(createCdr("79000000001", DAY_START.plusDays(1)));
+        cdrs.add(createCdr("79000000002", DAY_START.plusHours(1)));
+        cdrJdbcRepository.batchInsert(cdrs, 100);
+
+        List<CdrRecordDTO> received = new ArrayList<>();
+        List<CdrRecordDTO> page = read(cdrQueryService.createQuery("79000000001", DAY_START, DAY_START.plusDays(1), null, null, null));
+        while (true) {
+            received.addAll(page);
+            if (page.size() < 3) break;
+            CdrRecordDTO last = page.get(page.size() - 1);
+            page = read(cdrQueryService.createQuery("79000000001", DAY_START, DAY_START.plusDays(1), last.startDateTime(), last.id(), null));
+        }
+
+        assertThat(received).hasSize(7)
+                .allMatch(cdr -> cdr.servicedMsisdn().equals("79000000001"))
+                .extracting(CdrRecordDTO::id).doesNotHaveDuplicates();
+        assertThat(received).extracting(CdrRecordDTO::startDateTime).isSorted()
+                .allMatch(start -> !start.isBefore(DAY_START) && start.isBefore(DAY_START.plusDays(1)));
+    }
+
+    /**
+     * Тестирует план запроса страницы.
+     * Ожидается, что H2 выбирает CDR по составному индексу абонента и времени начала звонка.
+     */
+    @Test
+    @DisplayName("Запрос страницы должен использовать индекс по абоненту и времени начала звонка")
+    void subscriberPageQuery_shouldUseCompositeIndex() {
+        String plan = jdbcTemplate.queryForObject("""
+                explain select id, call_type, serviced_msisdn, other_msisdn, start_date_time, finish_date_time
+                from cdrs where serviced_msisdn = 79000000001 and start_date_time >= timestamp '2025-03-01 00:00:00'
+                and start_date_time < timestamp '2025-03-02 00:00:00' order by start_date_time, id limit 3
+                """, String.class);
+
+        assertThat(plan).contains("CDRS_SERVICED_MSISDN_START_DATE_TIME_IDX");
+    }
+
+    /**
+     * Тестирует проверку параметров запроса.
+     * Ожидается исключение для пустого периода, курсора без идентификатора и слишком большой страницы.
+     */
+    @Test
+    @DisplayName("Должен отклонять некорректные параметры запроса")
+    void createQuery_withInvalidParameters_shouldThrow() {
+        assertThatThrownBy(() -> cdrQueryService.createQuery("79000000001", DAY_START, DAY_START, null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cdrQueryService.createQuery("79000000001", DAY_START, DAY_START.plusDays(1), DAY_START, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cdrQueryService.createQuery("79000000001", DAY_START, DAY_START.plusDays(1), null, null, 11))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cdrQueryService.createQuery("7900abc", DAY_START, DAY_START.plusDays(1), null, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<CdrRecordDTO> read(CdrQuery query) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cdrQueryService.streamNdjson(query, out);
+        List<CdrRecordDTO> cdrs = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) cdrs.add(objectMapper.readValue(line, CdrRecordDTO.class));
+        }
+        return cdrs;
+    }
+
+    private Cdr createCdr(String servicedMsisdn, LocalDateTime start) {
+        return Cdr.builder()
+                .callType("01")
+                .servicedMsisdn(servicedMsisdn)
+                .otherMsisdn("79000000009")
+                .startDateTime(start)
+                .finishDateTime(start.plusMinutes(3))
+                .consumedStatus(ConsumedStatus.NEW)
+                .build();
+    }
+}
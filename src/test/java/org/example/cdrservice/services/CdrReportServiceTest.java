@@ -0,0 +1,98 @@
+package org.example.cdrservice.services;
+
+import org.example.cdrservice.entitites.Cdr;
+import org.example.cdrservice.entitites.ConsumedStatus;
+import org.example.cdrservice.repositories.CdrJdbcRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link CdrReportService}.
+ * Выполняется на встроенной БД H2 со схемой, созданной миграциями Liquibase.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import({CdrReportService.class, CdrJdbcRepository.class})
+class CdrReportServiceTest {
+
+    private static final LocalDateTime MONTH_START = LocalDateTime.of(2025, 3, 1, 0, 0);
+
+    @Autowired
+    private CdrReportService cdrReportService;
+
+    @Autowired
+    private CdrJdbcRepository cdrJdbcRepository;
+
+    /**
+     * Тестирует выгрузку отчета CSV со сжатием gzip через буфер меньше отчета.
+     * Ожидается, что после распаковки отчет содержит заголовок и все CDR абонента за период
+     * в порядке времени начала звонка, а CDR вне периода и других абонентов в него не попадают.
+     */
+    @Test
+    @DisplayName("Должен выгружать CDR абонента за период в CSV со сжатием gzip")
+    void exportCsv_withGzip_shouldWriteSubscriberPeriodRows() throws IOException {
+        ReflectionTestUtils.setField(cdrReportService, "bufferSize", DataSize.ofBytes(256));
+        List<Cdr> cdrs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            cdrs.add(createCdr("79000000001", MONTH_START.plusHours(i).plusNanos(i == 1 ? 250_000_000 : 0)));
+        }
+        cdrs.add(createCdr("79000000001", MONTH_START.minusSeconds(1)));
+        cdrs.add(createCdr("79000000001", MONTH_START.plusMonths(1)));
+        cdrs.add(createCdr("79000000002", MONTH_START.plusHours(1)));
+        cdrJdbcRepository.batchInsert(cdrs, 100);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long rows = cdrReportService.exportCsv(79000000001L, MONTH_START, MONTH_START.plusMonths(1), true, out);
+
+        String[] lines = new String(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes(), StandardCharsets.US_ASCII)
+                .split("\n");
+        assertThat(rows).isEqualTo(50);
+        assertThat(lines).hasSize(51);
+        assertThat(lines[0]).isEqualTo("id,call_type,serviced_msisdn,other_msisdn,start_date_time,finish_date_time,duration_seconds");
+        assertThat(lines[1]).isEqualTo(cdrs.get(0).getId() + ",01,79000000001,79000000009,2025-03-01T00:00:00,2025-03-01T00:03:05,185");
+        assertThat(lines[2]).isEqualTo(cdrs.get(1).getId() + ",01,79000000001,79000000009,2025-03-01T01:00:00.250,2025-03-01T01:03:05.250,185");
+        assertThat(lines[50]).startsWith(cdrs.get(49).getId() + ",01,79000000001,79000000009,2025-03-03T01:00:00,");
+    }
+
+    /**
+     * Тестирует выгрузку пустого отчета без сжатия.
+     * Ожидается, что отчет содержит только заголовок.
+     */
+    @Test
+    @DisplayName("Должен выгружать только заголовок, если CDR за период нет")
+    void exportCsv_withoutRows_shouldWriteHeaderOnly() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = cdrReportService.exportCsv(79000000001L, MONTH_START, MONTH_START.plusMonths(1), false, out);
+
+        assertThat(rows).isZero();
+        assertThat(out.toString(StandardCharsets.US_ASCII))
+                .isEqualTo("id,call_type,serviced_msisdn,other_msisdn,start_date_time,finish_date_time,duration_seconds\n");
+    }
+
+    private Cdr createCdr(String servicedMsisdn, LocalDateTime start) {
+        return Cdr.builder()
+                .callType("01")
+                .servicedMsisdn(servicedMsisdn)
+                .otherMsisdn("79000000009")
+                .startDateTime(start)
+                .finishDateTime(start.plusSeconds(185))
+                .consumedStatus(ConsumedStatus.NEW)
+                .build();
+    }
+}
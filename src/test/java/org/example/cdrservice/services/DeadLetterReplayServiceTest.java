@@ -0,0 +1,239 @@
+package org.example.cdrservice.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.GetResponse;
+import org.example.cdrservice.converters.CdrStreamingMessageWriter;
+import org.example.cdrservice.converters.CompressingMessageConverter;
+import org.example.cdrservice.dtos.CdrDTO;
+import org.example.cdrservice.dtos.DeadLetterReplayFilter;
+import org.example.cdrservice.dtos.DeadLetterReplayStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Тестовый класс для {@link DeadLetterReplayService}.
+ * Проверяет чтение пакетов из очереди недоставленных сообщений, фильтрацию и повторную отправку CDR
+ * и подтверждение пакетов в очереди.
+ */
+@ExtendWith(MockitoExtension.class)
+class DeadLetterReplayServiceTest {
+
+    private static final String DEAD_LETTER_QUEUE = "cdr.queue.dlq";
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final CompressingMessageConverter converter = new CompressingMessageConverter(
+            new Jackson2JsonMessageConverter(objectMapper), CompressingMessageConverter.Codec.NONE, 1, 0);
+
+    private final CdrStreamingMessageWriter writer = new CdrStreamingMessageWriter(MimeTypeUtils.APPLICATION_JSON_VALUE, objectMapper, converter);
+
+    private final CdrDTO firstSubscriberCdr = cdr("79000000001", 0);
+    private final CdrDTO secondSubscriberCdr = cdr("79000000002", 5);
+    private final CdrDTO firstSubscriberLaterCdr = cdr("79000000001", 10);
+
+    @Mock
+    private RabbitTemplate rabbitTemplate;
+
+    @Mock
+    private ConnectionFactory connectionFactory;
+
+    @Mock
+    private BackpressureController backpressureController;
+
+    @Mock
+    private Channel channel;
+
+    private DeadLetterReplayService replayService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        replayService = new DeadLetterReplayService(rabbitTemplate, converter, writer, backpressureController);
+        ReflectionTestUtils.setField(replayService, "CDR_QUEUE_NAME", "cdr.queue");
+        ReflectionTestUtils.setField(replayService, "CDR_EXCHANGE_NAME", "cdr.direct");
+        ReflectionTestUtils.setField(replayService, "CDR_ROUTING_KEY", "cdr.created");
+        ReflectionTestUtils.setField(replayService, "DEAD_LETTER_EXCHANGE_POSTFIX", ".dlx");
+        ReflectionTestUtils.setField(replayService, "DEAD_LETTER_ROUTING_KEY_POSTFIX", ".dlr");
+        ReflectionTestUtils.setField(replayService, "DEAD_LETTER_QUEUE_POSTFIX", ".dlq");
+        ReflectionTestUtils.setField(replayService, "shardCount", 1);
+        ReflectionTestUtils.setField(replayService, "batchSize", 2);
+        ReflectionTestUtils.setField(replayService, "defaultMaxRate", 1000.0);
+        ReflectionTestUtils.setField(replayService, "confirmTimeout", Duration.ofSeconds(1));
+
+        when(backpressureController.getPublishRate()).thenReturn(1.0);
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        when(rabbitTemplate.execute(any())).thenAnswer(invocation -> invocation.<ChannelCallback<?>>getArgument(0).doInRabbit(channel));
+    }
+
+    /**
+     * Тестирует повторную отправку с фильтром по MSISDN.
+     * Ожидается, что CDR абонента будут отправлены в основной обменник, остальные CDR и неразбираемое сообщение
+     * вернутся в очередь недоставленных сообщений, а прочитанные пакеты будут подтверждены в ней целиком.
+     */
+    @Test
+    @DisplayName("Должен отправлять в основной обменник только CDR, прошедшие фильтр, и подтверждать пакеты в DLQ")
+    void start_withMsisdnFilter_shouldReplayMatchingCdrsAndRetainOthers() throws Exception {
+        when(channel.basicGet(DEAD_LETTER_QUEUE, false)).thenReturn(
+                getResponse(1, 2, writer.writeCdrs(List.of(firstSubscriberCdr, secondSubscriberCdr), 1)[0]),
+                getResponse(2, 1, new Message("not a batch".getBytes(), new MessageProperties())),
+                getResponse(3, 0, writer.writeCdrs(List.of(firstSubscriberLaterCdr), 1)[0]));
+
+        replayService.start(1_000_000.0, new DeadLetterReplayFilter("79000000001", null, null));
+        DeadLetterReplayStatus status = awaitFinished();
+
+        assertThat(status.state()).isEqualTo(DeadLetterReplayStatus.State.COMPLETED);
+        assertThat(status.totalMessages()).isEqualTo(3);
+        assertThat(status.messagesRead()).isEqualTo(3);
+        assertThat(status.cdrsReplayed()).isEqualTo(2);
+        assertThat(status.messagesReplayed()).isEqualTo(2);
+        assertThat(status.cdrsRetained()).isEqualTo(1);
+        assertThat(status.messagesRetained()).isEqualTo(1);
+
+        ArgumentCaptor<Message> replayed = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(2)).send(eq("cdr.direct"), eq("cdr.created"), replayed.capture(), any(CorrelationData.class));
+        assertThat(replayed.getAllValues()).extracting(converter::fromMessage)
+                .containsExactly(List.of(firstSubscriberCdr), List.of(firstSubscriberLaterCdr));
+
+        ArgumentCaptor<Message> retained = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(2)).send(eq("cdr.direct.dlx"), eq("cdr.created.dlr"), retained.capture(), any(CorrelationData.class));
+        assertThat(converter.fromMessage(retained.getAllValues().get(0))).isEqualTo(List.of(secondSubscriberCdr));
+
+        verify(channel).basicAck(2, true);
+        verify(channel).basicAck(3, true);
+        verify(channel, times(3)).basicGet(DEAD_LETTER_QUEUE, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+    }
+
+    /**
+     * Тестирует отказ брокера подтвердить повторно отправленное сообщение.
+     * Ожидается, что исходное сообщение будет возвращено в очередь недоставленных сообщений, не прошедшие фильтр CDR
+     * не будут отправлены в нее отдельно (они вернутся вместе с исходным сообщением), а повторная отправка завершится ошибкой.
+     */
+    @Test
+    @DisplayName("Должен возвращать сообщение в DLQ без отдельного возврата остальных CDR, если брокер не подтвердил отправку")
+    void start_whenReplayIsNacked_shouldRequeueMessageWithoutRetainingCdrsAndFail() throws Exception {
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        when(channel.basicGet(DEAD_LETTER_QUEUE, false))
+                .thenReturn(getResponse(7, 0, writer.writeCdrs(List.of(firstSubscriberCdr, secondSubscriberCdr), 1)[0]));
+        confirmSends("cdr.direct", false);
+
+        replayService.start(null, new DeadLetterReplayFilter("79000000001", null, null));
+        DeadLetterReplayStatus status = awaitFinished();
+
+        assertThat(status.state()).isEqualTo(DeadLetterReplayStatus.State.FAILED);
+        assertThat(status.error()).contains("nack");
+        verify(rabbitTemplate, never()).send(eq("cdr.direct.dlx"), anyString(), any(Message.class), any(CorrelationData.class));
+        verify(channel).basicNack(7, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    /**
+     * Тестирует отказ брокера подтвердить возврат оставшихся CDR в очередь недоставленных сообщений.
+     * Ожидается, что в DLQ будет возвращено только сообщение, возврат CDR которого не подтвержден,
+     * а остальные сообщения пакета будут подтверждены по отдельности.
+     */
+    @Test
+    @DisplayName("Должен подтверждать сообщение в DLQ только после подтверждения возврата оставшихся CDR")
+    void start_whenDeadLetterRepublishIsNacked_shouldRequeueOnlyThatMessage() throws Exception {
+        when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+        when(channel.basicGet(DEAD_LETTER_QUEUE, false)).thenReturn(
+                getResponse(1, 1, writer.writeCdrs(List.of(firstSubscriberCdr, secondSubscriberCdr), 1)[0]),
+                getResponse(2, 0, writer.writeCdrs(List.of(firstSubscriberLaterCdr), 1)[0]));
+        confirmSends("cdr.direct", true);
+        confirmSends("cdr.direct.dlx", false);
+
+        replayService.start(1_000_000.0, new DeadLetterReplayFilter("79000000001", null, null));
+        DeadLetterReplayStatus status = awaitFinished();
+
+        assertThat(status.state()).isEqualTo(DeadLetterReplayStatus.State.FAILED);
+        verify(channel).basicNack(1, false, true);
+        verify(channel).basicAck(2, false);
+        verify(channel, never()).basicAck(1, false);
+    }
+
+    /**
+     * Тестирует остановку повторной отправки, пока она ожидает снятия обратного давления.
+     * Ожидается, что в основной обменник ничего не будет отправлено, CDR прочитанного сообщения вернутся в DLQ,
+     * а само сообщение будет подтверждено.
+     */
+    @Test
+    @DisplayName("Не должен отправлять CDR в основной обменник после остановки во время паузы обратного давления")
+    void cancel_whilePausedByBackpressure_shouldReturnCdrsToDeadLetterQueueWithoutSending() throws Exception {
+        when(backpressureController.getPublishRate()).thenReturn(0.0);
+        when(channel.basicGet(DEAD_LETTER_QUEUE, false))
+                .thenReturn(getResponse(4, 3, writer.writeCdrs(List.of(firstSubscriberCdr, secondSubscriberCdr), 1)[0]));
+
+        replayService.start(null, DeadLetterReplayFilter.NONE);
+        verify(channel, timeout(1000)).basicGet(DEAD_LETTER_QUEUE, false);
+        replayService.cancel();
+        DeadLetterReplayStatus status = awaitFinished();
+
+        assertThat(status.state()).isEqualTo(DeadLetterReplayStatus.State.CANCELLED);
+        assertThat(status.cdrsReplayed()).isZero();
+        assertThat(status.cdrsRetained()).isEqualTo(2);
+        verify(rabbitTemplate, never()).send(eq("cdr.direct"), anyString(), any(Message.class), any(CorrelationData.class));
+        ArgumentCaptor<Message> retained = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate).send(eq("cdr.direct.dlx"), eq("cdr.created.dlr"), retained.capture(), any(CorrelationData.class));
+        assertThat(converter.fromMessage(retained.getValue())).isEqualTo(List.of(firstSubscriberCdr, secondSubscriberCdr));
+        verify(channel).basicAck(4, true);
+        verify(channel, times(1)).basicGet(DEAD_LETTER_QUEUE, false);
+    }
+
+    /**
+     * Подтверждает или отклоняет от имени брокера все отправки в обменник.
+     */
+    private void confirmSends(String exchange, boolean ack) {
+        doAnswer(invocation -> {
+            invocation.<CorrelationData>getArgument(3).getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).send(eq(exchange), anyString(), any(Message.class), any(CorrelationData.class));
+    }
+
+    private DeadLetterReplayStatus awaitFinished() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (replayService.getStatus().state() == DeadLetterReplayStatus.State.RUNNING && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return replayService.getStatus();
+    }
+
+    private GetResponse getResponse(long deliveryTag, int remaining, Message message) {
+        return new GetResponse(new Envelope(deliveryTag, false, "cdr.direct.dlx", "cdr.created.dlr"),
+                new DefaultMessagePropertiesConverter().fromMessageProperties(message.getMessageProperties(), "UTF-8"),
+                message.getBody(), remaining);
+    }
+
+    private static CdrDTO cdr(String servicedMsisdn, int minutes) {
+        LocalDateTime start = LocalDateTime.of(2025, 3, 30, 12, 0).plusMinutes(minutes);
+        return new CdrDTO("01", servicedMsisdn, "79010000000", start, start.plusSeconds(90));
+    }
+}
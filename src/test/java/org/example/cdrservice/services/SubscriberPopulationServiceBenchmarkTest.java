@@ -0,0 +1,100 @@
+package org.example.cdrservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cdrservice.repositories.SubscriberJdbcRepository;
+import org.example.cdrservice.utils.SubscriberDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Замер создания синтетической базы абонентов и загрузки справочника абонентов.
+ * <p>
+ * База дополняется до {@code benchmark.subscribers} абонентов (по умолчанию 5 000 000), затем измеряются
+ * загрузка справочника, занимаемая им память и время поиска по MSISDN.
+ * Запускается только с {@code -Dbenchmark=true}, например
+ * {@code mvn test -Dtest=SubscriberPopulationServiceBenchmarkTest -Dbenchmark=true -DargLine=-Xmx4g}.
+ * </p>
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import({SubscriberService.class, SubscriberPopulationService.class, SubscriberJdbcRepository.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SubscriberPopulationServiceBenchmarkTest {
+
+    private static final int LOOKUPS = 1_000_000;
+
+    @Autowired
+    private SubscriberPopulationService subscriberPopulationService;
+
+    @Autowired
+    private SubscriberService subscriberService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private long seededMaxId;
+
+    @BeforeEach
+    void rememberSeededSubscribers() {
+        seededMaxId = jdbcTemplate.queryForObject("select max(id) from subscribers", Long.class);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("delete from subscribers where id > ?", seededMaxId);
+        subscriberService.refresh();
+    }
+
+    /**
+     * Замеряет скорость создания абонентов, время загрузки справочника и поиска по нему.
+     */
+    @Test
+    @DisplayName("Создание синтетической базы абонентов и загрузка справочника")
+    void populateAndLoadDirectory() {
+        int subscribers = Integer.getInteger("benchmark.subscribers", 5_000_000);
+        ReflectionTestUtils.setField(subscriberPopulationService, "size", subscribers);
+
+        long populateStart = System.nanoTime();
+        int created = subscriberPopulationService.populate();
+        long populateMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - populateStart);
+        System.out.printf("created %d subscribers in %d ms (%d rows/sec)%n", created, populateMillis, created * 1000L / Math.max(1, populateMillis));
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long loadStart = System.nanoTime();
+        subscriberService.refresh();
+        long loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart);
+        SubscriberDirectory directory = subscriberService.getDirectory();
+        System.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("loaded directory of %d subscribers in %d ms, ~%d MB heap (%d bytes/subscriber)%n", directory.size(), loadMillis,
+                (heapAfter - heapBefore) >> 20, (heapAfter - heapBefore) / directory.size());
+
+        long lookupStart = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (directory.contains(directory.msisdnAt(ThreadLocalRandom.current().nextInt(directory.size())))) found++;
+        }
+        long lookupNanos = System.nanoTime() - lookupStart;
+        System.out.printf("%d lookups, %d ns/lookup%n", LOOKUPS, lookupNanos / LOOKUPS);
+
+        assertThat(directory.size()).isEqualTo(subscribers);
+        assertThat(found).isEqualTo(LOOKUPS);
+    }
+}
@@ -0,0 +1,65 @@
+package org.example.cdrservice.services;
+
+import org.example.cdrservice.repositories.SubscriberJdbcRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тестовый класс для {@link SubscriberPopulationService}.
+ * Выполняется на встроенной БД H2 с абонентами, добавленными миграциями Liquibase.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import({SubscriberPopulationService.class, SubscriberJdbcRepository.class})
+class SubscriberPopulationServiceTest {
+
+    @Autowired
+    private SubscriberPopulationService subscriberPopulationService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Тестирует дополнение базы абонентов до заданного размера в двух кодах DEF.
+     * Ожидается, что создаются недостающие абоненты с уникальными 11-значными номерами выбранных кодов
+     * (существующие номера тоже не повторяются), а повторный запуск ничего не создает.
+     */
+    @Test
+    @DisplayName("populate должен дополнять базу уникальными номерами выбранных кодов DEF")
+    void populate_shouldCreateMissingSubscribersWithUniqueMsisdns() {
+        int seeded = jdbcTemplate.queryForObject("select count(*) from subscribers", Integer.class);
+        ReflectionTestUtils.setField(subscriberPopulationService, "size", seeded + 25_000);
+        ReflectionTestUtils.setField(subscriberPopulationService, "defCodeFrom", 900);
+        ReflectionTestUtils.setField(subscriberPopulationService, "defCodeTo", 901);
+        ReflectionTestUtils.setField(subscriberPopulationService, "batchSize", 1000);
+
+        assertThat(subscriberPopulationService.populate()).isEqualTo(25_000);
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from subscribers", Integer.class)).isEqualTo(seeded + 25_000);
+        assertThat(jdbcTemplate.queryForObject("select count(distinct msisdn) from subscribers", Integer.class)).isEqualTo(seeded + 25_000);
+        List<String> created = jdbcTemplate.queryForList("select msisdn from subscribers order by id offset ? rows", String.class, seeded);
+        assertThat(created).allMatch(msisdn -> msisdn.matches("790[01]\\d{7}"));
+        assertThat(created).anyMatch(msisdn -> msisdn.startsWith("7900")).anyMatch(msisdn -> msisdn.startsWith("7901"));
+        assertThat(subscriberPopulationService.populate()).isZero();
+    }
+
+    /**
+     * Тестирует некорректный диапазон кодов DEF.
+     */
+    @Test
+    @DisplayName("populate должен отклонять некорректный диапазон кодов DEF")
+    void populate_withInvalidDefCodes_shouldThrow() {
+        ReflectionTestUtils.setField(subscriberPopulationService, "defCodeFrom", 950);
+        ReflectionTestUtils.setField(subscriberPopulationService, "defCodeTo", 949);
+        assertThatThrownBy(() -> subscriberPopulationService.populate()).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.cdrservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.cdrservice.repositories.SubscriberJdbcRepository;
+import org.example.cdrservice.utils.SubscriberDirectory;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link SubscriberService}.
+ * Выполняется на встроенной БД H2 с абонентами, добавленными миграциями Liquibase.
+ */
+@DataJpaTest(properties = "spring.cloud.config.enabled=false")
+@Import({SubscriberService.class, SubscriberPopulationService.class, SubscriberJdbcRepository.class, SimpleMeterRegistry.class})
+class SubscriberServiceTest {
+
+    @Autowired
+    private SubscriberService subscriberService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Тестирует загрузку справочника при запуске и его замену после добавления абонента.
+     * Ожидается, что справочник содержит всех абонентов из БД, а после изменения набора абонентов
+     * заменяется новым, тогда как ранее полученный справочник остается прежним.
+     */
+    @Test
+    @DisplayName("Справочник должен загружаться при запуске и заменяться при изменении абонентов")
+    void refreshIfChanged_shouldSwapDirectoryWhenSubscribersChange() {
+        SubscriberDirectory loaded = subscriberService.getDirectory();
+        assertThat(loaded.size()).isEqualTo(jdbcTemplate.queryForObject("select count(*) from subscribers", Integer.class));
+        assertThat(subscriberService.isSubscriber("79000000001")).isTrue();
+        assertThat(subscriberService.isSubscriber("79990000001")).isFalse();
+
+        subscriberService.refreshIfChanged();
+        assertThat(subscriberService.getDirectory()).isSameAs(loaded);
+
+        jdbcTemplate.update("insert into subscribers (msisdn) values ('79990000001')");
+        subscriberService.refreshIfChanged();
+
+        assertThat(subscriberService.getDirectory()).isNotSameAs(loaded);
+        assertThat(subscriberService.getDirectory().size()).isEqualTo(loaded.size() + 1);
+        assertThat(subscriberService.isSubscriber("79990000001")).isTrue();
+        assertThat(loaded.contains(79990000001L)).isFalse();
+    }
+}
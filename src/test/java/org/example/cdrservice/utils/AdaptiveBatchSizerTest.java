@@ -0,0 +1,58 @@
+package org.example.cdrservice.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link AdaptiveBatchSizer}.
+ */
+class AdaptiveBatchSizerTest {
+
+    /**
+     * Тестирует рост размера пакета при большой очереди и его уменьшение при опустевшей очереди
+     * в пределах заданных границ.
+     */
+    @Test
+    @DisplayName("adjust должен увеличивать размер при большой очереди и уменьшать при малой в пределах границ")
+    void adjust_shouldFollowBacklogWithinBounds() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 100, Duration.ofMillis(50));
+
+        assertThat(sizer.adjust(10_000)).isEqualTo(20);
+        assertThat(sizer.adjust(10_000)).isEqualTo(40);
+        assertThat(sizer.adjust(10_000)).isEqualTo(80);
+        assertThat(sizer.adjust(10_000)).isEqualTo(100);
+        assertThat(sizer.adjust(10_000)).isEqualTo(100);
+
+        assertThat(sizer.adjust(150)).isEqualTo(100);
+        assertThat(sizer.adjust(30)).isEqualTo(50);
+        assertThat(sizer.adjust(0)).isEqualTo(25);
+        assertThat(sizer.adjust(0)).isEqualTo(12);
+        assertThat(sizer.adjust(0)).isEqualTo(10);
+    }
+
+    /**
+     * Тестирует реакцию на медленные подтверждения брокера.
+     * Ожидается, что размер пакета не растет и уменьшается, пока сглаженная задержка выше целевой.
+     */
+    @Test
+    @DisplayName("adjust должен уменьшать размер, пока брокер подтверждает пакеты медленнее целевой задержки")
+    void adjust_shouldShrinkWhenConfirmsAreSlow() {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(10, 100, Duration.ofMillis(50));
+        sizer.adjust(10_000);
+        sizer.adjust(10_000);
+
+        sizer.recordConfirmLatency(Duration.ofMillis(500).toNanos());
+
+        assertThat(sizer.adjust(10_000)).isEqualTo(20);
+        assertThat(sizer.adjust(10_000)).isEqualTo(10);
+
+        for (int i = 0; i < 30; i++) {
+            sizer.recordConfirmLatency(Duration.ofMillis(5).toNanos());
+        }
+        assertThat(sizer.adjust(10_000)).isEqualTo(20);
+    }
+}
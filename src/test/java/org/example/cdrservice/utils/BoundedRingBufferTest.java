@@ -0,0 +1,89 @@
+package org.example.cdrservice.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link BoundedRingBuffer}.
+ */
+class BoundedRingBufferTest {
+
+    /**
+     * Тестирует порядок элементов и поведение заполненного буфера.
+     * Ожидается, что элементы извлекаются в порядке добавления, а в заполненный буфер элемент не добавляется.
+     */
+    @Test
+    @DisplayName("Должен сохранять порядок FIFO и отклонять элементы при заполнении")
+    void offerAndPoll_shouldKeepFifoOrderAndRejectWhenFull() {
+        BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(3);
+
+        assertThat(buffer.capacity()).isEqualTo(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i)).isTrue();
+        }
+        assertThat(buffer.offer(4)).isFalse();
+        assertThat(buffer.size()).isEqualTo(4);
+
+        assertThat(buffer.poll()).isZero();
+        assertThat(buffer.offer(4)).isTrue();
+        for (int i = 1; i <= 4; i++) {
+            assertThat(buffer.poll()).isEqualTo(i);
+        }
+        assertThat(buffer.poll()).isNull();
+        assertThat(buffer.isEmpty()).isTrue();
+    }
+
+    /**
+     * Тестирует одновременную запись несколькими потоками при одновременном чтении.
+     * Ожидается, что каждый элемент извлекается ровно один раз.
+     */
+    @Test
+    @DisplayName("Должен передавать каждый элемент ровно один раз при конкурентной записи")
+    void offerAndPoll_withConcurrentProducers_shouldDeliverEachElementOnce() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        BoundedRingBuffer<Integer> buffer = new BoundedRingBuffer<>(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(offset + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        Set<Integer> received = new HashSet<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received.size() < producers * perProducer && System.nanoTime() < deadline) {
+            Integer element = buffer.poll();
+            if (element != null) assertThat(received.add(element)).isTrue();
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(received).hasSize(producers * perProducer);
+        assertThat(buffer.poll()).isNull();
+    }
+}
@@ -0,0 +1,132 @@
+package org.example.cdrservice.utils;
+
+import org.example.cdrservice.entitites.Cdr;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Замер времени генерации CDR в зависимости от их количества при проверке пересечений звонков
+ * прежним способом (обход всей очереди сгенерированных CDR для каждого участника) и через {@link CallIntervalIndex}.
+ * <p>
+ * Кандидаты в звонки создаются одинаковыми для обоих способов, поэтому оба принимают одни и те же звонки.
+ * Как и в {@code CdrProducerService}, в очередь попадают оригинальная и зеркальная CDR каждого принятого звонка.
+ * Запускается только с {@code -Dbenchmark=true}, например
+ * {@code mvn test -Dtest=CallIntervalIndexBenchmarkTest -Dbenchmark=true}.
+ * </p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class CallIntervalIndexBenchmarkTest {
+
+    private static final int SUBSCRIBERS = 1_000;
+    private static final long FIRST_MSISDN = 79_000_000_000L;
+    private static final LocalDateTime YEAR_START = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final int[] CDR_COUNTS = {1_000, 2_500, 5_000, 10_000, 20_000};
+
+    /**
+     * Замеряет время генерации для каждого количества CDR.
+     * Ожидается, что время прежнего способа растет квадратично, а с индексом - почти линейно.
+     */
+    @Test
+    @DisplayName("Время генерации CDR при проверке пересечений обходом очереди и по индексу")
+    void generationTime_byCdrCount() {
+        generateWithQueueScan(createCandidates(CDR_COUNTS[0]));
+        generateWithIndex(createCandidates(CDR_COUNTS[0]));
+        for (int count : CDR_COUNTS) {
+            List<Cdr> candidates = createCandidates(count);
+
+            long startNanos = System.nanoTime();
+            int acceptedByScan = generateWithQueueScan(candidates);
+            long scanNanos = System.nanoTime() - startNanos;
+
+            startNanos = System.nanoTime();
+            int acceptedByIndex = generateWithIndex(candidates);
+            long indexNanos = System.nanoTime() - startNanos;
+
+            System.out.printf("%,7d candidates (%,6d accepted): queue scan %,9.1f ms, interval index %,7.1f ms%n",
+                    count, acceptedByIndex, scanNanos / 1e6, indexNanos / 1e6);
+            assertThat(acceptedByScan).isEqualTo(acceptedByIndex);
+        }
+    }
+
+    private int generateWithQueueScan(List<Cdr> candidates) {
+        PriorityBlockingQueue<Cdr> queue = new PriorityBlockingQueue<>(8192, Comparator.comparing(Cdr::getFinishDateTime));
+        int accepted = 0;
+        for (Cdr cdr : candidates) {
+            if (isCallAllowed(queue, cdr.getServicedMsisdn(), cdr.getStartDateTime(), cdr.getFinishDateTime())
+                    && isCallAllowed(queue, cdr.getOtherMsisdn(), cdr.getStartDateTime(), cdr.getFinishDateTime())) {
+                queue.add(cdr);
+                queue.add(mirror(cdr));
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Прежняя проверка {@code CdrProducerService.isCallAllowed}.
+     */
+    private static boolean isCallAllowed(PriorityBlockingQueue<Cdr> queue, String phoneNumber, LocalDateTime newStart, LocalDateTime newFinish) {
+        List<Cdr> allCdrsFinishedAfterStartOfNew = queue.stream().dropWhile(cdr -> newStart.isAfter(cdr.getFinishDateTime())).toList();
+        for (Cdr existing : allCdrsFinishedAfterStartOfNew) {
+            if ((Objects.equals(existing.getServicedMsisdn(), phoneNumber) || Objects.equals(existing.getOtherMsisdn(), phoneNumber)) &&
+                    !(newFinish.isBefore(existing.getStartDateTime()) || newStart.isAfter(existing.getFinishDateTime()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int generateWithIndex(List<Cdr> candidates) {
+        PriorityBlockingQueue<Cdr> queue = new PriorityBlockingQueue<>(8192, Comparator.comparing(Cdr::getFinishDateTime));
+        CallIntervalIndex index = new CallIntervalIndex();
+        int accepted = 0;
+        for (Cdr cdr : candidates) {
+            if (index.tryReserve(cdr.getServicedMsisdn(), cdr.getOtherMsisdn(), cdr.getStartDateTime(), cdr.getFinishDateTime())) {
+                queue.add(cdr);
+                queue.add(mirror(cdr));
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+
+    private static Cdr mirror(Cdr cdr) {
+        return Cdr.builder()
+                .callType("02")
+                .servicedMsisdn(cdr.getOtherMsisdn())
+                .otherMsisdn(cdr.getServicedMsisdn())
+                .startDateTime(cdr.getStartDateTime())
+                .finishDateTime(cdr.getFinishDateTime())
+                .build();
+    }
+
+    private static List<Cdr> createCandidates(int count) {
+        SplittableRandom random = new SplittableRandom(count);
+        long secondsPerCdr = 365L * 24 * 3600 * 4 / count;
+        List<Cdr> candidates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int caller = random.nextInt(SUBSCRIBERS);
+            int called = (caller + 1 + random.nextInt(SUBSCRIBERS - 1)) % SUBSCRIBERS;
+            LocalDateTime start = YEAR_START.plusSeconds(random.nextLong(365L * 24 * 3600));
+            candidates.add(Cdr.builder()
+                    .callType("01")
+                    .servicedMsisdn(Long.toString(FIRST_MSISDN + caller))
+                    .otherMsisdn(Long.toString(FIRST_MSISDN + called))
+                    .startDateTime(start)
+                    .finishDateTime(start.plusSeconds(1 + random.nextLong(secondsPerCdr)))
+                    .build());
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.cdrservice.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link CallIntervalIndex}.
+ * Проверяет поиск пересечений звонков по индексу занятости абонентов.
+ */
+class CallIntervalIndexTest {
+
+    private final LocalDate today = LocalDate.now();
+
+    /**
+     * Тестирует обнаружение пересечений с одним из нескольких зарегистрированных звонков абонента,
+     * включая касание границ интервала.
+     */
+    @Test
+    @DisplayName("isFree должен находить пересечения с любым из зарегистрированных звонков абонента")
+    void isFree_shouldDetectOverlapsAmongSeveralCalls() {
+        CallIntervalIndex index = new CallIntervalIndex();
+        index.add("79000000001", at(9, 0), at(9, 30));
+        index.add("79000000001", at(12, 0), at(12, 10));
+        index.add("79000000001", at(10, 0), at(10, 30));
+
+        assertThat(index.isFree("79000000001", at(10, 10), at(10, 20))).isFalse();
+        assertThat(index.isFree("79000000001", at(11, 0), at(12, 5))).isFalse();
+        assertThat(index.isFree("79000000001", at(8, 0), at(13, 0))).isFalse();
+        assertThat(index.isFree("79000000001", at(10, 30), at(10, 45))).isFalse();
+        assertThat(index.isFree("79000000001", at(8, 0), at(9, 0))).isFalse();
+
+        assertThat(index.isFree("79000000001", at(10, 31), at(11, 59))).isTrue();
+        assertThat(index.isFree("79000000001", at(7, 0), at(8, 59))).isTrue();
+        assertThat(index.isFree("79000000001", at(12, 11), at(23, 0))).isTrue();
+        assertThat(index.isFree("79000000002", at(10, 10), at(10, 20))).isTrue();
+
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    /**
+     * Тестирует удаление завершившихся интервалов: более поздние интервалы должны остаться в индексе.
+     */
+    @Test
+    @DisplayName("evictFinishedBefore должен удалять только завершившиеся интервалы")
+    void evictFinishedBefore_shouldRemoveOnlyFinishedIntervals() {
+        CallIntervalIndex index = new CallIntervalIndex();
+        index.add("79000000001", at(9, 0), at(9, 30));
+        index.add("79000000001", at(10, 0), at(10, 30));
+        index.add("79000000002", at(10, 0), at(11, 30));
+
+        index.evictFinishedBefore(at(11, 0));
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.isFree("79000000001", at(9, 0), at(10, 30))).isTrue();
+        assertThat(index.isFree("79000000002", at(11, 0), at(11, 10))).isFalse();
+    }
+
+    /**
+     * Тестирует атомарное резервирование звонка за обоими участниками.
+     * Ожидается, что звонок с занятым участником отклоняется и не регистрируется ни за одним из участников.
+     */
+    @Test
+    @DisplayName("tryReserve должен резервировать звонок только при свободных обоих участниках")
+    void tryReserve_shouldReserveOnlyWhenBothParticipantsAreFree() {
+        CallIntervalIndex index = new CallIntervalIndex();
+
+        assertThat(index.tryReserve("79000000001", "79000000002", at(10, 0), at(10, 30))).isTrue();
+        assertThat(index.tryReserve("79000000003", "79000000002", at(10, 15), at(10, 45))).isFalse();
+        assertThat(index.tryReserve("79000000003", "79000000004", at(10, 15), at(10, 45))).isTrue();
+
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.isFree("79000000002", at(10, 31), at(11, 0))).isTrue();
+        assertThat(index.isFree("79000000003", at(10, 40), at(11, 0))).isFalse();
+    }
+
+    private LocalDateTime at(int hour, int minute) {
+        return LocalDateTime.of(today, LocalTime.of(hour, minute));
+    }
+}
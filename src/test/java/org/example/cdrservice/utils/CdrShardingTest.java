@@ -0,0 +1,71 @@
+package org.example.cdrservice.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тестовый класс для {@link CdrSharding}.
+ */
+class CdrShardingTest {
+
+    private static final int SUBSCRIBERS = 100_000;
+
+    private static final long FIRST_MSISDN = 79_000_000_000L;
+
+    /**
+     * Тестирует равномерность распределения последовательных номеров по шардам.
+     * Ожидается, что каждый шард получит долю абонентов, близкую к {@code 1 / shardCount}.
+     */
+    @Test
+    @DisplayName("shardOf должен равномерно распределять последовательные номера по шардам")
+    void shardOf_shouldDistributeSequentialNumbersEvenly() {
+        int shardCount = 8;
+        int[] counts = new int[shardCount];
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            counts[CdrSharding.shardOf(FIRST_MSISDN + i, shardCount)]++;
+        }
+
+        int expected = SUBSCRIBERS / shardCount;
+        for (int count : counts) {
+            assertThat(count).isBetween(expected * 95 / 100, expected * 105 / 100);
+        }
+        assertThat(CdrSharding.shardOf(FIRST_MSISDN, 1)).isZero();
+    }
+
+    /**
+     * Тестирует перебалансировку при добавлении шарда.
+     * Ожидается, что абоненты переходят только в новый шард, а их доля близка к {@code 1 / (n + 1)}.
+     */
+    @Test
+    @DisplayName("shardOf при добавлении шарда должен переносить в новый шард только около 1/(n+1) абонентов")
+    void shardOf_whenShardAdded_shouldMoveOnlyShareOfSubscribersToNewShard() {
+        int shardCount = 4;
+        int moved = 0;
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            int before = CdrSharding.shardOf(FIRST_MSISDN + i, shardCount);
+            int after = CdrSharding.shardOf(FIRST_MSISDN + i, shardCount + 1);
+            if (before != after) {
+                assertThat(after).isEqualTo(shardCount);
+                moved++;
+            }
+        }
+
+        int expected = SUBSCRIBERS / (shardCount + 1);
+        assertThat(moved).isBetween(expected * 95 / 100, expected * 105 / 100);
+    }
+
+    /**
+     * Тестирует имена очередей и ключи маршрутизации шардов.
+     * Ожидается, что при одном шарде используются базовые имена.
+     */
+    @Test
+    @DisplayName("queueName и routingKey должны добавлять номер шарда, только если шардов больше одного")
+    void names_shouldIncludeShardOnlyForSeveralShards() {
+        assertThat(CdrSharding.queueName("cdr.queue", 0, 1)).isEqualTo("cdr.queue");
+        assertThat(CdrSharding.routingKey("cdr.created", 0, 1)).isEqualTo("cdr.created");
+        assertThat(CdrSharding.queueName("cdr.queue", 2, 3)).isEqualTo("cdr.queue.2");
+        assertThat(CdrSharding.routingKey("cdr.created", 2, 3)).isEqualTo("cdr.created.2");
+    }
+}
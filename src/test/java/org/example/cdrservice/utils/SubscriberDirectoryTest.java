@@ -0,0 +1,50 @@
+package org.example.cdrservice.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тестовый класс для {@link SubscriberDirectory}.
+ * Проверяет хранение MSISDN по ячейкам и поиск ячейки по MSISDN.
+ */
+class SubscriberDirectoryTest {
+
+    /**
+     * Тестирует поиск по справочнику из большого числа последовательных номеров, построенному через построитель.
+     * Ожидается, что каждый номер находится в своей ячейке, а отсутствующие номера не находятся.
+     */
+    @Test
+    @DisplayName("slotOf должен находить ячейку каждого абонента и не находить отсутствующих")
+    void slotOf_shouldFindEverySubscriber() {
+        SubscriberDirectory.Builder builder = new SubscriberDirectory.Builder(0);
+        for (long i = 0; i < 100_000; i++) {
+            builder.add(79000000000L + i * 3);
+        }
+        SubscriberDirectory directory = builder.build();
+
+        assertThat(directory.size()).isEqualTo(100_000);
+        for (int slot = 0; slot < directory.size(); slot++) {
+            assertThat(directory.msisdnAt(slot)).isEqualTo(79000000000L + slot * 3L);
+            assertThat(directory.slotOf(79000000000L + slot * 3L)).isEqualTo(slot);
+        }
+        assertThat(LongStream.range(0, 100_000).map(i -> 79000000001L + i * 3).filter(directory::contains).count()).isZero();
+        assertThat(directory.slotOf(79999999999L)).isEqualTo(-1);
+    }
+
+    /**
+     * Тестирует пустой справочник и справочник с повторяющимися номерами.
+     */
+    @Test
+    @DisplayName("Должен строить пустой справочник и отклонять повторяющиеся MSISDN")
+    void of_shouldHandleEmptyAndDuplicateMsisdns() {
+        assertThat(SubscriberDirectory.of().size()).isZero();
+        assertThat(new SubscriberDirectory.Builder(10).build().contains(79000000001L)).isFalse();
+        assertThatThrownBy(() -> SubscriberDirectory.of(79000000001L, 79000000002L, 79000000001L))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}